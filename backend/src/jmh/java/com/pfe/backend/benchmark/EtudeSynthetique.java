@@ -0,0 +1,96 @@
+package com.pfe.backend.benchmark;
+
+import com.pfe.backend.dto.ReponseExportDto;
+import com.pfe.backend.model.Champ;
+import com.pfe.backend.model.ListeValeur;
+import com.pfe.backend.model.OptionValeur;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Étude générée pour les benchmarks : {@code patients} patients ayant chacun répondu aux
+ * {@code champs} champs du formulaire. Avec {@code options} > 0, chaque champ est une liste
+ * de choix de cette cardinalité (valeurs "0".."n-1") ; sinon les réponses sont en texte libre.
+ * La graine est fixe : deux exécutions produisent exactement les mêmes données.
+ */
+public final class EtudeSynthetique {
+
+    private static final long GRAINE = 42L;
+
+    private final List<Champ> champs;
+    private final Map<Long, Champ> champsParId;
+    private final List<List<ReponseExportDto>> reponsesParPatient;
+
+    public EtudeSynthetique(int patients, int nombreChamps, int options) {
+        Random random = new Random(GRAINE);
+
+        this.champs = new ArrayList<>(nombreChamps);
+        this.champsParId = new LinkedHashMap<>();
+        for (long id = 1; id <= nombreChamps; id++) {
+            Champ champ = new Champ();
+            champ.setIdChamp(id);
+            champ.setLabel("Champ " + id);
+            if (options > 0) {
+                champ.setListeValeur(listeValeur(options));
+            }
+            champs.add(champ);
+            champsParId.put(id, champ);
+        }
+
+        LocalDateTime date = LocalDateTime.of(2026, 1, 1, 8, 0);
+        this.reponsesParPatient = new ArrayList<>(patients);
+        for (int p = 1; p <= patients; p++) {
+            String identifiant = String.format("NOM-PRENOM-ETUDE-%04d", p);
+            // Hash fictif de longueur réaliste (SHA-256 hexadécimal), trié comme le curseur d'export
+            String hash = String.format("%064x", p);
+            List<ReponseExportDto> reponses = new ArrayList<>(nombreChamps);
+            for (long id = 1; id <= nombreChamps; id++) {
+                String valeur = options > 0
+                        ? String.valueOf(random.nextInt(options))
+                        : "valeur " + random.nextInt(10_000);
+                reponses.add(new ReponseExportDto(id, hash, identifiant, valeur, date.plusMinutes(p)));
+            }
+            reponsesParPatient.add(List.copyOf(reponses));
+        }
+    }
+
+    private static ListeValeur listeValeur(int options) {
+        ListeValeur liste = new ListeValeur();
+        List<OptionValeur> valeurs = new ArrayList<>(options);
+        for (int i = 0; i < options; i++) {
+            OptionValeur option = new OptionValeur();
+            option.setValeur(String.valueOf(i));
+            option.setLibelle("Option " + i);
+            valeurs.add(option);
+        }
+        liste.setOptions(valeurs);
+        return liste;
+    }
+
+    public List<Champ> getChamps() {
+        return champs;
+    }
+
+    public Map<Long, Champ> getChampsParId() {
+        return champsParId;
+    }
+
+    /** Réponses groupées par patient, dans l'ordre du curseur d'export. */
+    public List<List<ReponseExportDto>> getReponsesParPatient() {
+        return reponsesParPatient;
+    }
+
+    /** Toutes les réponses à plat, telles que lues en une fois par l'export en mémoire. */
+    public List<ReponseExportDto> getReponses() {
+        return reponsesParPatient.stream().flatMap(List::stream).toList();
+    }
+
+    public List<Long> getIdsChamps() {
+        return List.copyOf(champsParId.keySet());
+    }
+}
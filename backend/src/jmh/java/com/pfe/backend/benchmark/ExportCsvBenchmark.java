@@ -0,0 +1,129 @@
+package com.pfe.backend.benchmark;
+
+import com.pfe.backend.dto.ReponseExportDto;
+import com.pfe.backend.service.CsvExportService;
+import com.pfe.backend.service.ExportReponsesService;
+import com.pfe.backend.service.LectureReponsesService;
+import com.pfe.backend.service.PlanExport;
+import com.pfe.backend.service.PlanExportCache;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Génération CSV des deux exports sur une étude synthétique, sans base de données :
+ * la lecture des réponses est remplacée par les lignes déjà déchiffrées de {@link EtudeSynthetique},
+ * afin de ne mesurer que la construction du fichier.
+ * Exécution : mvn -Pjmh test-compile exec:exec -Djmh.args="ExportCsvBenchmark -p patients=1000"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ExportCsvBenchmark {
+
+    @Param({"100", "1000"})
+    private int patients;
+
+    @Param({"20", "200"})
+    private int champs;
+
+    /** Cardinalité des listes de choix ; 0 : réponses en texte libre. */
+    @Param({"0", "8", "200"})
+    private int options;
+
+    private EtudeSynthetique etude;
+    private List<ReponseExportDto> reponses;
+    private CsvExportService csvExportService;
+    private ExportReponsesService exportReponsesService;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        etude = new EtudeSynthetique(patients, champs, options);
+        reponses = etude.getReponses();
+        LectureEnMemoire lecture = new LectureEnMemoire(etude);
+        csvExportService = new CsvExportService(lecture, new PlanEnMemoire(etude));
+        exportReponsesService = new ExportReponsesService(null, lecture);
+    }
+
+    /** Export en mémoire (plan compilé à chaque appel, patients triés par numéro d'inclusion). */
+    @Benchmark
+    public String csvExportGenerateCsvContent() {
+        return csvExportService.generateCsvContent(reponses, etude.getChampsParId());
+    }
+
+    /** Export en flux de tous les envois d'un formulaire (plan en cache, catégories, libellés d'options). */
+    @Benchmark
+    public void csvExportFlux() throws IOException {
+        csvExportService.exporterFormulaire(1L).writeTo(OutputStream.nullOutputStream());
+    }
+
+    /** Export chercheur en flux (une ligne par patient, valeurs brutes). */
+    @Benchmark
+    public void exportReponsesFlux() throws IOException {
+        exportReponsesService.ecrireCsv(1L, etude.getChamps(), OutputStream.nullOutputStream(), () -> { });
+    }
+
+    /**
+     * Lecture des réponses servie depuis l'étude synthétique (pas de curseur ni de déchiffrement).
+     */
+    static final class LectureEnMemoire extends LectureReponsesService {
+
+        private final EtudeSynthetique etude;
+
+        LectureEnMemoire(EtudeSynthetique etude) {
+            super(null, null, 1);
+            this.etude = etude;
+        }
+
+        @Override
+        public void parcourirReponsesSoumisesParFormulaire(Long formulaireId, Consumer<List<ReponseExportDto>> parPatient) {
+            etude.getReponsesParPatient().forEach(parPatient);
+        }
+
+        @Override
+        public void parcourirReponsesParFormulaire(Long formulaireId, Consumer<List<ReponseExportDto>> parPatient) {
+            etude.getReponsesParPatient().forEach(parPatient);
+        }
+
+        @Override
+        public List<Long> idsChampsRepondusParFormulaire(Long formulaireId) {
+            return etude.getIdsChamps();
+        }
+    }
+
+    /**
+     * Cache de plans déjà chaud : le plan de l'étude est compilé une fois.
+     */
+    static final class PlanEnMemoire extends PlanExportCache {
+
+        private final PlanExport plan;
+
+        PlanEnMemoire(EtudeSynthetique etude) {
+            super(null, null, null);
+            this.plan = PlanExport.compiler(etude.getChamps());
+        }
+
+        @Override
+        public PlanExport getPlan(Long formulaireId) {
+            return plan;
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package com.pfe.backend.benchmark;
+
+import com.pfe.backend.config.converter.StringCryptoConverter;
+import com.pfe.backend.config.crypto.AesGcmCryptoEngine;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.ByteBuffer;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compare l'ancien convertisseur (Cipher et SecureRandom créés à chaque valeur)
+ * au convertisseur adossé à {@link AesGcmCryptoEngine}, en chiffrement et en déchiffrement.
+ * Exécution : mvn -Pjmh test-compile exec:exec -Djmh.args="StringCryptoConverterBenchmark"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+public class StringCryptoConverterBenchmark {
+
+    private static final String CLE = "0123456789abcdef0123456789abcdef";
+
+    /** Taille de la valeur saisie : réponse courte (nombre, oui/non) ou texte libre. */
+    @Param({"8", "256"})
+    private int taille;
+
+    private String clair;
+    private String chiffre;
+    private LegacyStringCryptoConverter legacy;
+    private StringCryptoConverter converter;
+
+    @Setup
+    public void setup() {
+        clair = "x".repeat(taille);
+        legacy = new LegacyStringCryptoConverter(CLE);
+        converter = new StringCryptoConverter(new AesGcmCryptoEngine(CLE));
+        chiffre = converter.convertToDatabaseColumn(clair);
+    }
+
+    @Benchmark
+    public String chiffrementLegacy() {
+        return legacy.convertToDatabaseColumn(clair);
+    }
+
+    @Benchmark
+    public String chiffrementMoteur() {
+        return converter.convertToDatabaseColumn(clair);
+    }
+
+    @Benchmark
+    public String dechiffrementLegacy() {
+        return legacy.convertToEntityAttribute(chiffre);
+    }
+
+    @Benchmark
+    public String dechiffrementMoteur() {
+        return converter.convertToEntityAttribute(chiffre);
+    }
+
+    /**
+     * Copie de l'implémentation d'origine, conservée comme référence de mesure.
+     */
+    static final class LegacyStringCryptoConverter {
+
+        private final SecretKeySpec keySpec;
+
+        LegacyStringCryptoConverter(String secretKey) {
+            this.keySpec = new SecretKeySpec(secretKey.getBytes(), "AES");
+        }
+
+        String convertToDatabaseColumn(String attribute) {
+            try {
+                byte[] iv = new byte[12];
+                new SecureRandom().nextBytes(iv);
+                Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+                cipher.init(Cipher.ENCRYPT_MODE, keySpec, new GCMParameterSpec(128, iv));
+                byte[] encryptedData = cipher.doFinal(attribute.getBytes());
+                ByteBuffer byteBuffer = ByteBuffer.allocate(iv.length + encryptedData.length);
+                byteBuffer.put(iv);
+                byteBuffer.put(encryptedData);
+                return Base64.getEncoder().encodeToString(byteBuffer.array());
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        String convertToEntityAttribute(String dbData) {
+            try {
+                ByteBuffer byteBuffer = ByteBuffer.wrap(Base64.getDecoder().decode(dbData));
+                byte[] iv = new byte[12];
+                byteBuffer.get(iv);
+                byte[] encryptedData = new byte[byteBuffer.remaining()];
+                byteBuffer.get(encryptedData);
+                Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+                cipher.init(Cipher.DECRYPT_MODE, keySpec, new GCMParameterSpec(128, iv));
+                return new String(cipher.doFinal(encryptedData));
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+}
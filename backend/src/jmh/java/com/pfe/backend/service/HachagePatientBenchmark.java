@@ -0,0 +1,52 @@
+package com.pfe.backend.service;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hachage SHA-256 des identifiants patients fait à chaque sauvegarde et lecture de réponses.
+ * Placé dans le paquet du service pour appeler directement la méthode de hachage (visibilité paquet).
+ * Exécution : mvn -Pjmh test-compile exec:exec -Djmh.args="HachagePatientBenchmark"
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+public class HachagePatientBenchmark {
+
+    /** Nombre d'identifiants distincts hachés en boucle. */
+    @Param({"1000"})
+    private int patients;
+
+    private String[] identifiants;
+    private int suivant;
+
+    @Setup
+    public void setup() {
+        identifiants = new String[patients];
+        for (int i = 0; i < patients; i++) {
+            identifiants[i] = String.format("NOM-PRENOM-ETUDE-%04d", i + 1);
+        }
+    }
+
+    @Benchmark
+    public String hacherIdentifiant() {
+        suivant = (suivant + 1) % identifiants.length;
+        return ReponseFormulaireService.hashPatientIdentifier(identifiants[suivant]);
+    }
+}
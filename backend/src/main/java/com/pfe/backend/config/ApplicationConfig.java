@@ -1,9 +1,11 @@
 package com.pfe.backend.config;
 
 import com.pfe.backend.repository.UtilisateurRepository;
+import com.pfe.backend.service.UserDetailsCache;
 import lombok.RequiredArgsConstructor;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
 import org.springframework.security.authentication.AuthenticationManager;
 import org.springframework.security.config.annotation.authentication.configuration.AuthenticationConfiguration;
 import org.springframework.security.core.userdetails.UserDetailsService;
@@ -12,21 +14,25 @@ import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.security.crypto.password.PasswordEncoder;
 
 @Configuration
+@EnableScheduling
 @RequiredArgsConstructor
 @SuppressWarnings("unused")
 public class ApplicationConfig {
 
     private final UtilisateurRepository utilisateurRepository;
+    private final UserDetailsCache userDetailsCache;
 
+    // Résolu à chaque requête authentifiée par le filtre JWT : servi depuis le cache tant qu'il est valide
     @Bean
     public UserDetailsService userDetailsService() {
-        return username -> utilisateurRepository.findByEmail(username)
-                .map(user -> new org.springframework.security.core.userdetails.User(
+        return username -> userDetailsCache.obtenir(username, email -> utilisateurRepository.findByEmail(email)
+                .map(user -> new UtilisateurConnecte(
+                        user.getId(),
                         user.getEmail(),
                         user.getMotDePasse(),
                         java.util.Collections.singletonList(new org.springframework.security.core.authority.SimpleGrantedAuthority(user.getRole().getNom()))
                 ))
-                .orElseThrow(() -> new UsernameNotFoundException("Utilisateur non trouvé"));
+                .orElseThrow(() -> new UsernameNotFoundException("Utilisateur non trouvé")));
     }
 
 
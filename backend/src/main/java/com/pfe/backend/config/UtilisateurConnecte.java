@@ -0,0 +1,43 @@
+package com.pfe.backend.config;
+
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.userdetails.User;
+
+import java.util.Collection;
+
+/**
+ * Utilisateur authentifié, porteur de son identifiant en base : les traitements qui ont besoin
+ * de l'id (journal d'activité...) le lisent dans le contexte de sécurité sans relire l'utilisateur.
+ */
+public class UtilisateurConnecte extends User {
+
+    private final Long id;
+
+    public UtilisateurConnecte(Long id, String email, String motDePasse,
+                               Collection<? extends GrantedAuthority> authorities) {
+        super(email, motDePasse, authorities);
+        this.id = id;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    /**
+     * Copie indépendante (le mot de passe d'une copie peut être effacé sans toucher à l'original).
+     */
+    public UtilisateurConnecte copie() {
+        return new UtilisateurConnecte(id, getUsername(), getPassword(), getAuthorities());
+    }
+
+    // equals/hashCode de User (sur l'email) conviennent : l'id ne change pas pour un email donné
+    @Override
+    public boolean equals(Object o) {
+        return super.equals(o);
+    }
+
+    @Override
+    public int hashCode() {
+        return super.hashCode();
+    }
+}
@@ -0,0 +1,103 @@
+package com.pfe.backend.config.crypto;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.Base64;
+
+/**
+ * Moteur AES-256-GCM réutilisable pour le chiffrement des colonnes sensibles.
+ * Un Cipher par thread (réinitialisé avec un IV neuf à chaque opération) et un SecureRandom partagé
+ * évitent de refaire Cipher.getInstance et l'amorçage du générateur à chaque valeur.
+ * Format produit : Base64(IV 12 octets || données chiffrées + tag 128 bits).
+ */
+@Component
+public class AesGcmCryptoEngine {
+
+    private static final String ALGORITHM = "AES";
+    private static final String TRANSFORMATION = "AES/GCM/NoPadding";
+    private static final int GCM_IV_LENGTH = 12; // 96 bits recommandé pour GCM
+    private static final int GCM_TAG_LENGTH = 128; // 128 bits pour l'authentification
+
+    private static final SecureRandom SECURE_RANDOM = new SecureRandom();
+    private static final ThreadLocal<Cipher> CIPHERS = ThreadLocal.withInitial(AesGcmCryptoEngine::nouveauCipher);
+
+    private final SecretKeySpec keySpec;
+
+    public AesGcmCryptoEngine(@Value("${app.encryption.key}") String secretKey) {
+        // Vérifier que la clé fait 32 bytes (256 bits) pour AES-256
+        byte[] keyBytes = secretKey.getBytes(StandardCharsets.UTF_8);
+        if (keyBytes.length != 32) {
+            throw new IllegalStateException(
+                "La clé de chiffrement doit faire exactement 32 caractères (256 bits). " +
+                "Longueur actuelle: " + keyBytes.length
+            );
+        }
+        this.keySpec = new SecretKeySpec(keyBytes, ALGORITHM);
+    }
+
+    /**
+     * Chiffre une chaîne et retourne IV + données chiffrées encodés en Base64.
+     */
+    public String chiffrer(String valeur) {
+        return Base64.getEncoder().encodeToString(chiffrer(valeur.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * Déchiffre une valeur Base64 produite par {@link #chiffrer(String)}.
+     */
+    public String dechiffrer(String valeurChiffree) {
+        byte[] donnees = Base64.getDecoder().decode(valeurChiffree);
+        return new String(dechiffrer(donnees, 0, donnees.length), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Chiffre des octets ; l'IV et le texte chiffré sont écrits directement dans le tableau résultat.
+     */
+    public byte[] chiffrer(byte[] clair) {
+        try {
+            byte[] iv = new byte[GCM_IV_LENGTH];
+            SECURE_RANDOM.nextBytes(iv);
+
+            Cipher cipher = CIPHERS.get();
+            cipher.init(Cipher.ENCRYPT_MODE, keySpec, new GCMParameterSpec(GCM_TAG_LENGTH, iv));
+
+            byte[] resultat = new byte[GCM_IV_LENGTH + cipher.getOutputSize(clair.length)];
+            System.arraycopy(iv, 0, resultat, 0, GCM_IV_LENGTH);
+            cipher.doFinal(clair, 0, clair.length, resultat, GCM_IV_LENGTH);
+            return resultat;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Impossible de chiffrer l'attribut: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Déchiffre IV + données chiffrées lus directement dans le tampon fourni, sans copie intermédiaire.
+     */
+    public byte[] dechiffrer(byte[] donnees, int offset, int longueur) {
+        if (longueur <= GCM_IV_LENGTH) {
+            throw new IllegalStateException("Impossible de déchiffrer la donnée de la base: donnée tronquée");
+        }
+        try {
+            Cipher cipher = CIPHERS.get();
+            cipher.init(Cipher.DECRYPT_MODE, keySpec, new GCMParameterSpec(GCM_TAG_LENGTH, donnees, offset, GCM_IV_LENGTH));
+            return cipher.doFinal(donnees, offset + GCM_IV_LENGTH, longueur - GCM_IV_LENGTH);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Impossible de déchiffrer la donnée de la base: " + e.getMessage(), e);
+        }
+    }
+
+    private static Cipher nouveauCipher() {
+        try {
+            return Cipher.getInstance(TRANSFORMATION);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Transformation " + TRANSFORMATION + " indisponible", e);
+        }
+    }
+}
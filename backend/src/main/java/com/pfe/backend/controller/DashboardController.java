@@ -1,7 +1,9 @@
 package com.pfe.backend.controller;
 
+import com.pfe.backend.dto.ActiviteResponse;
 import com.pfe.backend.model.Activite;
 import com.pfe.backend.repository.ActiviteRepository;
+import com.pfe.backend.service.ActiviteService;
 import lombok.RequiredArgsConstructor;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
@@ -22,6 +24,7 @@ import java.util.List;
 public class DashboardController {
 
     private final ActiviteRepository activiteRepository;
+    private final ActiviteService activiteService;
 
     /**
      * Récupère les activités récentes pour l'utilisateur connecté.
@@ -40,6 +43,7 @@ public class DashboardController {
 
     /**
      * Récupère l'historique complet des activités de l'utilisateur.
+     * Non borné : préférer {@link #getActivityFeed} pour parcourir un long historique.
      *
      * @param principal utilisateur connecté
      * @return liste de toutes les activités
@@ -49,4 +53,26 @@ public class DashboardController {
         List<Activite> activities = activiteRepository.findByUserEmailOrderByDateDesc(principal.getName());
         return ResponseEntity.ok(activities);
     }
-}
\ No newline at end of file
+
+    /**
+     * Fil d'activité de l'utilisateur connecté, paginé par clé.
+     * Le curseur de la page suivante est renvoyé dans l'en-tête X-Next-Cursor quand la page est pleine.
+     *
+     * @param principal utilisateur connecté
+     * @param before curseur "dateCreation,id" de la dernière activité reçue, absent pour la première page
+     * @param limit nombre d'activités par page (par défaut 20)
+     * @return activités de la page, de la plus récente à la plus ancienne
+     */
+    @GetMapping("/activity/feed")
+    public ResponseEntity<List<ActiviteResponse>> getActivityFeed(
+            Principal principal,
+            @RequestParam(required = false) String before,
+            @RequestParam(defaultValue = "20") int limit) {
+        List<ActiviteResponse> activites = activiteService.getFilActivite(principal.getName(), before, limit);
+        ResponseEntity.BodyBuilder reponse = ResponseEntity.ok();
+        if (activites.size() == limit) {
+            reponse.header("X-Next-Cursor", ActiviteService.curseur(activites.get(activites.size() - 1)));
+        }
+        return reponse.body(activites);
+    }
+}
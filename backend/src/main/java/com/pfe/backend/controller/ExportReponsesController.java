@@ -1,8 +1,13 @@
 package com.pfe.backend.controller;
 
+import com.pfe.backend.dto.ExportJobResponse;
+import com.pfe.backend.model.CompressionExport;
+import com.pfe.backend.model.ExportJob;
+import com.pfe.backend.service.ExportJobService;
 import com.pfe.backend.service.ExportReponsesService;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import lombok.RequiredArgsConstructor;
-import org.springframework.core.io.ByteArrayResource;
 import org.springframework.http.ContentDisposition;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
@@ -11,9 +16,18 @@ import org.springframework.security.access.prepost.PreAuthorize;
 
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.security.Principal;
 
 /**
@@ -24,34 +38,182 @@ import java.security.Principal;
 @RequiredArgsConstructor
 public class ExportReponsesController {
 
+    // Attributs de requête Tomcat pour l'envoi du fichier par sendfile (zéro copie côté JVM)
+    private static final String SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+    private static final int TAILLE_TAMPON = 64 * 1024;
+
     private final ExportReponsesService exportReponsesService;
+    private final ExportJobService exportJobService;
 
     /**
      * Exporte en CSV les réponses d'un formulaire.
      *
      * @param formulaireId identifiant du formulaire
+     * @param compression "gzip" pour recevoir le fichier compressé (optionnel)
      * @param principal utilisateur connecté
      * @return fichier CSV en pièce jointe
      */
     @GetMapping("/formulaires/{formulaireId}/csv")
     @PreAuthorize("hasAuthority('chercheur')")
-    public ResponseEntity<ByteArrayResource> exporterReponsesCsv(
+    public ResponseEntity<StreamingResponseBody> exporterReponsesCsv(
             @PathVariable Long formulaireId,
+            @RequestParam(required = false) String compression,
             Principal principal) {
 
-        ByteArrayResource resource =
+        CompressionExport mode = CompressionExport.depuis(compression);
+        StreamingResponseBody csv =
                 exportReponsesService.exporterReponsesCsv(formulaireId, principal.getName());
 
         HttpHeaders headers = new HttpHeaders();
-        headers.setContentDisposition(
-                ContentDisposition.attachment()
-                        .filename("formulaire_" + formulaireId + "_reponses.csv")
-                        .build()
-        );
+        headers.setContentDisposition(nomFichier(formulaireId, mode));
 
         return ResponseEntity.ok()
                 .headers(headers)
-                .contentType(MediaType.parseMediaType("text/csv"))
-                .body(resource);
+                .contentType(MediaType.parseMediaType(mode.getContentType()))
+                .body(mode == CompressionExport.AUCUNE ? csv : out -> mode.ecrire(out, csv::writeTo));
+    }
+
+    /**
+     * Lance l'export CSV d'un formulaire en arrière-plan.
+     *
+     * @param formulaireId identifiant du formulaire
+     * @param compression "gzip" pour produire un fichier compressé (optionnel)
+     * @param principal utilisateur connecté
+     * @return tâche créée (202), à suivre via son URL
+     */
+    @PostMapping("/formulaires/{formulaireId}/jobs")
+    @PreAuthorize("hasAuthority('chercheur')")
+    public ResponseEntity<ExportJobResponse> lancerExport(
+            @PathVariable Long formulaireId,
+            @RequestParam(required = false) String compression,
+            Principal principal) {
+        ExportJob job = exportJobService.soumettre(formulaireId, principal.getName(),
+                CompressionExport.depuis(compression));
+        return ResponseEntity.accepted()
+                .location(URI.create("/api/export/jobs/" + job.getId()))
+                .body(ExportJobResponse.depuis(job));
+    }
+
+    /**
+     * Progression d'un export en arrière-plan (patients écrits / patients à exporter).
+     */
+    @GetMapping("/jobs/{jobId}")
+    @PreAuthorize("hasAuthority('chercheur')")
+    public ResponseEntity<ExportJobResponse> getExport(@PathVariable String jobId, Principal principal) {
+        return ResponseEntity.ok(ExportJobResponse.depuis(exportJobService.getJob(jobId, principal.getName())));
+    }
+
+    /**
+     * Télécharge le fichier d'un export terminé. Gère l'en-tête Range (un seul intervalle)
+     * pour reprendre un téléchargement interrompu sans régénérer l'export.
+     */
+    @GetMapping("/jobs/{jobId}/fichier")
+    @PreAuthorize("hasAuthority('chercheur')")
+    public void telechargerExport(@PathVariable String jobId, Principal principal,
+                                  HttpServletRequest request, HttpServletResponse response) throws IOException {
+        ExportJob job = exportJobService.getJobTermine(jobId, principal.getName());
+        Path fichier = job.getFichier();
+        long taille = Files.size(fichier);
+        String etag = "\"" + job.getId() + "-" + taille + "\"";
+
+        response.setContentType(job.getCompression().getContentType());
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION,
+                nomFichier(job.getFormulaireId(), job.getCompression()).toString());
+        response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+        response.setHeader(HttpHeaders.ETAG, etag);
+
+        long debut = 0;
+        long fin = taille - 1;
+        String range = request.getHeader(HttpHeaders.RANGE);
+        String ifRange = request.getHeader(HttpHeaders.IF_RANGE);
+        long[] intervalle = range != null && (ifRange == null || ifRange.equals(etag))
+                ? parserRange(range, taille)
+                : null;
+        if (intervalle != null) {
+            if (intervalle.length == 0) {
+                response.setStatus(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+                response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + taille);
+                return;
+            }
+            debut = intervalle[0];
+            fin = intervalle[1];
+            response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+            response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes " + debut + "-" + fin + "/" + taille);
+        }
+
+        long longueur = fin - debut + 1;
+        response.setContentLengthLong(longueur);
+        if (longueur <= 0) {
+            return;
+        }
+
+        if (Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT))) {
+            request.setAttribute(SENDFILE_FILENAME, fichier.toAbsolutePath().toString());
+            request.setAttribute(SENDFILE_START, debut);
+            request.setAttribute(SENDFILE_END, fin + 1);
+            return;
+        }
+
+        // Sans sendfile (connecteur ou TLS qui ne le permet pas) : copie par tampon dans la réponse
+        try (InputStream in = Files.newInputStream(fichier)) {
+            in.skipNBytes(debut);
+            OutputStream out = response.getOutputStream();
+            byte[] tampon = new byte[TAILLE_TAMPON];
+            long restant = longueur;
+            while (restant > 0) {
+                int lus = in.read(tampon, 0, (int) Math.min(tampon.length, restant));
+                if (lus < 0) {
+                    break;
+                }
+                out.write(tampon, 0, lus);
+                restant -= lus;
+            }
+        }
+    }
+
+    private ContentDisposition nomFichier(Long formulaireId, CompressionExport compression) {
+        return ContentDisposition.attachment()
+                .filename("formulaire_" + formulaireId + "_reponses.csv" + compression.getExtension())
+                .build();
+    }
+
+    /**
+     * Interprète un en-tête Range à un seul intervalle (bytes=a-b, bytes=a-, bytes=-n).
+     *
+     * @return [début, fin] inclus ; tableau vide si l'intervalle est hors du fichier ;
+     *         null si l'en-tête est ignoré (syntaxe invalide ou intervalles multiples)
+     */
+    static long[] parserRange(String range, long taille) {
+        if (!range.startsWith("bytes=") || range.indexOf(',') >= 0) {
+            return null;
+        }
+        String spec = range.substring("bytes=".length()).trim();
+        int tiret = spec.indexOf('-');
+        if (tiret < 0) {
+            return null;
+        }
+        try {
+            String debutTexte = spec.substring(0, tiret).trim();
+            String finTexte = spec.substring(tiret + 1).trim();
+            if (debutTexte.isEmpty()) {
+                // Suffixe : les n derniers octets
+                long suffixe = Long.parseLong(finTexte);
+                if (suffixe <= 0 || taille == 0) {
+                    return new long[0];
+                }
+                return new long[]{Math.max(0, taille - suffixe), taille - 1};
+            }
+            long debut = Long.parseLong(debutTexte);
+            long fin = finTexte.isEmpty() ? taille - 1 : Math.min(Long.parseLong(finTexte), taille - 1);
+            if (debut >= taille) {
+                return new long[0];
+            }
+            return debut <= fin ? new long[]{debut, fin} : null;
+        } catch (NumberFormatException e) {
+            return null;
+        }
     }
 }
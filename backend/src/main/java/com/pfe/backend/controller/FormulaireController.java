@@ -13,6 +13,9 @@ import com.pfe.backend.service.FormulaireMedecinService;
 import com.pfe.backend.service.FormulaireService;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
@@ -23,6 +26,7 @@ import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseStatus;
 import org.springframework.web.bind.annotation.RestController;
 
@@ -84,16 +88,26 @@ public class FormulaireController {
 
     @GetMapping("/recus")
     @PreAuthorize("hasAuthority('medecin')")
-    public ResponseEntity<List<FormulaireRecuResponse>> getFormulairesRecus(Principal principal) {
-        List<FormulaireMedecin> formulairesRecus = formulaireMedecinService.getFormulairesRecus(principal.getName());
+    public ResponseEntity<List<FormulaireRecuResponse>> getFormulairesRecus(
+            Principal principal,
+            @RequestParam(defaultValue = "0") int page,
+            @RequestParam(required = false) Integer size) {
+        // Sans taille, tous les formulaires sont renvoyés (compatibilité) ; le total est toujours en en-tête
+        Pageable pageable = size != null ? PageRequest.of(page, size) : Pageable.unpaged();
+        Page<FormulaireMedecin> formulairesRecus = formulaireMedecinService.getFormulairesRecus(principal.getName(), pageable);
+        // Brouillons de toute la page comptés en une requête
+        Map<Long, Integer> nombresBrouillons = reponseFormulaireService.countDrafts(
+                formulairesRecus.stream().map(FormulaireMedecin::getId).toList());
         List<FormulaireRecuResponse> response = formulairesRecus.stream()
                 .map(fm -> {
                     FormulaireRecuResponse dto = FormulaireRecuResponse.fromEntity(fm);
-                    dto.setNombreBrouillons(reponseFormulaireService.countDrafts(fm.getId()));
+                    dto.setNombreBrouillons(nombresBrouillons.getOrDefault(fm.getId(), 0));
                     return dto;
                 })
                 .toList();
-        return ResponseEntity.ok(response);
+        return ResponseEntity.ok()
+                .header("X-Total-Count", String.valueOf(formulairesRecus.getTotalElements()))
+                .body(response);
     }
 
     @GetMapping("/recus/{id}")
@@ -1,13 +1,19 @@
 package com.pfe.backend.controller;
 
+import com.pfe.backend.config.UtilisateurConnecte;
+import com.pfe.backend.dto.ConversationPageResponse;
+import com.pfe.backend.dto.ConversationResumeDto;
 import com.pfe.backend.model.Message;
 import com.pfe.backend.model.Utilisateur;
 import com.pfe.backend.service.MessageService;
+import com.pfe.backend.service.NotificationsMessages;
 import com.pfe.backend.service.UtilisateurService;
 import lombok.RequiredArgsConstructor;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.AccessDeniedException;
+import org.springframework.security.core.Authentication;
 
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
@@ -18,6 +24,7 @@ import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import java.util.List;
 import java.util.Map;
@@ -33,6 +40,7 @@ public class MessageController {
 
     private final MessageService messageService;
     private final UtilisateurService utilisateurService;
+    private final NotificationsMessages notificationsMessages;
 
     // Constants for error messages
     private static final String ERROR_KEY = "error";
@@ -118,6 +126,38 @@ public class MessageController {
         List<Message> conversation = messageService.getConversation(chercheurId, medecinId);
         return ResponseEntity.ok(conversation);
     }
+    /**
+     * Récupère une page de la conversation entre un chercheur et un médecin, en remontant depuis le
+     * message le plus récent. Les participants sont décrits une fois par page.
+     *
+     * @param chercheurId identifiant du chercheur
+     * @param medecinId identifiant du médecin
+     * @param avant curseur "dateEnvoi,id" renvoyé avec la page précédente, absent pour les messages les plus récents
+     * @param taille nombre de messages par page (par défaut 50)
+     * @return participants, messages dans l'ordre chronologique et curseur des messages plus anciens
+     */
+    @GetMapping("/conversation/{chercheurId}/{medecinId}/pages")
+    public ResponseEntity<ConversationPageResponse> getConversationPage(
+            @PathVariable Long chercheurId,
+            @PathVariable Long medecinId,
+            @RequestParam(required = false) String avant,
+            @RequestParam(defaultValue = "50") int taille
+    ) {
+        return ResponseEntity.ok(messageService.getConversationPage(chercheurId, medecinId, avant, taille));
+    }
+
+    /**
+     * Boîte de réception d'un utilisateur : une entrée par conversation (interlocuteur, dernier message,
+     * non lus), de la plus récemment active à la plus ancienne.
+     *
+     * @param utilisateurId identifiant de l'utilisateur
+     * @return conversations de l'utilisateur
+     */
+    @GetMapping("/conversations/{utilisateurId}")
+    public ResponseEntity<List<ConversationResumeDto>> getBoiteDeReception(@PathVariable Long utilisateurId) {
+        return ResponseEntity.ok(messageService.getBoiteDeReception(utilisateurId));
+    }
+
     /**
      * Marque comme lus les messages dont le destinataire est le chercheur.
      */
@@ -143,6 +183,22 @@ public class MessageController {
 
 
 
+    /**
+     * Flux des notifications de l'utilisateur connecté (Server-Sent Events) : événement "non-lus"
+     * (total et détail par émetteur) à l'ouverture et à chaque changement, événement "message"
+     * à chaque message reçu. Remplace l'interrogation périodique des compteurs.
+     *
+     * @param authentication utilisateur connecté
+     * @return flux d'événements, à rouvrir par le client quand il expire
+     */
+    @GetMapping(value = "/flux", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter getFlux(Authentication authentication) {
+        if (!(authentication.getPrincipal() instanceof UtilisateurConnecte utilisateur)) {
+            throw new AccessDeniedException("Utilisateur non authentifié");
+        }
+        return notificationsMessages.abonner(utilisateur.getId());
+    }
+
     /**
      * Compte le nombre total de messages non lus pour un chercheur donné.
      *
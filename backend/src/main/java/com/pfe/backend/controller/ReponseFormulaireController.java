@@ -1,19 +1,22 @@
 package com.pfe.backend.controller;
 
 import com.pfe.backend.dto.ReponseFormulaireRequest;
+import com.pfe.backend.model.CompressionExport;
 import com.pfe.backend.model.ReponseFormulaire;
+import com.pfe.backend.model.SoumissionPatient;
 import com.pfe.backend.service.ReponseFormulaireService;
 import com.pfe.backend.service.CsvExportService;
 import lombok.RequiredArgsConstructor;
-import org.springframework.core.io.InputStreamResource;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
-import java.io.ByteArrayInputStream;
-import java.nio.charset.StandardCharsets;
 import java.security.Principal;
 import java.util.List;
 import java.util.Map;
@@ -76,9 +79,28 @@ public class ReponseFormulaireController {
     }
     
     @GetMapping("/{formulaireMedecinId}/patients")
-    public ResponseEntity<List<String>> getPatientIdentifiers(@PathVariable Long formulaireMedecinId) {
-        List<String> patients = reponseFormulaireService.getPatientIdentifiers(formulaireMedecinId);
-        return ResponseEntity.ok(patients);
+    public ResponseEntity<List<String>> getPatientIdentifiers(
+            @PathVariable Long formulaireMedecinId,
+            @RequestParam(defaultValue = "identifiant") String tri,
+            @RequestParam(required = false) String apres,
+            @RequestParam(required = false) Integer taille) {
+        if ("identifiant".equalsIgnoreCase(tri)) {
+            if (apres != null || taille != null) {
+                throw new IllegalArgumentException("La pagination n'est disponible qu'avec tri=numero");
+            }
+            return ResponseEntity.ok(reponseFormulaireService.getPatientIdentifiers(formulaireMedecinId));
+        }
+        if (!"numero".equalsIgnoreCase(tri)) {
+            throw new IllegalArgumentException("Tri non supporté: " + tri);
+        }
+
+        // Tri par numéro d'inclusion, paginé par clé : le curseur de la page suivante est renvoyé en en-tête
+        List<SoumissionPatient> patients = reponseFormulaireService.getPatientsParNumero(formulaireMedecinId, apres, taille);
+        ResponseEntity.BodyBuilder reponse = ResponseEntity.ok();
+        if (taille != null && patients.size() == taille) {
+            reponse.header("X-Next-Cursor", ReponseFormulaireService.curseur(patients.get(patients.size() - 1)));
+        }
+        return reponse.body(patients.stream().map(SoumissionPatient::getPatientIdentifier).toList());
     }
     
 
@@ -123,9 +145,15 @@ public class ReponseFormulaireController {
     @GetMapping("/{formulaireMedecinId}/drafts")
     @PreAuthorize("hasAnyAuthority('medecin','chercheur')")
     public ResponseEntity<List<Map<String, Object>>> getAllDrafts(
-            @PathVariable Long formulaireMedecinId) {
-        List<Map<String, Object>> drafts = reponseFormulaireService.getAllDraftsForFormulaire(formulaireMedecinId);
-        return ResponseEntity.ok(drafts);
+            @PathVariable Long formulaireMedecinId,
+            @RequestParam(defaultValue = "0") int page,
+            @RequestParam(required = false) Integer size) {
+        // Sans taille, tous les brouillons sont renvoyés (compatibilité) ; le total est toujours en en-tête
+        Pageable pageable = size != null ? PageRequest.of(page, size) : Pageable.unpaged();
+        Page<Map<String, Object>> drafts = reponseFormulaireService.getAllDraftsForFormulaire(formulaireMedecinId, pageable);
+        return ResponseEntity.ok()
+                .header("X-Total-Count", String.valueOf(drafts.getTotalElements()))
+                .body(drafts.getContent());
     }
 
     @GetMapping("/{formulaireMedecinId}/draft/{patientIdentifier}")
@@ -146,12 +174,14 @@ public class ReponseFormulaireController {
      * Les données sont anonymisées et structurées par catégories.
      *
      * @param formulaireMedecinId identifiant de l'envoi
+     * @param compression "gzip" pour recevoir le fichier compressé (optionnel)
      * @return fichier CSV à télécharger
      */
     @GetMapping("/export/{formulaireMedecinId}")
-    public ResponseEntity<InputStreamResource> exportCSV(@PathVariable Long formulaireMedecinId) {
-        List<ReponseFormulaire> reponses = reponseFormulaireService.getReponses(formulaireMedecinId);
-        return buildCsvResponse(reponses, "formulaire_" + formulaireMedecinId + ".csv");
+    public ResponseEntity<StreamingResponseBody> exportCSV(@PathVariable Long formulaireMedecinId,
+                                                           @RequestParam(required = false) String compression) {
+        return buildCsvResponse(csvExportService.exporterFormulaireMedecin(formulaireMedecinId),
+                "formulaire_" + formulaireMedecinId + ".csv", CompressionExport.depuis(compression));
     }
 
     /**
@@ -159,35 +189,28 @@ public class ReponseFormulaireController {
      * Agrège les réponses de tous les FormulaireMedecin liés à ce formulaire.
      *
      * @param formulaireId identifiant du formulaire de base
+     * @param compression "gzip" pour recevoir le fichier compressé (optionnel)
      * @return fichier CSV à télécharger
      */
     @GetMapping("/export/formulaire/{formulaireId}")
-    public ResponseEntity<InputStreamResource> exportCSVByFormulaireId(@PathVariable Long formulaireId) {
-        List<ReponseFormulaire> reponses = reponseFormulaireService.getReponsesByFormulaireId(formulaireId);
-        return buildCsvResponse(reponses, "formulaire_" + formulaireId + "_all.csv");
+    public ResponseEntity<StreamingResponseBody> exportCSVByFormulaireId(@PathVariable Long formulaireId,
+                                                                         @RequestParam(required = false) String compression) {
+        return buildCsvResponse(csvExportService.exporterFormulaire(formulaireId),
+                "formulaire_" + formulaireId + "_all.csv", CompressionExport.depuis(compression));
     }
 
-    private ResponseEntity<InputStreamResource> buildCsvResponse(List<ReponseFormulaire> reponses, String filename) {
-        String csvContent = csvExportService.generateCsvContent(reponses);
-        byte[] csvBytes = addUtf8Bom(csvContent);
-        ByteArrayInputStream inputStream = new ByteArrayInputStream(csvBytes);
-
+    private ResponseEntity<StreamingResponseBody> buildCsvResponse(StreamingResponseBody csv, String filename,
+                                                                   CompressionExport compression) {
+        if (compression == CompressionExport.AUCUNE) {
+            return ResponseEntity.ok()
+                    .header("Content-Disposition", "attachment; filename=" + filename)
+                    .contentType(MediaType.parseMediaType("text/csv; charset=UTF-8"))
+                    .body(csv);
+        }
         return ResponseEntity.ok()
-                .header("Content-Disposition", "attachment; filename=" + filename)
-                .contentType(MediaType.parseMediaType("text/csv; charset=UTF-8"))
-                .body(new InputStreamResource(inputStream));
-    }
-
-    private byte[] addUtf8Bom(String content) {
-        byte[] bom = new byte[]{(byte) 0xEF, (byte) 0xBB, (byte) 0xBF};
-        byte[] data = content.getBytes(StandardCharsets.UTF_8);
-        byte[] result = new byte[bom.length + data.length];
-
-        System.arraycopy(bom, 0, result, 0, bom.length);
-        System.arraycopy(data, 0, result, bom.length, data.length);
-
-        return result;
+                .header("Content-Disposition", "attachment; filename=" + filename + compression.getExtension())
+                .contentType(MediaType.parseMediaType(compression.getContentType()))
+                .body(out -> compression.ecrire(out, csv::writeTo));
     }
 
 }
-
@@ -0,0 +1,16 @@
+package com.pfe.backend.dto;
+
+import java.time.LocalDateTime;
+
+/**
+ * Entrée du fil d'activité : colonnes de l'activité seules, sans l'utilisateur (toujours l'appelant).
+ */
+public record ActiviteResponse(
+    Long idActivite,
+    String action,
+    String ressourceType,
+    Long ressourceId,
+    String details,
+    LocalDateTime dateCreation
+) {
+}
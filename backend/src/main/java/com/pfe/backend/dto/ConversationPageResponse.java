@@ -0,0 +1,17 @@
+package com.pfe.backend.dto;
+
+import java.util.List;
+
+/**
+ * Page d'une conversation, messages dans l'ordre chronologique.
+ *
+ * @param participants les deux interlocuteurs
+ * @param messages messages de la page, du plus ancien au plus récent
+ * @param suivant curseur de la page précédente (messages plus anciens), null s'il n'y en a plus
+ */
+public record ConversationPageResponse(
+    List<UtilisateurDto> participants,
+    List<MessageConversationDto> messages,
+    String suivant
+) {
+}
@@ -0,0 +1,15 @@
+package com.pfe.backend.dto;
+
+import java.time.LocalDateTime;
+
+/**
+ * Entrée de la boîte de réception : l'interlocuteur, le dernier message échangé et les non lus
+ * de l'utilisateur dans cette conversation.
+ */
+public record ConversationResumeDto(
+    UtilisateurDto interlocuteur,
+    Long dernierMessageId,
+    LocalDateTime dateDernierMessage,
+    int nonLus
+) {
+}
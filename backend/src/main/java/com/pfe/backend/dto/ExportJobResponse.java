@@ -0,0 +1,34 @@
+package com.pfe.backend.dto;
+
+import com.pfe.backend.model.CompressionExport;
+import com.pfe.backend.model.ExportJob;
+import com.pfe.backend.model.StatutExportJob;
+
+import java.time.LocalDateTime;
+
+public record ExportJobResponse(
+    String id,
+    Long formulaireId,
+    CompressionExport compression,
+    StatutExportJob statut,
+    long lignesTraitees,
+    long lignesTotales,
+    LocalDateTime dateCreation,
+    LocalDateTime dateFin,
+    String erreur
+) {
+
+    public static ExportJobResponse depuis(ExportJob job) {
+        return new ExportJobResponse(
+                job.getId(),
+                job.getFormulaireId(),
+                job.getCompression(),
+                job.getStatut(),
+                job.getLignesTraitees().get(),
+                job.getLignesTotales(),
+                job.getDateCreation(),
+                job.getDateFin(),
+                job.getErreur()
+        );
+    }
+}
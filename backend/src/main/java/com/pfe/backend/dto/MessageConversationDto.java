@@ -0,0 +1,16 @@
+package com.pfe.backend.dto;
+
+import java.time.LocalDateTime;
+
+/**
+ * Message d'une page de conversation : l'émetteur n'est désigné que par son id,
+ * les participants étant décrits une fois pour toute la page.
+ */
+public record MessageConversationDto(
+    Long id,
+    Long emetteurId,
+    String contenu,
+    LocalDateTime dateEnvoi,
+    boolean lu
+) {
+}
@@ -0,0 +1,27 @@
+package com.pfe.backend.dto;
+
+import com.pfe.backend.model.ReponseFormulaire;
+
+import java.time.LocalDateTime;
+
+/**
+ * Réponse déchiffrée, réduite aux colonnes utiles aux exports (sans entité JPA ni associations).
+ */
+public record ReponseExportDto(
+    Long idChamp,
+    String patientIdentifierHash,
+    String patientIdentifier,
+    String valeur,
+    LocalDateTime dateSaisie
+) {
+
+    public static ReponseExportDto depuis(ReponseFormulaire reponse) {
+        return new ReponseExportDto(
+                reponse.getChamp() != null ? reponse.getChamp().getIdChamp() : null,
+                reponse.getPatientIdentifierHash(),
+                reponse.getPatientIdentifier(),
+                reponse.getValeur(),
+                reponse.getDateSaisie()
+        );
+    }
+}
@@ -5,6 +5,7 @@ import jakarta.persistence.Entity;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
+import jakarta.persistence.Index;
 import jakarta.persistence.JoinColumn;
 import jakarta.persistence.ManyToOne;
 import jakarta.persistence.PrePersist;
@@ -15,7 +16,10 @@ import lombok.Setter;
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "activite")
+// Index (utilisateur, date, id) : fil d'activité d'un utilisateur, du plus récent au plus ancien, paginé par clé
+@Table(name = "activite", indexes = {
+        @Index(name = "idx_activite_utilisateur_date", columnList = "id_utilisateur, date_creation DESC, id_activite DESC")
+})
 @Getter
 @Setter
 public class Activite {
@@ -0,0 +1,66 @@
+package com.pfe.backend.model;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Compression appliquée à un export CSV. Le compresseur enveloppe le flux de sortie :
+ * les lignes sont compressées au fur et à mesure de leur écriture, sans seconde passe.
+ */
+public enum CompressionExport {
+    AUCUNE("", "text/csv"),
+    GZIP(".gz", "application/gzip");
+
+    private static final int TAILLE_TAMPON = 64 * 1024;
+
+    private final String extension;
+    private final String contentType;
+
+    CompressionExport(String extension, String contentType) {
+        this.extension = extension;
+        this.contentType = contentType;
+    }
+
+    public String getExtension() {
+        return extension;
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+
+    /**
+     * Interprète le paramètre de requête {@code compression} (absent ou "aucune" : pas de compression).
+     *
+     * @throws IllegalArgumentException si l'algorithme demandé n'est pas pris en charge
+     */
+    public static CompressionExport depuis(String valeur) {
+        if (valeur == null || valeur.isBlank() || valeur.equalsIgnoreCase("aucune")) {
+            return AUCUNE;
+        }
+        if (valeur.equalsIgnoreCase("gzip")) {
+            return GZIP;
+        }
+        throw new IllegalArgumentException("Compression non supportée: " + valeur);
+    }
+
+    /**
+     * Écrit le contenu produit par {@code ecriture} dans {@code out}, compressé si besoin.
+     * Le flux {@code out} n'est pas fermé.
+     */
+    public void ecrire(OutputStream out, Ecriture ecriture) throws IOException {
+        if (this == AUCUNE) {
+            ecriture.ecrire(out);
+            return;
+        }
+        GZIPOutputStream gzip = new GZIPOutputStream(out, TAILLE_TAMPON);
+        ecriture.ecrire(gzip);
+        gzip.finish();
+    }
+
+    @FunctionalInterface
+    public interface Ecriture {
+        void ecrire(OutputStream out) throws IOException;
+    }
+}
@@ -0,0 +1,64 @@
+package com.pfe.backend.model;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
+import jakarta.persistence.UniqueConstraint;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.time.LocalDateTime;
+
+/**
+ * Résumé d'une conversation : une ligne par paire d'utilisateurs, tenue à jour avec les messages.
+ * La paire est rangée par id croissant (A < B) ; chaque côté a son propre compteur de non lus.
+ * Permet de lister les conversations d'un utilisateur sans relire ses messages.
+ */
+@Entity
+// Index (participant, date du dernier message) : boîte de réception triée par activité récente
+@Table(name = "conversation_resume", uniqueConstraints = {
+        @UniqueConstraint(name = "uk_conversation_participants", columnNames = {"utilisateur_a_id", "utilisateur_b_id"})
+}, indexes = {
+        @Index(name = "idx_conversation_a_date", columnList = "utilisateur_a_id, date_dernier_message"),
+        @Index(name = "idx_conversation_b_date", columnList = "utilisateur_b_id, date_dernier_message")
+})
+@Getter
+@Setter
+@NoArgsConstructor
+public class ConversationResume {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @Column(name = "id_conversation")
+    private Long id;
+
+    @Column(name = "utilisateur_a_id", nullable = false)
+    private Long utilisateurAId;
+
+    @Column(name = "utilisateur_b_id", nullable = false)
+    private Long utilisateurBId;
+
+    // Null tant que la ligne vient d'être créée et que le premier message n'est pas validé
+    @Column(name = "dernier_message_id")
+    private Long dernierMessageId;
+
+    @Column(name = "date_dernier_message")
+    private LocalDateTime dateDernierMessage;
+
+    // Messages reçus et non lus par A (envoyés par B), et inversement
+    @Column(name = "non_lus_a", nullable = false)
+    private int nonLusA;
+
+    @Column(name = "non_lus_b", nullable = false)
+    private int nonLusB;
+
+    public ConversationResume(Long utilisateurAId, Long utilisateurBId) {
+        this.utilisateurAId = utilisateurAId;
+        this.utilisateurBId = utilisateurBId;
+    }
+}
@@ -0,0 +1,45 @@
+package com.pfe.backend.model;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Export CSV exécuté en arrière-plan (non persisté : les tâches sont conservées en mémoire,
+ * le fichier produit dans le répertoire de spool).
+ */
+@Getter
+public class ExportJob {
+
+    private final String id = UUID.randomUUID().toString();
+    private final Long formulaireId;
+    private final String emailChercheur;
+    private final CompressionExport compression;
+    private final LocalDateTime dateCreation = LocalDateTime.now();
+    private final AtomicLong lignesTraitees = new AtomicLong();
+
+    @Setter
+    private volatile StatutExportJob statut = StatutExportJob.EN_ATTENTE;
+    @Setter
+    private volatile long lignesTotales;
+    @Setter
+    private volatile Path fichier;
+    @Setter
+    private volatile LocalDateTime dateFin;
+    @Setter
+    private volatile String erreur;
+
+    public ExportJob(Long formulaireId, String emailChercheur) {
+        this(formulaireId, emailChercheur, CompressionExport.AUCUNE);
+    }
+
+    public ExportJob(Long formulaireId, String emailChercheur, CompressionExport compression) {
+        this.formulaireId = formulaireId;
+        this.emailChercheur = emailChercheur;
+        this.compression = compression;
+    }
+}
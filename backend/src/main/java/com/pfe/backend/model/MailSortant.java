@@ -0,0 +1,86 @@
+package com.pfe.backend.model;
+
+import com.pfe.backend.config.converter.StringCryptoConverter;
+import jakarta.persistence.Column;
+import jakarta.persistence.Convert;
+import jakarta.persistence.Entity;
+import jakarta.persistence.EnumType;
+import jakarta.persistence.Enumerated;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.time.LocalDateTime;
+
+/**
+ * Email en attente d'envoi (outbox). Écrit dans la transaction de l'action qui le déclenche,
+ * puis envoyé en arrière-plan par {@code MailSortantDispatcher} ; supprimé une fois envoyé.
+ */
+@Getter
+@Setter
+@NoArgsConstructor
+@Entity
+@Table(name = "mail_sortant", indexes = {
+        @Index(name = "idx_mail_sortant_statut_essai", columnList = "statut, prochain_essai")
+})
+public class MailSortant {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @Column(name = "id_mail")
+    private Long id;
+
+    @Column(name = "destinataire", nullable = false)
+    private String destinataire;
+
+    @Column(name = "sujet", nullable = false)
+    private String sujet;
+
+    // Contient les codes OTP et de réinitialisation : chiffré comme les autres données sensibles
+    @Convert(converter = StringCryptoConverter.class)
+    @Column(name = "corps", nullable = false, columnDefinition = "TEXT")
+    private String corps;
+
+    // Alternative texte de la partie HTML
+    @Convert(converter = StringCryptoConverter.class)
+    @Column(name = "corps_texte", columnDefinition = "TEXT")
+    private String corpsTexte;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "statut", nullable = false, length = 20)
+    private StatutMail statut = StatutMail.EN_ATTENTE;
+
+    @Column(name = "tentatives", nullable = false)
+    private int tentatives = 0;
+
+    @Column(name = "prochain_essai", nullable = false)
+    private LocalDateTime prochainEssai;
+
+    @Column(name = "date_creation", nullable = false)
+    private LocalDateTime dateCreation;
+
+    @Column(name = "derniere_erreur", length = 500)
+    private String derniereErreur;
+
+    // Au-delà, le code transmis a expiré : l'email est supprimé au lieu d'être envoyé ou réessayé
+    @Column(name = "expire_a")
+    private LocalDateTime expireA;
+
+    public MailSortant(String destinataire, String sujet, String corps) {
+        this(destinataire, sujet, corps, null);
+    }
+
+    public MailSortant(String destinataire, String sujet, String corps, String corpsTexte) {
+        this.destinataire = destinataire;
+        this.sujet = sujet;
+        this.corps = corps;
+        this.corpsTexte = corpsTexte;
+        this.dateCreation = LocalDateTime.now();
+        this.prochainEssai = this.dateCreation;
+    }
+}
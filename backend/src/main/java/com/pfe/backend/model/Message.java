@@ -7,6 +7,7 @@ import jakarta.persistence.Entity;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
+import jakarta.persistence.Index;
 import jakarta.persistence.JoinColumn;
 import jakarta.persistence.ManyToOne;
 import jakarta.persistence.Table;
@@ -18,7 +19,10 @@ import java.time.LocalDateTime;
 
 @Getter
 @Entity
-@Table(name = "message")
+// Index (émetteur, destinataire, date, id) : pages d'une conversation, une direction à la fois, paginées par clé
+@Table(name = "message", indexes = {
+        @Index(name = "idx_message_conversation", columnList = "expediteur_id, destinataire_id, dateEnvoi, id_message")
+})
 public class Message {
 
     @Id
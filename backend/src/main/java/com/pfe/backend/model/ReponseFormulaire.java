@@ -8,9 +8,12 @@ import jakarta.persistence.Entity;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
+import jakarta.persistence.Index;
 import jakarta.persistence.JoinColumn;
 import jakarta.persistence.ManyToOne;
 import jakarta.persistence.PrePersist;
+import jakarta.persistence.PreUpdate;
+import jakarta.persistence.SequenceGenerator;
 import jakarta.persistence.Table;
 import lombok.Getter;
 import lombok.Setter;
@@ -18,13 +21,23 @@ import lombok.Setter;
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "reponse_formulaire")
+// Index (envoi, patient) : parcours des exports trié par patient et suppressions par patient
+// Index (envoi, numéro) : reconstruction des compteurs par MAX(numero_inclusion) sans déchiffrement
+// Index (envoi, brouillon, patient) : comptage des brouillons par envoi lu dans l'index seul
+@Table(name = "reponse_formulaire", indexes = {
+        @Index(name = "idx_reponse_fm_patient", columnList = "id_formulaire_medecin, patient_identifier_hash"),
+        @Index(name = "idx_reponse_fm_numero", columnList = "id_formulaire_medecin, numero_inclusion"),
+        @Index(name = "idx_reponse_fm_draft_patient", columnList = "id_formulaire_medecin, is_draft, patient_identifier_hash")
+})
 @Getter
 @Setter
 public class ReponseFormulaire {
 
+    // Séquence allouée par blocs : IDENTITY empêche Hibernate de regrouper les INSERT en batch JDBC.
+    // Sur une base existante, la séquence est alignée au démarrage (ReponseSequenceInitializer)
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "reponse_formulaire_seq")
+    @SequenceGenerator(name = "reponse_formulaire_seq", sequenceName = "reponse_formulaire_seq", allocationSize = 50)
     @Column(name = "id_reponse")
     private Long idReponse;
 
@@ -49,6 +62,11 @@ public class ReponseFormulaire {
     @Column(name = "patient_identifier_hash")
     private String patientIdentifierHash;
 
+    // Numéro final de l'identifiant patient, en clair : 0 si l'identifiant n'en porte pas,
+    // null pour les lignes antérieures pas encore reprises au démarrage
+    @Column(name = "numero_inclusion")
+    private Integer numeroInclusion;
+
     @Column(name = "date_saisie")
     private LocalDateTime dateSaisie;
 
@@ -56,6 +74,12 @@ public class ReponseFormulaire {
     protected void onCreate() {
         dateSaisie = LocalDateTime.now();
     }
+
+    // Une réponse modifiée par la sauvegarde différentielle est considérée comme ressaisie
+    @PreUpdate
+    protected void onUpdate() {
+        dateSaisie = LocalDateTime.now();
+    }
     
     @Column(name = "is_draft")
     private Boolean draft = false;
@@ -0,0 +1,81 @@
+package com.pfe.backend.model;
+
+import com.pfe.backend.config.converter.StringCryptoConverter;
+import jakarta.persistence.Column;
+import jakarta.persistence.Convert;
+import jakarta.persistence.Entity;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.PrePersist;
+import jakarta.persistence.Table;
+import jakarta.persistence.UniqueConstraint;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.time.LocalDateTime;
+
+/**
+ * En-tête d'une saisie patient : une ligne par (envoi, patient), tenue à jour avec les réponses.
+ * Permet de lister les patients d'un envoi en ne déchiffrant qu'un identifiant par patient.
+ */
+@Entity
+// Index (envoi, numéro, id) : liste des patients triée par numéro d'inclusion, paginée par clé
+@Table(name = "soumission_patient", uniqueConstraints = {
+        @UniqueConstraint(name = "uk_soumission_fm_patient", columnNames = {"id_formulaire_medecin", "patient_identifier_hash"})
+}, indexes = {
+        @Index(name = "idx_soumission_fm_numero", columnList = "id_formulaire_medecin, numero_inclusion, id_soumission")
+})
+@Getter
+@Setter
+@NoArgsConstructor
+public class SoumissionPatient {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @Column(name = "id_soumission")
+    private Long id;
+
+    @Column(name = "id_formulaire_medecin", nullable = false)
+    private Long formulaireMedecinId;
+
+    @Convert(converter = StringCryptoConverter.class)
+    @Column(name = "patient_identifier")
+    private String patientIdentifier;
+
+    @Column(name = "patient_identifier_hash", nullable = false)
+    private String patientIdentifierHash;
+
+    // Même valeur que ReponseFormulaire.numeroInclusion : 0 si l'identifiant n'en porte pas
+    @Column(name = "numero_inclusion", nullable = false)
+    private Integer numeroInclusion = 0;
+
+    @Column(name = "is_draft", nullable = false)
+    private Boolean draft = false;
+
+    @Column(name = "date_creation")
+    private LocalDateTime dateCreation;
+
+    @Column(name = "date_modification")
+    private LocalDateTime dateModification;
+
+    public SoumissionPatient(Long formulaireMedecinId, String patientIdentifier, String patientIdentifierHash,
+                             int numeroInclusion) {
+        this.formulaireMedecinId = formulaireMedecinId;
+        this.patientIdentifier = patientIdentifier;
+        this.patientIdentifierHash = patientIdentifierHash;
+        this.numeroInclusion = numeroInclusion;
+    }
+
+    @PrePersist
+    protected void onCreate() {
+        if (dateCreation == null) {
+            dateCreation = LocalDateTime.now();
+        }
+        if (dateModification == null) {
+            dateModification = dateCreation;
+        }
+    }
+}
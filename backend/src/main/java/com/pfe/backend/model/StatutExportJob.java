@@ -0,0 +1,8 @@
+package com.pfe.backend.model;
+
+public enum StatutExportJob {
+    EN_ATTENTE,
+    EN_COURS,
+    TERMINE,
+    ECHEC
+}
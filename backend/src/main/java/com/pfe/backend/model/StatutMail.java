@@ -0,0 +1,6 @@
+package com.pfe.backend.model;
+
+public enum StatutMail {
+    EN_ATTENTE,
+    ECHEC
+}
@@ -1,11 +1,14 @@
 package com.pfe.backend.repository;
 
+import com.pfe.backend.dto.ActiviteResponse;
 import com.pfe.backend.model.Activite;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
 import java.util.List;
 
 @Repository
@@ -16,4 +19,21 @@ public interface ActiviteRepository extends JpaRepository<Activite, Long> {
     
     @Query("SELECT a FROM Activite a WHERE a.utilisateur.email = :email ORDER BY a.dateCreation DESC LIMIT :limit")
     List<Activite> findRecentByUserEmail(@Param("email") String email, @Param("limit") int limit);
-}
\ No newline at end of file
+
+    // Fil d'activité paginé par clé (date, id) décroissante, projeté sans charger l'utilisateur
+    @Query("SELECT new com.pfe.backend.dto.ActiviteResponse(a.idActivite, a.action, a.ressourceType, a.ressourceId, a.details, a.dateCreation) " +
+           "FROM Activite a " +
+           "WHERE a.utilisateur.id = :utilisateurId " +
+           "ORDER BY a.dateCreation DESC, a.idActivite DESC")
+    List<ActiviteResponse> findFil(@Param("utilisateurId") Long utilisateurId, Pageable pageable);
+
+    @Query("SELECT new com.pfe.backend.dto.ActiviteResponse(a.idActivite, a.action, a.ressourceType, a.ressourceId, a.details, a.dateCreation) " +
+           "FROM Activite a " +
+           "WHERE a.utilisateur.id = :utilisateurId " +
+           "AND (a.dateCreation < :date OR (a.dateCreation = :date AND a.idActivite < :id)) " +
+           "ORDER BY a.dateCreation DESC, a.idActivite DESC")
+    List<ActiviteResponse> findFilAvant(@Param("utilisateurId") Long utilisateurId,
+                                        @Param("date") LocalDateTime date,
+                                        @Param("id") long id,
+                                        Pageable pageable);
+}
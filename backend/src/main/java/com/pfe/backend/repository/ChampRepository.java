@@ -2,8 +2,22 @@ package com.pfe.backend.repository;
 
 import com.pfe.backend.model.Champ;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.List;
+
 @Repository
 public interface ChampRepository extends JpaRepository<Champ, Long> {
+
+    // Champs d'un formulaire avec leurs options (libellés utilisés par l'export CSV)
+    @Query("""
+       SELECT DISTINCT c
+       FROM Champ c
+       LEFT JOIN FETCH c.listeValeur lv
+       LEFT JOIN FETCH lv.options
+       WHERE c.formulaire.idFormulaire = :formulaireId
+       """)
+    List<Champ> findAllWithOptionsByFormulaireId(@Param("formulaireId") Long formulaireId);
 }
@@ -0,0 +1,100 @@
+package com.pfe.backend.repository;
+
+import com.pfe.backend.model.ConversationResume;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface ConversationResumeRepository extends JpaRepository<ConversationResume, Long> {
+
+    Optional<ConversationResume> findByUtilisateurAIdAndUtilisateurBId(Long utilisateurAId, Long utilisateurBId);
+
+    // Conversations d'un utilisateur, de la plus récemment active à la plus ancienne
+    @Query("""
+    SELECT c FROM ConversationResume c
+    WHERE (c.utilisateurAId = :utilisateurId OR c.utilisateurBId = :utilisateurId)
+      AND c.dernierMessageId IS NOT NULL
+    ORDER BY c.dateDernierMessage DESC
+""")
+    List<ConversationResume> findBoiteDeReception(@Param("utilisateurId") Long utilisateurId);
+
+    // Mise à jour en place : deux envois simultanés dans la même conversation ne perdent aucun non lu.
+    // Le dernier message n'avance que vers un message plus récent (commits dans le désordre)
+    @Modifying
+    @Query("""
+    UPDATE ConversationResume c
+    SET c.dernierMessageId = CASE
+            WHEN c.dateDernierMessage IS NULL OR :dateEnvoi > c.dateDernierMessage
+              OR (:dateEnvoi = c.dateDernierMessage AND :messageId > c.dernierMessageId)
+            THEN :messageId ELSE c.dernierMessageId END,
+        c.dateDernierMessage = CASE
+            WHEN c.dateDernierMessage IS NULL OR :dateEnvoi > c.dateDernierMessage
+            THEN :dateEnvoi ELSE c.dateDernierMessage END,
+        c.nonLusA = c.nonLusA + :nonLusA,
+        c.nonLusB = c.nonLusB + :nonLusB
+    WHERE c.utilisateurAId = :utilisateurAId
+      AND c.utilisateurBId = :utilisateurBId
+""")
+    int enregistrerMessage(@Param("utilisateurAId") Long utilisateurAId,
+                           @Param("utilisateurBId") Long utilisateurBId,
+                           @Param("messageId") Long messageId,
+                           @Param("dateEnvoi") LocalDateTime dateEnvoi,
+                           @Param("nonLusA") int nonLusA,
+                           @Param("nonLusB") int nonLusB);
+
+    // Décompte des messages lus : un message arrivé entre le marquage et ce décompte reste compté
+    @Modifying
+    @Query("""
+    UPDATE ConversationResume c SET c.nonLusA = CASE WHEN c.nonLusA > :nombre THEN c.nonLusA - :nombre ELSE 0 END
+    WHERE c.utilisateurAId = :utilisateurAId AND c.utilisateurBId = :utilisateurBId
+""")
+    int marquerLusPourA(@Param("utilisateurAId") Long utilisateurAId,
+                        @Param("utilisateurBId") Long utilisateurBId,
+                        @Param("nombre") int nombre);
+
+    @Modifying
+    @Query("""
+    UPDATE ConversationResume c SET c.nonLusB = CASE WHEN c.nonLusB > :nombre THEN c.nonLusB - :nombre ELSE 0 END
+    WHERE c.utilisateurAId = :utilisateurAId AND c.utilisateurBId = :utilisateurBId
+""")
+    int marquerLusPourB(@Param("utilisateurAId") Long utilisateurAId,
+                        @Param("utilisateurBId") Long utilisateurBId,
+                        @Param("nombre") int nombre);
+
+    // Reprise : un résumé pour chaque paire ayant échangé des messages et qui n'en a pas encore.
+    // Le dernier message est la ligne de date (puis d'id) maximale de la paire, pas deux MAX indépendants
+    @Modifying
+    @Query(value = """
+       INSERT INTO conversation_resume
+           (utilisateur_a_id, utilisateur_b_id, dernier_message_id, date_dernier_message, non_lus_a, non_lus_b)
+       SELECT t.a, t.b, d.id_message, d.date_envoi, t.non_lus_a, t.non_lus_b
+       FROM (
+           SELECT LEAST(m.expediteur_id, m.destinataire_id) AS a,
+                  GREATEST(m.expediteur_id, m.destinataire_id) AS b,
+                  SUM(CASE WHEN m.lu = false AND m.destinataire_id = LEAST(m.expediteur_id, m.destinataire_id)
+                      THEN 1 ELSE 0 END) AS non_lus_a,
+                  SUM(CASE WHEN m.lu = false AND m.destinataire_id <> LEAST(m.expediteur_id, m.destinataire_id)
+                      THEN 1 ELSE 0 END) AS non_lus_b
+           FROM message m
+           GROUP BY LEAST(m.expediteur_id, m.destinataire_id), GREATEST(m.expediteur_id, m.destinataire_id)
+       ) t
+       JOIN message d ON d.id_message = (
+           SELECT m2.id_message FROM message m2
+           WHERE (m2.expediteur_id = t.a AND m2.destinataire_id = t.b)
+              OR (m2.expediteur_id = t.b AND m2.destinataire_id = t.a)
+           ORDER BY m2.date_envoi DESC, m2.id_message DESC
+           LIMIT 1
+       )
+       WHERE NOT EXISTS (
+           SELECT 1 FROM conversation_resume c WHERE c.utilisateur_a_id = t.a AND c.utilisateur_b_id = t.b
+       )
+       """, nativeQuery = true)
+    int reprendreConversationsManquantes();
+}
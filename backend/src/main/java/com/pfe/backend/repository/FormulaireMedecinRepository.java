@@ -1,10 +1,13 @@
 package com.pfe.backend.repository;
 
 import com.pfe.backend.model.FormulaireMedecin;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -21,6 +24,31 @@ public interface FormulaireMedecinRepository extends JpaRepository<FormulaireMed
             "ORDER BY fm.dateEnvoi DESC")
     List<FormulaireMedecin> findByMedecinEmail(@Param("emailMedecin") String emailMedecin);
 
+    //Page d'identifiants des formulaires reçus par un médecin : la pagination se fait en base,
+    //sans JOIN FETCH de collection (qui forcerait Hibernate à paginer en mémoire).
+    //Mêmes jointures internes que le chargement de la page : un envoi sans formulaire ou sans chercheur
+    //n'est ni compté ni paginé
+    @Query(value = "SELECT fm.id FROM FormulaireMedecin fm " +
+            "JOIN fm.formulaire f " +
+            "JOIN fm.chercheur c " +
+            "WHERE fm.medecin.email = :emailMedecin " +
+            "AND fm.masquePourMedecin = false " +
+            "ORDER BY fm.dateEnvoi DESC, fm.id DESC",
+            countQuery = "SELECT COUNT(fm) FROM FormulaireMedecin fm " +
+                    "JOIN fm.formulaire f " +
+                    "JOIN fm.chercheur c " +
+                    "WHERE fm.medecin.email = :emailMedecin " +
+                    "AND fm.masquePourMedecin = false")
+    Page<Long> findIdsByMedecinEmail(@Param("emailMedecin") String emailMedecin, Pageable pageable);
+
+    //Chargement complet d'une page de formulaires reçus (ordre non garanti)
+    @Query("SELECT DISTINCT fm FROM FormulaireMedecin fm " +
+            "JOIN FETCH fm.formulaire f " +
+            "LEFT JOIN FETCH f.champs " +
+            "JOIN FETCH fm.chercheur " +
+            "WHERE fm.id IN :ids")
+    List<FormulaireMedecin> findAllRecusByIdIn(@Param("ids") Collection<Long> ids);
+
     //Récupération des formulaires envoyés par un chercheur (non masqués pour lui)
     @Query("SELECT DISTINCT fm FROM FormulaireMedecin fm " +
             "JOIN FETCH fm.formulaire f " +
@@ -32,4 +60,8 @@ public interface FormulaireMedecinRepository extends JpaRepository<FormulaireMed
 
     Optional<FormulaireMedecin> findByFormulaireIdFormulaireAndMedecinEmail(Long formulaireId, String medecinEmail);
 
+    //Formulaire de base d'un envoi, sans charger l'envoi
+    @Query("SELECT fm.formulaire.idFormulaire FROM FormulaireMedecin fm WHERE fm.id = :id")
+    Optional<Long> findFormulaireIdById(@Param("id") Long id);
+
 }
@@ -6,6 +6,7 @@ import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
 
@@ -25,6 +26,10 @@ public interface FormulaireRepository extends JpaRepository<Formulaire, Long> {
            "WHERE f.idFormulaire = :id")
     Optional<Formulaire> findByIdWithChamps(@Param("id") Long id);
 
+    // Version du formulaire (date de modification, à défaut de création) pour invalider les caches
+    @Query("SELECT COALESCE(f.dateModification, f.dateCreation) FROM Formulaire f WHERE f.idFormulaire = :id")
+    Optional<LocalDateTime> findVersionById(@Param("id") Long id);
+
     @Query("SELECT COUNT(f) FROM Formulaire f WHERE f.chercheur.email = :email")
     long countByUserEmail(@Param("email") String email);
     
@@ -0,0 +1,36 @@
+package com.pfe.backend.repository;
+
+import com.pfe.backend.model.MailSortant;
+import com.pfe.backend.model.StatutMail;
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.QueryHint;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+public interface MailSortantRepository extends JpaRepository<MailSortant, Long> {
+
+    // Lot d'emails dus, verrouillés le temps de les réserver ; les lignes déjà verrouillées par une
+    // autre instance sont sautées (SKIP LOCKED) au lieu d'être envoyées deux fois
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @QueryHints(@QueryHint(name = "jakarta.persistence.lock.timeout", value = "-2"))
+    @Query("SELECT m FROM MailSortant m " +
+           "WHERE m.statut = com.pfe.backend.model.StatutMail.EN_ATTENTE AND m.prochainEssai <= :maintenant " +
+           "ORDER BY m.prochainEssai, m.id")
+    List<MailSortant> findAEnvoyer(@Param("maintenant") LocalDateTime maintenant, Pageable pageable);
+
+    // Emails dont le code a expiré : inutiles, ils ne sont ni envoyés ni réessayés
+    @Modifying
+    @Query("DELETE FROM MailSortant m " +
+           "WHERE m.statut = com.pfe.backend.model.StatutMail.EN_ATTENTE AND m.expireA <= :maintenant")
+    int deleteExpires(@Param("maintenant") LocalDateTime maintenant);
+
+    long countByStatut(StatutMail statut);
+}
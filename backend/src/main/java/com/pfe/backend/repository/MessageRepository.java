@@ -1,12 +1,16 @@
 package com.pfe.backend.repository;
 
+import com.pfe.backend.dto.MessageConversationDto;
 import com.pfe.backend.model.Message;
 import com.pfe.backend.model.Utilisateur;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
 import java.util.List;
 
 @Repository
@@ -41,4 +45,51 @@ public interface MessageRepository extends JpaRepository<Message, Long> {
 """)
     int countUnreadMessages(@Param("destinataireId") Long destinataireId, @Param("emetteurId") Long emetteurId);
 
+    // Non lus d'un destinataire par émetteur : [emetteurId, nombre], une ligne par conversation
+    @Query("""
+    SELECT m.emetteur.id, COUNT(m)
+    FROM Message m
+    WHERE m.destinataire.id = :destinataireId
+      AND m.lu = false
+    GROUP BY m.emetteur.id
+""")
+    List<Object[]> countNonLusParEmetteur(@Param("destinataireId") Long destinataireId);
+
+    // Marque lus en une requête les messages non lus d'une conversation, sans charger ni déchiffrer leur contenu
+    @Modifying
+    @Query("""
+    UPDATE Message m SET m.lu = true
+    WHERE m.destinataire.id = :destinataireId
+      AND m.emetteur.id = :emetteurId
+      AND m.lu = false
+""")
+    int marquerCommeLus(@Param("destinataireId") Long destinataireId, @Param("emetteurId") Long emetteurId);
+
+    // Derniers messages d'une direction de conversation (émetteur -> destinataire), du plus récent au plus ancien
+    @Query("""
+    SELECT new com.pfe.backend.dto.MessageConversationDto(m.id, m.emetteur.id, m.contenu, m.dateEnvoi, m.lu)
+    FROM Message m
+    WHERE m.emetteur.id = :emetteurId
+      AND m.destinataire.id = :destinataireId
+    ORDER BY m.dateEnvoi DESC, m.id DESC
+""")
+    List<MessageConversationDto> findDerniersMessages(@Param("emetteurId") Long emetteurId,
+                                                      @Param("destinataireId") Long destinataireId,
+                                                      Pageable pageable);
+
+    // Même lecture, à partir du curseur (date, id) du plus ancien message de la page précédente
+    @Query("""
+    SELECT new com.pfe.backend.dto.MessageConversationDto(m.id, m.emetteur.id, m.contenu, m.dateEnvoi, m.lu)
+    FROM Message m
+    WHERE m.emetteur.id = :emetteurId
+      AND m.destinataire.id = :destinataireId
+      AND (m.dateEnvoi < :date OR (m.dateEnvoi = :date AND m.id < :id))
+    ORDER BY m.dateEnvoi DESC, m.id DESC
+""")
+    List<MessageConversationDto> findMessagesAvant(@Param("emetteurId") Long emetteurId,
+                                                   @Param("destinataireId") Long destinataireId,
+                                                   @Param("date") LocalDateTime date,
+                                                   @Param("id") long id,
+                                                   Pageable pageable);
+
 }
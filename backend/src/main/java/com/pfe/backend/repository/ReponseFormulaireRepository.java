@@ -1,12 +1,19 @@
 package com.pfe.backend.repository;
 
 import com.pfe.backend.model.ReponseFormulaire;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.stream.Stream;
 
 public interface ReponseFormulaireRepository extends JpaRepository<ReponseFormulaire, Long> {
     
@@ -27,14 +34,35 @@ public interface ReponseFormulaireRepository extends JpaRepository<ReponseFormul
     // La méthode findDistinctPatientIdentifiersByFormulaireMedecinId a été supprimée
     // car une requête DISTINCT n'est pas possible sur une colonne chiffrée.
     
+    // Suppressions en une seule instruction (une dérivée deleteBy... charge puis supprime chaque entité)
     @Modifying
-    void deleteByFormulaireMedecinId(Long formulaireMedecinId);
+    @Query("DELETE FROM ReponseFormulaire r WHERE r.formulaireMedecin.id = :formulaireMedecinId")
+    void deleteByFormulaireMedecinId(@Param("formulaireMedecinId") Long formulaireMedecinId);
     
     // Méthode pour supprimer par hash
     @Modifying
+    @Query("DELETE FROM ReponseFormulaire r " +
+           "WHERE r.formulaireMedecin.id = :formulaireMedecinId AND r.patientIdentifierHash = :patientIdentifierHash")
     void deleteByFormulaireMedecinIdAndPatientIdentifierHash(
-            Long formulaireMedecinId,
-            String patientIdentifierHash
+            @Param("formulaireMedecinId") Long formulaireMedecinId,
+            @Param("patientIdentifierHash") String patientIdentifierHash
+    );
+
+    @Modifying
+    @Query("DELETE FROM ReponseFormulaire r WHERE r.idReponse IN :ids")
+    int deleteByIdReponseIn(@Param("ids") List<Long> ids);
+
+    // Réponses existantes d'un patient, avec leur champ, pour la sauvegarde différentielle
+    @Query("""
+       SELECT r
+       FROM ReponseFormulaire r
+       LEFT JOIN FETCH r.champ
+       WHERE r.formulaireMedecin.id = :formulaireMedecinId
+       AND r.patientIdentifierHash = :patientIdentifierHash
+       """)
+    List<ReponseFormulaire> findByFormulaireMedecinIdAndPatientIdentifierHashWithChamp(
+            @Param("formulaireMedecinId") Long formulaireMedecinId,
+            @Param("patientIdentifierHash") String patientIdentifierHash
     );
 
     @Query("""
@@ -61,6 +89,11 @@ public interface ReponseFormulaireRepository extends JpaRepository<ReponseFormul
            "WHERE r.formulaireMedecin.id = :formulaireMedecinId")
     long countDistinctPatients(@Param("formulaireMedecinId") Long formulaireMedecinId);
 
+    // Nombre de patients d'un formulaire, tous envois et brouillons compris (progression des exports)
+    @Query("SELECT COUNT(DISTINCT r.patientIdentifierHash) FROM ReponseFormulaire r " +
+           "WHERE r.formulaireMedecin.formulaire.id = :formulaireId")
+    long countDistinctPatientsByFormulaireId(@Param("formulaireId") Long formulaireId);
+
     // Récupérer les hashes de patients distincts
     @Query("SELECT DISTINCT r.patientIdentifierHash FROM ReponseFormulaire r " +
            "WHERE r.formulaireMedecin.id = :formulaireMedecinId")
@@ -71,9 +104,67 @@ public interface ReponseFormulaireRepository extends JpaRepository<ReponseFormul
            "WHERE r.formulaireMedecin.id = :formulaireMedecinId AND r.draft = true")
     List<String> findDistinctDraftPatientHashes(@Param("formulaireMedecinId") Long formulaireMedecinId);
 
-    // Nouveauté: récupérer les ids distincts de formulaire (utilisé pour init compteur)
-    @Query("SELECT DISTINCT r.formulaireMedecin.formulaire.id FROM ReponseFormulaire r")
-    List<Long> findDistinctFormulaireIds();
+    // Nombre de patients en brouillon d'un envoi, sans rapatrier les hashes
+    @Query("SELECT COUNT(DISTINCT r.patientIdentifierHash) FROM ReponseFormulaire r " +
+           "WHERE r.formulaireMedecin.id = :formulaireMedecinId AND r.draft = true")
+    long countDistinctDraftPatients(@Param("formulaireMedecinId") Long formulaireMedecinId);
+
+    // Même comptage pour plusieurs envois en une requête : [idFormulaireMedecin, nombre] (envois sans brouillon absents)
+    @Query("SELECT r.formulaireMedecin.id, COUNT(DISTINCT r.patientIdentifierHash) FROM ReponseFormulaire r " +
+           "WHERE r.formulaireMedecin.id IN :formulaireMedecinIds AND r.draft = true " +
+           "GROUP BY r.formulaireMedecin.id")
+    List<Object[]> countDistinctDraftPatientsParFormulaireMedecin(
+            @Param("formulaireMedecinIds") Collection<Long> formulaireMedecinIds);
+
+    // Résumé des brouillons, une ligne par patient : [hash, nombre de réponses, dernière saisie, id d'une réponse]
+    // Plus récents d'abord ; le hash départage les ex aequo pour une pagination stable
+    @Query(value = "SELECT r.patientIdentifierHash, COUNT(r), MAX(r.dateSaisie), MIN(r.idReponse) " +
+                   "FROM ReponseFormulaire r " +
+                   "WHERE r.formulaireMedecin.id = :formulaireMedecinId AND r.draft = true " +
+                   "GROUP BY r.patientIdentifierHash " +
+                   "ORDER BY MAX(r.dateSaisie) DESC, r.patientIdentifierHash",
+           countQuery = "SELECT COUNT(DISTINCT r.patientIdentifierHash) FROM ReponseFormulaire r " +
+                        "WHERE r.formulaireMedecin.id = :formulaireMedecinId AND r.draft = true")
+    Page<Object[]> findResumesBrouillons(@Param("formulaireMedecinId") Long formulaireMedecinId, Pageable pageable);
+
+    // Patients sans en-tête de saisie (données antérieures à soumission_patient), par lots :
+    // [idFormulaireMedecin, hash, id d'une réponse, brouillon (1/0), première saisie, dernière saisie]
+    @Query("SELECT r.formulaireMedecin.id, r.patientIdentifierHash, MIN(r.idReponse), " +
+           "MAX(CASE WHEN r.draft = true THEN 1 ELSE 0 END), MIN(r.dateSaisie), MAX(r.dateSaisie) " +
+           "FROM ReponseFormulaire r " +
+           "WHERE r.patientIdentifierHash IS NOT NULL AND NOT EXISTS (" +
+           "SELECT s.id FROM SoumissionPatient s WHERE s.formulaireMedecinId = r.formulaireMedecin.id " +
+           "AND s.patientIdentifierHash = r.patientIdentifierHash) " +
+           "GROUP BY r.formulaireMedecin.id, r.patientIdentifierHash " +
+           "ORDER BY MIN(r.idReponse)")
+    List<Object[]> findPatientsSansSoumission(Pageable pageable);
+
+    // Identifiants patients (déchiffrés) de quelques réponses : [idReponse, patientIdentifier]
+    @Query("SELECT r.idReponse, r.patientIdentifier FROM ReponseFormulaire r WHERE r.idReponse IN :ids")
+    List<Object[]> findPatientIdentifiersByIdReponseIn(@Param("ids") Collection<Long> ids);
+
+    // Plus grand numéro d'inclusion par formulaire, en une requête : [idFormulaire, max]
+    @Query("SELECT r.formulaireMedecin.formulaire.id, MAX(r.numeroInclusion) FROM ReponseFormulaire r " +
+           "GROUP BY r.formulaireMedecin.formulaire.id")
+    List<Object[]> findMaxNumeroInclusionParFormulaire();
+
+    @Query("SELECT MAX(r.numeroInclusion) FROM ReponseFormulaire r " +
+           "WHERE r.formulaireMedecin.formulaire.id = :formulaireId")
+    Integer findMaxNumeroInclusionByFormulaireId(@Param("formulaireId") Long formulaireId);
+
+    // Identifiants (déchiffrés) des lignes d'un formulaire dont le numéro n'a pas encore été repris
+    @Query("SELECT r.patientIdentifier FROM ReponseFormulaire r " +
+           "WHERE r.formulaireMedecin.formulaire.id = :formulaireId AND r.numeroInclusion IS NULL")
+    List<String> findPatientIdentifiersSansNumeroInclusion(@Param("formulaireId") Long formulaireId);
+
+    // Reprise des lignes antérieures à la colonne numero_inclusion, par lots : [idReponse, patientIdentifier]
+    @Query("SELECT r.idReponse, r.patientIdentifier FROM ReponseFormulaire r " +
+           "WHERE r.numeroInclusion IS NULL ORDER BY r.idReponse")
+    List<Object[]> findSansNumeroInclusion(Pageable pageable);
+
+    @Modifying
+    @Query("UPDATE ReponseFormulaire r SET r.numeroInclusion = :numero WHERE r.idReponse IN :ids")
+    int updateNumeroInclusion(@Param("numero") int numero, @Param("ids") List<Long> ids);
 
     // Nouveau: récupérer toutes les réponses par formulaireId (pour export agrégé)
     @Query("""
@@ -86,5 +177,51 @@ public interface ReponseFormulaireRepository extends JpaRepository<ReponseFormul
        AND (r.draft = false OR r.draft IS NULL)
        """)
     List<ReponseFormulaire> findAllWithOptionsByFormulaireId(@Param("formulaireId") Long formulaireId);
-}
 
+    // Lecture brute pour les exports : les colonnes chiffrées sont renvoyées telles quelles
+    // (sans passer par StringCryptoConverter) afin d'être déchiffrées en parallèle.
+    // Colonnes : id_champ, patient_identifier_hash, patient_identifier, valeur, date_saisie.
+    // Curseur en lecture seule trié par patient, dans l'ordre d'inclusion (numéros absents en dernier, comme
+    // l'export en mémoire) : à consommer dans une transaction et à fermer.
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"))
+    @Query(value = """
+       SELECT r.id_champ, r.patient_identifier_hash, r.patient_identifier, r.valeur, r.date_saisie
+       FROM reponse_formulaire r
+       WHERE r.id_formulaire_medecin = :formulaireMedecinId
+       AND (r.is_draft = false OR r.is_draft IS NULL)
+       ORDER BY r.numero_inclusion NULLS LAST, r.patient_identifier_hash
+       """, nativeQuery = true)
+    Stream<Object[]> streamReponsesChiffreesSoumisesByFormulaireMedecinId(
+            @Param("formulaireMedecinId") Long formulaireMedecinId);
+
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"))
+    @Query(value = """
+       SELECT r.id_champ, r.patient_identifier_hash, r.patient_identifier, r.valeur, r.date_saisie
+       FROM reponse_formulaire r
+       JOIN formulaire_medecin fm ON fm.id = r.id_formulaire_medecin
+       WHERE fm.id_formulaire = :formulaireId
+       AND (r.is_draft = false OR r.is_draft IS NULL)
+       ORDER BY r.numero_inclusion NULLS LAST, r.patient_identifier_hash
+       """, nativeQuery = true)
+    Stream<Object[]> streamReponsesChiffreesSoumisesByFormulaireId(@Param("formulaireId") Long formulaireId);
+
+    // Brouillons inclus (export chercheur)
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"))
+    @Query(value = """
+       SELECT r.id_champ, r.patient_identifier_hash, r.patient_identifier, r.valeur, r.date_saisie
+       FROM reponse_formulaire r
+       JOIN formulaire_medecin fm ON fm.id = r.id_formulaire_medecin
+       WHERE fm.id_formulaire = :formulaireId
+       ORDER BY r.numero_inclusion NULLS LAST, r.patient_identifier_hash
+       """, nativeQuery = true)
+    Stream<Object[]> streamReponsesChiffreesByFormulaireId(@Param("formulaireId") Long formulaireId);
+
+    // Champs ayant au moins une réponse soumise (colonnes de l'export CSV)
+    @Query("SELECT DISTINCT r.champ.idChamp FROM ReponseFormulaire r " +
+           "WHERE r.formulaireMedecin.id = :formulaireMedecinId AND (r.draft = false OR r.draft IS NULL)")
+    List<Long> findDistinctChampIdsSoumisByFormulaireMedecinId(@Param("formulaireMedecinId") Long formulaireMedecinId);
+
+    @Query("SELECT DISTINCT r.champ.idChamp FROM ReponseFormulaire r " +
+           "WHERE r.formulaireMedecin.formulaire.id = :formulaireId AND (r.draft = false OR r.draft IS NULL)")
+    List<Long> findDistinctChampIdsSoumisByFormulaireId(@Param("formulaireId") Long formulaireId);
+}
@@ -0,0 +1,43 @@
+package com.pfe.backend.repository;
+
+import com.pfe.backend.model.SoumissionPatient;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.util.List;
+import java.util.Optional;
+
+public interface SoumissionPatientRepository extends JpaRepository<SoumissionPatient, Long> {
+
+    Optional<SoumissionPatient> findByFormulaireMedecinIdAndPatientIdentifierHash(Long formulaireMedecinId,
+                                                                                  String patientIdentifierHash);
+
+    // Identifiants (déchiffrés) des patients d'un envoi, un par patient
+    @Query("SELECT s.patientIdentifier FROM SoumissionPatient s WHERE s.formulaireMedecinId = :formulaireMedecinId")
+    List<String> findPatientIdentifiersByFormulaireMedecinId(@Param("formulaireMedecinId") Long formulaireMedecinId);
+
+    // Pagination par clé (numéro, id) : la page suivante part de la dernière ligne lue, sans OFFSET
+    @Query("SELECT s FROM SoumissionPatient s " +
+           "WHERE s.formulaireMedecinId = :formulaireMedecinId " +
+           "AND (s.numeroInclusion > :numero OR (s.numeroInclusion = :numero AND s.id > :id)) " +
+           "ORDER BY s.numeroInclusion, s.id")
+    List<SoumissionPatient> findPageParNumero(@Param("formulaireMedecinId") Long formulaireMedecinId,
+                                              @Param("numero") int numero,
+                                              @Param("id") long id,
+                                              Pageable pageable);
+
+    @Modifying
+    @Query("DELETE FROM SoumissionPatient s WHERE s.formulaireMedecinId = :formulaireMedecinId")
+    void deleteByFormulaireMedecinId(@Param("formulaireMedecinId") Long formulaireMedecinId);
+
+    @Modifying
+    @Query("DELETE FROM SoumissionPatient s " +
+           "WHERE s.formulaireMedecinId = :formulaireMedecinId AND s.patientIdentifierHash = :patientIdentifierHash")
+    void deleteByFormulaireMedecinIdAndPatientIdentifierHash(
+            @Param("formulaireMedecinId") Long formulaireMedecinId,
+            @Param("patientIdentifierHash") String patientIdentifierHash
+    );
+}
@@ -12,6 +12,9 @@ import java.util.Optional;
 @Repository
 public interface UtilisateurRepository extends JpaRepository<Utilisateur, Long> {
     Optional<Utilisateur> findByEmail(String email);
+
+    @Query("SELECT u.id FROM Utilisateur u WHERE u.email = :email")
+    Optional<Long> findIdByEmail(@Param("email") String email);
     
     @Query("SELECT u FROM Utilisateur u WHERE u.role.nom = :roleName")
     List<Utilisateur> findByRoleName(@Param("roleName") String roleName);
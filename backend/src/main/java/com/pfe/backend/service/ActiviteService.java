@@ -1,22 +1,38 @@
 package com.pfe.backend.service;
 
+import com.pfe.backend.config.UtilisateurConnecte;
+import com.pfe.backend.dto.ActiviteResponse;
+import com.pfe.backend.exception.ResourceNotFoundException;
 import com.pfe.backend.model.Activite;
 import com.pfe.backend.model.Utilisateur;
 import com.pfe.backend.repository.ActiviteRepository;
 import com.pfe.backend.repository.UtilisateurRepository;
+import com.pfe.backend.service.EcrivainActivites.EvenementActivite;
 import lombok.RequiredArgsConstructor;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.List;
 
 /**
  * Service de gestion de l'historique des activités.
  * Enregistre les actions des utilisateurs (création de formulaire, suppression, etc.) pour l'audit.
+ * Hors mode synchrone, l'écriture est confiée à {@link EcrivainActivites} après le commit de l'action.
  */
 @Service
 @RequiredArgsConstructor
 public class ActiviteService {
 
+    // Plafond d'une page du fil d'activité
+    static final int LIMITE_MAX_FIL = 100;
+
     private final ActiviteRepository activiteRepository;
     private final UtilisateurRepository utilisateurRepository;
+    private final EcrivainActivites ecrivainActivites;
 
     /**
      * Enregistre une nouvelle activité dans l'historique.
@@ -28,6 +44,54 @@ public class ActiviteService {
      * @param details détails supplémentaires optionnels
      */
     public void enregistrerActivite(String userEmail, String action, String ressourceType, Long ressourceId, String details) {
+        if (!ecrivainActivites.estAsynchrone()) {
+            enregistrerDansLaTransaction(userEmail, action, ressourceType, ressourceId, details);
+            return;
+        }
+        Long utilisateurId = resoudreUtilisateurId(userEmail);
+        if (utilisateurId == null) {
+            return;
+        }
+        EvenementActivite evenement = new EvenementActivite(
+                utilisateurId, action, ressourceType, ressourceId, details, LocalDateTime.now());
+        // Une action annulée (rollback) ne doit pas laisser de trace dans l'historique
+        ApresCommit.executer(() -> ecrivainActivites.soumettre(evenement));
+    }
+
+    /**
+     * Fil d'activité d'un utilisateur, du plus récent au plus ancien, paginé par clé.
+     *
+     * @param userEmail email de l'utilisateur connecté
+     * @param avant curseur renvoyé avec la page précédente ({@link #curseur(ActiviteResponse)}), null pour la première
+     * @param limite nombre d'activités par page (au plus {@value #LIMITE_MAX_FIL})
+     * @return activités de la page
+     */
+    @Transactional(readOnly = true)
+    public List<ActiviteResponse> getFilActivite(String userEmail, String avant, int limite) {
+        if (limite < 1 || limite > LIMITE_MAX_FIL) {
+            throw new IllegalArgumentException("La taille de page doit être comprise entre 1 et " + LIMITE_MAX_FIL + ": " + limite);
+        }
+        Long utilisateurId = resoudreUtilisateurId(userEmail);
+        if (utilisateurId == null) {
+            throw new ResourceNotFoundException("Utilisateur non trouvé");
+        }
+        PageRequest page = PageRequest.of(0, limite);
+        CurseurDate curseur = CurseurDate.lire(avant);
+        if (curseur == null) {
+            return activiteRepository.findFil(utilisateurId, page);
+        }
+        return activiteRepository.findFilAvant(utilisateurId, curseur.date(), curseur.id(), page);
+    }
+
+    /**
+     * Curseur désignant la position d'une activité dans le fil (date de création, id).
+     */
+    public static String curseur(ActiviteResponse activite) {
+        return CurseurDate.formater(activite.dateCreation(), activite.idActivite());
+    }
+
+    private void enregistrerDansLaTransaction(String userEmail, String action, String ressourceType,
+                                              Long ressourceId, String details) {
         Utilisateur utilisateur = utilisateurRepository.findByEmail(userEmail).orElse(null);
         if (utilisateur != null) {
             Activite activite = new Activite();
@@ -39,4 +103,15 @@ public class ActiviteService {
             activiteRepository.save(activite);
         }
     }
-}
\ No newline at end of file
+
+    // L'utilisateur courant est presque toujours l'auteur de l'action : son id est déjà dans le principal
+    private Long resoudreUtilisateurId(String userEmail) {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (authentication != null
+                && authentication.getPrincipal() instanceof UtilisateurConnecte connecte
+                && connecte.getUsername().equals(userEmail)) {
+            return connecte.getId();
+        }
+        return utilisateurRepository.findIdByEmail(userEmail).orElse(null);
+    }
+}
@@ -0,0 +1,27 @@
+package com.pfe.backend.service;
+
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Exécution différée au commit de la transaction courante : une action annulée (rollback) n'a pas d'effet.
+ * Hors transaction, l'action est exécutée immédiatement.
+ */
+public final class ApresCommit {
+
+    private ApresCommit() {
+    }
+
+    public static void executer(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package com.pfe.backend.service;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.function.Predicate;
+
+/**
+ * Éviction des caches en mémoire bornés (ConcurrentHashMap avec expiration par entrée).
+ */
+final class CacheBorne {
+
+    private CacheBorne() {
+    }
+
+    /**
+     * Fait de la place avant une insertion : purge des entrées expirées, puis éviction arbitraire
+     * si le cache reste plein.
+     */
+    static <K, V> void libererPlace(Map<K, V> entrees, int tailleMax, Predicate<V> expiree) {
+        if (entrees.size() < tailleMax) {
+            return;
+        }
+        entrees.values().removeIf(expiree);
+        Iterator<K> cles = entrees.keySet().iterator();
+        while (entrees.size() >= tailleMax && cles.hasNext()) {
+            cles.next();
+            cles.remove();
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package com.pfe.backend.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.stereotype.Component;
+
+/**
+ * Crée, une fois l'application prête, les résumés des conversations existantes qui n'en ont pas.
+ * Jusqu'à la fin de la reprise, ces conversations n'apparaissent pas dans la boîte de réception.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class ConversationResumeInitializer {
+
+    private final ConversationResumeService conversationResumeService;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void initialiser() {
+        long debut = System.currentTimeMillis();
+        try {
+            int crees = conversationResumeService.reprendre();
+            log.info("Résumés de conversation repris en {} ms ({} créés)", System.currentTimeMillis() - debut, crees);
+        } catch (DataAccessException e) {
+            // Envoi concurrent d'un premier message : la reprise se poursuivra au prochain démarrage
+            log.warn("Reprise des résumés de conversation interrompue", e);
+        }
+    }
+}
@@ -0,0 +1,172 @@
+package com.pfe.backend.service;
+
+import com.pfe.backend.dto.ConversationResumeDto;
+import com.pfe.backend.dto.MessageConversationDto;
+import com.pfe.backend.dto.UtilisateurDto;
+import com.pfe.backend.model.ConversationResume;
+import com.pfe.backend.model.Message;
+import com.pfe.backend.repository.ConversationResumeRepository;
+import com.pfe.backend.repository.MessageRepository;
+import com.pfe.backend.repository.UtilisateurRepository;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Résumés des conversations (table conversation_resume), tenus à jour dans la transaction de chaque
+ * envoi, lecture et suppression de message. La boîte de réception d'un utilisateur se lit alors en une
+ * requête indexée dont le coût dépend du nombre de ses conversations, pas du nombre de ses messages.
+ */
+@Service
+public class ConversationResumeService {
+
+    private static final Comparator<MessageConversationDto> DU_PLUS_RECENT = Comparator
+            .comparing(MessageConversationDto::dateEnvoi)
+            .thenComparing(MessageConversationDto::id);
+
+    private final ConversationResumeRepository conversationResumeRepository;
+    private final MessageRepository messageRepository;
+    private final UtilisateurRepository utilisateurRepository;
+    private final TransactionTemplate nouvelleTransaction;
+
+    public ConversationResumeService(ConversationResumeRepository conversationResumeRepository,
+                                     MessageRepository messageRepository,
+                                     UtilisateurRepository utilisateurRepository,
+                                     PlatformTransactionManager transactionManager) {
+        this.conversationResumeRepository = conversationResumeRepository;
+        this.messageRepository = messageRepository;
+        this.utilisateurRepository = utilisateurRepository;
+        this.nouvelleTransaction = new TransactionTemplate(transactionManager);
+        this.nouvelleTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    }
+
+    /**
+     * Reporte un nouveau message sur le résumé de sa conversation : dernier message et un non lu
+     * de plus pour le destinataire.
+     */
+    @Transactional
+    public void messageEnvoye(Message message) {
+        Long emetteurId = message.getEmetteur().getId();
+        Long destinataireId = message.getDestinataire().getId();
+        Long a = Math.min(emetteurId, destinataireId);
+        Long b = Math.max(emetteurId, destinataireId);
+        int nonLusA = destinataireId.equals(a) ? 1 : 0;
+        int nonLusB = 1 - nonLusA;
+        if (conversationResumeRepository.enregistrerMessage(a, b, message.getId(), message.getDateEnvoi(), nonLusA, nonLusB) > 0) {
+            return;
+        }
+        // Pas encore de résumé pour la paire : la ligne est créée à part, pour qu'un envoi simultané de
+        // l'autre participant se heurte à la contrainte unique au lieu de créer un doublon. Elle part des
+        // messages déjà validés (conversation antérieure à la reprise), sans celui-ci, encore non validé
+        try {
+            nouvelleTransaction.executeWithoutResult(statut -> {
+                ConversationResume resume = new ConversationResume(a, b);
+                remplirDepuisMessages(resume);
+                conversationResumeRepository.saveAndFlush(resume);
+            });
+        } catch (DataIntegrityViolationException e) {
+            // Ligne créée entre-temps par l'autre envoi
+        }
+        conversationResumeRepository.enregistrerMessage(a, b, message.getId(), message.getDateEnvoi(), nonLusA, nonLusB);
+    }
+
+    /**
+     * Décompte les messages que le destinataire vient de lire dans sa conversation avec l'émetteur.
+     * Le compteur est diminué du nombre de messages marqués, pas remis à zéro : un message envoyé
+     * pendant le marquage reste compté comme non lu.
+     */
+    @Transactional
+    public void conversationLue(Long destinataireId, Long emetteurId, int nombre) {
+        if (destinataireId < emetteurId) {
+            conversationResumeRepository.marquerLusPourA(destinataireId, emetteurId, nombre);
+        } else {
+            conversationResumeRepository.marquerLusPourB(emetteurId, destinataireId, nombre);
+        }
+    }
+
+    /**
+     * Recalcule le résumé d'une conversation depuis ses messages (après une suppression) : dernier
+     * message restant et non lus de chaque côté, par l'index de conversation.
+     */
+    @Transactional
+    public void recalculer(Long utilisateurId, Long autreId) {
+        Long a = Math.min(utilisateurId, autreId);
+        Long b = Math.max(utilisateurId, autreId);
+        ConversationResume resume = conversationResumeRepository.findByUtilisateurAIdAndUtilisateurBId(a, b)
+                .orElse(null);
+        if (resume == null) {
+            return;
+        }
+        remplirDepuisMessages(resume);
+        conversationResumeRepository.save(resume);
+    }
+
+    private void remplirDepuisMessages(ConversationResume resume) {
+        Long a = resume.getUtilisateurAId();
+        Long b = resume.getUtilisateurBId();
+        PageRequest dernier = PageRequest.of(0, 1);
+        MessageConversationDto plusRecent = Stream.concat(
+                        messageRepository.findDerniersMessages(a, b, dernier).stream(),
+                        messageRepository.findDerniersMessages(b, a, dernier).stream())
+                .max(DU_PLUS_RECENT)
+                .orElse(null);
+        // Sans message restant, la conversation disparaît de la boîte de réception
+        resume.setDernierMessageId(plusRecent != null ? plusRecent.id() : null);
+        resume.setDateDernierMessage(plusRecent != null ? plusRecent.dateEnvoi() : null);
+        resume.setNonLusA(messageRepository.countUnreadMessages(a, b));
+        resume.setNonLusB(messageRepository.countUnreadMessages(b, a));
+    }
+
+    /**
+     * Boîte de réception d'un utilisateur : ses conversations, de la plus récemment active à la plus
+     * ancienne, avec ses non lus dans chacune.
+     *
+     * @param utilisateurId ID de l'utilisateur
+     * @return une entrée par conversation
+     */
+    @Transactional(readOnly = true)
+    public List<ConversationResumeDto> getBoiteDeReception(Long utilisateurId) {
+        List<ConversationResume> resumes = conversationResumeRepository.findBoiteDeReception(utilisateurId);
+        if (resumes.isEmpty()) {
+            return List.of();
+        }
+        List<Long> interlocuteurIds = resumes.stream()
+                .map(resume -> interlocuteur(resume, utilisateurId))
+                .toList();
+        Map<Long, UtilisateurDto> interlocuteurs = utilisateurRepository.findAllById(interlocuteurIds).stream()
+                .map(UtilisateurDto::from)
+                .collect(Collectors.toMap(UtilisateurDto::getId, Function.identity()));
+        return resumes.stream()
+                .map(resume -> new ConversationResumeDto(
+                        interlocuteurs.get(interlocuteur(resume, utilisateurId)),
+                        resume.getDernierMessageId(),
+                        resume.getDateDernierMessage(),
+                        resume.getUtilisateurAId().equals(utilisateurId) ? resume.getNonLusA() : resume.getNonLusB()))
+                .toList();
+    }
+
+    /**
+     * Crée les résumés des conversations qui n'en ont pas encore (messages antérieurs à la table).
+     *
+     * @return nombre de résumés créés
+     */
+    @Transactional
+    public int reprendre() {
+        return conversationResumeRepository.reprendreConversationsManquantes();
+    }
+
+    private static Long interlocuteur(ConversationResume resume, Long utilisateurId) {
+        return resume.getUtilisateurAId().equals(utilisateurId) ? resume.getUtilisateurBId() : resume.getUtilisateurAId();
+    }
+}
@@ -1,11 +1,25 @@
 package com.pfe.backend.service;
 
-import com.pfe.backend.model.OptionValeur;
+import com.pfe.backend.dto.ReponseExportDto;
+import com.pfe.backend.model.Champ;
 import com.pfe.backend.model.ReponseFormulaire;
+import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Service;
-
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 /**
@@ -13,88 +27,13 @@ import java.util.stream.Collectors;
  * Extrait la logique complexe d'export pour réduire la complexité cognitive.
  */
 @Service
+@RequiredArgsConstructor
 public class CsvExportService {
 
-    // Category name constants
-    private static final String CAT_IDENTITE_PATIENT = "IDENTITE PATIENT";
-    private static final String CAT_ANTECEDENTS = "ANTECEDENTS";
-    private static final String CAT_SEJOUR_HOPITAL = "SEJOUR HOPITAL";
-    private static final String CAT_CONSULTATION = "CONSULTATION";
-    private static final String CAT_BILAN_PRE_OP = "BILAN PRE OPERATOIRE";
-    private static final String CAT_PER_OP = "PER OPERATOIRE";
-    private static final String CAT_POST_OP = "POST OPERATOIRE";
-    private static final String CAT_TRANSFUSION = "TRANSFUSION";
-    private static final String CAT_RECUPERATION = "RECUPERATION";
-    private static final String CAT_COMPLICATIONS = "COMPLICATIONS";
-    private static final String CAT_AUTRE = "AUTRE";
-
-    private static final Map<String, String> CATEGORY_MAPPING = Map.ofEntries(
-            Map.entry("Sexe", CAT_IDENTITE_PATIENT),
-            Map.entry("Age", CAT_IDENTITE_PATIENT),
-            Map.entry("Taille", CAT_IDENTITE_PATIENT),
-            Map.entry("Poids", CAT_IDENTITE_PATIENT),
-            Map.entry("IMC", CAT_IDENTITE_PATIENT),
-            Map.entry("ASA", CAT_IDENTITE_PATIENT),
-            Map.entry("Type de chirurgie prevue", CAT_IDENTITE_PATIENT),
-
-            Map.entry("Traitement antiplaquettaire", CAT_ANTECEDENTS),
-            Map.entry("Nom du traitement antiplaquettaire le cas échéant", CAT_ANTECEDENTS),
-            Map.entry("Traitement Beta-bloquant", CAT_ANTECEDENTS),
-            Map.entry("Nom du traitement beta-bloquant le cas échéant", CAT_ANTECEDENTS),
-            Map.entry("Chimiothérapie", CAT_ANTECEDENTS),
-            Map.entry("Nom de la chimiothérapie le cas échéant", CAT_ANTECEDENTS),
-            Map.entry("Autres traitements habituels", CAT_ANTECEDENTS),
-            Map.entry("Nom des autres traitements le cas échéant", CAT_ANTECEDENTS),
-            Map.entry("Antécédents cardiovasculaires", CAT_ANTECEDENTS),
-
-            Map.entry("Lieu avant le séjour à l'hôpital", CAT_SEJOUR_HOPITAL),
-            Map.entry("Date d'entrée à l'hôpital", CAT_SEJOUR_HOPITAL),
-            Map.entry("Lieu après le séjour à l'hôpital", CAT_SEJOUR_HOPITAL),
-            Map.entry("Parcours RAAC", CAT_SEJOUR_HOPITAL),
-
-            Map.entry("Consultation de chirurgie", CAT_CONSULTATION),
-            Map.entry("Consultation d'anesthésie", CAT_CONSULTATION),
-
-            Map.entry("Bilan", CAT_BILAN_PRE_OP),
-            Map.entry("Ferritine", CAT_BILAN_PRE_OP),
-            Map.entry("Fréquence cardiaque", CAT_BILAN_PRE_OP),
-            Map.entry("Température corporelle", CAT_BILAN_PRE_OP),
-            Map.entry("Échelle de douleur", CAT_BILAN_PRE_OP),
-
-            Map.entry("Type d'anesthésie", CAT_PER_OP),
-            Map.entry("Durée de l'intervention", CAT_PER_OP),
-            Map.entry("Complications per-opératoires", CAT_PER_OP),
-
-            Map.entry("Date de sortie de salle de réveil", CAT_POST_OP),
-            Map.entry("Score de douleur à la sortie", CAT_POST_OP),
-            Map.entry("Antalgiques administrés", CAT_POST_OP),
-
-            Map.entry("Transfusion per-opératoire", CAT_TRANSFUSION),
-            Map.entry("Nombre de culots globulaires", CAT_TRANSFUSION),
-            Map.entry("Transfusion post-opératoire", CAT_TRANSFUSION),
+    private static final byte[] UTF8_BOM = {(byte) 0xEF, (byte) 0xBB, (byte) 0xBF};
 
-            Map.entry("Date correspondant au J1 de la chirurgie", CAT_RECUPERATION),
-            Map.entry("Date de fin du traitement antiplaquettaire", CAT_RECUPERATION),
-            Map.entry("Distance marchée au J3", CAT_RECUPERATION),
-
-            Map.entry("Complications infectieuses", CAT_COMPLICATIONS),
-            Map.entry("Complications thromboemboliques", CAT_COMPLICATIONS),
-            Map.entry("Réadmission sous 30 jours", CAT_COMPLICATIONS)
-    );
-
-    private static final List<String> CATEGORY_ORDER = List.of(
-            CAT_IDENTITE_PATIENT,
-            CAT_ANTECEDENTS,
-            CAT_SEJOUR_HOPITAL,
-            CAT_CONSULTATION,
-            CAT_BILAN_PRE_OP,
-            CAT_PER_OP,
-            CAT_POST_OP,
-            CAT_TRANSFUSION,
-            CAT_RECUPERATION,
-            CAT_COMPLICATIONS,
-            CAT_AUTRE
-    );
+    private final LectureReponsesService lectureReponsesService;
+    private final PlanExportCache planExportCache;
 
     /**
      * Génère le contenu CSV à partir des réponses.
@@ -103,28 +42,105 @@ public class CsvExportService {
         if (reponses == null || reponses.isEmpty()) {
             return "";
         }
+
+        Map<Long, Champ> champs = new HashMap<>();
+        for (ReponseFormulaire reponse : reponses) {
+            if (reponse.getChamp() != null && reponse.getChamp().getIdChamp() != null) {
+                champs.putIfAbsent(reponse.getChamp().getIdChamp(), reponse.getChamp());
+            }
+        }
+        return generateCsvContent(reponses.stream().map(ReponseExportDto::depuis).toList(), champs);
+    }
+
+    /**
+     * Génère le contenu CSV à partir des réponses déjà déchiffrées (lecture en masse).
+     *
+     * @param reponses réponses déchiffrées
+     * @param champs champs référencés par les réponses, avec leurs options, indexés par identifiant
+     */
+    public String generateCsvContent(List<ReponseExportDto> reponses, Map<Long, Champ> champs) {
+        if (reponses == null || reponses.isEmpty()) {
+            return "";
+        }
         
-        Map<String, List<ReponseFormulaire>> reponsesParPatient = groupByPatient(reponses);
-        List<ReponseFormulaire> tousLesChamps = getSortedUniqueFields(reponses);
+        Map<String, List<ReponseExportDto>> reponsesParPatient = groupByPatient(reponses);
+        PlanExport plan = PlanExport.compiler(reponses.stream()
+                .map(ReponseExportDto::idChamp)
+                .filter(Objects::nonNull)
+                .distinct()
+                .map(champs::get)
+                .toList());
         
-        if (tousLesChamps.isEmpty()) {
+        if (plan.estVide()) {
             return "";
         }
         
         StringBuilder csv = new StringBuilder();
-        appendCategoryHeader(csv, tousLesChamps);
-        appendFieldLabelsHeader(csv, tousLesChamps);
-        appendDataRows(csv, reponsesParPatient, tousLesChamps);
+        csv.append(plan.getEnteteCategories()).append(plan.getEnteteLibelles());
+        appendDataRows(csv, reponsesParPatient, plan);
         
         return csv.toString();
     }
 
+    /**
+     * Exporte en flux les réponses soumises d'un formulaire assigné (BOM UTF-8 + CSV).
+     * Les lignes patients sont écrites au fil du curseur, sans construire le fichier en mémoire ;
+     * le curseur les renvoie dans l'ordre des numéros d'inclusion, comme l'export en mémoire.
+     * Les colonnes sont celles du plan du formulaire (mis en cache) ayant au moins une réponse.
+     */
+    public StreamingResponseBody exporterFormulaireMedecin(Long formulaireMedecinId) {
+        PlanExport plan = planExportCache.getPlanParFormulaireMedecin(formulaireMedecinId)
+                .restreindre(lectureReponsesService.idsChampsRepondusParFormulaireMedecin(formulaireMedecinId));
+        return out -> ecrireCsv(out, plan,
+                parPatient -> lectureReponsesService.parcourirReponsesSoumisesParFormulaireMedecin(formulaireMedecinId, parPatient));
+    }
+
+    /**
+     * Exporte en flux les réponses soumises de tous les envois d'un formulaire (BOM UTF-8 + CSV).
+     */
+    public StreamingResponseBody exporterFormulaire(Long formulaireId) {
+        PlanExport plan = planExportCache.getPlan(formulaireId)
+                .restreindre(lectureReponsesService.idsChampsRepondusParFormulaire(formulaireId));
+        return out -> ecrireCsv(out, plan,
+                parPatient -> lectureReponsesService.parcourirReponsesSoumisesParFormulaire(formulaireId, parPatient));
+    }
+
+    private void ecrireCsv(OutputStream out, PlanExport plan,
+                           Consumer<Consumer<List<ReponseExportDto>>> parcours) throws IOException {
+        out.write(UTF8_BOM);
+        if (plan.estVide()) {
+            return;
+        }
+
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        StringBuilder ligne = new StringBuilder();
+        writer.write(plan.getEnteteCategories());
+        writer.write(plan.getEnteteLibelles());
+
+        parcours.accept(reponsesPatient -> {
+            // Sans hash, les réponses sont regroupées par identifiant comme dans l'export en mémoire
+            Collection<List<ReponseExportDto>> patients = reponsesPatient.get(0).patientIdentifierHash() != null
+                    ? List.of(reponsesPatient)
+                    : groupByPatient(reponsesPatient).values();
+            for (List<ReponseExportDto> patient : patients) {
+                ligne.setLength(0);
+                appendPatientRow(ligne, patient, plan);
+                try {
+                    writer.write(ligne.toString());
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        });
+        writer.flush();
+    }
+
     /**
      * Groups responses by patient identifier.
      * Uses patientIdentifierHash if available, otherwise falls back to patientIdentifier,
      * or generates a unique identifier based on response ID.
      */
-    private Map<String, List<ReponseFormulaire>> groupByPatient(List<ReponseFormulaire> reponses) {
+    private Map<String, List<ReponseExportDto>> groupByPatient(List<ReponseExportDto> reponses) {
         java.util.concurrent.atomic.AtomicInteger unknownCounter = new java.util.concurrent.atomic.AtomicInteger(0);
         
         return reponses.stream()
@@ -135,77 +151,21 @@ public class CsvExportService {
      * Gets the patient key for grouping.
      * Priority: patientIdentifierHash > patientIdentifier > generated ID
      */
-    private String getPatientKey(ReponseFormulaire reponse, java.util.concurrent.atomic.AtomicInteger unknownCounter) {
-        if (reponse.getPatientIdentifierHash() != null && !reponse.getPatientIdentifierHash().isEmpty()) {
-            return reponse.getPatientIdentifierHash();
+    private String getPatientKey(ReponseExportDto reponse, java.util.concurrent.atomic.AtomicInteger unknownCounter) {
+        if (reponse.patientIdentifierHash() != null && !reponse.patientIdentifierHash().isEmpty()) {
+            return reponse.patientIdentifierHash();
         }
-        if (reponse.getPatientIdentifier() != null && !reponse.getPatientIdentifier().isEmpty()) {
-            return "ID_" + reponse.getPatientIdentifier();
+        if (reponse.patientIdentifier() != null && !reponse.patientIdentifier().isEmpty()) {
+            return "ID_" + reponse.patientIdentifier();
         }
         // Fallback: group by response ID to ensure data is not lost
         return "UNKNOWN_" + unknownCounter.incrementAndGet();
     }
 
-    private List<ReponseFormulaire> getSortedUniqueFields(List<ReponseFormulaire> reponses) {
-        return reponses.stream()
-                .filter(r -> r.getChamp() != null && r.getChamp().getIdChamp() != null)
-                .collect(Collectors.toMap(
-                        r -> r.getChamp().getIdChamp(),
-                        r -> r,
-                        (r1, r2) -> r1
-                ))
-                .values()
-                .stream()
-                .filter(r -> r.getChamp().getLabel() != null)
-                .sorted(this::compareByCategory)
-                .toList();
-    }
-
-    private int compareByCategory(ReponseFormulaire r1, ReponseFormulaire r2) {
-        String cat1 = getCategory(r1);
-        String cat2 = getCategory(r2);
-        int catCompare = Integer.compare(CATEGORY_ORDER.indexOf(cat1), CATEGORY_ORDER.indexOf(cat2));
-        return catCompare != 0 ? catCompare : r1.getChamp().getLabel().compareTo(r2.getChamp().getLabel());
-    }
-
-    private String getCategory(ReponseFormulaire reponse) {
-        return CATEGORY_MAPPING.getOrDefault(reponse.getChamp().getLabel(), CAT_AUTRE);
-    }
-
-    private void appendCategoryHeader(StringBuilder csv, List<ReponseFormulaire> tousLesChamps) {
-        String currentCat = "";
-        int countInCat = 0;
-        
-        for (ReponseFormulaire r : tousLesChamps) {
-            String cat = getCategory(r);
-            if (!cat.equals(currentCat)) {
-                if (countInCat > 0) {
-                    csv.append(currentCat).append(";".repeat(Math.max(0, countInCat)));
-                }
-                currentCat = cat;
-                countInCat = 0;
-            }
-            countInCat++;
-        }
-        
-        if (countInCat > 0) {
-            csv.append(currentCat).append(";".repeat(Math.max(0, countInCat)));
-        }
-        csv.append("\n");
-    }
-
-    private void appendFieldLabelsHeader(StringBuilder csv, List<ReponseFormulaire> tousLesChamps) {
-        csv.append("NUMERO_INCLUSION;");
-        for (ReponseFormulaire r : tousLesChamps) {
-            csv.append(r.getChamp().getLabel()).append(";");
-        }
-        csv.append("\n");
-    }
-
-    private void appendDataRows(StringBuilder csv, Map<String, List<ReponseFormulaire>> reponsesParPatient,
-                                 List<ReponseFormulaire> tousLesChamps) {
+    private void appendDataRows(StringBuilder csv, Map<String, List<ReponseExportDto>> reponsesParPatient,
+                                 PlanExport plan) {
         // Trier les patients par numéro d'inclusion croissant
-        List<Map.Entry<String, List<ReponseFormulaire>>> sortedEntries = reponsesParPatient.entrySet().stream()
+        List<Map.Entry<String, List<ReponseExportDto>>> sortedEntries = reponsesParPatient.entrySet().stream()
                 .sorted((e1, e2) -> {
                     int num1 = parseNumeroInclusion(e1.getValue());
                     int num2 = parseNumeroInclusion(e2.getValue());
@@ -213,19 +173,19 @@ public class CsvExportService {
                 })
                 .toList();
         
-        for (Map.Entry<String, List<ReponseFormulaire>> entry : sortedEntries) {
-            appendPatientRow(csv, entry.getValue(), tousLesChamps);
+        for (Map.Entry<String, List<ReponseExportDto>> entry : sortedEntries) {
+            appendPatientRow(csv, entry.getValue(), plan);
         }
     }
 
     /**
      * Parse le numéro d'inclusion pour le tri.
      */
-    private int parseNumeroInclusion(List<ReponseFormulaire> reponsesPatient) {
+    private int parseNumeroInclusion(List<ReponseExportDto> reponsesPatient) {
         if (reponsesPatient == null || reponsesPatient.isEmpty()) {
             return Integer.MAX_VALUE;
         }
-        String patientId = reponsesPatient.get(0).getPatientIdentifier();
+        String patientId = reponsesPatient.get(0).patientIdentifier();
         if (patientId == null) return Integer.MAX_VALUE;
         
         int lastDash = patientId.lastIndexOf('-');
@@ -240,23 +200,22 @@ public class CsvExportService {
     }
 
 
-    private void appendPatientRow(StringBuilder csv, List<ReponseFormulaire> reponsesPatient,
-                                   List<ReponseFormulaire> tousLesChamps) {
+    private void appendPatientRow(StringBuilder csv, List<ReponseExportDto> reponsesPatient, PlanExport plan) {
         // Ajouter le numéro d'inclusion en première colonne
         String numeroInclusion = extractNumeroInclusion(reponsesPatient);
         csv.append(numeroInclusion).append(";");
         
-        Map<Long, ReponseFormulaire> reponsesParChamp = reponsesPatient.stream()
-                .collect(Collectors.toMap(
-                        r -> r.getChamp().getIdChamp(),
-                        r -> r,
-                        (r1, r2) -> r1
-                ));
+        // Une réponse par colonne (la première rencontrée), indexée par la position du champ dans le plan
+        ReponseExportDto[] reponsesParColonne = new ReponseExportDto[plan.nombreColonnes()];
+        for (ReponseExportDto reponse : reponsesPatient) {
+            int colonne = plan.colonne(reponse.idChamp());
+            if (colonne >= 0 && reponsesParColonne[colonne] == null) {
+                reponsesParColonne[colonne] = reponse;
+            }
+        }
 
-        for (ReponseFormulaire champRef : tousLesChamps) {
-            ReponseFormulaire reponse = reponsesParChamp.get(champRef.getChamp().getIdChamp());
-            String cellValue = getFormattedCellValue(reponse);
-            csv.append(cellValue).append(";");
+        for (int colonne = 0; colonne < reponsesParColonne.length; colonne++) {
+            csv.append(getFormattedCellValue(reponsesParColonne[colonne], plan, colonne)).append(";");
         }
         csv.append("\n");
     }
@@ -265,12 +224,12 @@ public class CsvExportService {
      * Extrait le numéro d'inclusion (partie numérique) du patientIdentifier.
      * Format attendu: NOM-PRENOM-ETUDE-XXXX -> retourne le numéro sans zéros devant
      */
-    private String extractNumeroInclusion(List<ReponseFormulaire> reponsesPatient) {
+    private String extractNumeroInclusion(List<ReponseExportDto> reponsesPatient) {
         if (reponsesPatient == null || reponsesPatient.isEmpty()) {
             return "";
         }
         
-        String patientId = reponsesPatient.get(0).getPatientIdentifier();
+        String patientId = reponsesPatient.get(0).patientIdentifier();
         if (patientId == null || patientId.isEmpty()) {
             return "";
         }
@@ -290,34 +249,12 @@ public class CsvExportService {
         return patientId;
     }
 
-    private String getFormattedCellValue(ReponseFormulaire reponse) {
+    private String getFormattedCellValue(ReponseExportDto reponse, PlanExport plan, int colonne) {
         if (reponse == null) {
             return "";
         }
 
-        String valeur = reponse.getValeur();
-        
-        if (hasOptions(reponse)) {
-            valeur = convertValueToLabel(reponse, valeur);
-        }
-        
+        String valeur = plan.valeurCellule(colonne, reponse.valeur());
         return valeur != null ? valeur : "";
     }
-
-    private boolean hasOptions(ReponseFormulaire reponse) {
-        return reponse.getChamp().getListeValeur() != null &&
-               reponse.getChamp().getListeValeur().getOptions() != null;
-    }
-
-    private String convertValueToLabel(ReponseFormulaire reponse, String defaultValue) {
-        return reponse.getChamp().getListeValeur().getOptions().stream()
-                .filter(o -> isMatchingOption(o, reponse.getValeur()))
-                .map(OptionValeur::getLibelle)
-                .findFirst()
-                .orElse(defaultValue);
-    }
-
-    private boolean isMatchingOption(OptionValeur option, String value) {
-        return option.getValeur() != null && option.getValeur().equals(value);
-    }
 }
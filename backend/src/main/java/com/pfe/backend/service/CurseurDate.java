@@ -0,0 +1,36 @@
+package com.pfe.backend.service;
+
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+
+/**
+ * Curseur de pagination par clé pour les listes triées par date puis id : "date ISO,id".
+ * La date ISO ne contient pas de virgule, le séparateur est donc la dernière virgule.
+ */
+public record CurseurDate(LocalDateTime date, long id) {
+
+    public static String formater(LocalDateTime date, Long id) {
+        return date + "," + id;
+    }
+
+    /**
+     * @param curseur curseur reçu du client, null ou vide pour la première page
+     * @return position décodée, null pour la première page
+     * @throws IllegalArgumentException si le curseur est mal formé
+     */
+    public static CurseurDate lire(String curseur) {
+        if (curseur == null || curseur.isBlank()) {
+            return null;
+        }
+        int separateur = curseur.lastIndexOf(',');
+        try {
+            if (separateur < 0) {
+                throw new NumberFormatException(curseur);
+            }
+            return new CurseurDate(LocalDateTime.parse(curseur.substring(0, separateur)),
+                    Long.parseLong(curseur.substring(separateur + 1)));
+        } catch (NumberFormatException | DateTimeParseException e) {
+            throw new IllegalArgumentException("Curseur de pagination invalide: " + curseur);
+        }
+    }
+}
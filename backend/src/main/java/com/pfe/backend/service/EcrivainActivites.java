@@ -0,0 +1,378 @@
+package com.pfe.backend.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.pfe.backend.config.crypto.AesGcmCryptoEngine;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Écriture différée du journal d'activité : les événements sont placés dans une file bornée
+ * et insérés par un thread dédié, en batch JDBC, hors des transactions métier.
+ * En mode journal, chaque événement est d'abord ajouté (chiffré) à un fichier local, relu au
+ * démarrage suivant si l'application s'est arrêtée avant de l'avoir écrit en base. Ce fichier doit
+ * survivre à un redémarrage de l'hôte : son chemin est obligatoire dans ce mode (pas de répertoire
+ * temporaire par défaut). Un lot que le thread d'écriture n'arrive pas à insérer est retenté ; ce qui
+ * n'a pas pu être écrit hors de ce thread est ajouté au fichier de reprise, rejoué au démarrage suivant.
+ */
+@Slf4j
+@Component
+public class EcrivainActivites {
+
+    public enum Durabilite {
+        // Insertion dans la transaction métier (comportement historique)
+        SYNC,
+        // File en mémoire vidée par lots : les événements en attente sont perdus en cas d'arrêt brutal
+        ASYNC,
+        // Comme ASYNC, avec un fichier local rejoué au démarrage (au moins une fois : doublon possible)
+        JOURNAL
+    }
+
+    public record EvenementActivite(Long utilisateurId, String action, String ressourceType,
+                                    Long ressourceId, String details, LocalDateTime dateCreation) {
+    }
+
+    // Attente maximale entre deux tentatives d'écriture d'un même lot
+    static final long ATTENTE_MAX_MS = TimeUnit.SECONDS.toMillis(30);
+
+    static final String INSERT = "INSERT INTO activite "
+            + "(id_utilisateur, action, ressource_type, ressource_id, details, date_creation) "
+            + "VALUES (?, ?, ?, ?, ?, ?)";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final AesGcmCryptoEngine cryptoEngine;
+    private final ObjectMapper objectMapper;
+    private final Durabilite durabilite;
+    private final int tailleLot;
+    private final long intervalleMs;
+    private final BlockingQueue<EvenementActivite> file;
+    // Null hors mode journal si aucun chemin n'est configuré
+    private final Path cheminJournal;
+    private final Object verrouJournal = new Object();
+    private FileChannel journal;
+    private volatile boolean actif = true;
+    // Lot que le thread d'écriture retentait au moment de l'arrêt
+    private volatile List<EvenementActivite> lotNonEcrit = List.of();
+    private final Thread ecrivain;
+
+    public EcrivainActivites(JdbcTemplate jdbcTemplate,
+                             AesGcmCryptoEngine cryptoEngine,
+                             ObjectMapper objectMapper,
+                             @Value("${app.activite.durabilite:async}") String durabilite,
+                             @Value("${app.activite.file.capacite:10000}") int capacite,
+                             @Value("${app.activite.file.taille-lot:200}") int tailleLot,
+                             @Value("${app.activite.file.intervalle:1s}") Duration intervalle,
+                             @Value("${app.activite.journal:}") String cheminJournal) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.cryptoEngine = cryptoEngine;
+        this.objectMapper = objectMapper;
+        this.durabilite = Durabilite.valueOf(durabilite.trim().toUpperCase(Locale.ROOT));
+        this.tailleLot = tailleLot;
+        this.intervalleMs = intervalle.toMillis();
+        this.file = new ArrayBlockingQueue<>(capacite);
+        this.cheminJournal = cheminJournal.isBlank() ? null : Path.of(cheminJournal);
+        if (this.durabilite == Durabilite.JOURNAL && this.cheminJournal == null) {
+            throw new IllegalStateException(
+                    "app.activite.journal doit désigner un fichier sur un stockage persistant en mode journal");
+        }
+        if (this.durabilite == Durabilite.JOURNAL) {
+            ouvrirJournal();
+        }
+        this.ecrivain = new Thread(this::vider, "activite-writer");
+        this.ecrivain.setDaemon(true);
+        if (this.durabilite != Durabilite.SYNC) {
+            this.ecrivain.start();
+        }
+    }
+
+    public boolean estAsynchrone() {
+        return durabilite != Durabilite.SYNC;
+    }
+
+    /**
+     * Place un événement dans la file. Si la file est pleine, il est inséré sur le thread appelant
+     * plutôt que perdu.
+     */
+    public void soumettre(EvenementActivite evenement) {
+        boolean accepte;
+        if (durabilite == Durabilite.JOURNAL) {
+            // Ajout au journal et mise en file sous le même verrou : la troncature ne peut pas s'intercaler
+            synchronized (verrouJournal) {
+                ajouterAuJournal(evenement);
+                accepte = file.offer(evenement);
+            }
+        } else {
+            accepte = file.offer(evenement);
+        }
+        if (!accepte) {
+            log.warn("File du journal d'activité pleine, écriture synchrone");
+            if (!ecrire(List.of(evenement))) {
+                conserverPourReprise(List.of(evenement));
+            }
+        }
+    }
+
+    int enAttente() {
+        return file.size();
+    }
+
+    // Un lot en échec est retenté (attente doublée à chaque essai) avant de passer au suivant : tant qu'il
+    // n'est pas écrit, la file n'est pas vidée et le journal n'est donc pas tronqué
+    private void vider() {
+        List<EvenementActivite> lot = null;
+        long attente = intervalleMs;
+        try {
+            while (actif) {
+                if (lot == null) {
+                    EvenementActivite premier = file.poll(intervalleMs, TimeUnit.MILLISECONDS);
+                    if (premier == null) {
+                        tronquerJournalSiVide();
+                        continue;
+                    }
+                    lot = new ArrayList<>(tailleLot);
+                    lot.add(premier);
+                    file.drainTo(lot, tailleLot - 1);
+                }
+                if (ecrire(lot)) {
+                    lot = null;
+                    attente = intervalleMs;
+                } else {
+                    TimeUnit.MILLISECONDS.sleep(attente);
+                    attente = Math.min(attente * 2, ATTENTE_MAX_MS);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            if (lot != null) {
+                lotNonEcrit = lot;
+            }
+        }
+    }
+
+    /**
+     * Insère un lot en un seul batch JDBC.
+     *
+     * @return false si le lot n'a pas pu être écrit
+     */
+    boolean ecrire(List<EvenementActivite> lot) {
+        List<Object[]> lignes = new ArrayList<>(lot.size());
+        for (EvenementActivite evenement : lot) {
+            lignes.add(new Object[]{
+                    evenement.utilisateurId(),
+                    evenement.action(),
+                    evenement.ressourceType(),
+                    evenement.ressourceId(),
+                    evenement.details(),
+                    Timestamp.valueOf(evenement.dateCreation())
+            });
+        }
+        try {
+            jdbcTemplate.batchUpdate(INSERT, lignes);
+            return true;
+        } catch (DataAccessException e) {
+            log.error("Écriture de {} activité(s) impossible", lot.size(), e);
+            return false;
+        }
+    }
+
+    /**
+     * Ajoute au fichier de reprise des événements qui n'ont pas pu être écrits, pour qu'ils soient
+     * rejoués au prochain démarrage. Sans journal, ils sont perdus (l'échec a déjà été tracé).
+     *
+     * @return false si les événements n'ont pas pu être mis de côté
+     */
+    boolean conserverPourReprise(List<EvenementActivite> evenements) {
+        if (durabilite != Durabilite.JOURNAL) {
+            return true;
+        }
+        synchronized (verrouJournal) {
+            try {
+                StringBuilder lignes = new StringBuilder();
+                for (EvenementActivite evenement : evenements) {
+                    lignes.append(cryptoEngine.chiffrer(objectMapper.writeValueAsString(evenement))).append('\n');
+                }
+                Files.writeString(cheminReprise(), lignes, StandardCharsets.US_ASCII,
+                        StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+                return true;
+            } catch (IOException e) {
+                log.error("Mise de côté de {} activité(s) pour reprise impossible", evenements.size(), e);
+                return false;
+            }
+        }
+    }
+
+    // Tout ce qui a été journalisé est en base (ou dans le fichier de reprise) dès que la file est vide
+    void tronquerJournalSiVide() {
+        if (journal == null) {
+            return;
+        }
+        synchronized (verrouJournal) {
+            if (file.isEmpty()) {
+                try {
+                    if (journal.size() > 0) {
+                        journal.truncate(0);
+                    }
+                } catch (IOException e) {
+                    log.warn("Troncature du journal d'activité impossible", e);
+                }
+            }
+        }
+    }
+
+    private void ouvrirJournal() {
+        try {
+            Files.createDirectories(cheminJournal.toAbsolutePath().getParent());
+            // Le journal d'un arrêt brutal est ajouté au fichier de reprise (sans écraser ce qui y attend
+            // encore) : il sera rejoué une fois l'application prête
+            if (Files.size(cheminJournal.toAbsolutePath()) > 0) {
+                ajouterA(cheminJournal, cheminReprise());
+            }
+        } catch (NoSuchFileException e) {
+            // Pas de journal précédent
+        } catch (IOException e) {
+            throw new UncheckedIOException("Journal d'activité inaccessible: " + cheminJournal, e);
+        }
+        try {
+            journal = FileChannel.open(cheminJournal, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.APPEND);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Journal d'activité inaccessible: " + cheminJournal, e);
+        }
+    }
+
+    private Path cheminReprise() {
+        return cheminJournal.resolveSibling(cheminJournal.getFileName() + ".reprise");
+    }
+
+    // Fichier en cours de rejeu : les échecs de ce rejeu repartent dans le fichier de reprise
+    private Path cheminRepriseEnCours() {
+        return cheminJournal.resolveSibling(cheminJournal.getFileName() + ".reprise.en-cours");
+    }
+
+    // Ajoute le contenu de source à la fin de cible, puis supprime source
+    private static void ajouterA(Path source, Path cible) throws IOException {
+        try (OutputStream out = Files.newOutputStream(cible, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND)) {
+            Files.copy(source, out);
+        }
+        Files.delete(source);
+    }
+
+    private void ajouterAuJournal(EvenementActivite evenement) {
+        try {
+            String ligne = cryptoEngine.chiffrer(objectMapper.writeValueAsString(evenement)) + "\n";
+            ByteBuffer tampon = ByteBuffer.wrap(ligne.getBytes(StandardCharsets.US_ASCII));
+            while (tampon.hasRemaining()) {
+                journal.write(tampon);
+            }
+        } catch (IOException e) {
+            // L'événement reste en file : seule la reprise après un arrêt brutal est compromise
+            log.error("Ajout au journal d'activité impossible", e);
+        }
+    }
+
+    /**
+     * Rejoue le fichier de reprise, par lots, puis le supprime. Les lots qui échouent à nouveau sont
+     * remis dans un fichier de reprise neuf pour le démarrage suivant.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void reprendreJournal() {
+        if (durabilite != Durabilite.JOURNAL) {
+            return;
+        }
+        Path enCours = cheminRepriseEnCours();
+        try {
+            synchronized (verrouJournal) {
+                if (Files.exists(cheminReprise())) {
+                    ajouterA(cheminReprise(), enCours);
+                }
+            }
+            if (!Files.exists(enCours)) {
+                return;
+            }
+            List<EvenementActivite> lot = new ArrayList<>(tailleLot);
+            int reprises = 0;
+            boolean conserve = true;
+            for (String ligne : Files.readAllLines(enCours, StandardCharsets.US_ASCII)) {
+                if (ligne.isBlank()) {
+                    continue;
+                }
+                lot.add(objectMapper.readValue(cryptoEngine.dechiffrer(ligne), EvenementActivite.class));
+                if (lot.size() == tailleLot) {
+                    conserve &= rejouer(lot);
+                    reprises += lot.size();
+                    lot = new ArrayList<>(tailleLot);
+                }
+            }
+            if (!lot.isEmpty()) {
+                conserve &= rejouer(lot);
+                reprises += lot.size();
+            }
+            // Si un lot n'a pu être ni écrit ni remis de côté, le fichier est gardé tel quel
+            if (conserve) {
+                Files.delete(enCours);
+            }
+            log.info("Journal d'activité repris : {} événement(s)", reprises);
+        } catch (IOException | IllegalStateException e) {
+            log.error("Reprise du journal d'activité {} impossible", enCours, e);
+        }
+    }
+
+    private boolean rejouer(List<EvenementActivite> lot) {
+        return ecrire(lot) || conserverPourReprise(lot);
+    }
+
+    @PreDestroy
+    void arreter() {
+        actif = false;
+        ecrivain.interrupt();
+        try {
+            ecrivain.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        List<EvenementActivite> restants = new ArrayList<>(lotNonEcrit);
+        file.drainTo(restants);
+        boolean conserve = true;
+        for (int debut = 0; debut < restants.size(); debut += tailleLot) {
+            conserve &= rejouer(restants.subList(debut, Math.min(debut + tailleLot, restants.size())));
+        }
+        if (journal != null) {
+            // Le journal n'est gardé que si des événements n'ont pu être ni écrits ni remis de côté
+            if (conserve) {
+                tronquerJournalSiVide();
+            }
+            try {
+                journal.close();
+            } catch (IOException e) {
+                log.warn("Fermeture du journal d'activité impossible", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,186 @@
+package com.pfe.backend.service;
+
+import com.pfe.backend.exception.ResourceNotFoundException;
+import com.pfe.backend.model.Champ;
+import com.pfe.backend.model.CompressionExport;
+import com.pfe.backend.model.ExportJob;
+import com.pfe.backend.model.StatutExportJob;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Exports CSV asynchrones : la tâche est soumise à un pool borné, écrit le fichier dans le
+ * répertoire de spool et expose sa progression (patients écrits / patients à exporter).
+ * Le fichier terminé est ensuite téléchargé, éventuellement par morceaux (reprise).
+ */
+@Service
+@Slf4j
+public class ExportJobService {
+
+    private final ExportReponsesService exportReponsesService;
+    private final LectureReponsesService lectureReponsesService;
+    private final Path repertoireSpool;
+    private final Duration retention;
+    private final ThreadPoolExecutor executor;
+    private final Map<String, ExportJob> jobs = new ConcurrentHashMap<>();
+
+    public ExportJobService(ExportReponsesService exportReponsesService,
+                            LectureReponsesService lectureReponsesService,
+                            @Value("${app.export.spool-dir:${java.io.tmpdir}/pfe-exports}") Path repertoireSpool,
+                            @Value("${app.export.jobs.threads:2}") int threads,
+                            @Value("${app.export.jobs.file-attente:20}") int fileAttente,
+                            @Value("${app.export.jobs.retention:24h}") Duration retention) {
+        this.exportReponsesService = exportReponsesService;
+        this.lectureReponsesService = lectureReponsesService;
+        this.repertoireSpool = repertoireSpool;
+        this.retention = retention;
+        AtomicInteger compteur = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(fileAttente),
+                r -> {
+                    Thread thread = new Thread(r, "export-job-" + compteur.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+    }
+
+    /**
+     * Vérifie l'autorisation puis place l'export (non compressé) en file d'attente.
+     *
+     * @return tâche créée (statut EN_ATTENTE)
+     * @throws IllegalStateException si la file d'attente est pleine
+     */
+    public ExportJob soumettre(Long formulaireId, String emailChercheur) {
+        return soumettre(formulaireId, emailChercheur, CompressionExport.AUCUNE);
+    }
+
+    /**
+     * Vérifie l'autorisation puis place l'export en file d'attente.
+     *
+     * @param compression compression du fichier produit dans le spool (et donc téléchargé)
+     * @return tâche créée (statut EN_ATTENTE)
+     * @throws IllegalStateException si la file d'attente est pleine
+     */
+    public ExportJob soumettre(Long formulaireId, String emailChercheur, CompressionExport compression) {
+        purgerJobsExpires();
+
+        List<Champ> champs = exportReponsesService.preparerExport(formulaireId, emailChercheur);
+        ExportJob job = new ExportJob(formulaireId, emailChercheur, compression);
+        jobs.put(job.getId(), job);
+        try {
+            executor.execute(() -> executer(job, champs));
+        } catch (RejectedExecutionException e) {
+            jobs.remove(job.getId());
+            throw new IllegalStateException("Trop d'exports en cours, veuillez réessayer plus tard");
+        }
+        return job;
+    }
+
+    /**
+     * Retourne une tâche appartenant au chercheur.
+     */
+    public ExportJob getJob(String jobId, String emailChercheur) {
+        ExportJob job = jobs.get(jobId);
+        if (job == null) {
+            throw new ResourceNotFoundException("Export non trouvé");
+        }
+        if (!job.getEmailChercheur().equals(emailChercheur)) {
+            throw new IllegalArgumentException("Vous n'êtes pas autorisé à accéder à cet export");
+        }
+        return job;
+    }
+
+    /**
+     * Retourne une tâche terminée dont le fichier est prêt à être téléchargé.
+     */
+    public ExportJob getJobTermine(String jobId, String emailChercheur) {
+        ExportJob job = getJob(jobId, emailChercheur);
+        if (job.getStatut() != StatutExportJob.TERMINE || job.getFichier() == null || !Files.exists(job.getFichier())) {
+            throw new IllegalStateException("L'export n'est pas encore disponible");
+        }
+        return job;
+    }
+
+    private void executer(ExportJob job, List<Champ> champs) {
+        job.setStatut(StatutExportJob.EN_COURS);
+        String nomFichier = job.getId() + ".csv" + job.getCompression().getExtension();
+        Path partiel = repertoireSpool.resolve(nomFichier + ".part");
+        try {
+            Files.createDirectories(repertoireSpool);
+            // Estimation pour la progression : le total définitif est le nombre de lignes réellement écrites
+            job.setLignesTotales(lectureReponsesService.compterPatientsParFormulaire(job.getFormulaireId()));
+
+            try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(partiel))) {
+                job.getCompression().ecrire(out, flux -> exportReponsesService.ecrireCsv(job.getFormulaireId(), champs,
+                        flux, () -> compterLigne(job)));
+            }
+            job.setLignesTotales(job.getLignesTraitees().get());
+            // Le fichier n'apparaît sous son nom définitif qu'une fois complet
+            Path fichier = Files.move(partiel, repertoireSpool.resolve(nomFichier),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            job.setFichier(fichier);
+            job.setDateFin(LocalDateTime.now());
+            job.setStatut(StatutExportJob.TERMINE);
+        } catch (IOException | RuntimeException e) {
+            log.error("Échec de l'export {} du formulaire {}", job.getId(), job.getFormulaireId(), e);
+            supprimerSilencieusement(partiel);
+            job.setErreur("Échec de la génération de l'export");
+            job.setDateFin(LocalDateTime.now());
+            job.setStatut(StatutExportJob.ECHEC);
+        }
+    }
+
+    // La progression ne dépasse jamais 100 % si l'estimation était trop basse
+    private static void compterLigne(ExportJob job) {
+        long traitees = job.getLignesTraitees().incrementAndGet();
+        if (traitees > job.getLignesTotales()) {
+            job.setLignesTotales(traitees);
+        }
+    }
+
+    /**
+     * Oublie les tâches terminées depuis plus longtemps que la rétention et supprime leurs fichiers.
+     */
+    void purgerJobsExpires() {
+        LocalDateTime limite = LocalDateTime.now().minus(retention);
+        jobs.values().removeIf(job -> {
+            boolean expire = job.getDateFin() != null && job.getDateFin().isBefore(limite);
+            if (expire && job.getFichier() != null) {
+                supprimerSilencieusement(job.getFichier());
+            }
+            return expire;
+        });
+    }
+
+    private void supprimerSilencieusement(Path fichier) {
+        try {
+            Files.deleteIfExists(fichier);
+        } catch (IOException e) {
+            log.warn("Impossible de supprimer le fichier d'export {}", fichier, e);
+        }
+    }
+
+    @PreDestroy
+    void arreter() {
+        executor.shutdownNow();
+    }
+}
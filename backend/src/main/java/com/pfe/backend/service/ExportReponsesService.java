@@ -1,18 +1,26 @@
 package com.pfe.backend.service;
 
+import com.pfe.backend.dto.ReponseExportDto;
 import com.pfe.backend.exception.ResourceNotFoundException;
 import com.pfe.backend.model.Champ;
 import com.pfe.backend.model.Formulaire;
-import com.pfe.backend.model.ReponseFormulaire;
 import com.pfe.backend.repository.FormulaireRepository;
-import com.pfe.backend.repository.ReponseFormulaireRepository;
 import lombok.RequiredArgsConstructor;
-import org.springframework.core.io.ByteArrayResource;
 import org.springframework.stereotype.Service;
-
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
 import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.stream.Collectors;
@@ -24,44 +32,72 @@ import java.util.stream.Collectors;
 @RequiredArgsConstructor
 public class ExportReponsesService {
 
+    private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
 
     private final FormulaireRepository formulaireRepository;
-    private final ReponseFormulaireRepository reponseFormulaireRepository;
+    private final LectureReponsesService lectureReponsesService;
 
     /**
      * Génère un CSV contenant les réponses d'un formulaire, avec une ligne par patient.
+     * L'autorisation est vérifiée immédiatement ; les lignes sont ensuite écrites au fil
+     * d'un curseur trié par patient, sans construire le fichier en mémoire.
      *
      * @param formulaireId identifiant du formulaire
      * @param emailChercheur email du chercheur demandeur
-     * @return fichier CSV prêt à être téléchargé
+     * @return contenu CSV à écrire dans la réponse HTTP
+     */
+    @Transactional(readOnly = true)
+    public StreamingResponseBody exporterReponsesCsv(Long formulaireId, String emailChercheur) {
+        List<Champ> champs = preparerExport(formulaireId, emailChercheur);
+        return out -> ecrireCsv(formulaireId, champs, out, () -> { });
+    }
+
+    /**
+     * Vérifie que le chercheur peut exporter le formulaire et renvoie les colonnes de l'export.
+     *
+     * @return champs du formulaire, utilisables hors transaction
      */
-    public ByteArrayResource exporterReponsesCsv(Long formulaireId, String emailChercheur) {
+    @Transactional(readOnly = true)
+    public List<Champ> preparerExport(Long formulaireId, String emailChercheur) {
         Formulaire formulaire = formulaireRepository.findById(formulaireId)
                 .orElseThrow(() -> new ResourceNotFoundException("Formulaire non trouvé"));
 
         verifierAutorisation(formulaire, emailChercheur);
 
-        List<Champ> champs = formulaire.getChamps();
-        List<ReponseFormulaire> reponses = reponseFormulaireRepository.findByFormulaireIdWithChamp(formulaireId);
-        
-        // Null checks
-        if (champs == null) {
-            champs = java.util.Collections.emptyList();
-        }
-        if (reponses == null) {
-            reponses = java.util.Collections.emptyList();
-        }
-
-        Map<String, List<ReponseFormulaire>> reponsesParPatient = grouperReponsesParPatient(reponses);
-
-        StringBuilder csv = new StringBuilder();
-        DateTimeFormatter dateFormatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
-
-        construireEnteteCsv(csv, champs);
-        construireLignesPatients(csv, reponsesParPatient, champs, dateFormatter);
+        // Copie initialisée dans la transaction : le flux est écrit après la fin de cette méthode
+        return formulaire.getChamps() != null
+                ? new ArrayList<>(formulaire.getChamps())
+                : Collections.emptyList();
+    }
 
-        byte[] bytes = csv.toString().getBytes(StandardCharsets.UTF_8);
-        return new ByteArrayResource(bytes);
+    /**
+     * Écrit le CSV des réponses (brouillons inclus) dans le flux fourni, patient par patient.
+     *
+     * @param champs colonnes obtenues par {@link #preparerExport(Long, String)}
+     * @param apresChaquePatient appelé après l'écriture de chaque ligne patient (suivi de progression)
+     */
+    public void ecrireCsv(Long formulaireId, List<Champ> champs, OutputStream out,
+                          Runnable apresChaquePatient) throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        StringBuilder ligne = new StringBuilder();
+        construireEnteteCsv(ligne, champs);
+        writer.write(ligne.toString());
+
+        lectureReponsesService.parcourirReponsesParFormulaire(formulaireId, reponsesPatient -> {
+            String patientHash = reponsesPatient.get(0).patientIdentifierHash();
+            if (patientHash == null) {
+                return;
+            }
+            ligne.setLength(0);
+            construireLignePatient(ligne, patientHash, reponsesPatient, champs);
+            try {
+                writer.write(ligne.toString());
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            apresChaquePatient.run();
+        });
+        writer.flush();
     }
 
     private void verifierAutorisation(Formulaire formulaire, String emailChercheur) {
@@ -71,12 +107,6 @@ public class ExportReponsesService {
         }
     }
 
-    private Map<String, List<ReponseFormulaire>> grouperReponsesParPatient(List<ReponseFormulaire> reponses) {
-        return reponses.stream()
-                .filter(r -> r.getPatientIdentifierHash() != null)
-                .collect(Collectors.groupingBy(ReponseFormulaire::getPatientIdentifierHash));
-    }
-
     private void construireEnteteCsv(StringBuilder csv, List<Champ> champs) {
         csv.append("Patient_ID");
         for (Champ champ : champs) {
@@ -88,16 +118,9 @@ public class ExportReponsesService {
         csv.append(";Date_Saisie\n");
     }
 
-    private void construireLignesPatients(StringBuilder csv, Map<String, List<ReponseFormulaire>> reponsesParPatient,
-                                          List<Champ> champs, DateTimeFormatter dateFormatter) {
-        for (Map.Entry<String, List<ReponseFormulaire>> entry : reponsesParPatient.entrySet()) {
-            construireLignePatient(csv, entry.getKey(), entry.getValue(), champs, dateFormatter);
-        }
-    }
-
-    private void construireLignePatient(StringBuilder csv, String patientHash, List<ReponseFormulaire> reponsesPatient,
-                                        List<Champ> champs, DateTimeFormatter dateFormatter) {
-        Map<Long, ReponseFormulaire> reponsesParChamp = creerMapReponsesParChamp(reponsesPatient);
+    private void construireLignePatient(StringBuilder csv, String patientHash, List<ReponseExportDto> reponsesPatient,
+                                        List<Champ> champs) {
+        Map<Long, ReponseExportDto> reponsesParChamp = creerMapReponsesParChamp(reponsesPatient);
         
         csv.append(escapeCsv(patientHash));
 
@@ -105,32 +128,32 @@ public class ExportReponsesService {
 
         csv.append(";");
         if (dateSaisie != null) {
-            csv.append(dateFormatter.format(dateSaisie));
+            csv.append(DATE_FORMATTER.format(dateSaisie));
         }
         csv.append("\n");
     }
 
-    private Map<Long, ReponseFormulaire> creerMapReponsesParChamp(List<ReponseFormulaire> reponsesPatient) {
+    private Map<Long, ReponseExportDto> creerMapReponsesParChamp(List<ReponseExportDto> reponsesPatient) {
         return reponsesPatient.stream()
-                .filter(r -> r.getChamp() != null)
+                .filter(r -> r.idChamp() != null)
                 .collect(Collectors.toMap(
-                        r -> r.getChamp().getIdChamp(),
+                        ReponseExportDto::idChamp,
                         r -> r,
                         (r1, r2) -> r1
                 ));
     }
 
     private LocalDateTime ajouterValeursChamps(StringBuilder csv, List<Champ> champs,
-                                                Map<Long, ReponseFormulaire> reponsesParChamp) {
+                                                Map<Long, ReponseExportDto> reponsesParChamp) {
         LocalDateTime dateSaisiePlusRecente = null;
         
         for (Champ champ : champs) {
             csv.append(";");
-            ReponseFormulaire reponse = reponsesParChamp.get(champ.getIdChamp());
+            ReponseExportDto reponse = reponsesParChamp.get(champ.getIdChamp());
             
             if (reponse != null) {
-                csv.append(escapeCsv(reponse.getValeur()));
-                dateSaisiePlusRecente = trouverDatePlusRecente(dateSaisiePlusRecente, reponse.getDateSaisie());
+                csv.append(escapeCsv(reponse.valeur()));
+                dateSaisiePlusRecente = trouverDatePlusRecente(dateSaisiePlusRecente, reponse.dateSaisie());
             }
         }
         
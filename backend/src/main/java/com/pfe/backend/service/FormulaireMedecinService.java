@@ -8,14 +8,21 @@ import com.pfe.backend.repository.FormulaireMedecinRepository;
 import com.pfe.backend.repository.FormulaireRepository;
 import com.pfe.backend.repository.UtilisateurRepository;
 import com.pfe.backend.repository.ReponseFormulaireRepository;
+import com.pfe.backend.repository.SoumissionPatientRepository;
 import com.pfe.backend.repository.ListeValeurRepository;
 import com.pfe.backend.model.Champ;
 import com.pfe.backend.model.ListeValeur;
 import lombok.RequiredArgsConstructor;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.stream.Collectors;
 
 /**
@@ -31,6 +38,7 @@ public class FormulaireMedecinService {
     private final UtilisateurRepository utilisateurRepository;
     private final ActiviteService activiteService;
     private final ReponseFormulaireRepository reponseFormulaireRepository;
+    private final SoumissionPatientRepository soumissionPatientRepository;
     private final ListeValeurRepository listeValeurRepository;
 
     // Constants for activity messages
@@ -129,6 +137,35 @@ public class FormulaireMedecinService {
         return formulaireMedecinRepository.findByMedecinEmail(emailMedecin);
     }
 
+    /**
+     * Récupère une page des formulaires reçus par un médecin, les plus récents d'abord.
+     *
+     * @param emailMedecin Email du médecin
+     * @param pageable page demandée ({@link Pageable#unpaged()} pour tous les formulaires)
+     * @return Page des formulaires reçus
+     */
+    @Transactional(readOnly = true)
+    public Page<FormulaireMedecin> getFormulairesRecus(String emailMedecin, Pageable pageable) {
+        if (pageable.isUnpaged()) {
+            return new PageImpl<>(formulaireMedecinRepository.findByMedecinEmail(emailMedecin));
+        }
+        Page<Long> ids = formulaireMedecinRepository.findIdsByMedecinEmail(emailMedecin, pageable);
+        if (ids.isEmpty()) {
+            return ids.map(id -> null);
+        }
+        Map<Long, FormulaireMedecin> parId = new HashMap<>();
+        for (FormulaireMedecin fm : formulaireMedecinRepository.findAllRecusByIdIn(ids.getContent())) {
+            parId.put(fm.getId(), fm);
+        }
+        // Remet les envois dans l'ordre de la page ; un envoi disparu entre les deux lectures est écarté
+        List<FormulaireMedecin> contenu = ids.getContent().stream()
+                .map(parId::get)
+                .filter(Objects::nonNull)
+                .toList();
+        long absents = ids.getNumberOfElements() - contenu.size();
+        return new PageImpl<>(contenu, pageable, ids.getTotalElements() - absents);
+    }
+
     /**
      * Récupère un formulaire complet prêt pour le remplissage.
      * Charge explicitement les listes de valeurs pour éviter les LazyInitializationException.
@@ -229,6 +266,7 @@ public class FormulaireMedecinService {
     private void supprimerDefinitivement(FormulaireMedecin fm) {
         // Supprimer les réponses
         reponseFormulaireRepository.deleteByFormulaireMedecinId(fm.getId());
+        soumissionPatientRepository.deleteByFormulaireMedecinId(fm.getId());
         // Supprimer l'assignation
         formulaireMedecinRepository.delete(fm);
     }
@@ -252,6 +290,7 @@ public class FormulaireMedecinService {
 
         // Supprimer d'abord toutes les réponses associées
         reponseFormulaireRepository.deleteByFormulaireMedecinId(formulaireMedecinId);
+        soumissionPatientRepository.deleteByFormulaireMedecinId(formulaireMedecinId);
 
         // Puis supprimer le FormulaireMedecin
         formulaireMedecinRepository.delete(formulaireMedecin);
@@ -16,11 +16,13 @@ import com.pfe.backend.repository.FormulaireMedecinRepository;
 import com.pfe.backend.repository.FormulaireRepository;
 import com.pfe.backend.repository.ListeValeurRepository;
 import com.pfe.backend.repository.ReponseFormulaireRepository;
+import com.pfe.backend.repository.SoumissionPatientRepository;
 import com.pfe.backend.repository.UtilisateurRepository;
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -42,6 +44,8 @@ public class FormulaireService {
     private final ListeValeurRepository listeValeurRepository;
     private final FormulaireMedecinRepository formulaireMedecinRepository;
     private final ReponseFormulaireRepository reponseFormulaireRepository;
+    private final SoumissionPatientRepository soumissionPatientRepository;
+    private final PlanExportCache planExportCache;
 
     // Constants for error messages and activity logging
     private static final String USER_NOT_FOUND_PREFIX = "Utilisateur non trouvé avec l'email: ";
@@ -159,8 +163,11 @@ public class FormulaireService {
         formulaire.setStatut(StatutFormulaire.valueOf(request.getStatut().toUpperCase()));
 
         updateChamps(formulaire, request.getChamps());
+        // Les champs modifiés ne rendent pas le formulaire « dirty » : la version est avancée explicitement
+        formulaire.setDateModification(LocalDateTime.now());
 
         Formulaire savedFormulaire = formulaireRepository.save(formulaire);
+        planExportCache.invalider(id);
 
         activiteService.enregistrerActivite(userEmail, "Modification de formulaire", FORMULAIRE_ENTITY,
                 savedFormulaire.getIdFormulaire(), FORMULAIRE_PREFIX + savedFormulaire.getTitre() + "' modifié");
@@ -289,11 +296,13 @@ public class FormulaireService {
         
         for (FormulaireMedecin fm : formulairesMedecins) {
             reponseFormulaireRepository.deleteByFormulaireMedecinId(fm.getId());
+            soumissionPatientRepository.deleteByFormulaireMedecinId(fm.getId());
             formulaireMedecinRepository.delete(fm);
         }
         
         // Supprimer le formulaire d'abord
         formulaireRepository.deleteById(id);
+        planExportCache.invalider(id);
         
         // Enregistrer l'activité après la suppression réussie
         activiteService.enregistrerActivite(userEmail, "Suppression de formulaire",
@@ -0,0 +1,118 @@
+package com.pfe.backend.service;
+
+import org.springframework.web.util.HtmlUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Gabarit d'email compilé une seule fois : le HTML source est découpé en segments littéraux et
+ * emplacements {{nom}}, puis rendu en une passe dans un StringBuilder pré-dimensionné.
+ * La version texte (alternative des clients sans HTML) est dérivée du même source à la compilation.
+ */
+public final class GabaritMail {
+
+    public record Rendu(String html, String texte) {
+    }
+
+    private static final Pattern EMPLACEMENT = Pattern.compile("\\{\\{(\\w+)}}");
+    // Marge par emplacement pour éviter un redimensionnement du StringBuilder
+    private static final int MARGE_EMPLACEMENT = 16;
+
+    private final Segments html;
+    private final Segments texte;
+
+    private GabaritMail(Segments html, Segments texte) {
+        this.html = html;
+        this.texte = texte;
+    }
+
+    public static GabaritMail compiler(String sourceHtml) {
+        return new GabaritMail(Segments.compiler(sourceHtml), Segments.compiler(versTexte(sourceHtml)));
+    }
+
+    /**
+     * @param valeurs valeur de chaque emplacement, échappée pour la version HTML
+     * @throws IllegalArgumentException si un emplacement du gabarit n'a pas de valeur
+     */
+    public Rendu rendre(Map<String, String> valeurs) {
+        return new Rendu(html.rendre(valeurs, true), texte.rendre(valeurs, false));
+    }
+
+    /**
+     * Texte brut lisible tiré du HTML : en-tête et commentaires retirés, blocs en lignes,
+     * balises supprimées, espaces et lignes vides resserrés. Les emplacements sont conservés.
+     */
+    static String versTexte(String sourceHtml) {
+        String texte = sourceHtml
+                .replaceAll("(?is)<head>.*?</head>", "")
+                .replaceAll("(?s)<!--.*?-->", "")
+                .replaceAll("(?i)<br\\s*/?>|</(p|h[1-6]|div|tr)>", "\n")
+                .replaceAll("<[^>]+>", "");
+        texte = HtmlUtils.htmlUnescape(texte);
+
+        StringBuilder resultat = new StringBuilder(texte.length() / 4);
+        boolean ligneVidePrecedente = true;
+        for (String ligne : texte.split("\n")) {
+            String nettoyee = ligne.strip().replaceAll("\\s+", " ");
+            if (nettoyee.isEmpty()) {
+                if (!ligneVidePrecedente) {
+                    resultat.append('\n');
+                }
+                ligneVidePrecedente = true;
+            } else {
+                resultat.append(nettoyee).append('\n');
+                ligneVidePrecedente = false;
+            }
+        }
+        return resultat.toString().strip() + "\n";
+    }
+
+    private static final class Segments {
+
+        // litteraux.length == emplacements.length + 1 : littéral, emplacement, littéral, ...
+        private final String[] litteraux;
+        private final String[] emplacements;
+        private final int capacite;
+
+        private Segments(String[] litteraux, String[] emplacements) {
+            this.litteraux = litteraux;
+            this.emplacements = emplacements;
+            int taille = emplacements.length * MARGE_EMPLACEMENT;
+            for (String litteral : litteraux) {
+                taille += litteral.length();
+            }
+            this.capacite = taille;
+        }
+
+        static Segments compiler(String source) {
+            List<String> litteraux = new ArrayList<>();
+            List<String> emplacements = new ArrayList<>();
+            Matcher matcher = EMPLACEMENT.matcher(source);
+            int debut = 0;
+            while (matcher.find()) {
+                litteraux.add(source.substring(debut, matcher.start()));
+                emplacements.add(matcher.group(1));
+                debut = matcher.end();
+            }
+            litteraux.add(source.substring(debut));
+            return new Segments(litteraux.toArray(String[]::new), emplacements.toArray(String[]::new));
+        }
+
+        String rendre(Map<String, String> valeurs, boolean echapper) {
+            StringBuilder sortie = new StringBuilder(capacite);
+            sortie.append(litteraux[0]);
+            for (int i = 0; i < emplacements.length; i++) {
+                String valeur = valeurs.get(emplacements[i]);
+                if (valeur == null) {
+                    throw new IllegalArgumentException("Valeur manquante pour l'emplacement " + emplacements[i]);
+                }
+                sortie.append(echapper ? HtmlUtils.htmlEscape(valeur) : valeur).append(litteraux[i + 1]);
+            }
+            return sortie.toString();
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package com.pfe.backend.service;
+
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Gabarits des emails envoyés par {@link MailService}, lus et compilés une fois au démarrage
+ * depuis {@code templates/mail/}.
+ */
+@Component
+public class GabaritsMail {
+
+    private final GabaritMail codeConnexion;
+    private final GabaritMail reinitialisationMotDePasse;
+
+    public GabaritsMail() {
+        this.codeConnexion = charger("code-connexion");
+        this.reinitialisationMotDePasse = charger("reinitialisation-mot-de-passe");
+    }
+
+    public GabaritMail codeConnexion() {
+        return codeConnexion;
+    }
+
+    public GabaritMail reinitialisationMotDePasse() {
+        return reinitialisationMotDePasse;
+    }
+
+    private static GabaritMail charger(String nom) {
+        try (InputStream source = new ClassPathResource("templates/mail/" + nom + ".html").getInputStream()) {
+            return GabaritMail.compiler(new String(source.readAllBytes(), StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Gabarit d'email introuvable: " + nom, e);
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package com.pfe.backend.service;
 
 import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
 
 import io.jsonwebtoken.security.Keys;
@@ -8,6 +9,7 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.stereotype.Service;
 
+import javax.crypto.SecretKey;
 import java.nio.charset.StandardCharsets;
 import java.util.Date;
 import java.util.HashMap;
@@ -27,6 +29,10 @@ public class JwtService {
     @Value("${jwt.expiration}")
     private Long expiration;
 
+    // Construits une seule fois (à la première utilisation, la clé étant injectée après construction)
+    private volatile SecretKey signInKey;
+    private volatile JwtParser parser;
+
     /**
      * Extrait le nom d'utilisateur (email) du token.
      *
@@ -42,18 +48,36 @@ public class JwtService {
         return claimsResolver.apply(claims);
     }
 
-    private Claims extractAllClaims(String token){
-        return Jwts
-                .parser()
-                .verifyWith(getSignInKey())
-                .build()
+    /**
+     * Vérifie la signature et l'expiration du token, puis retourne ses claims.
+     * À utiliser une seule fois par requête, les claims servant ensuite à toutes les vérifications.
+     *
+     * @param token token JWT
+     * @return claims du token
+     * @throws io.jsonwebtoken.JwtException si le token est invalide ou expiré
+     */
+    public Claims extractAllClaims(String token){
+        return getParser()
                 .parseSignedClaims(token)
                 .getPayload();
     }
 
-    private javax.crypto.SecretKey getSignInKey() {
-        byte[] keyBytes = secretKey.getBytes(StandardCharsets.UTF_8);
-        return Keys.hmacShaKeyFor(keyBytes);
+    private JwtParser getParser() {
+        JwtParser courant = parser;
+        if (courant == null) {
+            courant = Jwts.parser().verifyWith(getSignInKey()).build();
+            parser = courant;
+        }
+        return courant;
+    }
+
+    private SecretKey getSignInKey() {
+        SecretKey courante = signInKey;
+        if (courante == null) {
+            courante = Keys.hmacShaKeyFor(secretKey.getBytes(StandardCharsets.UTF_8));
+            signInKey = courante;
+        }
+        return courante;
     }
 
     /**
@@ -92,16 +116,19 @@ public class JwtService {
      * @return true si le token est valide et correspond à l'utilisateur
      */
     public boolean isTokenValid(String token, UserDetails userDetails){
-        final String username = extractUsername(token);
-        return (username.equals(userDetails.getUsername()) && !isTokenExpired(token));
-    }
-
-    private boolean isTokenExpired(String token){
-        return extractExpiration(token).before(new Date());
+        return isTokenValid(extractAllClaims(token), userDetails);
     }
 
-    private Date extractExpiration(String token){
-        return extractClaim(token, Claims::getExpiration);
+    /**
+     * Vérifie des claims déjà extraits (signature vérifiée) pour un utilisateur donné, sans reparser le token.
+     *
+     * @param claims claims obtenus par {@link #extractAllClaims(String)}
+     * @param userDetails utilisateur concerné
+     * @return true si le token n'est pas expiré et correspond à l'utilisateur
+     */
+    public boolean isTokenValid(Claims claims, UserDetails userDetails){
+        final String username = claims.getSubject();
+        return (username.equals(userDetails.getUsername()) && !claims.getExpiration().before(new Date()));
     }
 
 }
\ No newline at end of file
@@ -0,0 +1,187 @@
+package com.pfe.backend.service;
+
+import com.pfe.backend.config.converter.StringCryptoConverter;
+import com.pfe.backend.dto.ReponseExportDto;
+import com.pfe.backend.repository.ReponseFormulaireRepository;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.Clob;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Lecture en masse des réponses pour les exports.
+ * Les colonnes chiffrées sont lues brutes (sans hydratation d'entités) via un curseur trié par patient,
+ * puis déchiffrées en parallèle sur un pool dédié, au lieu d'un déchiffrement séquentiel par Hibernate
+ * sur le thread de la requête.
+ */
+@Service
+public class LectureReponsesService {
+
+    // En dessous de ce volume, le découpage parallèle coûte plus qu'il ne rapporte
+    static final int SEUIL_PARALLELE = 512;
+
+    private final ReponseFormulaireRepository reponseFormulaireRepository;
+    private final StringCryptoConverter cryptoConverter;
+    private final ForkJoinPool poolDechiffrement;
+
+    public LectureReponsesService(ReponseFormulaireRepository reponseFormulaireRepository,
+                                  StringCryptoConverter cryptoConverter,
+                                  @Value("${app.export.dechiffrement.parallelisme:0}") int parallelisme) {
+        this.reponseFormulaireRepository = reponseFormulaireRepository;
+        this.cryptoConverter = cryptoConverter;
+        this.poolDechiffrement = new ForkJoinPool(
+                parallelisme > 0 ? parallelisme : Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Parcourt les réponses soumises (hors brouillons) d'un formulaire assigné, patient par patient.
+     *
+     * @param parPatient reçoit les réponses déchiffrées d'un patient, dès que ses lignes ont été lues
+     */
+    @Transactional(readOnly = true)
+    public void parcourirReponsesSoumisesParFormulaireMedecin(Long formulaireMedecinId,
+                                                             Consumer<List<ReponseExportDto>> parPatient) {
+        try (Stream<Object[]> lignes = reponseFormulaireRepository.streamReponsesChiffreesSoumisesByFormulaireMedecinId(formulaireMedecinId)) {
+            parcourirParPatient(lignes, parPatient);
+        }
+    }
+
+    /**
+     * Parcourt les réponses soumises (hors brouillons) de tous les envois d'un formulaire, patient par patient.
+     */
+    @Transactional(readOnly = true)
+    public void parcourirReponsesSoumisesParFormulaire(Long formulaireId, Consumer<List<ReponseExportDto>> parPatient) {
+        try (Stream<Object[]> lignes = reponseFormulaireRepository.streamReponsesChiffreesSoumisesByFormulaireId(formulaireId)) {
+            parcourirParPatient(lignes, parPatient);
+        }
+    }
+
+    /**
+     * Parcourt toutes les réponses (brouillons inclus) de tous les envois d'un formulaire, patient par patient.
+     */
+    @Transactional(readOnly = true)
+    public void parcourirReponsesParFormulaire(Long formulaireId, Consumer<List<ReponseExportDto>> parPatient) {
+        try (Stream<Object[]> lignes = reponseFormulaireRepository.streamReponsesChiffreesByFormulaireId(formulaireId)) {
+            parcourirParPatient(lignes, parPatient);
+        }
+    }
+
+    /**
+     * Nombre de patients (lignes CSV) d'un formulaire, tous envois et brouillons compris.
+     */
+    @Transactional(readOnly = true)
+    public long compterPatientsParFormulaire(Long formulaireId) {
+        return reponseFormulaireRepository.countDistinctPatientsByFormulaireId(formulaireId);
+    }
+
+    /**
+     * Identifiants des champs ayant au moins une réponse soumise pour un formulaire assigné.
+     */
+    @Transactional(readOnly = true)
+    public List<Long> idsChampsRepondusParFormulaireMedecin(Long formulaireMedecinId) {
+        return nonNuls(reponseFormulaireRepository.findDistinctChampIdsSoumisByFormulaireMedecinId(formulaireMedecinId));
+    }
+
+    /**
+     * Identifiants des champs ayant au moins une réponse soumise, tous envois d'un formulaire confondus.
+     */
+    @Transactional(readOnly = true)
+    public List<Long> idsChampsRepondusParFormulaire(Long formulaireId) {
+        return nonNuls(reponseFormulaireRepository.findDistinctChampIdsSoumisByFormulaireId(formulaireId));
+    }
+
+    private static List<Long> nonNuls(List<Long> ids) {
+        return ids.stream().filter(Objects::nonNull).toList();
+    }
+
+    /**
+     * Découpe le curseur (trié par patient) en lots d'au plus SEUIL_PARALLELE lignes, coupés
+     * entre deux patients : la mémoire reste bornée quelle que soit la taille de l'étude, et chaque
+     * lot est déchiffré en parallèle avant d'être restitué patient par patient.
+     */
+    private void parcourirParPatient(Stream<Object[]> lignes, Consumer<List<ReponseExportDto>> parPatient) {
+        List<Object[]> lot = new ArrayList<>();
+        Iterator<Object[]> iterator = lignes.iterator();
+        while (iterator.hasNext()) {
+            Object[] ligne = iterator.next();
+            if (lot.size() >= SEUIL_PARALLELE && !Objects.equals(hash(ligne), hash(lot.get(lot.size() - 1)))) {
+                emettreParPatient(lot, parPatient);
+                lot = new ArrayList<>();
+            }
+            lot.add(ligne);
+        }
+        if (!lot.isEmpty()) {
+            emettreParPatient(lot, parPatient);
+        }
+    }
+
+    private void emettreParPatient(List<Object[]> lot, Consumer<List<ReponseExportDto>> parPatient) {
+        List<ReponseExportDto> reponses = dechiffrer(lot);
+        int debut = 0;
+        for (int i = 1; i <= reponses.size(); i++) {
+            if (i == reponses.size()
+                    || !Objects.equals(reponses.get(i).patientIdentifierHash(), reponses.get(debut).patientIdentifierHash())) {
+                parPatient.accept(reponses.subList(debut, i));
+                debut = i;
+            }
+        }
+    }
+
+    private static Object hash(Object[] ligne) {
+        return ligne[1];
+    }
+
+    private List<ReponseExportDto> dechiffrer(List<Object[]> lignes) {
+        if (lignes.size() < SEUIL_PARALLELE) {
+            return lignes.stream().map(this::dechiffrerLigne).toList();
+        }
+        // Un parallelStream lancé depuis un pool ForkJoin s'exécute dans ce pool (pas dans le pool commun)
+        return poolDechiffrement.submit(() -> lignes.parallelStream().map(this::dechiffrerLigne).toList()).join();
+    }
+
+    private ReponseExportDto dechiffrerLigne(Object[] ligne) {
+        return new ReponseExportDto(
+                ligne[0] != null ? ((Number) ligne[0]).longValue() : null,
+                (String) ligne[1],
+                cryptoConverter.convertToEntityAttribute(texte(ligne[2])),
+                cryptoConverter.convertToEntityAttribute(texte(ligne[3])),
+                toLocalDateTime(ligne[4])
+        );
+    }
+
+    // Selon le dialecte, une colonne TEXT peut remonter en Clob (H2) plutôt qu'en String (PostgreSQL)
+    private static String texte(Object valeur) {
+        if (valeur instanceof Clob clob) {
+            try {
+                return clob.getSubString(1, (int) clob.length());
+            } catch (SQLException e) {
+                throw new IllegalStateException("Lecture de la réponse impossible: " + e.getMessage(), e);
+            }
+        }
+        return (String) valeur;
+    }
+
+    private static LocalDateTime toLocalDateTime(Object valeur) {
+        if (valeur instanceof Timestamp timestamp) {
+            return timestamp.toLocalDateTime();
+        }
+        return (LocalDateTime) valeur;
+    }
+
+    @PreDestroy
+    void arreter() {
+        poolDechiffrement.shutdown();
+    }
+}
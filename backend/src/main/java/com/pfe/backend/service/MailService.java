@@ -5,14 +5,23 @@ import jakarta.mail.internet.MimeMessage;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.mail.MailException;
+import org.springframework.mail.MailSendException;
 import org.springframework.mail.javamail.JavaMailSender;
 import org.springframework.mail.javamail.MimeMessageHelper;
 import org.springframework.stereotype.Service;
 
 import com.pfe.backend.exception.EmailSendingException;
+import com.pfe.backend.model.MailSortant;
+import com.pfe.backend.repository.MailSortantRepository;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 /**
- * Service d'envoi d'emails HTML pour la réinitialisation de mot de passe.
+ * Service d'envoi d'emails HTML (code OTP, réinitialisation de mot de passe).
+ * Les emails passent par une file persistante (outbox) vidée par {@link MailSortantDispatcher}.
  */
 @Service
 @Slf4j
@@ -20,297 +29,99 @@ import com.pfe.backend.exception.EmailSendingException;
 public class MailService {
 
     private final JavaMailSender mailSender;
+    private final MailSortantRepository mailSortantRepository;
+    private final GabaritsMail gabaritsMail;
 
     @Value("${spring.mail.from:noreply@meddatacollect.com}")
     private String fromAddress;
 
     /**
-     * Envoie un email HTML avec le code de vérification.
+     * Place en file l'email HTML avec le code de vérification. Il est enregistré dans la transaction
+     * appelante et envoyé en arrière-plan après validation, sans attendre le serveur SMTP.
      *
      * @param to              adresse email du destinataire
      * @param verificationCode code de vérification à 6 chiffres
      * @param expiryMinutes   durée de validité du code en minutes
      */
     public void sendVerificationCodeEmail(String to, String verificationCode, int expiryMinutes) {
+        mettreEnFile(to, "Réinitialisation de votre mot de passe - MedDataCollect",
+                gabaritsMail.reinitialisationMotDePasse(), verificationCode, expiryMinutes);
+        log.info("Email de réinitialisation mis en file pour : {}", to);
+    }
+
+    /**
+     * Construit le message MIME d'un email de la file.
+     *
+     * @throws EmailSendingException si le message ne peut pas être construit (adresse invalide...)
+     */
+    public MimeMessage preparer(MailSortant mail) {
         try {
             MimeMessage mimeMessage = mailSender.createMimeMessage();
             MimeMessageHelper helper = new MimeMessageHelper(mimeMessage, true, "UTF-8");
 
             helper.setFrom(fromAddress);
-            helper.setTo(to);
-            helper.setSubject("Réinitialisation de votre mot de passe - MedDataCollect");
-
-            String htmlContent = buildPasswordResetEmailHtml(verificationCode, expiryMinutes);
-            helper.setText(htmlContent, true);
-
-            mailSender.send(mimeMessage);
-
-            log.info("Email de réinitialisation envoyé avec succès à : {}", to);
-
+            helper.setTo(mail.getDestinataire());
+            helper.setSubject(mail.getSujet());
+            // Partie texte en alternative de la partie HTML (absente des emails mis en file avant son ajout)
+            if (mail.getCorpsTexte() != null) {
+                helper.setText(mail.getCorpsTexte(), mail.getCorps());
+            } else {
+                helper.setText(mail.getCorps(), true);
+            }
+            return mimeMessage;
         } catch (MessagingException e) {
-            log.error("Erreur lors de la création du message email pour {}", to, e);
-            throw new EmailSendingException("Impossible de créer l'email de réinitialisation", e);
-        } catch (Exception e) {
-            log.error("Erreur lors de l'envoi du mail de réinitialisation vers {}", to, e);
-            throw new EmailSendingException("Impossible d'envoyer l'email de réinitialisation", e);
+            throw new EmailSendingException("Impossible de créer l'email pour " + mail.getDestinataire(), e);
         }
     }
 
     /**
-     * Génère le template HTML de l'email de réinitialisation.
+     * Envoie un lot de messages sur une même connexion SMTP.
+     *
+     * @return messages en échec avec leur cause (vide si tout a été envoyé)
      */
-    private String buildPasswordResetEmailHtml(String verificationCode, int expiryMinutes) {
-        return String.format(
-                """
-                        <!DOCTYPE html>
-                        <html lang="fr">
-                        <head>
-                            <meta charset="UTF-8">
-                            <meta name="viewport" content="width=device-width, initial-scale=1.0">
-                            <title>Réinitialisation de mot de passe</title>
-                        </head>
-                        <body style="margin: 0; padding: 0; font-family: -apple-system, BlinkMacSystemFont, 'Segoe UI', Roboto, 'Helvetica Neue', Arial, sans-serif; background-color: #f3f4f6; line-height: 1.6;">
-                            <table role="presentation" style="width: 100%%; border-collapse: collapse; background-color: #f3f4f6;">
-                                <tr>
-                                    <td align="center" style="padding: 40px 20px;">
-                                        <table role="presentation" style="max-width: 600px; width: 100%%; border-collapse: collapse; background-color: #ffffff; border-radius: 16px; box-shadow: 0 4px 6px rgba(0, 0, 0, 0.1);">
-
-                                            <!-- Header -->
-                                            <tr>
-                                                <td style="background: linear-gradient(135deg, #10b981 0%%, #3b82f6 50%%, #6366f1 100%%); padding: 40px 30px; text-align: center; border-radius: 16px 16px 0 0;">
-                                                    <h1 style="margin: 0; color: #ffffff; font-size: 28px; font-weight: 700;">
-                                                        MedDataCollect
-                                                    </h1>
-                                                    <p style="margin: 8px 0 0 0; color: rgba(255, 255, 255, 0.9); font-size: 14px;">
-                                                        Plateforme de Collecte de Données Médicales
-                                                    </p>
-                                                </td>
-                                            </tr>
-
-                                            <!-- Body -->
-                                            <tr>
-                                                <td style="padding: 40px 30px;">
-                                                    <h2 style="margin: 0 0 20px 0; color: #111827; font-size: 24px; font-weight: 600;">
-                                                        Réinitialisation de votre mot de passe
-                                                    </h2>
-
-                                                    <p style="margin: 0 0 20px 0; color: #4b5563; font-size: 16px;">
-                                                        Bonjour,
-                                                    </p>
-
-                                                    <p style="margin: 0 0 30px 0; color: #4b5563; font-size: 16px;">
-                                                        Vous avez demandé la réinitialisation de votre mot de passe.
-                                                        Utilisez le code de vérification ci-dessous pour continuer :
-                                                    </p>
-
-                                                    <!-- Code -->
-                                                    <table role="presentation" style="width: 100%%; border-collapse: collapse; margin: 0 0 30px 0;">
-                                                        <tr>
-                                                            <td align="center" style="padding: 30px; background: linear-gradient(135deg, #ecfdf5 0%%, #dbeafe 100%%); border-radius: 12px; border: 2px solid #10b981;">
-                                                                <div style="font-size: 14px; color: #059669; font-weight: 600; text-transform: uppercase; letter-spacing: 1px; margin-bottom: 12px;">
-                                                                    Votre code de vérification
-                                                                </div>
-                                                                <div style="font-size: 42px; font-weight: 700; color: #047857; letter-spacing: 8px; font-family: 'Courier New', monospace;">
-                                                                    %s
-                                                                </div>
-                                                            </td>
-                                                        </tr>
-                                                    </table>
-
-                                                    <!-- Warning -->
-                                                    <table role="presentation" style="width: 100%%; border-collapse: collapse; margin: 0 0 20px 0; background-color: #fef3c7; border-left: 4px solid #f59e0b; border-radius: 8px;">
-                                                        <tr>
-                                                            <td style="padding: 16px 20px;">
-                                                                <p style="margin: 0; color: #92400e; font-size: 14px;">
-                                                                    <strong>Ce code est valable pendant %d minutes.</strong>
-                                                                </p>
-                                                            </td>
-                                                        </tr>
-                                                    </table>
-
-                                                    <p style="margin: 0 0 20px 0; color: #4b5563; font-size: 16px;">
-                                                        Après avoir saisi ce code, vous pourrez définir un nouveau mot de passe pour votre compte.
-                                                    </p>
-                                                </td>
-                                            </tr>
-
-                                            <!-- Security -->
-                                            <tr>
-                                                <td style="padding: 0 30px 40px 30px;">
-                                                    <table role="presentation" style="width: 100%%; border-collapse: collapse; background-color: #fef2f2; border-radius: 8px; border: 1px solid #fecaca;">
-                                                        <tr>
-                                                            <td style="padding: 20px;">
-                                                                <p style="margin: 0 0 10px 0; color: #991b1b; font-size: 14px; font-weight: 600;">
-                                                                    Mesures de sécurité
-                                                                </p>
-                                                                <p style="margin: 0; color: #7f1d1d; font-size: 14px; line-height: 1.6;">
-                                                                    Si vous n'êtes pas à l'origine de cette demande, vous pouvez ignorer ce message en toute sécurité.
-                                                                    Votre mot de passe actuel restera inchangé.
-                                                                </p>
-                                                            </td>
-                                                        </tr>
-                                                    </table>
-                                                </td>
-                                            </tr>
-
-                                            <!-- Footer -->
-                                            <tr>
-                                                <td style="padding: 30px; background-color: #f9fafb; border-radius: 0 0 16px 16px; border-top: 1px solid #e5e7eb;">
-                                                    <p style="margin: 0 0 8px 0; color: #6b7280; font-size: 13px; text-align: center;">
-                                                        Cet email a été envoyé par <strong>MedDataCollect</strong>
-                                                    </p>
-                                                    <p style="margin: 0; color: #9ca3af; font-size: 12px; text-align: center;">
-                                                        Plateforme sécurisée de collecte de données médicales pour la recherche clinique
-                                                    </p>
-                                                </td>
-                                            </tr>
-
-                                        </table>
-                                    </td>
-                                </tr>
-                            </table>
-                        </body>
-                        </html>
-                        """,
-                verificationCode, expiryMinutes);
+    public Map<MimeMessage, Exception> envoyer(List<MimeMessage> messages) {
+        if (messages.isEmpty()) {
+            return Map.of();
+        }
+        try {
+            mailSender.send(messages.toArray(MimeMessage[]::new));
+            return Map.of();
+        } catch (MailSendException e) {
+            Map<MimeMessage, Exception> echecs = new HashMap<>();
+            e.getFailedMessages().forEach((message, cause) -> {
+                if (message instanceof MimeMessage mimeMessage) {
+                    echecs.put(mimeMessage, cause);
+                }
+            });
+            // Échec global (connexion impossible...) : aucun message n'est identifié, tous sont à réessayer
+            if (echecs.isEmpty()) {
+                messages.forEach(message -> echecs.put(message, e));
+            }
+            return echecs;
+        } catch (MailException e) {
+            Map<MimeMessage, Exception> echecs = new HashMap<>();
+            messages.forEach(message -> echecs.put(message, e));
+            return echecs;
+        }
     }
 
     /**
-     * Envoie un email avec le code OTP pour l'authentification à deux facteurs.
+     * Place en file l'email avec le code OTP pour l'authentification à deux facteurs.
+     * La connexion ne dépend ainsi ni de la latence ni de la disponibilité du serveur SMTP.
      *
      * @param to           adresse email du destinataire
      * @param otpCode      code OTP à 6 chiffres
      * @param expiryMinutes durée de validité du code en minutes
      */
     public void sendOtpEmail(String to, String otpCode, int expiryMinutes) {
-        try {
-            MimeMessage mimeMessage = mailSender.createMimeMessage();
-            MimeMessageHelper helper = new MimeMessageHelper(mimeMessage, true, "UTF-8");
-
-            helper.setFrom(fromAddress);
-            helper.setTo(to);
-            helper.setSubject("Code de connexion - MedDataCollect");
-
-            String htmlContent = buildOtpEmailHtml(otpCode, expiryMinutes);
-            helper.setText(htmlContent, true);
-
-            mailSender.send(mimeMessage);
-
-            log.info("Email OTP envoyé avec succès à : {}", to);
-
-        } catch (MessagingException e) {
-            log.error("Erreur lors de la création du message OTP pour {}", to, e);
-            throw new EmailSendingException("Impossible de créer l'email OTP", e);
-        } catch (Exception e) {
-            log.error("Erreur lors de l'envoi de l'email OTP vers {}", to, e);
-            throw new EmailSendingException("Impossible d'envoyer l'email OTP", e);
-        }
+        mettreEnFile(to, "Code de connexion - MedDataCollect", gabaritsMail.codeConnexion(), otpCode, expiryMinutes);
+        log.info("Email OTP mis en file pour : {}", to);
     }
 
-    /**
-     * Génère le template HTML de l'email OTP pour la connexion.
-     */
-    private String buildOtpEmailHtml(String otpCode, int expiryMinutes) {
-        return String.format(
-                """
-                        <!DOCTYPE html>
-                        <html lang="fr">
-                        <head>
-                            <meta charset="UTF-8">
-                            <meta name="viewport" content="width=device-width, initial-scale=1.0">
-                            <title>Code de connexion</title>
-                        </head>
-                        <body style="margin: 0; padding: 0; font-family: -apple-system, BlinkMacSystemFont, 'Segoe UI', Roboto, 'Helvetica Neue', Arial, sans-serif; background-color: #f3f4f6; line-height: 1.6;">
-                            <table role="presentation" style="width: 100%%; border-collapse: collapse; background-color: #f3f4f6;">
-                                <tr>
-                                    <td align="center" style="padding: 40px 20px;">
-                                        <table role="presentation" style="max-width: 600px; width: 100%%; border-collapse: collapse; background-color: #ffffff; border-radius: 16px; box-shadow: 0 4px 6px rgba(0, 0, 0, 0.1);">
-
-                                            <!-- Header -->
-                                            <tr>
-                                                <td style="background: linear-gradient(135deg, #10b981 0%%, #3b82f6 50%%, #6366f1 100%%); padding: 40px 30px; text-align: center; border-radius: 16px 16px 0 0;">
-                                                    <h1 style="margin: 0; color: #ffffff; font-size: 28px; font-weight: 700;">
-                                                        MedDataCollect
-                                                    </h1>
-                                                    <p style="margin: 8px 0 0 0; color: rgba(255, 255, 255, 0.9); font-size: 14px;">
-                                                        Authentification sécurisée
-                                                    </p>
-                                                </td>
-                                            </tr>
-
-                                            <!-- Body -->
-                                            <tr>
-                                                <td style="padding: 40px 30px;">
-                                                    <h2 style="margin: 0 0 20px 0; color: #111827; font-size: 24px; font-weight: 600;">
-                                                        Code de connexion
-                                                    </h2>
-
-                                                    <p style="margin: 0 0 30px 0; color: #4b5563; font-size: 16px;">
-                                                        Vous tentez de vous connecter à votre compte. Utilisez le code ci-dessous pour confirmer votre identité :
-                                                    </p>
-
-                                                    <!-- Code -->
-                                                    <table role="presentation" style="width: 100%%; border-collapse: collapse; margin: 0 0 30px 0;">
-                                                        <tr>
-                                                            <td align="center" style="padding: 30px; background: linear-gradient(135deg, #ecfdf5 0%%, #dbeafe 100%%); border-radius: 12px; border: 2px solid #10b981;">
-                                                                <div style="font-size: 14px; color: #059669; font-weight: 600; text-transform: uppercase; letter-spacing: 1px; margin-bottom: 12px;">
-                                                                    Votre code de connexion
-                                                                </div>
-                                                                <div style="font-size: 42px; font-weight: 700; color: #047857; letter-spacing: 8px; font-family: 'Courier New', monospace;">
-                                                                    %s
-                                                                </div>
-                                                            </td>
-                                                        </tr>
-                                                    </table>
-
-                                                    <!-- Warning -->
-                                                    <table role="presentation" style="width: 100%%; border-collapse: collapse; margin: 0 0 20px 0; background-color: #fef3c7; border-left: 4px solid #f59e0b; border-radius: 8px;">
-                                                        <tr>
-                                                            <td style="padding: 16px 20px;">
-                                                                <p style="margin: 0; color: #92400e; font-size: 14px;">
-                                                                    <strong>Ce code est valable pendant %d minutes.</strong>
-                                                                </p>
-                                                            </td>
-                                                        </tr>
-                                                    </table>
-                                                </td>
-                                            </tr>
-
-                                            <!-- Security -->
-                                            <tr>
-                                                <td style="padding: 0 30px 40px 30px;">
-                                                    <table role="presentation" style="width: 100%%; border-collapse: collapse; background-color: #fef2f2; border-radius: 8px; border: 1px solid #fecaca;">
-                                                        <tr>
-                                                            <td style="padding: 20px;">
-                                                                <p style="margin: 0 0 10px 0; color: #991b1b; font-size: 14px; font-weight: 600;">
-                                                                    Mesures de sécurité
-                                                                </p>
-                                                                <p style="margin: 0; color: #7f1d1d; font-size: 14px; line-height: 1.6;">
-                                                                    Si vous n'êtes pas à l'origine de cette tentative de connexion, changez immédiatement votre mot de passe.
-                                                                </p>
-                                                            </td>
-                                                        </tr>
-                                                    </table>
-                                                </td>
-                                            </tr>
-
-                                            <!-- Footer -->
-                                            <tr>
-                                                <td style="padding: 30px; background-color: #f9fafb; border-radius: 0 0 16px 16px; border-top: 1px solid #e5e7eb;">
-                                                    <p style="margin: 0; color: #6b7280; font-size: 13px; text-align: center;">
-                                                        Cet email a été envoyé par <strong>MedDataCollect</strong>
-                                                    </p>
-                                                </td>
-                                            </tr>
-
-                                        </table>
-                                    </td>
-                                </tr>
-                            </table>
-                        </body>
-                        </html>
-                        """,
-                otpCode, expiryMinutes);
+    private void mettreEnFile(String to, String sujet, GabaritMail gabarit, String code, int expiryMinutes) {
+        GabaritMail.Rendu rendu = gabarit.rendre(Map.of("code", code, "minutes", Integer.toString(expiryMinutes)));
+        MailSortant mail = new MailSortant(to, sujet, rendu.html(), rendu.texte());
+        mail.setExpireA(mail.getDateCreation().plusMinutes(expiryMinutes));
+        mailSortantRepository.save(mail);
     }
 }
-
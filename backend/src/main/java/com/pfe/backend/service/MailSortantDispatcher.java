@@ -0,0 +1,192 @@
+package com.pfe.backend.service;
+
+import com.pfe.backend.exception.EmailSendingException;
+import com.pfe.backend.model.MailSortant;
+import com.pfe.backend.model.StatutMail;
+import com.pfe.backend.repository.MailSortantRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.mail.internet.MimeMessage;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Vide la file des emails (outbox) en arrière-plan : un lot par passage, envoyé sur une seule
+ * connexion SMTP. Un email en échec est réessayé avec un délai qui double à chaque tentative,
+ * puis abandonné (statut ECHEC) au-delà du nombre maximal de tentatives. Un email dont le code
+ * a expiré est supprimé plutôt qu'envoyé ou réessayé.
+ * Le lot est réservé dans une transaction courte (prochain essai repoussé de la durée du bail) :
+ * aucune connexion ni verrou n'est tenu pendant l'envoi SMTP, et un lot réservé par une instance
+ * arrêtée en cours d'envoi est repris à la fin du bail.
+ */
+@Slf4j
+@Component
+public class MailSortantDispatcher {
+
+    private final MailSortantRepository mailSortantRepository;
+    private final MailService mailService;
+    private final TransactionTemplate transaction;
+    private final int tailleLot;
+    private final int tentativesMax;
+    private final Duration delaiInitial;
+    private final Duration delaiMax;
+    private final Duration bail;
+    private final Counter envoyes;
+    private final Counter reessais;
+    private final Counter echecs;
+    private final Counter expires;
+    private final Timer dureeEnvoi;
+
+    public MailSortantDispatcher(MailSortantRepository mailSortantRepository,
+                                 MailService mailService,
+                                 MeterRegistry meterRegistry,
+                                 PlatformTransactionManager transactionManager,
+                                 @Value("${app.mail.outbox.taille-lot:50}") int tailleLot,
+                                 @Value("${app.mail.outbox.tentatives-max:6}") int tentativesMax,
+                                 @Value("${app.mail.outbox.delai-initial:30s}") Duration delaiInitial,
+                                 @Value("${app.mail.outbox.delai-max:30m}") Duration delaiMax,
+                                 @Value("${app.mail.outbox.bail:5m}") Duration bail) {
+        this.mailSortantRepository = mailSortantRepository;
+        this.mailService = mailService;
+        this.transaction = new TransactionTemplate(transactionManager);
+        this.tailleLot = tailleLot;
+        this.tentativesMax = tentativesMax;
+        this.delaiInitial = delaiInitial;
+        this.delaiMax = delaiMax;
+        this.bail = bail;
+        this.envoyes = meterRegistry.counter("mail.sortant.envoyes");
+        this.reessais = meterRegistry.counter("mail.sortant.reessais");
+        this.echecs = meterRegistry.counter("mail.sortant.echecs");
+        this.expires = meterRegistry.counter("mail.sortant.expires");
+        this.dureeEnvoi = meterRegistry.timer("mail.sortant.envoi");
+        Gauge.builder("mail.sortant.en_attente", mailSortantRepository,
+                        repository -> repository.countByStatut(StatutMail.EN_ATTENTE))
+                .register(meterRegistry);
+    }
+
+    /**
+     * Envoie un lot d'emails dus, réservé au préalable pour qu'une autre instance ne l'envoie pas
+     * en même temps ; le résultat de l'envoi est enregistré dans une seconde transaction courte.
+     *
+     * @return nombre d'emails traités (envoyés, reprogrammés ou abandonnés)
+     */
+    @Scheduled(fixedDelayString = "${app.mail.outbox.intervalle:2s}")
+    public int envoyerLot() {
+        LocalDateTime maintenant = LocalDateTime.now();
+        List<MailSortant> lot = transaction.execute(statut -> reserver(maintenant));
+        if (lot == null || lot.isEmpty()) {
+            return 0;
+        }
+
+        Map<MimeMessage, MailSortant> parMessage = new LinkedHashMap<>();
+        for (MailSortant mail : lot) {
+            try {
+                parMessage.put(mailService.preparer(mail), mail);
+            } catch (EmailSendingException e) {
+                // Message impossible à construire : le réessayer ne changerait rien
+                abandonner(mail, e);
+            }
+        }
+
+        Map<MimeMessage, Exception> echecsEnvoi = dureeEnvoi.record(
+                () -> mailService.envoyer(new ArrayList<>(parMessage.keySet())));
+
+        List<MailSortant> aSupprimer = new ArrayList<>();
+        List<MailSortant> aEnregistrer = new ArrayList<>(lot);
+        int envoyesDuLot = 0;
+        for (Map.Entry<MimeMessage, MailSortant> entree : parMessage.entrySet()) {
+            MailSortant mail = entree.getValue();
+            Exception cause = echecsEnvoi.get(entree.getKey());
+            if (cause == null) {
+                envoyesDuLot++;
+            } else if (reprogrammer(mail, cause, maintenant)) {
+                continue;
+            }
+            aEnregistrer.remove(mail);
+            aSupprimer.add(mail);
+        }
+        transaction.executeWithoutResult(statut -> {
+            if (!aSupprimer.isEmpty()) {
+                mailSortantRepository.deleteAllInBatch(aSupprimer);
+            }
+            mailSortantRepository.saveAll(aEnregistrer);
+        });
+        envoyes.increment(envoyesDuLot);
+        log.debug("Lot d'emails traité : {} envoyés sur {}", envoyesDuLot, lot.size());
+        return lot.size();
+    }
+
+    // Supprime les emails expirés puis réserve les emails dus en repoussant leur prochain essai
+    private List<MailSortant> reserver(LocalDateTime maintenant) {
+        int supprimes = mailSortantRepository.deleteExpires(maintenant);
+        if (supprimes > 0) {
+            expires.increment(supprimes);
+            log.info("{} email(s) supprimé(s) de la file : code expiré", supprimes);
+        }
+        List<MailSortant> lot = mailSortantRepository.findAEnvoyer(maintenant, PageRequest.of(0, tailleLot));
+        lot.forEach(mail -> mail.setProchainEssai(maintenant.plus(bail)));
+        return lot;
+    }
+
+    /**
+     * Programme un nouvel essai, ou abandonne l'email.
+     *
+     * @return false si l'email est à supprimer (son code aura expiré avant le prochain essai)
+     */
+    private boolean reprogrammer(MailSortant mail, Exception cause, LocalDateTime maintenant) {
+        mail.setTentatives(mail.getTentatives() + 1);
+        if (mail.getTentatives() >= tentativesMax) {
+            abandonner(mail, cause);
+            return true;
+        }
+        LocalDateTime prochainEssai = maintenant.plus(delaiAvant(mail.getTentatives()));
+        if (mail.getExpireA() != null && !prochainEssai.isBefore(mail.getExpireA())) {
+            expires.increment();
+            log.warn("Envoi de l'email {} vers {} en échec, supprimé : son code aura expiré avant le prochain essai",
+                    mail.getId(), mail.getDestinataire(), cause);
+            return false;
+        }
+        mail.setProchainEssai(prochainEssai);
+        mail.setDerniereErreur(resumer(cause));
+        reessais.increment();
+        log.warn("Envoi de l'email {} vers {} en échec (tentative {}), nouvel essai le {}",
+                mail.getId(), mail.getDestinataire(), mail.getTentatives(), mail.getProchainEssai());
+        return true;
+    }
+
+    private void abandonner(MailSortant mail, Exception cause) {
+        mail.setStatut(StatutMail.ECHEC);
+        mail.setDerniereErreur(resumer(cause));
+        echecs.increment();
+        log.error("Email {} vers {} abandonné après {} tentative(s)", mail.getId(), mail.getDestinataire(),
+                mail.getTentatives(), cause);
+    }
+
+    // Délai initial doublé à chaque nouvelle tentative, plafonné
+    Duration delaiAvant(int tentatives) {
+        Duration delai = delaiInitial;
+        for (int i = 1; i < tentatives && delai.compareTo(delaiMax) < 0; i++) {
+            delai = delai.multipliedBy(2);
+        }
+        return delai.compareTo(delaiMax) > 0 ? delaiMax : delai;
+    }
+
+    private static String resumer(Exception cause) {
+        String message = cause.getMessage() != null ? cause.getMessage() : cause.getClass().getSimpleName();
+        return message.length() > 500 ? message.substring(0, 500) : message;
+    }
+}
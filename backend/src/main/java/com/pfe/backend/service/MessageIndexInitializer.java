@@ -0,0 +1,40 @@
+package com.pfe.backend.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+/**
+ * Crée, une fois l'application prête, l'index partiel des messages non lus (PostgreSQL uniquement,
+ * un index partiel ne s'exprimant pas en JPA). Il ne contient que les messages en attente de lecture :
+ * le marquage d'une conversation comme lue et le décompte des non lus restent petits quel que soit
+ * l'historique.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class MessageIndexInitializer {
+
+    static final String INDEX_NON_LUS = "CREATE INDEX IF NOT EXISTS idx_message_non_lus "
+            + "ON message (destinataire_id, expediteur_id) WHERE lu = false";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void initialiser() {
+        String base = jdbcTemplate.execute((ConnectionCallback<String>) c -> c.getMetaData().getDatabaseProductName());
+        if (!"PostgreSQL".equalsIgnoreCase(base)) {
+            return;
+        }
+        try {
+            jdbcTemplate.execute(INDEX_NON_LUS);
+        } catch (DataAccessException e) {
+            log.warn("Création de l'index des messages non lus impossible", e);
+        }
+    }
+}
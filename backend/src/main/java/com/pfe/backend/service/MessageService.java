@@ -1,13 +1,23 @@
 package com.pfe.backend.service;
 
+import com.pfe.backend.dto.ConversationPageResponse;
+import com.pfe.backend.dto.ConversationResumeDto;
+import com.pfe.backend.dto.MessageConversationDto;
+import com.pfe.backend.dto.UtilisateurDto;
 import com.pfe.backend.model.Message;
 import com.pfe.backend.model.Utilisateur;
 import com.pfe.backend.repository.MessageRepository;
+import com.pfe.backend.repository.UtilisateurRepository;
 import lombok.RequiredArgsConstructor;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.security.access.AccessDeniedException;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
 
 /**
@@ -18,7 +28,19 @@ import java.util.List;
 @RequiredArgsConstructor
 public class MessageService {
 
+    // Plafond d'une page de conversation
+    static final int TAILLE_MAX_PAGE = 100;
+
+    private static final Comparator<MessageConversationDto> DU_PLUS_RECENT = Comparator
+            .comparing(MessageConversationDto::dateEnvoi)
+            .thenComparing(MessageConversationDto::id)
+            .reversed();
+
     private final MessageRepository messageRepository;
+    private final UtilisateurRepository utilisateurRepository;
+    private final NotificationsMessages notificationsMessages;
+    private final ConversationResumeService conversationResumeService;
+
     /**
      * Envoie un message entre médecin et chercheur avec contrôle strict des rôles.
      *
@@ -27,6 +49,7 @@ public class MessageService {
      * @param contenu contenu du message
      * @return message persistant
      */
+    @Transactional
     public Message envoyerMessage(Utilisateur emetteur, Utilisateur destinataire, String contenu) {
 
         Message message = new Message();
@@ -36,7 +59,10 @@ public class MessageService {
         message.setDestinataire(destinataire);
         message.setLu(false);
 
-        return messageRepository.save(message);
+        Message envoye = messageRepository.save(message);
+        conversationResumeService.messageEnvoye(envoye);
+        notificationsMessages.messageEnvoye(envoye);
+        return envoye;
     }
 
     /**
@@ -84,45 +110,108 @@ public class MessageService {
     }
 
     /**
-     * Marque comme lus seulement les messages dont le destinataire est le chercheur.
+     * Page d'une conversation, en remontant depuis le message le plus récent.
+     * Chaque sens de la conversation est lu séparément (au plus {@code taille} messages, par l'index
+     * émetteur/destinataire/date), puis les deux lectures sont fusionnées : le coût d'une page ne dépend
+     * pas de la longueur de l'historique. Seuls les messages de la page sont déchiffrés.
+     *
+     * @param chercheurId ID du chercheur
+     * @param medecinId ID du médecin
+     * @param avant curseur renvoyé avec la page précédente ({@link #curseur(MessageConversationDto)}), null pour la plus récente
+     * @param taille nombre de messages par page (au plus {@value #TAILLE_MAX_PAGE})
+     * @return participants et messages de la page, dans l'ordre chronologique
      */
-    public void marquerCommeLus(Long chercheurId, Long medecinId) {
-        List<Message> messages = messageRepository
-                .findConversation(medecinId, chercheurId)
-                .stream()
-                .filter(m -> !m.isLu() && m.getDestinataire().getId().equals(chercheurId))
+    @Transactional(readOnly = true)
+    public ConversationPageResponse getConversationPage(Long chercheurId, Long medecinId, String avant, int taille) {
+        if (taille < 1 || taille > TAILLE_MAX_PAGE) {
+            throw new IllegalArgumentException("La taille de page doit être comprise entre 1 et " + TAILLE_MAX_PAGE + ": " + taille);
+        }
+        PageRequest page = PageRequest.of(0, taille);
+        List<MessageConversationDto> messages = new ArrayList<>(2 * taille);
+        CurseurDate curseur = CurseurDate.lire(avant);
+        if (curseur == null) {
+            messages.addAll(messageRepository.findDerniersMessages(chercheurId, medecinId, page));
+            messages.addAll(messageRepository.findDerniersMessages(medecinId, chercheurId, page));
+        } else {
+            messages.addAll(messageRepository.findMessagesAvant(chercheurId, medecinId, curseur.date(), curseur.id(), page));
+            messages.addAll(messageRepository.findMessagesAvant(medecinId, chercheurId, curseur.date(), curseur.id(), page));
+        }
+        messages.sort(DU_PLUS_RECENT);
+        // Un message de plus que la page prouve qu'il reste des messages plus anciens
+        String suivant = null;
+        if (messages.size() > taille) {
+            messages = new ArrayList<>(messages.subList(0, taille));
+            suivant = curseur(messages.get(taille - 1));
+        }
+        Collections.reverse(messages);
+
+        List<UtilisateurDto> participants = utilisateurRepository.findAllById(List.of(chercheurId, medecinId)).stream()
+                .map(UtilisateurDto::from)
                 .toList();
+        return new ConversationPageResponse(participants, messages, suivant);
+    }
+
+    /**
+     * Boîte de réception d'un utilisateur, lue dans les résumés de conversation
+     * (voir {@link ConversationResumeService}).
+     *
+     * @param utilisateurId ID de l'utilisateur
+     * @return conversations, de la plus récemment active à la plus ancienne
+     */
+    public List<ConversationResumeDto> getBoiteDeReception(Long utilisateurId) {
+        return conversationResumeService.getBoiteDeReception(utilisateurId);
+    }
 
-        messages.forEach(m -> m.setLu(true));
-        messageRepository.saveAll(messages);
+    /**
+     * Curseur désignant la position d'un message dans sa conversation (date d'envoi, id).
+     */
+    public static String curseur(MessageConversationDto message) {
+        return CurseurDate.formater(message.dateEnvoi(), message.id());
+    }
+
+    /**
+     * Marque comme lus seulement les messages dont le destinataire est le chercheur.
+     *
+     * @return nombre de messages marqués
+     */
+    @Transactional
+    public int marquerCommeLus(Long chercheurId, Long medecinId) {
+        int marques = messageRepository.marquerCommeLus(chercheurId, medecinId);
+        if (marques > 0) {
+            conversationResumeService.conversationLue(chercheurId, medecinId, marques);
+        }
+        notificationsMessages.messagesLus(chercheurId, medecinId, marques);
+        return marques;
     }
     /**
      * Marque comme lus seulement les messages dont le destinataire est le médecin.
+     *
+     * @return nombre de messages marqués
      */
-    public void marquerCommeLusPourMedecin(Long chercheurId, Long medecinId) {
-        List<Message> messages = messageRepository
-                .findConversation(medecinId, chercheurId)
-                .stream()
-                .filter(m -> !m.isLu() && m.getDestinataire().getId().equals(medecinId))
-                .toList();
-
-        messages.forEach(m -> m.setLu(true));
-        messageRepository.saveAll(messages);
+    @Transactional
+    public int marquerCommeLusPourMedecin(Long chercheurId, Long medecinId) {
+        int marques = messageRepository.marquerCommeLus(medecinId, chercheurId);
+        if (marques > 0) {
+            conversationResumeService.conversationLue(medecinId, chercheurId, marques);
+        }
+        notificationsMessages.messagesLus(medecinId, chercheurId, marques);
+        return marques;
     }
 
+    // Les compteurs de non lus sont servis depuis la mémoire (voir NotificationsMessages)
     public long countMessagesNonLusPourChercheur(Long chercheurId) {
-        return messageRepository.countByDestinataireIdAndLuFalse(chercheurId);
+        return notificationsMessages.totalNonLus(chercheurId);
     }
 
     /**
      * Compte les messages non lus envoyés par emetteurId vers destinataireId.
      */
     public int countUnreadForConversation(Long destinataireId, Long emetteurId) {
-        return messageRepository.countUnreadMessages(destinataireId, emetteurId);
+        return notificationsMessages.nonLus(destinataireId, emetteurId);
     }
 
     public long countMessagesNonLusPourMedecin(Long idMedecin) {
-        return messageRepository.countByDestinataireIdAndLuFalse(idMedecin);
+        return notificationsMessages.totalNonLus(idMedecin);
     }
 
     /**
@@ -133,6 +222,7 @@ public class MessageService {
      * @throws RuntimeException si le message n'existe pas
      * @throws AccessDeniedException si l'utilisateur n'est pas l'émetteur
      */
+    @Transactional
     public void supprimerMessage(Long messageId, Long userId) {
         Message message = messageRepository.findById(messageId)
                 .orElseThrow(() -> new RuntimeException("Message non trouvé"));
@@ -142,6 +232,8 @@ public class MessageService {
         }
 
         messageRepository.delete(message);
+        conversationResumeService.recalculer(message.getEmetteur().getId(), message.getDestinataire().getId());
+        notificationsMessages.messageSupprime(message);
     }
 
 }
\ No newline at end of file
@@ -0,0 +1,311 @@
+package com.pfe.backend.service;
+
+import com.pfe.backend.model.Message;
+import com.pfe.backend.repository.MessageRepository;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Messages non lus tenus en mémoire et poussés aux clients connectés (Server-Sent Events).
+ * Les compteurs d'un destinataire sont chargés en une requête à la première lecture, puis mis à jour
+ * à l'envoi, à la lecture et à la suppression des messages ; ils sont rechargés après une durée fixe,
+ * ce qui borne l'écart avec la base (autre instance, modification directe). Un chargement pendant lequel
+ * une modification des messages du destinataire est en cours de validation n'est pas mis en cache :
+ * il ne pourrait pas savoir s'il la compte déjà.
+ * Une connexion SSE inactive n'occupe pas de thread : la requête reste en mode asynchrone. Les événements
+ * sont poussés par un thread dédié, hors du thread qui valide la modification, dans l'ordre de validation ;
+ * si sa file est pleine, l'événement est abandonné (le client relit ses non lus à la reconnexion).
+ */
+@Slf4j
+@Service
+public class NotificationsMessages {
+
+    static final String EVENEMENT_MESSAGE = "message";
+    static final String EVENEMENT_NON_LUS = "non-lus";
+
+    /** Nouveau message poussé à son destinataire. */
+    public record MessageRecu(Long id, Long emetteurId, String contenu, LocalDateTime dateEnvoi) {
+    }
+
+    /** Messages non lus d'un utilisateur : total et détail par émetteur (conversation). */
+    public record NonLus(long total, Map<Long, Integer> parEmetteur) {
+    }
+
+    // Non lus par émetteur, figés : une mise à jour remplace l'entrée entière
+    private record Compteurs(Map<Long, Integer> parEmetteur, long expireA) {
+
+        Compteurs ajuster(Long emetteurId, int delta) {
+            Map<Long, Integer> copie = new HashMap<>(parEmetteur);
+            int nombre = Math.max(0, copie.getOrDefault(emetteurId, 0) + delta);
+            if (nombre == 0) {
+                copie.remove(emetteurId);
+            } else {
+                copie.put(emetteurId, nombre);
+            }
+            return new Compteurs(Map.copyOf(copie), expireA);
+        }
+    }
+
+    private final MessageRepository messageRepository;
+    private final long ttlNanos;
+    private final int tailleMax;
+    private final long timeoutFluxMs;
+    private final Map<Long, Compteurs> compteurs = new ConcurrentHashMap<>();
+    // Suivi des modifications par destinataire : jamais retiré, pour que la génération reste croissante
+    private final Map<Long, Suivi> suivis = new ConcurrentHashMap<>();
+    private final Map<Long, Set<SseEmitter>> flux = new ConcurrentHashMap<>();
+    private final Executor publication;
+
+    // Modifications en cours de validation et génération, incrémentée à chaque début et fin de modification
+    private record Suivi(int enCours, long generation) {
+    }
+
+    @Autowired
+    public NotificationsMessages(MessageRepository messageRepository,
+                                 @Value("${app.messages.compteurs.ttl:5m}") Duration ttl,
+                                 @Value("${app.messages.compteurs.taille-max:10000}") int tailleMax,
+                                 @Value("${app.messages.flux.timeout:30m}") Duration timeoutFlux,
+                                 @Value("${app.messages.flux.file-publication:10000}") int filePublication) {
+        this(messageRepository, ttl, tailleMax, timeoutFlux, new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(filePublication),
+                r -> {
+                    Thread thread = new Thread(r, "notifications-sse");
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                (tache, pool) -> log.warn("File de publication des notifications pleine, événement abandonné")));
+    }
+
+    NotificationsMessages(MessageRepository messageRepository, Duration ttl, int tailleMax, Duration timeoutFlux,
+                          Executor publication) {
+        this.messageRepository = messageRepository;
+        this.ttlNanos = ttl.toNanos();
+        this.tailleMax = tailleMax;
+        this.timeoutFluxMs = timeoutFlux.toMillis();
+        this.publication = publication;
+    }
+
+    /**
+     * Ouvre le flux d'un utilisateur. Le premier événement porte ses non lus ; le client se reconnecte
+     * à l'expiration du flux.
+     */
+    public SseEmitter abonner(Long utilisateurId) {
+        SseEmitter emitter = new SseEmitter(timeoutFluxMs);
+        flux.compute(utilisateurId, (id, emitters) -> {
+            Set<SseEmitter> ouverts = emitters != null ? emitters : ConcurrentHashMap.newKeySet();
+            ouverts.add(emitter);
+            return ouverts;
+        });
+        Runnable retirer = () -> retirer(utilisateurId, emitter);
+        emitter.onCompletion(retirer);
+        emitter.onTimeout(retirer);
+        emitter.onError(erreur -> retirer.run());
+        envoyer(utilisateurId, emitter, SseEmitter.event().name(EVENEMENT_NON_LUS).data(getNonLus(utilisateurId)));
+        return emitter;
+    }
+
+    public NonLus getNonLus(Long destinataireId) {
+        Map<Long, Integer> parEmetteur = charger(destinataireId).parEmetteur();
+        long total = 0;
+        for (int nombre : parEmetteur.values()) {
+            total += nombre;
+        }
+        return new NonLus(total, parEmetteur);
+    }
+
+    public long totalNonLus(Long destinataireId) {
+        return getNonLus(destinataireId).total();
+    }
+
+    public int nonLus(Long destinataireId, Long emetteurId) {
+        return charger(destinataireId).parEmetteur().getOrDefault(emetteurId, 0);
+    }
+
+    /**
+     * Compte un nouveau message et le pousse à son destinataire, une fois l'envoi validé.
+     */
+    public void messageEnvoye(Message message) {
+        Long destinataireId = message.getDestinataire().getId();
+        Long emetteurId = message.getEmetteur().getId();
+        MessageRecu recu = new MessageRecu(message.getId(), emetteurId, message.getContenu(), message.getDateEnvoi());
+        ajusterApresCommit(destinataireId, emetteurId, 1, () -> publication.execute(() -> {
+            publier(destinataireId, () -> SseEmitter.event().name(EVENEMENT_MESSAGE).data(recu));
+            publierNonLus(destinataireId);
+        }));
+    }
+
+    /**
+     * Décompte les messages d'une conversation que le destinataire vient de lire.
+     */
+    public void messagesLus(Long destinataireId, Long emetteurId, int nombre) {
+        if (nombre == 0) {
+            return;
+        }
+        ajusterApresCommit(destinataireId, emetteurId, -nombre,
+                () -> publication.execute(() -> publierNonLus(destinataireId)));
+    }
+
+    /**
+     * Décompte un message supprimé avant d'avoir été lu.
+     */
+    public void messageSupprime(Message message) {
+        if (!message.isLu()) {
+            messagesLus(message.getDestinataire().getId(), message.getEmetteur().getId(), 1);
+        }
+    }
+
+    int nombreConnexions() {
+        return flux.values().stream().mapToInt(Set::size).sum();
+    }
+
+    /**
+     * Commentaire SSE périodique : garde les connexions ouvertes à travers les proxys
+     * et libère celles dont le client est parti.
+     */
+    @Scheduled(fixedDelayString = "${app.messages.flux.battement:30s}")
+    public void battement() {
+        flux.forEach((utilisateurId, emitters) -> {
+            for (SseEmitter emitter : emitters) {
+                envoyer(utilisateurId, emitter, SseEmitter.event().comment(""));
+            }
+        });
+    }
+
+    private Compteurs charger(Long destinataireId) {
+        long maintenant = System.nanoTime();
+        Compteurs entree = compteurs.get(destinataireId);
+        if (entree != null && maintenant - entree.expireA() < 0) {
+            return entree;
+        }
+        Suivi avant = suivis.get(destinataireId);
+        Map<Long, Integer> parEmetteur = new HashMap<>();
+        for (Object[] ligne : messageRepository.countNonLusParEmetteur(destinataireId)) {
+            parEmetteur.put((Long) ligne[0], ((Number) ligne[1]).intValue());
+        }
+        Compteurs charge = new Compteurs(Map.copyOf(parEmetteur), maintenant + ttlNanos);
+        if (ttlNanos > 0 && (avant == null || avant.enCours() == 0)) {
+            CacheBorne.libererPlace(compteurs, tailleMax, existante -> maintenant - existante.expireA() >= 0);
+            // Installé seulement si aucune modification n'a commencé pendant la lecture (vérifié sous le verrou
+            // de la clé, que l'ajustement prend aussi)
+            compteurs.compute(destinataireId, (id, actuelle) ->
+                    Objects.equals(suivis.get(destinataireId), avant) ? charge : actuelle);
+        }
+        return charge;
+    }
+
+    // Seuls les compteurs déjà chargés sont ajustés : les autres seront lus en base le moment venu
+    private void ajuster(Long destinataireId, Long emetteurId, int delta) {
+        compteurs.computeIfPresent(destinataireId, (id, entree) -> entree.ajuster(emetteurId, delta));
+    }
+
+    private void publierNonLus(Long destinataireId) {
+        if (flux.containsKey(destinataireId)) {
+            NonLus nonLus = getNonLus(destinataireId);
+            publier(destinataireId, () -> SseEmitter.event().name(EVENEMENT_NON_LUS).data(nonLus));
+        }
+    }
+
+    // Un événement construit ne sert qu'une fois : il est recréé pour chaque connexion
+    private void publier(Long utilisateurId, Supplier<SseEmitter.SseEventBuilder> evenement) {
+        Set<SseEmitter> emitters = flux.get(utilisateurId);
+        if (emitters != null) {
+            for (SseEmitter emitter : emitters) {
+                envoyer(utilisateurId, emitter, evenement.get());
+            }
+        }
+    }
+
+    private void envoyer(Long utilisateurId, SseEmitter emitter, SseEmitter.SseEventBuilder evenement) {
+        try {
+            emitter.send(evenement);
+        } catch (IOException | IllegalStateException e) {
+            // Client parti : la connexion est fermée et oubliée
+            retirer(utilisateurId, emitter);
+            emitter.completeWithError(e);
+        }
+    }
+
+    private void retirer(Long utilisateurId, SseEmitter emitter) {
+        flux.computeIfPresent(utilisateurId, (id, emitters) -> {
+            emitters.remove(emitter);
+            return emitters.isEmpty() ? null : emitters;
+        });
+    }
+
+    /**
+     * Reporte une variation des non lus une fois la modification des messages validée, puis exécute la suite.
+     * La modification est déclarée avant le commit : un chargement concurrent, qui peut déjà la voir en base,
+     * ne sera pas mis en cache. Rien n'est reporté si la transaction est annulée.
+     */
+    private void ajusterApresCommit(Long destinataireId, Long emetteurId, int delta, Runnable ensuite) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            debuter(destinataireId);
+            terminer(destinataireId, emetteurId, delta);
+            ensuite.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            private boolean debute;
+
+            @Override
+            public void beforeCommit(boolean readOnly) {
+                debuter(destinataireId);
+                debute = true;
+            }
+
+            @Override
+            public void afterCompletion(int status) {
+                if (!debute) {
+                    return;
+                }
+                boolean valide = status == STATUS_COMMITTED;
+                terminer(destinataireId, emetteurId, valide ? delta : 0);
+                if (valide) {
+                    ensuite.run();
+                }
+            }
+        });
+    }
+
+    @PreDestroy
+    void arreter() {
+        if (publication instanceof ExecutorService service) {
+            service.shutdownNow();
+        }
+    }
+
+    private void debuter(Long destinataireId) {
+        suivis.merge(destinataireId, new Suivi(1, 1),
+                (suivi, un) -> new Suivi(suivi.enCours() + 1, suivi.generation() + 1));
+    }
+
+    private void terminer(Long destinataireId, Long emetteurId, int delta) {
+        if (delta != 0) {
+            ajuster(destinataireId, emetteurId, delta);
+        }
+        suivis.computeIfPresent(destinataireId,
+                (id, suivi) -> new Suivi(suivi.enCours() - 1, suivi.generation() + 1));
+    }
+}
@@ -0,0 +1,282 @@
+package com.pfe.backend.service;
+
+import com.pfe.backend.model.CompressionExport;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Partitionnement mensuel de la table activite (PostgreSQL uniquement).
+ * Au démarrage, une table activite ordinaire est convertie en table partitionnée par date_creation ;
+ * chaque nuit, les partitions des mois à venir sont créées et celles sorties de la rétention
+ * sont archivées (CSV gzip) puis détachées et supprimées, sans DELETE ligne à ligne.
+ * Les archives étant la seule copie des activités supprimées, le partitionnement ne démarre pas sans
+ * répertoire d'archives configuré explicitement (pas de repli sur le répertoire temporaire).
+ */
+@Slf4j
+@Service
+public class PartitionsActiviteService {
+
+    static final String PREFIXE = "activite_";
+    private static final DateTimeFormatter FORMAT_MOIS = DateTimeFormatter.ofPattern("yyyy_MM");
+    private static final Pattern NOM_PARTITION = Pattern.compile("activite_(\\d{4})_(\\d{2})");
+    private static final String COLONNES = "id_activite, id_utilisateur, action, ressource_type, ressource_id, details, date_creation";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final boolean demande;
+    private final int moisAvance;
+    private final int retentionMois;
+    // Null tant qu'aucun répertoire n'est configuré
+    private final Path repertoireArchives;
+
+    // Faux tant que la base n'est pas PostgreSQL ou que la conversion n'a pas abouti
+    private volatile boolean actif;
+
+    public PartitionsActiviteService(JdbcTemplate jdbcTemplate,
+                                     PlatformTransactionManager transactionManager,
+                                     @Value("${app.activite.partitions.actif:false}") boolean demande,
+                                     @Value("${app.activite.partitions.mois-avance:2}") int moisAvance,
+                                     @Value("${app.activite.partitions.retention-mois:24}") int retentionMois,
+                                     @Value("${app.activite.partitions.archives:}") String repertoireArchives) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.demande = demande;
+        this.moisAvance = moisAvance;
+        this.retentionMois = retentionMois;
+        this.repertoireArchives = repertoireArchives.isBlank() ? null : Path.of(repertoireArchives);
+    }
+
+    public boolean estActif() {
+        return actif;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void initialiser() {
+        if (!demande) {
+            return;
+        }
+        if (repertoireArchives == null) {
+            log.error("Partitionnement de activite désactivé : app.activite.partitions.archives doit désigner "
+                    + "un répertoire persistant pour les archives des partitions supprimées");
+            return;
+        }
+        String base = jdbcTemplate.execute((ConnectionCallback<String>) c -> c.getMetaData().getDatabaseProductName());
+        if (!"PostgreSQL".equalsIgnoreCase(base)) {
+            log.warn("Partitionnement de activite ignoré : base {} non supportée", base);
+            return;
+        }
+        try {
+            if (!estPartitionnee()) {
+                convertir(YearMonth.now());
+            }
+            actif = true;
+            entretenir();
+        } catch (DataAccessException e) {
+            log.error("Partitionnement de activite impossible, la table reste en l'état", e);
+        }
+    }
+
+    /**
+     * Crée les partitions du mois courant et des mois à venir, puis archive celles sorties de la rétention.
+     */
+    @Scheduled(cron = "${app.activite.partitions.cron:0 30 2 * * *}")
+    public void entretenir() {
+        if (!actif) {
+            return;
+        }
+        entretenir(YearMonth.now());
+    }
+
+    void entretenir(YearMonth courant) {
+        for (int i = 0; i <= moisAvance; i++) {
+            creerPartition(courant.plusMonths(i));
+        }
+        YearMonth limite = courant.minusMonths(retentionMois);
+        for (String partition : listerPartitions()) {
+            Optional<YearMonth> mois = moisDe(partition);
+            if (mois.isPresent() && mois.get().isBefore(limite)) {
+                try {
+                    archiver(partition);
+                } catch (IOException | UncheckedIOException | DataAccessException e) {
+                    // La partition reste attachée : nouvel essai au prochain passage
+                    log.error("Archivage de la partition {} impossible", partition, e);
+                }
+            }
+        }
+    }
+
+    static String nomPartition(YearMonth mois) {
+        return PREFIXE + mois.format(FORMAT_MOIS);
+    }
+
+    static Optional<YearMonth> moisDe(String partition) {
+        Matcher matcher = NOM_PARTITION.matcher(partition);
+        if (!matcher.matches()) {
+            return Optional.empty();
+        }
+        return Optional.of(YearMonth.of(Integer.parseInt(matcher.group(1)), Integer.parseInt(matcher.group(2))));
+    }
+
+    private boolean estPartitionnee() {
+        List<String> types = jdbcTemplate.queryForList(
+                "SELECT c.relkind::text FROM pg_class c WHERE c.oid = to_regclass('activite')", String.class);
+        return !types.isEmpty() && "p".equals(types.get(0));
+    }
+
+    /**
+     * Remplace la table ordinaire par une table partitionnée et y recopie l'historique, en une transaction.
+     * La clé primaire inclut date_creation, exigence de PostgreSQL pour une table partitionnée.
+     */
+    void convertir(YearMonth courant) {
+        long debut = System.currentTimeMillis();
+        transactionTemplate.executeWithoutResult(statut -> {
+            boolean existe = !jdbcTemplate.queryForList(
+                    "SELECT 1 FROM pg_class WHERE oid = to_regclass('activite')", Integer.class).isEmpty();
+            if (existe) {
+                jdbcTemplate.execute("ALTER TABLE activite RENAME TO activite_avant_partitions");
+                // Les noms d'index sont propres au schéma : celui de l'ancienne table est recréé sur la nouvelle
+                jdbcTemplate.execute("DROP INDEX IF EXISTS idx_activite_utilisateur_date");
+            }
+            jdbcTemplate.execute("CREATE SEQUENCE IF NOT EXISTS activite_id_activite_partition_seq");
+            jdbcTemplate.execute("""
+                    CREATE TABLE activite (
+                        id_activite bigint NOT NULL DEFAULT nextval('activite_id_activite_partition_seq'),
+                        id_utilisateur bigint NOT NULL,
+                        action varchar(100) NOT NULL,
+                        ressource_type varchar(50),
+                        ressource_id bigint,
+                        details text,
+                        date_creation timestamp(6) NOT NULL DEFAULT now(),
+                        CONSTRAINT pk_activite PRIMARY KEY (id_activite, date_creation),
+                        CONSTRAINT fk_activite_utilisateur FOREIGN KEY (id_utilisateur) REFERENCES utilisateur (id_utilisateur)
+                    ) PARTITION BY RANGE (date_creation)""");
+            jdbcTemplate.execute("ALTER SEQUENCE activite_id_activite_partition_seq OWNED BY activite.id_activite");
+            jdbcTemplate.execute("CREATE INDEX idx_activite_utilisateur_date "
+                    + "ON activite (id_utilisateur, date_creation DESC, id_activite DESC)");
+            // Filet pour une date hors des partitions mensuelles (horloge décalée, partition pas encore créée)
+            jdbcTemplate.execute("CREATE TABLE activite_defaut PARTITION OF activite DEFAULT");
+            if (!existe) {
+                return;
+            }
+            LocalDate plusAncienne = jdbcTemplate.queryForObject(
+                    "SELECT CAST(min(date_creation) AS date) FROM activite_avant_partitions", LocalDate.class);
+            YearMonth mois = plusAncienne != null ? YearMonth.from(plusAncienne) : courant;
+            for (; !mois.isAfter(courant.plusMonths(moisAvance)); mois = mois.plusMonths(1)) {
+                creerPartition(mois);
+            }
+            jdbcTemplate.execute("INSERT INTO activite (" + COLONNES + ") SELECT id_activite, id_utilisateur, action, "
+                    + "ressource_type, ressource_id, details, COALESCE(date_creation, now()) FROM activite_avant_partitions");
+            jdbcTemplate.execute("SELECT setval('activite_id_activite_partition_seq', "
+                    + "COALESCE((SELECT max(id_activite) FROM activite), 0) + 1, false)");
+            jdbcTemplate.execute("DROP TABLE activite_avant_partitions");
+        });
+        log.info("Table activite convertie en partitions mensuelles en {} ms", System.currentTimeMillis() - debut);
+    }
+
+    private void creerPartition(YearMonth mois) {
+        jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS " + nomPartition(mois) + " PARTITION OF activite "
+                + "FOR VALUES FROM ('" + mois.atDay(1) + "') TO ('" + mois.plusMonths(1).atDay(1) + "')");
+    }
+
+    private List<String> listerPartitions() {
+        return jdbcTemplate.queryForList("""
+                SELECT c.relname FROM pg_inherits i
+                JOIN pg_class c ON c.oid = i.inhrelid
+                WHERE i.inhparent = to_regclass('activite')
+                ORDER BY c.relname""", String.class);
+    }
+
+    /**
+     * Écrit la partition dans un fichier CSV gzip, puis la détache et la supprime.
+     * Le fichier n'apparaît sous son nom définitif qu'une fois complet ; la partition n'est supprimée qu'après.
+     */
+    void archiver(String partition) throws IOException {
+        Files.createDirectories(repertoireArchives);
+        String nomFichier = partition + ".csv" + CompressionExport.GZIP.getExtension();
+        Path partiel = repertoireArchives.resolve(nomFichier + ".part");
+        long[] lignes = {0};
+        // Lecture en flux : PostgreSQL n'applique la taille de fetch que dans une transaction
+        transactionTemplate.executeWithoutResult(statut -> {
+            try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(partiel))) {
+                CompressionExport.GZIP.ecrire(out, flux -> {
+                    Writer writer = new BufferedWriter(new OutputStreamWriter(flux, StandardCharsets.UTF_8));
+                    writer.write(COLONNES.replace(", ", ";"));
+                    writer.write('\n');
+                    jdbcTemplate.query(connexion -> {
+                        PreparedStatement ps = connexion.prepareStatement(
+                                "SELECT " + COLONNES + " FROM " + partition + " ORDER BY date_creation, id_activite");
+                        ps.setFetchSize(1000);
+                        return ps;
+                    }, (RowCallbackHandler) rs -> {
+                        try {
+                            ecrireLigne(writer, rs);
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                        lignes[0]++;
+                    });
+                    writer.flush();
+                });
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        Files.move(partiel, repertoireArchives.resolve(nomFichier),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        transactionTemplate.executeWithoutResult(statut -> {
+            jdbcTemplate.execute("ALTER TABLE activite DETACH PARTITION " + partition);
+            jdbcTemplate.execute("DROP TABLE " + partition);
+        });
+        log.info("Partition {} archivée ({} activités) dans {}", partition, lignes[0], nomFichier);
+    }
+
+    private static void ecrireLigne(Writer writer, ResultSet rs) throws IOException, SQLException {
+        List<String> valeurs = new ArrayList<>(7);
+        for (int i = 1; i <= 7; i++) {
+            Object valeur = rs.getObject(i);
+            valeurs.add(valeur == null ? "" : cellule(valeur.toString()));
+        }
+        writer.write(String.join(";", valeurs));
+        writer.write('\n');
+    }
+
+    static String cellule(String valeur) {
+        if (valeur.indexOf(';') < 0 && valeur.indexOf('"') < 0 && valeur.indexOf('\n') < 0 && valeur.indexOf('\r') < 0) {
+            return valeur;
+        }
+        return '"' + valeur.replace("\"", "\"\"") + '"';
+    }
+}
@@ -31,6 +31,7 @@ public class PasswordResetService {
     private final UtilisateurRepository utilisateurRepository;
     private final MailService mailService;
     private final PasswordEncoder passwordEncoder;
+    private final UserDetailsCache userDetailsCache;
 
     @Value("${app.otp.expiry-minutes:10}")
     private int otpExpiryMinutes;
@@ -168,6 +169,7 @@ public class PasswordResetService {
         // Mise à jour du mot de passe
         user.setMotDePasse(passwordEncoder.encode(newPassword));
         utilisateurRepository.save(user);
+        userDetailsCache.invalider(user.getEmail());
 
         // Invalidation du token
         reset.setResetToken(null);
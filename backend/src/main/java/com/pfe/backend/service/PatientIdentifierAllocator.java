@@ -0,0 +1,97 @@
+package com.pfe.backend.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Distribue les numéros d'inclusion des patients.
+ * <ul>
+ *   <li>{@code blocs} (par défaut) : chaque instance réserve en base un bloc de numéros dans une
+ *   transaction courte, puis les distribue en mémoire. Les inclusions simultanées ne se bloquent
+ *   plus mutuellement, au prix de trous possibles (bloc entamé au redémarrage, sauvegarde annulée)
+ *   et d'un ordre non chronologique entre instances.</li>
+ *   <li>{@code stricte} : un numéro à la fois, verrou tenu jusqu'à la fin de la sauvegarde
+ *   (numérotation dense, inclusions sérialisées).</li>
+ * </ul>
+ */
+@Service
+public class PatientIdentifierAllocator {
+
+    public enum Politique {
+        STRICTE,
+        BLOCS
+    }
+
+    private final PatientIdentifierCounterService counterService;
+    private final Politique politique;
+    private final int tailleBloc;
+    private final Map<Long, Bloc> blocs = new ConcurrentHashMap<>();
+    private final Map<Long, Object> verrous = new ConcurrentHashMap<>();
+
+    public PatientIdentifierAllocator(PatientIdentifierCounterService counterService,
+                                      @Value("${app.patient-counter.politique:blocs}") String politique,
+                                      @Value("${app.patient-counter.taille-bloc:10}") int tailleBloc) {
+        if (tailleBloc < 1) {
+            throw new IllegalArgumentException("La taille de bloc doit être positive: " + tailleBloc);
+        }
+        this.counterService = counterService;
+        this.politique = Politique.valueOf(politique.trim().toUpperCase(Locale.ROOT));
+        this.tailleBloc = tailleBloc;
+    }
+
+    /**
+     * Prochain numéro d'inclusion pour le formulaire donné.
+     */
+    public int prochainNumero(Long formulaireId) {
+        if (politique == Politique.STRICTE) {
+            return counterService.getNextCounterForFormulaire(formulaireId);
+        }
+
+        int numero = distribuer(formulaireId);
+        if (numero > 0) {
+            return numero;
+        }
+        // Un seul thread par formulaire recharge le bloc ; les autres formulaires ne sont pas bloqués
+        synchronized (verrous.computeIfAbsent(formulaireId, id -> new Object())) {
+            numero = distribuer(formulaireId);
+            if (numero > 0) {
+                return numero;
+            }
+            int debut = counterService.reserverBloc(formulaireId, tailleBloc);
+            Bloc bloc = new Bloc(debut, debut + tailleBloc);
+            numero = bloc.suivant();
+            blocs.put(formulaireId, bloc);
+            return numero;
+        }
+    }
+
+    private int distribuer(Long formulaireId) {
+        Bloc bloc = blocs.get(formulaireId);
+        return bloc != null ? bloc.suivant() : -1;
+    }
+
+    /**
+     * Numéros [prochain, fin[ réservés en base et pas encore distribués.
+     */
+    private static final class Bloc {
+
+        private final AtomicInteger prochain;
+        private final int fin;
+
+        Bloc(int debut, int fin) {
+            this.prochain = new AtomicInteger(debut);
+            this.fin = fin;
+        }
+
+        // -1 une fois le bloc épuisé (les numéros commencent à 1)
+        int suivant() {
+            int numero = prochain.getAndIncrement();
+            return numero < fin ? numero : -1;
+        }
+    }
+}
@@ -1,15 +1,21 @@
 package com.pfe.backend.service;
 
 import com.pfe.backend.model.PatientIdentifierCounter;
-import com.pfe.backend.model.ReponseFormulaire;
 import com.pfe.backend.repository.PatientIdentifierCounterRepository;
 import com.pfe.backend.repository.ReponseFormulaireRepository;
 import lombok.RequiredArgsConstructor;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -25,45 +31,113 @@ public class PatientIdentifierCounterService {
 
     /**
      * Retourne le prochain compteur atomique pour le formulaire donné.
-     * Utilise un verrou pessimiste pour éviter les doublons en cas de concurrence.
+     * Utilise un verrou pessimiste pour éviter les doublons en cas de concurrence ; le verrou est
+     * tenu jusqu'à la fin de la transaction appelante, ce qui garantit une numérotation sans trou.
      * Si aucun compteur n'existe encore, on initialise à partir des identifiants déjà présents.
      */
     @Transactional
     public int getNextCounterForFormulaire(Long formulaireId) {
+        return reserver(formulaireId, 1);
+    }
+
+    /**
+     * Réserve un bloc de {@code taille} numéros consécutifs dans une transaction courte et
+     * indépendante : le verrou sur le compteur est relâché dès la réservation, et non à la fin
+     * de la sauvegarde des réponses. Les numéros non distribués d'un bloc sont perdus.
+     *
+     * @return premier numéro du bloc
+     */
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    public int reserverBloc(Long formulaireId, int taille) {
+        return reserver(formulaireId, taille);
+    }
+
+    private int reserver(Long formulaireId, int taille) {
         Optional<PatientIdentifierCounter> opt = repository.findByFormulaireIdForUpdate(formulaireId);
         PatientIdentifierCounter counter;
+        int debut;
         if (opt.isPresent()) {
             counter = opt.get();
-            counter.setCounter(counter.getCounter() + 1);
-            repository.save(counter);
-            return counter.getCounter();
+            debut = counter.getCounter() + 1;
         } else {
             // Initialiser à partir des réponses existantes pour éviter les conflits avec des identifiants déjà créés
-            int maxExisting = calculateMaxCounterFromResponses(formulaireId);
-            int next = maxExisting + 1;
+            debut = calculateMaxCounterFromResponses(formulaireId) + 1;
             counter = new PatientIdentifierCounter();
             counter.setFormulaireId(formulaireId);
-            counter.setCounter(next);
-            repository.save(counter);
-            return next;
         }
+        counter.setCounter(debut + taille - 1);
+        repository.save(counter);
+        return debut;
     }
 
-    private int calculateMaxCounterFromResponses(Long formulaireId) {
-        List<ReponseFormulaire> responses = reponseFormulaireRepository.findByFormulaireIdWithChamp(formulaireId);
-        int max = 0;
-        for (ReponseFormulaire r : responses) {
-            String pid = r.getPatientIdentifier();
-            if (pid == null) continue;
-            Matcher m = PATIENT_COUNTER_PATTERN.matcher(pid);
-            if (m.find()) {
-                try {
-                    int val = Integer.parseInt(m.group(1));
-                    if (val > max) max = val;
-                } catch (NumberFormatException ignored) {
-                    // Format invalide, on ignore cette réponse et continue avec les autres
-                }
+    /**
+     * Reprend par lots le numéro d'inclusion des lignes enregistrées avant l'ajout de la colonne
+     * (déchiffrement de l'identifiant, une mise à jour par numéro distinct du lot).
+     *
+     * @return nombre de lignes reprises ; inférieur à {@code taille} une fois la reprise terminée
+     */
+    @Transactional
+    public int completerNumerosInclusion(int taille) {
+        List<Object[]> lignes = reponseFormulaireRepository.findSansNumeroInclusion(PageRequest.of(0, taille));
+        Map<Integer, List<Long>> idsParNumero = new HashMap<>();
+        for (Object[] ligne : lignes) {
+            int numero = extraireNumeroInclusion((String) ligne[1]);
+            idsParNumero.computeIfAbsent(numero, n -> new ArrayList<>()).add((Long) ligne[0]);
+        }
+        idsParNumero.forEach((numero, ids) -> reponseFormulaireRepository.updateNumeroInclusion(numero, ids));
+        return lignes.size();
+    }
+
+    /**
+     * Crée les compteurs absents à partir du plus grand numéro d'inclusion de chaque formulaire,
+     * lu en une seule requête groupée sur la colonne indexée.
+     *
+     * @return nombre de compteurs créés
+     */
+    @Transactional
+    public int initialiserCompteursManquants() {
+        Set<Long> existants = new HashSet<>();
+        for (PatientIdentifierCounter counter : repository.findAll()) {
+            existants.add(counter.getFormulaireId());
+        }
+        List<PatientIdentifierCounter> crees = new ArrayList<>();
+        for (Object[] ligne : reponseFormulaireRepository.findMaxNumeroInclusionParFormulaire()) {
+            Long formulaireId = (Long) ligne[0];
+            if (formulaireId == null || existants.contains(formulaireId)) {
+                continue;
             }
+            int max = ligne[1] != null ? ((Number) ligne[1]).intValue() : 0;
+            crees.add(new PatientIdentifierCounter(formulaireId, max + 1));
+        }
+        repository.saveAll(crees);
+        return crees.size();
+    }
+
+    /**
+     * Numéro final (4 chiffres) de l'identifiant patient, 0 s'il n'en porte pas.
+     */
+    static int extraireNumeroInclusion(String patientIdentifier) {
+        if (patientIdentifier == null) {
+            return 0;
+        }
+        Matcher m = PATIENT_COUNTER_PATTERN.matcher(patientIdentifier);
+        if (!m.find()) {
+            return 0;
+        }
+        try {
+            return Integer.parseInt(m.group(1));
+        } catch (NumberFormatException e) {
+            // Format invalide, on ignore ce numéro
+            return 0;
+        }
+    }
+
+    // Colonne indexée, complétée par les lignes de ce formulaire que la reprise n'a pas encore traitées
+    private int calculateMaxCounterFromResponses(Long formulaireId) {
+        Integer maxIndexe = reponseFormulaireRepository.findMaxNumeroInclusionByFormulaireId(formulaireId);
+        int max = maxIndexe != null ? maxIndexe : 0;
+        for (String pid : reponseFormulaireRepository.findPatientIdentifiersSansNumeroInclusion(formulaireId)) {
+            max = Math.max(max, extraireNumeroInclusion(pid));
         }
         return max;
     }
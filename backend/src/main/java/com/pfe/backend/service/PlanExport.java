@@ -0,0 +1,321 @@
+package com.pfe.backend.service;
+
+import com.pfe.backend.model.Champ;
+import com.pfe.backend.model.OptionValeur;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Plan d'export CSV d'un formulaire, compilé une fois par version du formulaire :
+ * ordre des colonnes (catégorie puis libellé), lignes d'en-tête et table valeur → libellé
+ * de chaque liste de choix. Le travail par cellule se réduit ainsi à deux accès indexés.
+ * Immuable : un même plan est partagé par les exports concurrents.
+ */
+public final class PlanExport {
+
+    // Category name constants
+    private static final String CAT_IDENTITE_PATIENT = "IDENTITE PATIENT";
+    private static final String CAT_ANTECEDENTS = "ANTECEDENTS";
+    private static final String CAT_SEJOUR_HOPITAL = "SEJOUR HOPITAL";
+    private static final String CAT_CONSULTATION = "CONSULTATION";
+    private static final String CAT_BILAN_PRE_OP = "BILAN PRE OPERATOIRE";
+    private static final String CAT_PER_OP = "PER OPERATOIRE";
+    private static final String CAT_POST_OP = "POST OPERATOIRE";
+    private static final String CAT_TRANSFUSION = "TRANSFUSION";
+    private static final String CAT_RECUPERATION = "RECUPERATION";
+    private static final String CAT_COMPLICATIONS = "COMPLICATIONS";
+    private static final String CAT_AUTRE = "AUTRE";
+
+    private static final Map<String, String> CATEGORY_MAPPING = Map.ofEntries(
+            Map.entry("Sexe", CAT_IDENTITE_PATIENT),
+            Map.entry("Age", CAT_IDENTITE_PATIENT),
+            Map.entry("Taille", CAT_IDENTITE_PATIENT),
+            Map.entry("Poids", CAT_IDENTITE_PATIENT),
+            Map.entry("IMC", CAT_IDENTITE_PATIENT),
+            Map.entry("ASA", CAT_IDENTITE_PATIENT),
+            Map.entry("Type de chirurgie prevue", CAT_IDENTITE_PATIENT),
+
+            Map.entry("Traitement antiplaquettaire", CAT_ANTECEDENTS),
+            Map.entry("Nom du traitement antiplaquettaire le cas échéant", CAT_ANTECEDENTS),
+            Map.entry("Traitement Beta-bloquant", CAT_ANTECEDENTS),
+            Map.entry("Nom du traitement beta-bloquant le cas échéant", CAT_ANTECEDENTS),
+            Map.entry("Chimiothérapie", CAT_ANTECEDENTS),
+            Map.entry("Nom de la chimiothérapie le cas échéant", CAT_ANTECEDENTS),
+            Map.entry("Autres traitements habituels", CAT_ANTECEDENTS),
+            Map.entry("Nom des autres traitements le cas échéant", CAT_ANTECEDENTS),
+            Map.entry("Antécédents cardiovasculaires", CAT_ANTECEDENTS),
+
+            Map.entry("Lieu avant le séjour à l'hôpital", CAT_SEJOUR_HOPITAL),
+            Map.entry("Date d'entrée à l'hôpital", CAT_SEJOUR_HOPITAL),
+            Map.entry("Lieu après le séjour à l'hôpital", CAT_SEJOUR_HOPITAL),
+            Map.entry("Parcours RAAC", CAT_SEJOUR_HOPITAL),
+
+            Map.entry("Consultation de chirurgie", CAT_CONSULTATION),
+            Map.entry("Consultation d'anesthésie", CAT_CONSULTATION),
+
+            Map.entry("Bilan", CAT_BILAN_PRE_OP),
+            Map.entry("Ferritine", CAT_BILAN_PRE_OP),
+            Map.entry("Fréquence cardiaque", CAT_BILAN_PRE_OP),
+            Map.entry("Température corporelle", CAT_BILAN_PRE_OP),
+            Map.entry("Échelle de douleur", CAT_BILAN_PRE_OP),
+
+            Map.entry("Type d'anesthésie", CAT_PER_OP),
+            Map.entry("Durée de l'intervention", CAT_PER_OP),
+            Map.entry("Complications per-opératoires", CAT_PER_OP),
+
+            Map.entry("Date de sortie de salle de réveil", CAT_POST_OP),
+            Map.entry("Score de douleur à la sortie", CAT_POST_OP),
+            Map.entry("Antalgiques administrés", CAT_POST_OP),
+
+            Map.entry("Transfusion per-opératoire", CAT_TRANSFUSION),
+            Map.entry("Nombre de culots globulaires", CAT_TRANSFUSION),
+            Map.entry("Transfusion post-opératoire", CAT_TRANSFUSION),
+
+            Map.entry("Date correspondant au J1 de la chirurgie", CAT_RECUPERATION),
+            Map.entry("Date de fin du traitement antiplaquettaire", CAT_RECUPERATION),
+            Map.entry("Distance marchée au J3", CAT_RECUPERATION),
+
+            Map.entry("Complications infectieuses", CAT_COMPLICATIONS),
+            Map.entry("Complications thromboemboliques", CAT_COMPLICATIONS),
+            Map.entry("Réadmission sous 30 jours", CAT_COMPLICATIONS)
+    );
+
+    private static final List<String> CATEGORY_ORDER = List.of(
+            CAT_IDENTITE_PATIENT,
+            CAT_ANTECEDENTS,
+            CAT_SEJOUR_HOPITAL,
+            CAT_CONSULTATION,
+            CAT_BILAN_PRE_OP,
+            CAT_PER_OP,
+            CAT_POST_OP,
+            CAT_TRANSFUSION,
+            CAT_RECUPERATION,
+            CAT_COMPLICATIONS,
+            CAT_AUTRE
+    );
+
+    // Rang de chaque catégorie, pour trier sans parcourir CATEGORY_ORDER à chaque comparaison
+    private static final Map<String, Integer> CATEGORY_RANK = new HashMap<>();
+
+    static {
+        for (int i = 0; i < CATEGORY_ORDER.size(); i++) {
+            CATEGORY_RANK.put(CATEGORY_ORDER.get(i), i);
+        }
+    }
+
+    static final PlanExport VIDE = new PlanExport(List.of(), null);
+
+    private final LocalDateTime version;
+    private final List<Colonne> colonnes;
+    private final Map<Long, Integer> indexParChamp;
+    private final String enteteCategories;
+    private final String enteteLibelles;
+
+    private PlanExport(List<Colonne> colonnes, LocalDateTime version) {
+        this.version = version;
+        this.colonnes = colonnes;
+        this.indexParChamp = new HashMap<>();
+        for (int i = 0; i < colonnes.size(); i++) {
+            indexParChamp.put(colonnes.get(i).idChamp(), i);
+        }
+        this.enteteCategories = construireEnteteCategories(colonnes);
+        this.enteteLibelles = construireEnteteLibelles(colonnes);
+    }
+
+    /**
+     * Compile un plan non versionné (export ponctuel, sans cache).
+     */
+    public static PlanExport compiler(Collection<Champ> champs) {
+        return compiler(champs, null);
+    }
+
+    /**
+     * Compile le plan des champs fournis. Les champs sans identifiant ou sans libellé sont ignorés.
+     *
+     * @param champs champs avec leurs options initialisées
+     * @param version date de modification du formulaire compilé
+     */
+    public static PlanExport compiler(Collection<Champ> champs, LocalDateTime version) {
+        Map<Long, Colonne> parId = new LinkedHashMap<>();
+        for (Champ champ : champs) {
+            if (champ != null && champ.getIdChamp() != null && champ.getLabel() != null) {
+                parId.putIfAbsent(champ.getIdChamp(), new Colonne(
+                        champ.getIdChamp(),
+                        champ.getLabel(),
+                        CATEGORY_MAPPING.getOrDefault(champ.getLabel(), CAT_AUTRE),
+                        LibellesOptions.compiler(champ)));
+            }
+        }
+        List<Colonne> colonnes = new ArrayList<>(parId.values());
+        colonnes.sort(Comparator.comparingInt((Colonne c) -> CATEGORY_RANK.get(c.categorie()))
+                .thenComparing(Colonne::libelle));
+        return new PlanExport(List.copyOf(colonnes), version);
+    }
+
+    /**
+     * Plan limité aux champs donnés (ceux qui ont au moins une réponse), dans le même ordre.
+     */
+    public PlanExport restreindre(Collection<Long> idsChamps) {
+        Set<Long> retenus = new HashSet<>(idsChamps);
+        return new PlanExport(colonnes.stream().filter(c -> retenus.contains(c.idChamp())).toList(), version);
+    }
+
+    public LocalDateTime getVersion() {
+        return version;
+    }
+
+    public boolean estVide() {
+        return colonnes.isEmpty();
+    }
+
+    public int nombreColonnes() {
+        return colonnes.size();
+    }
+
+    /**
+     * Première ligne d'en-tête : chaque catégorie suivie d'autant de séparateurs que de colonnes.
+     */
+    public String getEnteteCategories() {
+        return enteteCategories;
+    }
+
+    /**
+     * Seconde ligne d'en-tête : libellés des colonnes.
+     */
+    public String getEnteteLibelles() {
+        return enteteLibelles;
+    }
+
+    /**
+     * Position de la colonne d'un champ, ou -1 s'il ne fait pas partie du plan.
+     */
+    public int colonne(Long idChamp) {
+        Integer index = indexParChamp.get(idChamp);
+        return index != null ? index : -1;
+    }
+
+    /**
+     * Valeur à écrire dans la cellule : libellé de l'option correspondante, sinon la valeur brute.
+     */
+    public String valeurCellule(int colonne, String valeur) {
+        LibellesOptions options = colonnes.get(colonne).options();
+        if (options == null) {
+            return valeur;
+        }
+        String libelle = options.libelle(valeur);
+        return libelle != null ? libelle : valeur;
+    }
+
+    private static String construireEnteteCategories(List<Colonne> colonnes) {
+        StringBuilder csv = new StringBuilder();
+        String currentCat = "";
+        int countInCat = 0;
+
+        for (Colonne colonne : colonnes) {
+            if (!colonne.categorie().equals(currentCat)) {
+                if (countInCat > 0) {
+                    csv.append(currentCat).append(";".repeat(countInCat));
+                }
+                currentCat = colonne.categorie();
+                countInCat = 0;
+            }
+            countInCat++;
+        }
+
+        if (countInCat > 0) {
+            csv.append(currentCat).append(";".repeat(countInCat));
+        }
+        return csv.append("\n").toString();
+    }
+
+    private static String construireEnteteLibelles(List<Colonne> colonnes) {
+        StringBuilder csv = new StringBuilder("NUMERO_INCLUSION;");
+        for (Colonne colonne : colonnes) {
+            csv.append(colonne.libelle()).append(";");
+        }
+        return csv.append("\n").toString();
+    }
+
+    private record Colonne(Long idChamp, String libelle, String categorie, LibellesOptions options) {
+    }
+
+    /**
+     * Correspondance valeur → libellé d'une liste de choix. Les listes codées par petits entiers
+     * ("0", "1", ...) sont indexées dans un tableau ; les autres dans une table de hachage.
+     * En cas de doublon, la première option l'emporte.
+     */
+    static final class LibellesOptions {
+
+        private static final int TAILLE_MAX_TABLEAU = 64;
+
+        private final String[] parIndex;
+        private final Map<String, String> parValeur;
+
+        private LibellesOptions(String[] parIndex, Map<String, String> parValeur) {
+            this.parIndex = parIndex;
+            this.parValeur = parValeur;
+        }
+
+        static LibellesOptions compiler(Champ champ) {
+            if (champ.getListeValeur() == null || champ.getListeValeur().getOptions() == null) {
+                return null;
+            }
+            List<OptionValeur> options = champ.getListeValeur().getOptions().stream()
+                    .filter(o -> o.getValeur() != null && o.getLibelle() != null)
+                    .toList();
+
+            if (!options.isEmpty() && options.stream().allMatch(o -> index(o.getValeur()) >= 0)) {
+                String[] parIndex = new String[TAILLE_MAX_TABLEAU];
+                for (OptionValeur option : options) {
+                    int i = index(option.getValeur());
+                    if (parIndex[i] == null) {
+                        parIndex[i] = option.getLibelle();
+                    }
+                }
+                return new LibellesOptions(parIndex, null);
+            }
+
+            Map<String, String> parValeur = new HashMap<>();
+            for (OptionValeur option : options) {
+                parValeur.putIfAbsent(option.getValeur(), option.getLibelle());
+            }
+            return new LibellesOptions(null, parValeur);
+        }
+
+        String libelle(String valeur) {
+            if (parIndex != null) {
+                int i = index(valeur);
+                return i >= 0 ? parIndex[i] : null;
+            }
+            return parValeur.get(valeur);
+        }
+
+        /**
+         * Entier canonique (sans zéro de tête) inférieur à TAILLE_MAX_TABLEAU, sinon -1.
+         */
+        static int index(String valeur) {
+            if (valeur == null || valeur.isEmpty() || valeur.length() > 2
+                    || (valeur.length() > 1 && valeur.charAt(0) == '0')) {
+                return -1;
+            }
+            int index = 0;
+            for (int i = 0; i < valeur.length(); i++) {
+                char c = valeur.charAt(i);
+                if (c < '0' || c > '9') {
+                    return -1;
+                }
+                index = index * 10 + (c - '0');
+            }
+            return index < TAILLE_MAX_TABLEAU ? index : -1;
+        }
+    }
+}
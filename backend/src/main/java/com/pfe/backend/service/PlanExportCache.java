@@ -0,0 +1,63 @@
+package com.pfe.backend.service;
+
+import com.pfe.backend.repository.ChampRepository;
+import com.pfe.backend.repository.FormulaireMedecinRepository;
+import com.pfe.backend.repository.FormulaireRepository;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Cache des plans d'export CSV, un par formulaire. Un plan est réutilisé tant que la version
+ * du formulaire (date de modification) n'a pas changé ; il est aussi invalidé explicitement
+ * à la modification et à la suppression du formulaire.
+ */
+@Service
+@RequiredArgsConstructor
+public class PlanExportCache {
+
+    private final FormulaireRepository formulaireRepository;
+    private final FormulaireMedecinRepository formulaireMedecinRepository;
+    private final ChampRepository champRepository;
+    private final Map<Long, PlanExport> plans = new ConcurrentHashMap<>();
+
+    /**
+     * Plan complet d'un formulaire (tous ses champs), vide si le formulaire n'existe pas.
+     */
+    @Transactional(readOnly = true)
+    public PlanExport getPlan(Long formulaireId) {
+        LocalDateTime version = formulaireRepository.findVersionById(formulaireId).orElse(null);
+        if (version == null) {
+            plans.remove(formulaireId);
+            return PlanExport.VIDE;
+        }
+        PlanExport plan = plans.get(formulaireId);
+        if (plan != null && version.equals(plan.getVersion())) {
+            return plan;
+        }
+        plan = PlanExport.compiler(champRepository.findAllWithOptionsByFormulaireId(formulaireId), version);
+        plans.put(formulaireId, plan);
+        return plan;
+    }
+
+    /**
+     * Plan du formulaire de base d'un envoi, vide si l'envoi n'existe pas.
+     */
+    @Transactional(readOnly = true)
+    public PlanExport getPlanParFormulaireMedecin(Long formulaireMedecinId) {
+        return formulaireMedecinRepository.findFormulaireIdById(formulaireMedecinId)
+                .map(this::getPlan)
+                .orElse(PlanExport.VIDE);
+    }
+
+    /**
+     * Oublie le plan d'un formulaire modifié ou supprimé.
+     */
+    public void invalider(Long formulaireId) {
+        plans.remove(formulaireId);
+    }
+}
@@ -5,11 +5,16 @@ import com.pfe.backend.exception.ResourceNotFoundException;
 import com.pfe.backend.model.Champ;
 import com.pfe.backend.model.FormulaireMedecin;
 import com.pfe.backend.model.ReponseFormulaire;
+import com.pfe.backend.model.SoumissionPatient;
 import com.pfe.backend.model.StatutFormulaire;
 import com.pfe.backend.repository.ChampRepository;
 import com.pfe.backend.repository.FormulaireMedecinRepository;
 import com.pfe.backend.repository.ReponseFormulaireRepository;
+import com.pfe.backend.repository.SoumissionPatientRepository;
 import lombok.RequiredArgsConstructor;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -17,9 +22,15 @@ import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 
 /**
  * Service de gestion des réponses aux formulaires.
@@ -33,7 +44,8 @@ public class ReponseFormulaireService {
     private final FormulaireMedecinRepository formulaireMedecinRepository;
     private final ChampRepository champRepository;
     private final ActiviteService activiteService;
-    private final PatientIdentifierCounterService patientIdentifierCounterService;
+    private final PatientIdentifierAllocator patientIdentifierAllocator;
+    private final SoumissionPatientRepository soumissionPatientRepository;
 
     // Constants for error messages and activity logging
     private static final String FORMULAIRE_MEDECIN_NOT_FOUND = "Formulaire médecin non trouvé";
@@ -41,7 +53,7 @@ public class ReponseFormulaireService {
     private static final String FORMULAIRE_PREFIX = "Formulaire '";
 
     // Méthode utilitaire pour hacher l'identifiant du patient
-    private String hashPatientIdentifier(String identifier) {
+    static String hashPatientIdentifier(String identifier) {
         if (identifier == null) {
             return null;
         }
@@ -109,9 +121,9 @@ public class ReponseFormulaireService {
 
         String etudeSlug = slugifyTitreEtude(formulaireMedecin.getFormulaire().getTitre());
 
-        // Utiliser un compteur atomique en base pour éviter les doublons en cas de concurrence
+        // Numéro réservé en base (par blocs ou un à un selon la politique) pour éviter les doublons
         Long formulaireId = formulaireMedecin.getFormulaire().getIdFormulaire();
-        int nextCounter = patientIdentifierCounterService.getNextCounterForFormulaire(formulaireId);
+        int nextCounter = patientIdentifierAllocator.prochainNumero(formulaireId);
 
         String counterStr = String.format("%04d", nextCounter);
 
@@ -139,12 +151,6 @@ public class ReponseFormulaireService {
         request.setPatientIdentifier(patientIdentifier);
 
         String patientIdentifierHash = hashPatientIdentifier(patientIdentifier);
-        
-        // Supprimer les anciennes réponses avant de sauvegarder
-        reponseFormulaireRepository.deleteByFormulaireMedecinIdAndPatientIdentifierHash(
-                request.getFormulaireMedecinId(),
-                patientIdentifierHash
-        );
 
         // Validation des réponses
         if (!enBrouillon && (request.getReponses() == null || request.getReponses().isEmpty())) {
@@ -153,12 +159,25 @@ public class ReponseFormulaireService {
         
         // Cas spécial : brouillon vide
         if (request.getReponses() == null || request.getReponses().isEmpty()) {
+            reponseFormulaireRepository.deleteByFormulaireMedecinIdAndPatientIdentifierHash(
+                    request.getFormulaireMedecinId(),
+                    patientIdentifierHash
+            );
+            soumissionPatientRepository.deleteByFormulaireMedecinIdAndPatientIdentifierHash(
+                    request.getFormulaireMedecinId(),
+                    patientIdentifierHash
+            );
             sauvegarderBrouillonVide(formulaireMedecin, emailMedecin, patientIdentifier);
             return;
         }
 
-        // Sauvegarder les réponses
-        sauvegarderReponsesPourPatient(request, formulaireMedecin, patientIdentifierHash, enBrouillon);
+        // Sauvegarder uniquement les différences avec les réponses déjà enregistrées
+        if (sauvegarderReponsesPourPatient(request, formulaireMedecin, patientIdentifierHash, enBrouillon)) {
+            enregistrerSoumission(formulaireMedecin.getId(), patientIdentifier, patientIdentifierHash, enBrouillon);
+        } else {
+            soumissionPatientRepository.deleteByFormulaireMedecinIdAndPatientIdentifierHash(
+                    formulaireMedecin.getId(), patientIdentifierHash);
+        }
 
         // Mettre à jour le statut et enregistrer l'activité
         mettreAJourStatutFormulaire(formulaireMedecin, enBrouillon, emailMedecin, patientIdentifier);
@@ -196,17 +215,86 @@ public class ReponseFormulaireService {
         );
     }
 
-    private void sauvegarderReponsesPourPatient(ReponseFormulaireRequest request, FormulaireMedecin formulaireMedecin,
+    /**
+     * Compare les réponses reçues aux lignes existantes du patient (chargées une seule fois)
+     * et n'émet que les INSERT, UPDATE et DELETE nécessaires, regroupés en batch au flush.
+     *
+     * @return true s'il reste au moins une réponse pour ce patient
+     */
+    private boolean sauvegarderReponsesPourPatient(ReponseFormulaireRequest request, FormulaireMedecin formulaireMedecin,
                                                  String patientIdentifierHash, boolean enBrouillon) {
+        Map<Long, String> valeursParChamp = extraireValeursNonVides(request);
+
+        List<ReponseFormulaire> existantes = reponseFormulaireRepository
+                .findByFormulaireMedecinIdAndPatientIdentifierHashWithChamp(formulaireMedecin.getId(), patientIdentifierHash);
+
+        Map<Long, ReponseFormulaire> existantesParChamp = new HashMap<>();
+        List<Long> idsASupprimer = new ArrayList<>();
+        for (ReponseFormulaire existante : existantes) {
+            Long champId = existante.getChamp() != null ? existante.getChamp().getIdChamp() : null;
+            if (champId == null || !valeursParChamp.containsKey(champId)
+                    || existantesParChamp.putIfAbsent(champId, existante) != null) {
+                idsASupprimer.add(existante.getIdReponse());
+            }
+        }
+
+        // Mises à jour : entités gérées, l'UPDATE n'est émis par Hibernate que si une valeur change
+        for (Map.Entry<Long, ReponseFormulaire> entry : existantesParChamp.entrySet()) {
+            ReponseFormulaire existante = entry.getValue();
+            String valeur = valeursParChamp.get(entry.getKey());
+            if (!valeur.equals(existante.getValeur())) {
+                existante.setValeur(valeur);
+            }
+            if (!Boolean.valueOf(enBrouillon).equals(existante.getDraft())) {
+                existante.setDraft(enBrouillon);
+            }
+        }
+
+        if (!idsASupprimer.isEmpty()) {
+            reponseFormulaireRepository.deleteByIdReponseIn(idsASupprimer);
+        }
+
+        Set<Long> champsAjoutes = new LinkedHashSet<>(valeursParChamp.keySet());
+        champsAjoutes.removeAll(existantesParChamp.keySet());
+        if (champsAjoutes.isEmpty()) {
+            return !valeursParChamp.isEmpty();
+        }
+
+        // Une seule requête pour tous les nouveaux champs, puis un seul batch JDBC pour les nouvelles lignes
+        Map<Long, Champ> champs = chargerChamps(champsAjoutes);
+        List<ReponseFormulaire> nouvelles = new ArrayList<>(champsAjoutes.size());
+        for (Long champId : champsAjoutes) {
+            nouvelles.add(creerReponse(champs.get(champId), valeursParChamp.get(champId), formulaireMedecin,
+                    request.getPatientIdentifier(), patientIdentifierHash, enBrouillon));
+        }
+
+        reponseFormulaireRepository.saveAll(nouvelles);
+        return true;
+    }
+
+    // En-tête du patient : créé à la première saisie, puis seuls statut et date changent
+    private void enregistrerSoumission(Long formulaireMedecinId, String patientIdentifier,
+                                       String patientIdentifierHash, boolean enBrouillon) {
+        SoumissionPatient soumission = soumissionPatientRepository
+                .findByFormulaireMedecinIdAndPatientIdentifierHash(formulaireMedecinId, patientIdentifierHash)
+                .orElseGet(() -> new SoumissionPatient(formulaireMedecinId, patientIdentifier, patientIdentifierHash,
+                        PatientIdentifierCounterService.extraireNumeroInclusion(patientIdentifier)));
+        soumission.setDraft(enBrouillon);
+        soumission.setDateModification(LocalDateTime.now());
+        soumissionPatientRepository.save(soumission);
+    }
+
+    private Map<Long, String> extraireValeursNonVides(ReponseFormulaireRequest request) {
+        Map<Long, String> valeursParChamp = new LinkedHashMap<>();
         for (Map.Entry<?, ?> rawEntry : request.getReponses().entrySet()) {
             Long champId = convertirChampId(rawEntry.getKey());
             String valeur = rawEntry.getValue() != null ? rawEntry.getValue().toString() : null;
 
             if (valeur != null && !valeur.trim().isEmpty()) {
-                sauvegarderUneReponse(champId, valeur, formulaireMedecin, request.getPatientIdentifier(), 
-                                     patientIdentifierHash, enBrouillon);
+                valeursParChamp.put(champId, valeur);
             }
         }
+        return valeursParChamp;
     }
 
     private Long convertirChampId(Object rawKey) {
@@ -217,20 +305,30 @@ public class ReponseFormulaireService {
         }
     }
 
-    private void sauvegarderUneReponse(Long champId, String valeur, FormulaireMedecin formulaireMedecin,
-                                       String patientIdentifier, String patientIdentifierHash, boolean enBrouillon) {
-        Champ champ = champRepository.findById(champId)
-                .orElseThrow(() -> new ResourceNotFoundException("Champ non trouvé: " + champId));
+    private Map<Long, Champ> chargerChamps(Set<Long> champIds) {
+        Map<Long, Champ> champs = new HashMap<>();
+        for (Champ champ : champRepository.findAllById(champIds)) {
+            champs.put(champ.getIdChamp(), champ);
+        }
+        for (Long champId : champIds) {
+            if (!champs.containsKey(champId)) {
+                throw new ResourceNotFoundException("Champ non trouvé: " + champId);
+            }
+        }
+        return champs;
+    }
 
+    private ReponseFormulaire creerReponse(Champ champ, String valeur, FormulaireMedecin formulaireMedecin,
+                                           String patientIdentifier, String patientIdentifierHash, boolean enBrouillon) {
         ReponseFormulaire reponse = new ReponseFormulaire();
         reponse.setFormulaireMedecin(formulaireMedecin);
         reponse.setChamp(champ);
         reponse.setValeur(valeur);
         reponse.setPatientIdentifier(patientIdentifier);
         reponse.setPatientIdentifierHash(patientIdentifierHash);
+        reponse.setNumeroInclusion(PatientIdentifierCounterService.extraireNumeroInclusion(patientIdentifier));
         reponse.setDraft(enBrouillon);
-
-        reponseFormulaireRepository.save(reponse);
+        return reponse;
     }
 
     private void mettreAJourStatutFormulaire(FormulaireMedecin formulaireMedecin, boolean enBrouillon,
@@ -333,31 +431,45 @@ public class ReponseFormulaireService {
      */
     @Transactional(readOnly = true)
     public List<Map<String, Object>> getAllDraftsForFormulaire(Long formulaireMedecinId) {
+        return getAllDraftsForFormulaire(formulaireMedecinId, Pageable.unpaged()).getContent();
+    }
+
+    /**
+     * Page de résumés de brouillons, les plus récemment modifiés d'abord.
+     * Nombre de réponses et date sont agrégés en base ; seul un identifiant patient est
+     * déchiffré par patient de la page.
+     *
+     * @param formulaireMedecinId ID de l'assignation
+     * @param pageable page demandée ({@link Pageable#unpaged()} pour tous les brouillons)
+     * @return Page des brouillons avec informations patient
+     */
+    @Transactional(readOnly = true)
+    public Page<Map<String, Object>> getAllDraftsForFormulaire(Long formulaireMedecinId, Pageable pageable) {
         formulaireMedecinRepository.findById(formulaireMedecinId)
                 .orElseThrow(() -> new ResourceNotFoundException(FORMULAIRE_MEDECIN_NOT_FOUND));
-        
-        // Récupérer tous les patients distincts ayant des réponses (brouillons uniquement)
-        List<String> patientHashes = reponseFormulaireRepository
-                .findDistinctDraftPatientHashes(formulaireMedecinId);
-        
-        List<Map<String, Object>> drafts = new java.util.ArrayList<>();
-        
-        for (String hash : patientHashes) {
-            List<ReponseFormulaire> reponses = reponseFormulaireRepository
-                    .findByFormulaireMedecinIdAndPatientIdentifierHash(formulaireMedecinId, hash);
-            
-            if (!reponses.isEmpty()) {
-                ReponseFormulaire firstReponse = reponses.get(0);
-                Map<String, Object> draft = new java.util.HashMap<>();
-                draft.put("patientIdentifier", firstReponse.getPatientIdentifier());
-                draft.put("patientHash", hash);
-                draft.put("nombreReponses", reponses.size());
-                draft.put("derniereModification", firstReponse.getDateSaisie());
-                drafts.add(draft);
-            }
+
+        Page<Object[]> resumes = reponseFormulaireRepository.findResumesBrouillons(formulaireMedecinId, pageable);
+        if (resumes.isEmpty()) {
+            return resumes.map(ligne -> Map.of());
         }
-        
-        return drafts;
+
+        List<Long> idsReponses = new ArrayList<>(resumes.getNumberOfElements());
+        for (Object[] ligne : resumes) {
+            idsReponses.add((Long) ligne[3]);
+        }
+        Map<Long, String> identifiants = new HashMap<>();
+        for (Object[] ligne : reponseFormulaireRepository.findPatientIdentifiersByIdReponseIn(idsReponses)) {
+            identifiants.put((Long) ligne[0], (String) ligne[1]);
+        }
+
+        return resumes.map(ligne -> {
+            Map<String, Object> draft = new HashMap<>();
+            draft.put("patientIdentifier", identifiants.get((Long) ligne[3]));
+            draft.put("patientHash", ligne[0]);
+            draft.put("nombreReponses", ((Number) ligne[1]).intValue());
+            draft.put("derniereModification", ligne[2]);
+            return draft;
+        });
     }
 
     /**
@@ -393,30 +505,86 @@ public class ReponseFormulaireService {
      */
     @Transactional(readOnly = true)
     public int countDrafts(Long formulaireMedecinId) {
-        return reponseFormulaireRepository.findDistinctDraftPatientHashes(formulaireMedecinId).size();
+        return (int) reponseFormulaireRepository.countDistinctDraftPatients(formulaireMedecinId);
+    }
+
+    /**
+     * Compte les brouillons (patients uniques) de plusieurs assignations en une seule requête.
+     *
+     * @param formulaireMedecinIds IDs des assignations
+     * @return Nombre de brouillons par assignation (0 pour celles sans brouillon)
+     */
+    @Transactional(readOnly = true)
+    public Map<Long, Integer> countDrafts(Collection<Long> formulaireMedecinIds) {
+        Map<Long, Integer> nombres = new HashMap<>();
+        if (formulaireMedecinIds.isEmpty()) {
+            return nombres;
+        }
+        for (Long id : formulaireMedecinIds) {
+            nombres.put(id, 0);
+        }
+        for (Object[] ligne : reponseFormulaireRepository.countDistinctDraftPatientsParFormulaireMedecin(formulaireMedecinIds)) {
+            nombres.put((Long) ligne[0], ((Number) ligne[1]).intValue());
+        }
+        return nombres;
     }
 
 
     /**
      * Récupère la liste des identifiants de patients uniques ayant des réponses pour ce formulaire.
+     * Lue dans les en-têtes de saisie : un seul identifiant déchiffré par patient.
      *
      * @param formulaireMedecinId ID de l'assignation
-     * @return Liste d'identifiants patients
+     * @return Liste d'identifiants patients, par ordre alphabétique
      */
     @Transactional(readOnly = true)
     public List<String> getPatientIdentifiers(Long formulaireMedecinId) {
-        // Récupérer toutes les réponses pour ce formulaire
-        List<ReponseFormulaire> reponses = reponseFormulaireRepository.findByFormulaireMedecinId(formulaireMedecinId);
-        
-        // Extraire les identifiants patients uniques (déchiffrés automatiquement par JPA)
-        return reponses.stream()
-                .map(ReponseFormulaire::getPatientIdentifier)
+        return soumissionPatientRepository.findPatientIdentifiersByFormulaireMedecinId(formulaireMedecinId).stream()
                 .filter(identifier -> identifier != null && !identifier.isEmpty())
                 .distinct()
                 .sorted()
                 .toList();
     }
 
+    /**
+     * Patients d'un formulaire triés par numéro d'inclusion, paginés par clé.
+     *
+     * @param formulaireMedecinId ID de l'assignation
+     * @param apres curseur renvoyé avec la page précédente ({@link #curseur(SoumissionPatient)}), null pour la première
+     * @param taille nombre de patients par page, null pour tous
+     * @return En-têtes des patients de la page
+     */
+    @Transactional(readOnly = true)
+    public List<SoumissionPatient> getPatientsParNumero(Long formulaireMedecinId, String apres, Integer taille) {
+        // Les numéros commencent à 0 (identifiant sans numéro) : (-1, 0) précède toute ligne
+        int numero = -1;
+        long id = 0;
+        if (apres != null && !apres.isBlank()) {
+            String[] parties = apres.split(":", -1);
+            try {
+                if (parties.length != 2) {
+                    throw new NumberFormatException(apres);
+                }
+                numero = Integer.parseInt(parties[0]);
+                id = Long.parseLong(parties[1]);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Curseur de pagination invalide: " + apres);
+            }
+        }
+        if (taille != null && taille < 1) {
+            throw new IllegalArgumentException("La taille de page doit être positive: " + taille);
+        }
+        Pageable pageable = taille != null ? PageRequest.of(0, taille) : Pageable.unpaged();
+        return soumissionPatientRepository.findPageParNumero(formulaireMedecinId, numero, id, pageable);
+    }
+
+    /**
+     * Curseur désignant la position d'un patient dans la liste triée par numéro d'inclusion.
+     */
+    public static String curseur(SoumissionPatient soumission) {
+        return soumission.getNumeroInclusion() + ":" + soumission.getId();
+    }
+
     /**
      * Supprime toutes les réponses d'un patient donné pour un formulaire.
      * Accessible au médecin assigné OU au chercheur propriétaire du formulaire.
@@ -443,6 +611,10 @@ public class ReponseFormulaireService {
                 formulaireMedecinId,
                 patientIdentifierHash
         );
+        soumissionPatientRepository.deleteByFormulaireMedecinIdAndPatientIdentifierHash(
+                formulaireMedecinId,
+                patientIdentifierHash
+        );
     }
 
     /**
@@ -469,6 +641,7 @@ public class ReponseFormulaireService {
 
         // Supprimer toutes les réponses
         reponseFormulaireRepository.deleteByFormulaireMedecinId(formulaireMedecinId);
+        soumissionPatientRepository.deleteByFormulaireMedecinId(formulaireMedecinId);
 
         // Réinitialiser le statut du FormulaireMedecin
         formulaireMedecin.setComplete(false);
@@ -0,0 +1,49 @@
+package com.pfe.backend.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.persistence.EntityManagerFactory;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * Aligne la séquence des réponses (reponse_formulaire_seq) sur les identifiants existants
+ * (PostgreSQL uniquement). Les réponses créées avant le passage à la séquence ont des id_reponse
+ * attribués par IDENTITY, alors que la séquence créée par Hibernate repart de 1 : sans alignement,
+ * les premiers INSERT heurteraient la clé primaire.
+ * L'alignement a lieu à l'initialisation du contexte, après la mise à jour du schéma (dépendance sur
+ * l'EntityManagerFactory) et avant l'ouverture du serveur aux requêtes.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class ReponseSequenceInitializer {
+
+    // Taille des blocs de la séquence (allocationSize de ReponseFormulaire)
+    static final int TAILLE_BLOC = 50;
+
+    // Ne touche la séquence que si elle est en retard sur les identifiants déjà attribués
+    static final String ALIGNER = "SELECT setval('reponse_formulaire_seq', t.max_id + " + TAILLE_BLOC + ") "
+            + "FROM (SELECT COALESCE(MAX(id_reponse), 0) AS max_id FROM reponse_formulaire) t, reponse_formulaire_seq s "
+            + "WHERE s.last_value <= t.max_id";
+
+    private final JdbcTemplate jdbcTemplate;
+    // Garantit que le schéma (séquence comprise) est à jour avant l'alignement
+    private final EntityManagerFactory entityManagerFactory;
+
+    @PostConstruct
+    public void aligner() {
+        String base = jdbcTemplate.execute((ConnectionCallback<String>) c -> c.getMetaData().getDatabaseProductName());
+        if (!"PostgreSQL".equalsIgnoreCase(base)) {
+            return;
+        }
+        List<Long> valeurs = jdbcTemplate.queryForList(ALIGNER, Long.class);
+        if (!valeurs.isEmpty()) {
+            log.info("Séquence reponse_formulaire_seq alignée sur les réponses existantes ({})", valeurs.get(0));
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package com.pfe.backend.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Component;
+
+/**
+ * Crée, une fois l'application prête, les en-têtes de saisie manquants des patients existants.
+ * Jusqu'à la fin de la reprise, ces patients n'apparaissent pas dans la liste des patients d'un envoi.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class SoumissionPatientInitializer {
+
+    private final SoumissionPatientService soumissionPatientService;
+
+    @Value("${app.soumission-patient.taille-reprise:500}")
+    private int tailleReprise = 500;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void initialiser() {
+        long debut = System.currentTimeMillis();
+        long crees = 0;
+        int lot;
+        try {
+            do {
+                lot = soumissionPatientService.completerSoumissions(tailleReprise);
+                crees += lot;
+            } while (lot == tailleReprise);
+        } catch (DataIntegrityViolationException e) {
+            // Saisie concurrente du même patient : la reprise se poursuivra au prochain démarrage
+            log.warn("Reprise des en-têtes de saisie interrompue après {} en-têtes", crees, e);
+            return;
+        }
+        log.info("En-têtes de saisie repris en {} ms ({} créés)", System.currentTimeMillis() - debut, crees);
+    }
+}
@@ -0,0 +1,63 @@
+package com.pfe.backend.service;
+
+import com.pfe.backend.model.SoumissionPatient;
+import com.pfe.backend.repository.ReponseFormulaireRepository;
+import com.pfe.backend.repository.SoumissionPatientRepository;
+import lombok.RequiredArgsConstructor;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reprise des en-têtes de saisie ({@link SoumissionPatient}) pour les réponses enregistrées avant
+ * leur introduction. Les nouvelles saisies tiennent leur en-tête à jour dans {@link ReponseFormulaireService}.
+ */
+@Service
+@RequiredArgsConstructor
+public class SoumissionPatientService {
+
+    private final ReponseFormulaireRepository reponseFormulaireRepository;
+    private final SoumissionPatientRepository soumissionPatientRepository;
+
+    /**
+     * Crée les en-têtes d'un lot de patients qui n'en ont pas encore ; un seul identifiant est
+     * déchiffré par patient.
+     *
+     * @return nombre d'en-têtes créés ; inférieur à {@code taille} une fois la reprise terminée
+     */
+    @Transactional
+    public int completerSoumissions(int taille) {
+        List<Object[]> patients = reponseFormulaireRepository.findPatientsSansSoumission(PageRequest.of(0, taille));
+        if (patients.isEmpty()) {
+            return 0;
+        }
+
+        List<Long> idsReponses = new ArrayList<>(patients.size());
+        for (Object[] patient : patients) {
+            idsReponses.add((Long) patient[2]);
+        }
+        Map<Long, String> identifiants = new HashMap<>();
+        for (Object[] ligne : reponseFormulaireRepository.findPatientIdentifiersByIdReponseIn(idsReponses)) {
+            identifiants.put((Long) ligne[0], (String) ligne[1]);
+        }
+
+        List<SoumissionPatient> soumissions = new ArrayList<>(patients.size());
+        for (Object[] patient : patients) {
+            String patientIdentifier = identifiants.get((Long) patient[2]);
+            SoumissionPatient soumission = new SoumissionPatient((Long) patient[0], patientIdentifier, (String) patient[1],
+                    PatientIdentifierCounterService.extraireNumeroInclusion(patientIdentifier));
+            soumission.setDraft(((Number) patient[3]).intValue() == 1);
+            soumission.setDateCreation((LocalDateTime) patient[4]);
+            soumission.setDateModification((LocalDateTime) patient[5]);
+            soumissions.add(soumission);
+        }
+        soumissionPatientRepository.saveAll(soumissions);
+        return soumissions.size();
+    }
+}
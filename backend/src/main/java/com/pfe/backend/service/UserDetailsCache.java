@@ -0,0 +1,88 @@
+package com.pfe.backend.service;
+
+import com.pfe.backend.config.UtilisateurConnecte;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Cache borné des utilisateurs résolus par le filtre JWT, indexé par email (sujet du token).
+ * Une entrée expire après une durée fixe ; elle est aussi invalidée explicitement quand le mot de passe,
+ * l'email ou le rôle de l'utilisateur change, une fois la modification validée. Les utilisateurs
+ * introuvables ne sont pas mis en cache.
+ */
+@Component
+public class UserDetailsCache {
+
+    private record Entree(UserDetails utilisateur, long expireA) {
+    }
+
+    private final Map<String, Entree> entrees = new ConcurrentHashMap<>();
+    private final long ttlNanos;
+    private final int tailleMax;
+    // Incrémenté à chaque invalidation : un chargement commencé avant n'est pas mis en cache
+    private final AtomicLong invalidations = new AtomicLong();
+
+    public UserDetailsCache(@Value("${app.security.user-cache.ttl:5m}") Duration ttl,
+                            @Value("${app.security.user-cache.taille-max:10000}") int tailleMax) {
+        this.ttlNanos = ttl.toNanos();
+        this.tailleMax = tailleMax;
+    }
+
+    /**
+     * Retourne l'utilisateur en cache, ou le charge et le met en cache.
+     * Une copie est rendue à chaque appel : Spring Security efface le mot de passe du principal
+     * après une authentification, ce qui ne doit pas atteindre l'entrée partagée.
+     */
+    public UserDetails obtenir(String email, Function<String, UserDetails> chargement) {
+        long maintenant = System.nanoTime();
+        Entree entree = entrees.get(email);
+        if (entree == null || maintenant - entree.expireA() >= 0) {
+            long version = invalidations.get();
+            UserDetails utilisateur = chargement.apply(email);
+            if (ttlNanos > 0) {
+                CacheBorne.libererPlace(entrees, tailleMax, existante -> maintenant - existante.expireA() >= 0);
+                Entree chargee = new Entree(copie(utilisateur), maintenant + ttlNanos);
+                // Vérification sous le verrou de la clé : une invalidation concurrente passe avant ou après,
+                // jamais entre la vérification et l'insertion
+                entrees.compute(email, (cle, actuelle) -> invalidations.get() == version ? chargee : actuelle);
+            }
+            return copie(utilisateur);
+        }
+        return copie(entree.utilisateur());
+    }
+
+    /**
+     * Oublie un utilisateur dont le mot de passe, l'email ou le rôle a changé. Dans une transaction,
+     * l'invalidation attend le commit : avant, un chargement relirait encore l'ancien utilisateur.
+     */
+    public void invalider(String email) {
+        if (email == null) {
+            return;
+        }
+        ApresCommit.executer(() -> oublier(email));
+    }
+
+    private void oublier(String email) {
+        invalidations.incrementAndGet();
+        entrees.remove(email);
+    }
+
+    public int taille() {
+        return entrees.size();
+    }
+
+    private static UserDetails copie(UserDetails utilisateur) {
+        if (utilisateur instanceof UtilisateurConnecte connecte) {
+            return connecte.copie();
+        }
+        return User.withUserDetails(utilisateur).build();
+    }
+}
@@ -22,6 +22,7 @@ public class UserService {
 
     private final PasswordEncoder passwordEncoder;
     private final UtilisateurRepository repository;
+    private final UserDetailsCache userDetailsCache;
 
     /**
      * Récupère un utilisateur par son email.
@@ -58,7 +59,9 @@ public class UserService {
             user.setEmail(dto.getEmail());
         }
 
-        return repository.save(user);
+        Utilisateur enregistre = repository.save(user);
+        userDetailsCache.invalider(username);
+        return enregistre;
     }
 
     /**
@@ -81,5 +84,6 @@ public class UserService {
 
         user.setMotDePasse(passwordEncoder.encode(dto.getNewPassword()));
         repository.save(user);
+        userDetailsCache.invalider(username);
     }
 }
\ No newline at end of file
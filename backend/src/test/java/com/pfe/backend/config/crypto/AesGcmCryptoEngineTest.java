@@ -0,0 +1,106 @@
+package com.pfe.backend.config.crypto;
+
+import com.pfe.backend.config.converter.StringCryptoConverter;
+import org.junit.jupiter.api.Test;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AesGcmCryptoEngineTest {
+
+    private static final String CLE = "0123456789abcdef0123456789abcdef";
+
+    private final AesGcmCryptoEngine engine = new AesGcmCryptoEngine(CLE);
+    private final StringCryptoConverter converter = new StringCryptoConverter(engine);
+
+    @Test
+    void chiffrer_ShouldRoundTrip_WithFreshIvEachTime() {
+        String premier = converter.convertToDatabaseColumn("Tension 12/8 - élevée");
+        String second = converter.convertToDatabaseColumn("Tension 12/8 - élevée");
+
+        assertNotEquals(premier, second);
+        assertEquals("Tension 12/8 - élevée", converter.convertToEntityAttribute(premier));
+        assertEquals("Tension 12/8 - élevée", converter.convertToEntityAttribute(second));
+    }
+
+    @Test
+    void dechiffrer_ShouldReadValuesWrittenByLegacyFormat() throws Exception {
+        // IV || données chiffrées + tag, tel qu'écrit par l'ancien convertisseur
+        byte[] iv = new byte[12];
+        iv[0] = 7;
+        Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+        cipher.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(CLE.getBytes(StandardCharsets.UTF_8), "AES"),
+                new GCMParameterSpec(128, iv));
+        byte[] chiffre = cipher.doFinal("42".getBytes(StandardCharsets.UTF_8));
+        String stocke = Base64.getEncoder().encodeToString(
+                ByteBuffer.allocate(iv.length + chiffre.length).put(iv).put(chiffre).array());
+
+        assertEquals("42", converter.convertToEntityAttribute(stocke));
+    }
+
+    @Test
+    void dechiffrer_ShouldReadFromOffset_WithoutCopy() {
+        byte[] chiffre = engine.chiffrer("abc".getBytes(StandardCharsets.UTF_8));
+        byte[] tampon = new byte[chiffre.length + 5];
+        System.arraycopy(chiffre, 0, tampon, 3, chiffre.length);
+
+        assertArrayEquals("abc".getBytes(StandardCharsets.UTF_8), engine.dechiffrer(tampon, 3, chiffre.length));
+    }
+
+    @Test
+    void dechiffrer_ShouldThrow_WhenCiphertextTampered() {
+        byte[] chiffre = Base64.getDecoder().decode(converter.convertToDatabaseColumn("valeur"));
+        chiffre[chiffre.length - 1] ^= 1;
+        String altere = Base64.getEncoder().encodeToString(chiffre);
+
+        assertThrows(IllegalStateException.class, () -> converter.convertToEntityAttribute(altere));
+    }
+
+    @Test
+    void dechiffrer_ShouldThrow_WhenNotBase64OrTruncated() {
+        assertThrows(IllegalStateException.class, () -> converter.convertToEntityAttribute("%%%"));
+        assertThrows(IllegalStateException.class, () -> converter.convertToEntityAttribute("AAAA"));
+    }
+
+    @Test
+    void constructeur_ShouldReject_WhenKeyIsNot256Bits() {
+        assertThrows(IllegalStateException.class, () -> new AesGcmCryptoEngine("trop-courte"));
+    }
+
+    @Test
+    void converter_ShouldKeepNullAndEmptyUntouched() {
+        assertNull(converter.convertToDatabaseColumn(null));
+        assertEquals("", converter.convertToDatabaseColumn(""));
+        assertNull(converter.convertToEntityAttribute(null));
+        assertEquals("", converter.convertToEntityAttribute(""));
+    }
+
+    @Test
+    void engine_ShouldBeSafe_WhenUsedConcurrently() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Boolean>> resultats = executor.invokeAll(IntStream.range(0, 200)
+                    .<java.util.concurrent.Callable<Boolean>>mapToObj(i -> () -> {
+                        String valeur = "patient-" + i;
+                        return valeur.equals(engine.dechiffrer(engine.chiffrer(valeur)));
+                    })
+                    .toList());
+            for (Future<Boolean> resultat : resultats) {
+                assertTrue(resultat.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
@@ -1,7 +1,9 @@
 package com.pfe.backend.controller;
 
+import com.pfe.backend.dto.ActiviteResponse;
 import com.pfe.backend.model.Activite;
 import com.pfe.backend.repository.ActiviteRepository;
+import com.pfe.backend.service.ActiviteService;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -12,6 +14,7 @@ import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.setup.MockMvcBuilders;
 
 import java.security.Principal;
+import java.time.LocalDateTime;
 import java.util.List;
 
 import static org.mockito.Mockito.*;
@@ -26,6 +29,9 @@ class DashboardControllerTest {
     @Mock
     private ActiviteRepository activiteRepository;
 
+    @Mock
+    private ActiviteService activiteService;
+
     @InjectMocks
     private DashboardController dashboardController;
 
@@ -126,4 +132,35 @@ class DashboardControllerTest {
                 .andExpect(status().isOk())
                 .andExpect(jsonPath("$.length()").value(0));
     }
+
+    // ==================== GET /api/dashboard/activity/feed ====================
+
+    @Test
+    void getActivityFeed_ShouldReturnNextCursor_WhenPageIsFull() throws Exception {
+        ActiviteResponse activite1 = new ActiviteResponse(12L, "Export CSV", "Formulaire", 1L, null,
+                LocalDateTime.of(2026, 1, 15, 10, 30));
+        ActiviteResponse activite2 = new ActiviteResponse(11L, "Formulaire créé", "Formulaire", 1L, null,
+                LocalDateTime.of(2026, 1, 14, 9, 0));
+        when(activiteService.getFilActivite("test@test.com", null, 2)).thenReturn(List.of(activite1, activite2));
+
+        mockMvc.perform(get("/api/dashboard/activity/feed").param("limit", "2").principal(mockPrincipal))
+                .andExpect(status().isOk())
+                .andExpect(header().string("X-Next-Cursor", "2026-01-14T09:00,11"))
+                .andExpect(jsonPath("$.length()").value(2))
+                .andExpect(jsonPath("$[0].idActivite").value(12))
+                .andExpect(jsonPath("$[1].action").value("Formulaire créé"));
+    }
+
+    @Test
+    void getActivityFeed_ShouldOmitCursor_OnLastPage() throws Exception {
+        ActiviteResponse activite = new ActiviteResponse(3L, "Export CSV", "Formulaire", 1L, null,
+                LocalDateTime.of(2026, 1, 15, 10, 30));
+        when(activiteService.getFilActivite("test@test.com", "2026-01-16T08:00,4", 20)).thenReturn(List.of(activite));
+
+        mockMvc.perform(get("/api/dashboard/activity/feed").param("before", "2026-01-16T08:00,4")
+                        .principal(mockPrincipal))
+                .andExpect(status().isOk())
+                .andExpect(header().doesNotExist("X-Next-Cursor"))
+                .andExpect(jsonPath("$.length()").value(1));
+    }
 }
@@ -1,21 +1,35 @@
 package com.pfe.backend.controller;
 
+import com.pfe.backend.model.CompressionExport;
+import com.pfe.backend.model.ExportJob;
+import com.pfe.backend.model.StatutExportJob;
+import com.pfe.backend.service.ExportJobService;
 import com.pfe.backend.service.ExportReponsesService;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
-import org.springframework.core.io.ByteArrayResource;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.test.web.servlet.setup.MockMvcBuilders;
 
+import java.io.ByteArrayInputStream;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.security.Principal;
+import java.util.zip.GZIPInputStream;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.mockito.Mockito.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
 
 @ExtendWith(MockitoExtension.class)
@@ -26,6 +40,12 @@ class ExportReponsesControllerTest {
     @Mock
     private ExportReponsesService exportReponsesService;
 
+    @Mock
+    private ExportJobService exportJobService;
+
+    @TempDir
+    Path spool;
+
     @InjectMocks
     private ExportReponsesController exportController;
 
@@ -42,15 +62,19 @@ class ExportReponsesControllerTest {
     @Test
     void exporterReponsesCsv_ShouldReturnCsvFile() throws Exception {
         String csvContent = "patient_id,question1,question2\n1,valeur1,valeur2\n2,valeur3,valeur4";
-        ByteArrayResource resource = new ByteArrayResource(csvContent.getBytes(StandardCharsets.UTF_8));
 
         when(exportReponsesService.exporterReponsesCsv(1L, "chercheur@test.com"))
-                .thenReturn(resource);
+                .thenReturn(out -> out.write(csvContent.getBytes(StandardCharsets.UTF_8)));
+
+        MvcResult result = mockMvc.perform(get("/api/export/formulaires/1/csv").principal(mockPrincipal))
+                .andExpect(request().asyncStarted())
+                .andReturn();
 
-        mockMvc.perform(get("/api/export/formulaires/1/csv").principal(mockPrincipal))
+        mockMvc.perform(asyncDispatch(result))
                 .andExpect(status().isOk())
                 .andExpect(content().contentType("text/csv"))
-                .andExpect(header().string("Content-Disposition", "attachment; filename=\"formulaire_1_reponses.csv\""));
+                .andExpect(header().string("Content-Disposition", "attachment; filename=\"formulaire_1_reponses.csv\""))
+                .andExpect(content().string(csvContent));
 
         verify(exportReponsesService).exporterReponsesCsv(1L, "chercheur@test.com");
     }
@@ -58,15 +82,167 @@ class ExportReponsesControllerTest {
     @Test
     void exporterReponsesCsv_ShouldReturnEmptyCsv_WhenNoData() throws Exception {
         String csvContent = "patient_id\n";
-        ByteArrayResource resource = new ByteArrayResource(csvContent.getBytes(StandardCharsets.UTF_8));
 
         when(exportReponsesService.exporterReponsesCsv(2L, "chercheur@test.com"))
-                .thenReturn(resource);
+                .thenReturn(out -> out.write(csvContent.getBytes(StandardCharsets.UTF_8)));
 
-        mockMvc.perform(get("/api/export/formulaires/2/csv").principal(mockPrincipal))
+        MvcResult result = mockMvc.perform(get("/api/export/formulaires/2/csv").principal(mockPrincipal))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(result))
                 .andExpect(status().isOk())
                 .andExpect(content().contentType("text/csv"));
 
         verify(exportReponsesService).exporterReponsesCsv(2L, "chercheur@test.com");
     }
+
+    @Test
+    void exporterReponsesCsv_ShouldCompressWhileStreaming_WhenGzipRequested() throws Exception {
+        String csvContent = "Patient_ID;Date_Saisie\nh1;\n";
+
+        when(exportReponsesService.exporterReponsesCsv(1L, "chercheur@test.com"))
+                .thenReturn(out -> out.write(csvContent.getBytes(StandardCharsets.UTF_8)));
+
+        MvcResult result = mockMvc.perform(get("/api/export/formulaires/1/csv").param("compression", "gzip")
+                        .principal(mockPrincipal))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        MvcResult reponse = mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType("application/gzip"))
+                .andExpect(header().string("Content-Disposition", "attachment; filename=\"formulaire_1_reponses.csv.gz\""))
+                .andReturn();
+
+        assertEquals(csvContent, decompresser(reponse.getResponse().getContentAsByteArray()));
+    }
+
+    // ==================== Exports asynchrones ====================
+
+    @Test
+    void lancerExport_ShouldReturnAcceptedWithJobLocation() throws Exception {
+        ExportJob job = new ExportJob(1L, "chercheur@test.com");
+        when(exportJobService.soumettre(1L, "chercheur@test.com", CompressionExport.AUCUNE)).thenReturn(job);
+
+        mockMvc.perform(post("/api/export/formulaires/1/jobs").principal(mockPrincipal))
+                .andExpect(status().isAccepted())
+                .andExpect(header().string("Location", "/api/export/jobs/" + job.getId()))
+                .andExpect(jsonPath("$.id").value(job.getId()))
+                .andExpect(jsonPath("$.statut").value("EN_ATTENTE"));
+    }
+
+    @Test
+    void lancerExport_ShouldPassRequestedCompression() throws Exception {
+        ExportJob job = new ExportJob(1L, "chercheur@test.com", CompressionExport.GZIP);
+        when(exportJobService.soumettre(1L, "chercheur@test.com", CompressionExport.GZIP)).thenReturn(job);
+
+        mockMvc.perform(post("/api/export/formulaires/1/jobs").param("compression", "gzip").principal(mockPrincipal))
+                .andExpect(status().isAccepted())
+                .andExpect(jsonPath("$.compression").value("GZIP"));
+    }
+
+    @Test
+    void telechargerExport_ShouldServeCompressedFileAsGzip() throws Exception {
+        ExportJob job = new ExportJob(1L, "chercheur@test.com", CompressionExport.GZIP);
+        Path fichier = spool.resolve(job.getId() + ".csv.gz");
+        Files.write(fichier, new byte[]{0x1f, (byte) 0x8b});
+        job.setFichier(fichier);
+        job.setStatut(StatutExportJob.TERMINE);
+        when(exportJobService.getJobTermine(job.getId(), "chercheur@test.com")).thenReturn(job);
+
+        mockMvc.perform(get("/api/export/jobs/" + job.getId() + "/fichier").principal(mockPrincipal))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType("application/gzip"))
+                .andExpect(header().string("Content-Disposition", "attachment; filename=\"formulaire_1_reponses.csv.gz\""));
+    }
+
+    @Test
+    void getExport_ShouldReturnProgress() throws Exception {
+        ExportJob job = new ExportJob(1L, "chercheur@test.com");
+        job.setStatut(StatutExportJob.EN_COURS);
+        job.setLignesTotales(10);
+        job.getLignesTraitees().set(4);
+        when(exportJobService.getJob(job.getId(), "chercheur@test.com")).thenReturn(job);
+
+        mockMvc.perform(get("/api/export/jobs/" + job.getId()).principal(mockPrincipal))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.statut").value("EN_COURS"))
+                .andExpect(jsonPath("$.lignesTraitees").value(4))
+                .andExpect(jsonPath("$.lignesTotales").value(10));
+    }
+
+    @Test
+    void telechargerExport_ShouldSendWholeFile_WhenNoRange() throws Exception {
+        ExportJob job = jobTermine("0123456789");
+
+        mockMvc.perform(get("/api/export/jobs/" + job.getId() + "/fichier").principal(mockPrincipal))
+                .andExpect(status().isOk())
+                .andExpect(header().string("Accept-Ranges", "bytes"))
+                .andExpect(header().string("Content-Length", "10"))
+                .andExpect(header().string("Content-Disposition", "attachment; filename=\"formulaire_1_reponses.csv\""))
+                .andExpect(content().string("0123456789"));
+    }
+
+    @Test
+    void telechargerExport_ShouldResumeFromOffset_WhenRangeRequested() throws Exception {
+        ExportJob job = jobTermine("0123456789");
+
+        mockMvc.perform(get("/api/export/jobs/" + job.getId() + "/fichier").principal(mockPrincipal)
+                        .header("Range", "bytes=6-"))
+                .andExpect(status().isPartialContent())
+                .andExpect(header().string("Content-Range", "bytes 6-9/10"))
+                .andExpect(header().string("Content-Length", "4"))
+                .andExpect(content().string("6789"));
+
+        mockMvc.perform(get("/api/export/jobs/" + job.getId() + "/fichier").principal(mockPrincipal)
+                        .header("Range", "bytes=-3"))
+                .andExpect(status().isPartialContent())
+                .andExpect(content().string("789"));
+    }
+
+    @Test
+    void telechargerExport_ShouldReturn416_WhenRangeOutsideFile() throws Exception {
+        ExportJob job = jobTermine("0123456789");
+
+        mockMvc.perform(get("/api/export/jobs/" + job.getId() + "/fichier").principal(mockPrincipal)
+                        .header("Range", "bytes=10-"))
+                .andExpect(status().isRequestedRangeNotSatisfiable())
+                .andExpect(header().string("Content-Range", "bytes */10"));
+    }
+
+    @Test
+    void telechargerExport_ShouldSendWholeFile_WhenIfRangeDoesNotMatch() throws Exception {
+        ExportJob job = jobTermine("0123456789");
+
+        mockMvc.perform(get("/api/export/jobs/" + job.getId() + "/fichier").principal(mockPrincipal)
+                        .header("Range", "bytes=6-")
+                        .header("If-Range", "\"ancienne-version\""))
+                .andExpect(status().isOk())
+                .andExpect(content().string("0123456789"));
+    }
+
+    @Test
+    void parserRange_ShouldIgnoreInvalidOrMultipleRanges() {
+        assertNull(ExportReponsesController.parserRange("bytes=0-1,4-5", 10));
+        assertNull(ExportReponsesController.parserRange("items=0-1", 10));
+        assertNull(ExportReponsesController.parserRange("bytes=abc-", 10));
+        assertArrayEquals(new long[]{2, 9}, ExportReponsesController.parserRange("bytes=2-100", 10));
+    }
+
+    private ExportJob jobTermine(String contenu) throws Exception {
+        ExportJob job = new ExportJob(1L, "chercheur@test.com");
+        Path fichier = spool.resolve(job.getId() + ".csv");
+        Files.writeString(fichier, contenu);
+        job.setFichier(fichier);
+        job.setStatut(StatutExportJob.TERMINE);
+        when(exportJobService.getJobTermine(job.getId(), "chercheur@test.com")).thenReturn(job);
+        return job;
+    }
+
+    private static String decompresser(byte[] contenu) throws Exception {
+        try (GZIPInputStream gzip = new GZIPInputStream(new ByteArrayInputStream(contenu))) {
+            return new String(gzip.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
 }
@@ -14,6 +14,9 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
 import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.setup.MockMvcBuilders;
@@ -190,13 +193,31 @@ class FormulaireControllerTest {
     void getFormulairesRecus_ShouldReturnList() throws Exception {
         Principal medecinPrincipal = () -> "medecin@test.com";
         
-        when(formulaireMedecinService.getFormulairesRecus("medecin@test.com"))
-                .thenReturn(List.of(testFormulaireMedecin));
-        when(reponseFormulaireService.countDrafts(1L)).thenReturn(2);
+        when(formulaireMedecinService.getFormulairesRecus("medecin@test.com", Pageable.unpaged()))
+                .thenReturn(new PageImpl<>(List.of(testFormulaireMedecin)));
+        when(reponseFormulaireService.countDrafts(List.of(1L))).thenReturn(Map.of(1L, 2));
 
         mockMvc.perform(get("/api/formulaires/recus").principal(medecinPrincipal))
                 .andExpect(status().isOk())
-                .andExpect(jsonPath("$.length()").value(1));
+                .andExpect(header().string("X-Total-Count", "1"))
+                .andExpect(jsonPath("$.length()").value(1))
+                .andExpect(jsonPath("$[0].nombreBrouillons").value(2));
+    }
+
+    @Test
+    void getFormulairesRecus_ShouldReturnRequestedPage_WithTotalHeader() throws Exception {
+        Principal medecinPrincipal = () -> "medecin@test.com";
+
+        when(formulaireMedecinService.getFormulairesRecus("medecin@test.com", PageRequest.of(2, 1)))
+                .thenReturn(new PageImpl<>(List.of(testFormulaireMedecin), PageRequest.of(2, 1), 5));
+        when(reponseFormulaireService.countDrafts(List.of(1L))).thenReturn(Map.of(1L, 0));
+
+        mockMvc.perform(get("/api/formulaires/recus").param("page", "2").param("size", "1")
+                        .principal(medecinPrincipal))
+                .andExpect(status().isOk())
+                .andExpect(header().string("X-Total-Count", "5"))
+                .andExpect(jsonPath("$.length()").value(1))
+                .andExpect(jsonPath("$[0].nombreBrouillons").value(0));
     }
 
     // ==================== GET /api/formulaires/recus/{id} ====================
@@ -1,9 +1,15 @@
 package com.pfe.backend.controller;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.pfe.backend.config.UtilisateurConnecte;
+import com.pfe.backend.dto.ConversationPageResponse;
+import com.pfe.backend.dto.ConversationResumeDto;
+import com.pfe.backend.dto.MessageConversationDto;
+import com.pfe.backend.dto.UtilisateurDto;
 import com.pfe.backend.model.Message;
 import com.pfe.backend.model.Utilisateur;
 import com.pfe.backend.service.MessageService;
+import com.pfe.backend.service.NotificationsMessages;
 import com.pfe.backend.service.UtilisateurService;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -13,8 +19,10 @@ import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.http.MediaType;
 import org.springframework.security.access.AccessDeniedException;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import java.time.LocalDateTime;
 import java.util.HashMap;
@@ -37,6 +45,9 @@ class MessageControllerTest {
     @Mock
     private UtilisateurService utilisateurService;
 
+    @Mock
+    private NotificationsMessages notificationsMessages;
+
     @InjectMocks
     private MessageController messageController;
 
@@ -173,11 +184,45 @@ class MessageControllerTest {
                 .andExpect(jsonPath("$.length()").value(1));
     }
 
+    @Test
+    void getConversationPage_ShouldReturnPageWithParticipants() throws Exception {
+        ConversationPageResponse page = new ConversationPageResponse(
+                List.of(new UtilisateurDto(1L, "Dr. Chercheur", "chercheur@test.com", "chercheur"),
+                        new UtilisateurDto(2L, "Dr. Medecin", "medecin@test.com", "medecin")),
+                List.of(new MessageConversationDto(5L, 2L, "Bonjour", LocalDateTime.of(2026, 1, 15, 10, 0), false)),
+                "2026-01-15T10:00,5");
+        when(messageService.getConversationPage(1L, 2L, null, 20)).thenReturn(page);
+
+        mockMvc.perform(get("/api/messages/conversation/1/2/pages").param("taille", "20"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.participants.length()").value(2))
+                .andExpect(jsonPath("$.messages[0].emetteurId").value(2))
+                .andExpect(jsonPath("$.messages[0].contenu").value("Bonjour"))
+                .andExpect(jsonPath("$.suivant").value("2026-01-15T10:00,5"));
+    }
+
+    // ==================== GET /api/messages/conversations/{utilisateurId} ====================
+
+    @Test
+    void getBoiteDeReception_ShouldReturnConversations() throws Exception {
+        List<ConversationResumeDto> conversations = List.of(new ConversationResumeDto(
+                new UtilisateurDto(2L, "Dr. Medecin", "medecin@test.com", "medecin"),
+                5L, LocalDateTime.of(2026, 1, 15, 10, 0), 3));
+        when(messageService.getBoiteDeReception(1L)).thenReturn(conversations);
+
+        mockMvc.perform(get("/api/messages/conversations/1"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(1))
+                .andExpect(jsonPath("$[0].interlocuteur.id").value(2))
+                .andExpect(jsonPath("$[0].dernierMessageId").value(5))
+                .andExpect(jsonPath("$[0].nonLus").value(3));
+    }
+
     // ==================== PUT /api/messages/conversation/lire/chercheur/{chercheurId}/{medecinId} ====================
 
     @Test
     void marquerCommeLusPourChercheur_ShouldReturnOk() throws Exception {
-        doNothing().when(messageService).marquerCommeLus(1L, 2L);
+        when(messageService.marquerCommeLus(1L, 2L)).thenReturn(1);
 
         mockMvc.perform(put("/api/messages/conversation/lire/chercheur/1/2"))
                 .andExpect(status().isOk())
@@ -188,7 +233,7 @@ class MessageControllerTest {
 
     @Test
     void marquerCommeLusPourMedecin_ShouldReturnOk() throws Exception {
-        doNothing().when(messageService).marquerCommeLusPourMedecin(1L, 2L);
+        when(messageService.marquerCommeLusPourMedecin(1L, 2L)).thenReturn(1);
 
         mockMvc.perform(put("/api/messages/conversation/lire/medecin/1/2"))
                 .andExpect(status().isOk())
@@ -258,4 +303,16 @@ class MessageControllerTest {
                 .andExpect(status().isBadRequest())
                 .andExpect(jsonPath("$.error").exists());
     }
+
+    @Test
+    void getFlux_ShouldSubscribeConnectedUser() throws Exception {
+        UtilisateurConnecte connecte = new UtilisateurConnecte(1L, "chercheur@test.com", "hash", List.of());
+        when(notificationsMessages.abonner(1L)).thenReturn(new SseEmitter());
+
+        mockMvc.perform(get("/api/messages/flux")
+                        .principal(new UsernamePasswordAuthenticationToken(connecte, null, List.of())))
+                .andExpect(request().asyncStarted());
+
+        verify(notificationsMessages).abonner(1L);
+    }
 }
@@ -4,6 +4,7 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.pfe.backend.dto.ReponseFormulaireRequest;
 import com.pfe.backend.dto.StatistiqueFormulaireDto;
 import com.pfe.backend.model.ReponseFormulaire;
+import com.pfe.backend.model.SoumissionPatient;
 import com.pfe.backend.service.CsvExportService;
 import com.pfe.backend.service.ReponseFormulaireService;
 import org.junit.jupiter.api.BeforeEach;
@@ -12,15 +13,23 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
 import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.test.web.servlet.setup.MockMvcBuilders;
 
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
 import java.security.Principal;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.zip.GZIPInputStream;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.mockito.ArgumentMatchers.*;
 import static org.mockito.Mockito.*;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
@@ -147,6 +156,34 @@ class ReponseFormulaireControllerTest {
                 .andExpect(jsonPath("$[0]").value("PAT001"));
     }
 
+    @Test
+    void getPatientIdentifiers_ShouldReturnKeysetPageByNumber_WithNextCursor() throws Exception {
+        SoumissionPatient p1 = new SoumissionPatient(1L, "AB-CD-etude-0001", "h1", 1);
+        p1.setId(10L);
+        SoumissionPatient p2 = new SoumissionPatient(1L, "EF-GH-etude-0002", "h2", 2);
+        p2.setId(11L);
+        when(reponseFormulaireService.getPatientsParNumero(1L, null, 2)).thenReturn(List.of(p1, p2));
+
+        mockMvc.perform(get("/api/reponses/1/patients").param("tri", "numero").param("taille", "2"))
+                .andExpect(status().isOk())
+                .andExpect(header().string("X-Next-Cursor", "2:11"))
+                .andExpect(jsonPath("$.length()").value(2))
+                .andExpect(jsonPath("$[0]").value("AB-CD-etude-0001"));
+    }
+
+    @Test
+    void getPatientIdentifiers_ShouldOmitCursor_OnLastPage() throws Exception {
+        SoumissionPatient p3 = new SoumissionPatient(1L, "IJ-KL-etude-0003", "h3", 3);
+        p3.setId(12L);
+        when(reponseFormulaireService.getPatientsParNumero(1L, "2:11", 2)).thenReturn(List.of(p3));
+
+        mockMvc.perform(get("/api/reponses/1/patients")
+                        .param("tri", "numero").param("apres", "2:11").param("taille", "2"))
+                .andExpect(status().isOk())
+                .andExpect(header().doesNotExist("X-Next-Cursor"))
+                .andExpect(jsonPath("$.length()").value(1));
+    }
+
     // ==================== DELETE /api/reponses/{id} ====================
 
     @Test
@@ -195,14 +232,30 @@ class ReponseFormulaireControllerTest {
         draft2.put("patientIdentifier", "PAT002");
         draft2.put("reponses", List.of());
 
-        when(reponseFormulaireService.getAllDraftsForFormulaire(1L))
-                .thenReturn(List.of(draft1, draft2));
+        when(reponseFormulaireService.getAllDraftsForFormulaire(1L, Pageable.unpaged()))
+                .thenReturn(new PageImpl<>(List.of(draft1, draft2)));
 
         mockMvc.perform(get("/api/reponses/1/drafts"))
                 .andExpect(status().isOk())
+                .andExpect(header().string("X-Total-Count", "2"))
                 .andExpect(jsonPath("$.length()").value(2));
     }
 
+    @Test
+    void getAllDrafts_ShouldReturnRequestedPage_WithTotalHeader() throws Exception {
+        Map<String, Object> draft = new HashMap<>();
+        draft.put("patientIdentifier", "PAT003");
+
+        when(reponseFormulaireService.getAllDraftsForFormulaire(1L, PageRequest.of(1, 2)))
+                .thenReturn(new PageImpl<>(List.of(draft), PageRequest.of(1, 2), 3));
+
+        mockMvc.perform(get("/api/reponses/1/drafts").param("page", "1").param("size", "2"))
+                .andExpect(status().isOk())
+                .andExpect(header().string("X-Total-Count", "3"))
+                .andExpect(jsonPath("$.length()").value(1))
+                .andExpect(jsonPath("$[0].patientIdentifier").value("PAT003"));
+    }
+
     // ==================== GET /api/reponses/{id}/draft/{patientId} ====================
 
     @Test
@@ -231,23 +284,55 @@ class ReponseFormulaireControllerTest {
     // ==================== GET /api/reponses/export/{id} ====================
 
     @Test
-    void exportCSV_ShouldReturnCsvFile() throws Exception {
-        when(reponseFormulaireService.getReponses(1L)).thenReturn(List.of(testReponse));
-        when(csvExportService.generateCsvContent(any())).thenReturn("patientId,valeur\nPAT001,Test");
+    void exportCSV_ShouldStreamCsvFile() throws Exception {
+        when(csvExportService.exporterFormulaireMedecin(1L))
+                .thenReturn(out -> out.write("patientId,valeur\nPAT001,Test".getBytes(StandardCharsets.UTF_8)));
 
-        mockMvc.perform(get("/api/reponses/export/1"))
+        MvcResult result = mockMvc.perform(get("/api/reponses/export/1"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(result))
                 .andExpect(status().isOk())
                 .andExpect(content().contentType("text/csv; charset=UTF-8"))
-                .andExpect(header().string("Content-Disposition", "attachment; filename=formulaire_1.csv"));
+                .andExpect(header().string("Content-Disposition", "attachment; filename=formulaire_1.csv"))
+                .andExpect(content().string("patientId,valeur\nPAT001,Test"));
     }
 
     @Test
-    void exportCSV_ShouldReturnEmptyCsv_WhenNoData() throws Exception {
-        when(reponseFormulaireService.getReponses(1L)).thenReturn(List.of());
-        when(csvExportService.generateCsvContent(List.of())).thenReturn("patientId");
+    void exportCSVByFormulaireId_ShouldStreamAllEnvois() throws Exception {
+        when(csvExportService.exporterFormulaire(5L))
+                .thenReturn(out -> out.write("NUMERO_INCLUSION;\n".getBytes(StandardCharsets.UTF_8)));
+
+        MvcResult result = mockMvc.perform(get("/api/reponses/export/formulaire/5"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(header().string("Content-Disposition", "attachment; filename=formulaire_5_all.csv"));
+
+        verify(reponseFormulaireService, never()).getReponsesByFormulaireId(any());
+    }
+
+    @Test
+    void exportCSV_ShouldStreamGzipFile_WhenCompressionRequested() throws Exception {
+        when(csvExportService.exporterFormulaireMedecin(1L))
+                .thenReturn(out -> out.write("patientId,valeur\nPAT001,Test".getBytes(StandardCharsets.UTF_8)));
+
+        MvcResult result = mockMvc.perform(get("/api/reponses/export/1").param("compression", "gzip"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
 
-        mockMvc.perform(get("/api/reponses/export/1"))
+        MvcResult reponse = mockMvc.perform(asyncDispatch(result))
                 .andExpect(status().isOk())
-                .andExpect(content().contentType("text/csv; charset=UTF-8"));
+                .andExpect(content().contentType("application/gzip"))
+                .andExpect(header().string("Content-Disposition", "attachment; filename=formulaire_1.csv.gz"))
+                .andReturn();
+
+        try (GZIPInputStream gzip = new GZIPInputStream(
+                new ByteArrayInputStream(reponse.getResponse().getContentAsByteArray()))) {
+            assertEquals("patientId,valeur\nPAT001,Test", new String(gzip.readAllBytes(), StandardCharsets.UTF_8));
+        }
     }
 }
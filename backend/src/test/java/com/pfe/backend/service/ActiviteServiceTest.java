@@ -1,20 +1,33 @@
 package com.pfe.backend.service;
 
+import com.pfe.backend.config.UtilisateurConnecte;
+import com.pfe.backend.dto.ActiviteResponse;
+import com.pfe.backend.exception.ResourceNotFoundException;
 import com.pfe.backend.model.Activite;
 import com.pfe.backend.model.Utilisateur;
 import com.pfe.backend.repository.ActiviteRepository;
 import com.pfe.backend.repository.UtilisateurRepository;
+import com.pfe.backend.service.EcrivainActivites.EvenementActivite;
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
-
+import org.springframework.data.domain.PageRequest;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.LocalDateTime;
+import java.util.List;
 import java.util.Optional;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.Mockito.*;
 
 @ExtendWith(MockitoExtension.class)
@@ -26,9 +39,20 @@ class ActiviteServiceTest {
     @Mock
     private UtilisateurRepository utilisateurRepository;
 
+    @Mock
+    private EcrivainActivites ecrivainActivites;
+
     @InjectMocks
     private ActiviteService activiteService;
 
+    @AfterEach
+    void tearDown() {
+        SecurityContextHolder.clearContext();
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
     @Test
     void enregistrerActivite_ShouldSaveActivite_WhenUserExists() {
         // Arrange
@@ -92,4 +116,134 @@ class ActiviteServiceTest {
         verify(activiteRepository).save(activiteCaptor.capture());
         assertNull(activiteCaptor.getValue().getDetails());
     }
+
+    @Test
+    void enregistrerActivite_ShouldSubmitEvent_WhenAsynchronous() {
+        // Arrange
+        when(ecrivainActivites.estAsynchrone()).thenReturn(true);
+        when(utilisateurRepository.findIdByEmail("test@example.com")).thenReturn(Optional.of(7L));
+
+        // Act
+        activiteService.enregistrerActivite("test@example.com", "Action", "Type", 1L, "Details");
+
+        // Assert
+        ArgumentCaptor<EvenementActivite> evenementCaptor = ArgumentCaptor.forClass(EvenementActivite.class);
+        verify(ecrivainActivites).soumettre(evenementCaptor.capture());
+        EvenementActivite evenement = evenementCaptor.getValue();
+        assertEquals(7L, evenement.utilisateurId());
+        assertEquals("Action", evenement.action());
+        assertEquals("Type", evenement.ressourceType());
+        assertEquals(1L, evenement.ressourceId());
+        assertEquals("Details", evenement.details());
+        assertNotNull(evenement.dateCreation());
+        verify(activiteRepository, never()).save(any(Activite.class));
+    }
+
+    @Test
+    void enregistrerActivite_ShouldUsePrincipalId_WhenAuthorIsCurrentUser() {
+        // Arrange
+        when(ecrivainActivites.estAsynchrone()).thenReturn(true);
+        UtilisateurConnecte connecte = new UtilisateurConnecte(7L, "test@example.com", "hash", List.of());
+        SecurityContextHolder.getContext().setAuthentication(
+                new UsernamePasswordAuthenticationToken(connecte, null, connecte.getAuthorities()));
+
+        // Act
+        activiteService.enregistrerActivite("test@example.com", "Action", "Type", 1L, null);
+
+        // Assert
+        verify(utilisateurRepository, never()).findIdByEmail(any());
+        ArgumentCaptor<EvenementActivite> evenementCaptor = ArgumentCaptor.forClass(EvenementActivite.class);
+        verify(ecrivainActivites).soumettre(evenementCaptor.capture());
+        assertEquals(7L, evenementCaptor.getValue().utilisateurId());
+    }
+
+    @Test
+    void enregistrerActivite_ShouldSubmitOnlyAfterCommit_WhenTransactionActive() {
+        // Arrange
+        when(ecrivainActivites.estAsynchrone()).thenReturn(true);
+        when(utilisateurRepository.findIdByEmail("test@example.com")).thenReturn(Optional.of(7L));
+        TransactionSynchronizationManager.initSynchronization();
+
+        // Act
+        activiteService.enregistrerActivite("test@example.com", "Action", "Type", 1L, null);
+
+        // Assert
+        verify(ecrivainActivites, never()).soumettre(any());
+        List<TransactionSynchronization> synchronisations = TransactionSynchronizationManager.getSynchronizations();
+        assertEquals(1, synchronisations.size());
+        synchronisations.get(0).afterCommit();
+        verify(ecrivainActivites).soumettre(any(EvenementActivite.class));
+    }
+
+    @Test
+    void enregistrerActivite_ShouldNotSubmit_WhenAsynchronousAndUserNotFound() {
+        // Arrange
+        when(ecrivainActivites.estAsynchrone()).thenReturn(true);
+        when(utilisateurRepository.findIdByEmail("unknown@example.com")).thenReturn(Optional.empty());
+
+        // Act
+        activiteService.enregistrerActivite("unknown@example.com", "Action", "Type", 1L, null);
+
+        // Assert
+        verify(ecrivainActivites, never()).soumettre(any());
+    }
+
+    @Test
+    void getFilActivite_ShouldReturnFirstPage_WhenNoCursor() {
+        // Arrange
+        ActiviteResponse activite = new ActiviteResponse(3L, "Action", "Type", 1L, null, LocalDateTime.now());
+        when(utilisateurRepository.findIdByEmail("test@example.com")).thenReturn(Optional.of(7L));
+        when(activiteRepository.findFil(7L, PageRequest.of(0, 20))).thenReturn(List.of(activite));
+
+        // Act
+        List<ActiviteResponse> result = activiteService.getFilActivite("test@example.com", null, 20);
+
+        // Assert
+        assertEquals(List.of(activite), result);
+        verify(activiteRepository, never()).findFilAvant(any(), any(), anyLong(), any());
+    }
+
+    @Test
+    void getFilActivite_ShouldResumeAfterCursor() {
+        // Arrange
+        ActiviteResponse derniere = new ActiviteResponse(11L, "Action", "Type", 1L, null,
+                LocalDateTime.of(2026, 1, 14, 9, 0, 0, 123_000_000));
+        when(utilisateurRepository.findIdByEmail("test@example.com")).thenReturn(Optional.of(7L));
+
+        // Act
+        activiteService.getFilActivite("test@example.com", ActiviteService.curseur(derniere), 20);
+
+        // Assert
+        verify(activiteRepository).findFilAvant(7L, derniere.dateCreation(), 11L, PageRequest.of(0, 20));
+    }
+
+    @Test
+    void getFilActivite_ShouldThrow_WhenCursorInvalid() {
+        // Arrange
+        when(utilisateurRepository.findIdByEmail("test@example.com")).thenReturn(Optional.of(7L));
+
+        // Act & Assert
+        assertThrows(IllegalArgumentException.class,
+                () -> activiteService.getFilActivite("test@example.com", "hier,11", 20));
+        assertThrows(IllegalArgumentException.class,
+                () -> activiteService.getFilActivite("test@example.com", "2026-01-14T09:00", 20));
+    }
+
+    @Test
+    void getFilActivite_ShouldThrow_WhenLimitOutOfRange() {
+        assertThrows(IllegalArgumentException.class,
+                () -> activiteService.getFilActivite("test@example.com", null, 0));
+        assertThrows(IllegalArgumentException.class,
+                () -> activiteService.getFilActivite("test@example.com", null, ActiviteService.LIMITE_MAX_FIL + 1));
+    }
+
+    @Test
+    void getFilActivite_ShouldThrow_WhenUserNotFound() {
+        // Arrange
+        when(utilisateurRepository.findIdByEmail("unknown@example.com")).thenReturn(Optional.empty());
+
+        // Act & Assert
+        assertThrows(ResourceNotFoundException.class,
+                () -> activiteService.getFilActivite("unknown@example.com", null, 20));
+    }
 }
@@ -0,0 +1,236 @@
+package com.pfe.backend.service;
+
+import com.pfe.backend.dto.ConversationResumeDto;
+import com.pfe.backend.dto.MessageConversationDto;
+import com.pfe.backend.model.ConversationResume;
+import com.pfe.backend.model.Message;
+import com.pfe.backend.model.Role;
+import com.pfe.backend.model.Utilisateur;
+import com.pfe.backend.repository.ConversationResumeRepository;
+import com.pfe.backend.repository.MessageRepository;
+import com.pfe.backend.repository.UtilisateurRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class ConversationResumeServiceTest {
+
+    private static final LocalDateTime DATE = LocalDateTime.of(2026, 1, 15, 10, 0);
+
+    @Mock
+    private ConversationResumeRepository conversationResumeRepository;
+
+    @Mock
+    private MessageRepository messageRepository;
+
+    @Mock
+    private UtilisateurRepository utilisateurRepository;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private ConversationResumeService service;
+
+    @BeforeEach
+    void setUp() {
+        service = new ConversationResumeService(conversationResumeRepository, messageRepository,
+                utilisateurRepository, transactionManager);
+    }
+
+    @Test
+    void messageEnvoye_ShouldCountUnreadForRecipientSide() {
+        // Arrange : le destinataire (7) a le plus grand id, c'est le côté B
+        when(conversationResumeRepository.enregistrerMessage(3L, 7L, 10L, DATE, 0, 1)).thenReturn(1);
+
+        // Act
+        service.messageEnvoye(message(10L, 3L, 7L));
+
+        // Assert
+        verify(conversationResumeRepository).enregistrerMessage(3L, 7L, 10L, DATE, 0, 1);
+        verify(conversationResumeRepository, never()).saveAndFlush(any());
+    }
+
+    @Test
+    void messageEnvoye_ShouldCreateSummary_WhenFirstMessageOfPair() {
+        // Arrange
+        when(conversationResumeRepository.enregistrerMessage(3L, 7L, 10L, DATE, 1, 0)).thenReturn(0, 1);
+
+        // Act
+        service.messageEnvoye(message(10L, 7L, 3L));
+
+        // Assert
+        ArgumentCaptor<ConversationResume> resumeCaptor = ArgumentCaptor.forClass(ConversationResume.class);
+        verify(conversationResumeRepository).saveAndFlush(resumeCaptor.capture());
+        assertEquals(3L, resumeCaptor.getValue().getUtilisateurAId());
+        assertEquals(7L, resumeCaptor.getValue().getUtilisateurBId());
+        verify(conversationResumeRepository, times(2)).enregistrerMessage(3L, 7L, 10L, DATE, 1, 0);
+        verify(transactionManager).commit(any());
+    }
+
+    @Test
+    void messageEnvoye_ShouldSeedSummaryFromEarlierMessages_WhenPairNotYetBackfilled() {
+        // Arrange : conversation antérieure à la table, pas encore reprise
+        when(conversationResumeRepository.enregistrerMessage(3L, 7L, 10L, DATE, 1, 0)).thenReturn(0, 1);
+        when(messageRepository.findDerniersMessages(3L, 7L, PageRequest.of(0, 1))).thenReturn(List.of());
+        when(messageRepository.findDerniersMessages(7L, 3L, PageRequest.of(0, 1)))
+                .thenReturn(List.of(new MessageConversationDto(8L, 7L, "Bonjour", DATE.minusDays(1), false)));
+        when(messageRepository.countUnreadMessages(3L, 7L)).thenReturn(2);
+        when(messageRepository.countUnreadMessages(7L, 3L)).thenReturn(0);
+
+        // Act
+        service.messageEnvoye(message(10L, 7L, 3L));
+
+        // Assert : les non lus existants sont repris, le nouveau message s'y ajoute ensuite
+        ArgumentCaptor<ConversationResume> resumeCaptor = ArgumentCaptor.forClass(ConversationResume.class);
+        verify(conversationResumeRepository).saveAndFlush(resumeCaptor.capture());
+        assertEquals(8L, resumeCaptor.getValue().getDernierMessageId());
+        assertEquals(DATE.minusDays(1), resumeCaptor.getValue().getDateDernierMessage());
+        assertEquals(2, resumeCaptor.getValue().getNonLusA());
+        assertEquals(0, resumeCaptor.getValue().getNonLusB());
+        verify(conversationResumeRepository, times(2)).enregistrerMessage(3L, 7L, 10L, DATE, 1, 0);
+    }
+
+    @Test
+    void messageEnvoye_ShouldUpdateExistingSummary_WhenCreatedConcurrently() {
+        // Arrange
+        when(conversationResumeRepository.enregistrerMessage(3L, 7L, 10L, DATE, 0, 1)).thenReturn(0, 1);
+        when(conversationResumeRepository.saveAndFlush(any(ConversationResume.class)))
+                .thenThrow(new DataIntegrityViolationException("uk_conversation_participants"));
+
+        // Act
+        service.messageEnvoye(message(10L, 3L, 7L));
+
+        // Assert
+        verify(conversationResumeRepository, times(2)).enregistrerMessage(3L, 7L, 10L, DATE, 0, 1);
+        verify(transactionManager).rollback(any());
+    }
+
+    @Test
+    void conversationLue_ShouldDecrementRecipientSide() {
+        // Act
+        service.conversationLue(3L, 7L, 2);
+        service.conversationLue(7L, 3L, 4);
+
+        // Assert
+        verify(conversationResumeRepository).marquerLusPourA(3L, 7L, 2);
+        verify(conversationResumeRepository).marquerLusPourB(3L, 7L, 4);
+    }
+
+    @Test
+    void recalculer_ShouldKeepMostRecentRemainingMessage_AndRecountUnread() {
+        // Arrange
+        ConversationResume resume = new ConversationResume(3L, 7L);
+        resume.setDernierMessageId(12L);
+        when(conversationResumeRepository.findByUtilisateurAIdAndUtilisateurBId(3L, 7L)).thenReturn(Optional.of(resume));
+        when(messageRepository.findDerniersMessages(3L, 7L, PageRequest.of(0, 1)))
+                .thenReturn(List.of(new MessageConversationDto(9L, 3L, "Bonjour", DATE, true)));
+        when(messageRepository.findDerniersMessages(7L, 3L, PageRequest.of(0, 1)))
+                .thenReturn(List.of(new MessageConversationDto(11L, 7L, "Réponse", DATE.plusMinutes(5), false)));
+        when(messageRepository.countUnreadMessages(3L, 7L)).thenReturn(1);
+        when(messageRepository.countUnreadMessages(7L, 3L)).thenReturn(0);
+
+        // Act
+        service.recalculer(7L, 3L);
+
+        // Assert
+        assertEquals(11L, resume.getDernierMessageId());
+        assertEquals(DATE.plusMinutes(5), resume.getDateDernierMessage());
+        assertEquals(1, resume.getNonLusA());
+        assertEquals(0, resume.getNonLusB());
+        verify(conversationResumeRepository).save(resume);
+    }
+
+    @Test
+    void recalculer_ShouldClearLastMessage_WhenConversationEmpty() {
+        // Arrange
+        ConversationResume resume = new ConversationResume(3L, 7L);
+        resume.setDernierMessageId(12L);
+        resume.setDateDernierMessage(DATE);
+        when(conversationResumeRepository.findByUtilisateurAIdAndUtilisateurBId(3L, 7L)).thenReturn(Optional.of(resume));
+
+        // Act
+        service.recalculer(3L, 7L);
+
+        // Assert
+        assertNull(resume.getDernierMessageId());
+        assertNull(resume.getDateDernierMessage());
+        verify(conversationResumeRepository).save(resume);
+    }
+
+    @Test
+    void getBoiteDeReception_ShouldReturnInterlocutorAndOwnUnreadCount() {
+        // Arrange
+        ConversationResume avecMedecin = resume(3L, 7L, 11L, 2, 5);
+        ConversationResume avecAdmin = resume(1L, 3L, 4L, 0, 1);
+        when(conversationResumeRepository.findBoiteDeReception(3L)).thenReturn(List.of(avecMedecin, avecAdmin));
+        when(utilisateurRepository.findAllById(List.of(7L, 1L)))
+                .thenReturn(List.of(utilisateur(1L, "admin"), utilisateur(7L, "medecin")));
+
+        // Act
+        List<ConversationResumeDto> result = service.getBoiteDeReception(3L);
+
+        // Assert
+        assertEquals(2, result.size());
+        assertEquals(7L, result.get(0).interlocuteur().getId());
+        assertEquals(11L, result.get(0).dernierMessageId());
+        assertEquals(2, result.get(0).nonLus());
+        assertEquals(1L, result.get(1).interlocuteur().getId());
+        assertEquals(1, result.get(1).nonLus());
+        verifyNoInteractions(messageRepository);
+    }
+
+    @Test
+    void getBoiteDeReception_ShouldReturnEmpty_WhenNoConversation() {
+        // Arrange
+        when(conversationResumeRepository.findBoiteDeReception(3L)).thenReturn(List.of());
+
+        // Act
+        List<ConversationResumeDto> result = service.getBoiteDeReception(3L);
+
+        // Assert
+        assertTrue(result.isEmpty());
+        verifyNoInteractions(utilisateurRepository);
+    }
+
+    private static Message message(Long id, Long emetteurId, Long destinataireId) {
+        Message message = new Message("Bonjour", DATE, utilisateur(emetteurId, "chercheur"), utilisateur(destinataireId, "medecin"));
+        ReflectionTestUtils.setField(message, "id", id);
+        return message;
+    }
+
+    private static ConversationResume resume(Long a, Long b, Long dernierMessageId, int nonLusA, int nonLusB) {
+        ConversationResume resume = new ConversationResume(a, b);
+        resume.setDernierMessageId(dernierMessageId);
+        resume.setDateDernierMessage(DATE);
+        resume.setNonLusA(nonLusA);
+        resume.setNonLusB(nonLusB);
+        return resume;
+    }
+
+    private static Utilisateur utilisateur(Long id, String role) {
+        Utilisateur utilisateur = new Utilisateur();
+        utilisateur.setId(id);
+        utilisateur.setNom("Utilisateur " + id);
+        utilisateur.setEmail(role + id + "@test.com");
+        Role r = new Role();
+        r.setNom(role);
+        utilisateur.setRole(r);
+        return utilisateur;
+    }
+}
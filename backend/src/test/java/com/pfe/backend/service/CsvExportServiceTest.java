@@ -1,5 +1,6 @@
 package com.pfe.backend.service;
 
+import com.pfe.backend.dto.ReponseExportDto;
 import com.pfe.backend.model.Champ;
 import com.pfe.backend.model.ListeValeur;
 import com.pfe.backend.model.OptionValeur;
@@ -9,17 +10,32 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.CsvSource;
 import org.mockito.InjectMocks;
+import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
 
 import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
 
 @ExtendWith(MockitoExtension.class)
 class CsvExportServiceTest {
 
+    @Mock
+    private LectureReponsesService lectureReponsesService;
+
+    @Mock
+    private PlanExportCache planExportCache;
+
     @InjectMocks
     private CsvExportService csvExportService;
 
@@ -503,6 +519,98 @@ class CsvExportServiceTest {
         assertEquals("", result);
     }
 
+    @Test
+    void generateCsvContent_ShouldUseChampMap_WhenGivenDecryptedRows() {
+        // Arrange - lignes issues de la lecture en masse, champs chargés à part
+        OptionValeur option = new OptionValeur();
+        option.setValeur("F");
+        option.setLibelle("Féminin");
+        ListeValeur listeValeur = new ListeValeur();
+        listeValeur.setOptions(new ArrayList<>(List.of(option)));
+        Champ champSexe = createChamp(1L, "Sexe");
+        champSexe.setListeValeur(listeValeur);
+        Champ champAge = createChamp(2L, "Age");
+
+        List<ReponseExportDto> lignes = List.of(
+                new ReponseExportDto(1L, "hash2", "B-B-ETUDE-0002", "F", null),
+                new ReponseExportDto(2L, "hash1", "A-A-ETUDE-0001", "40", null),
+                new ReponseExportDto(1L, "hash1", "A-A-ETUDE-0001", "F", null),
+                new ReponseExportDto(3L, "hash1", "A-A-ETUDE-0001", "ignoré", null)
+        );
+
+        // Act
+        String result = csvExportService.generateCsvContent(lignes, Map.of(1L, champSexe, 2L, champAge));
+
+        // Assert - champ 3 absent de la map : pas de colonne ; patients triés par numéro d'inclusion
+        String[] lines = result.split("\n");
+        assertEquals("IDENTITE PATIENT;;", lines[0]);
+        assertEquals("NUMERO_INCLUSION;Age;Sexe;", lines[1]);
+        assertEquals("1;40;Féminin;", lines[2]);
+        assertEquals("2;;Féminin;", lines[3]);
+    }
+
+    @Test
+    void exporterFormulaireMedecin_ShouldStreamBomHeaderAndOneLinePerPatient() throws Exception {
+        Champ champAge = createChamp(2L, "Age");
+        Champ champSexe = createChamp(1L, "Sexe");
+        Champ champNonRepondu = createChamp(3L, "Poids");
+        when(planExportCache.getPlanParFormulaireMedecin(9L))
+                .thenReturn(PlanExport.compiler(List.of(champSexe, champAge, champNonRepondu)));
+        when(lectureReponsesService.idsChampsRepondusParFormulaireMedecin(9L)).thenReturn(List.of(1L, 2L));
+        doAnswer(invocation -> {
+            Consumer<List<ReponseExportDto>> parPatient = invocation.getArgument(1);
+            parPatient.accept(List.of(
+                    new ReponseExportDto(2L, "hashA", "A-A-ETUDE-0002", "40", null),
+                    new ReponseExportDto(1L, "hashA", "A-A-ETUDE-0002", "F", null)));
+            parPatient.accept(List.of(new ReponseExportDto(1L, "hashB", "B-B-ETUDE-0001", "M", null)));
+            return null;
+        }).when(lectureReponsesService).parcourirReponsesSoumisesParFormulaireMedecin(eq(9L), any());
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        csvExportService.exporterFormulaireMedecin(9L).writeTo(out);
+        byte[] bytes = out.toByteArray();
+
+        assertArrayEquals(new byte[]{(byte) 0xEF, (byte) 0xBB, (byte) 0xBF}, Arrays.copyOf(bytes, 3));
+        String[] lines = new String(bytes, 3, bytes.length - 3, StandardCharsets.UTF_8).split("\n");
+        assertEquals("IDENTITE PATIENT;;", lines[0]);
+        assertEquals("NUMERO_INCLUSION;Age;Sexe;", lines[1]);
+        assertEquals("2;40;F;", lines[2]);
+        assertEquals("1;;M;", lines[3]);
+        assertEquals(4, lines.length);
+    }
+
+    @Test
+    void exporterFormulaire_ShouldOnlyWriteBom_WhenNoAnsweredField() throws Exception {
+        when(planExportCache.getPlan(3L)).thenReturn(PlanExport.compiler(List.of(createChamp(1L, "Age"))));
+        when(lectureReponsesService.idsChampsRepondusParFormulaire(3L)).thenReturn(List.of());
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        csvExportService.exporterFormulaire(3L).writeTo(out);
+
+        assertArrayEquals(new byte[]{(byte) 0xEF, (byte) 0xBB, (byte) 0xBF}, out.toByteArray());
+        verify(lectureReponsesService, never()).parcourirReponsesSoumisesParFormulaire(any(), any());
+    }
+
+    @Test
+    void exporterFormulaire_ShouldSplitRowsWithoutHash_ByPatientIdentifier() throws Exception {
+        when(planExportCache.getPlan(3L)).thenReturn(PlanExport.compiler(List.of(createChamp(1L, "Age"))));
+        when(lectureReponsesService.idsChampsRepondusParFormulaire(3L)).thenReturn(List.of(1L));
+        doAnswer(invocation -> {
+            Consumer<List<ReponseExportDto>> parPatient = invocation.getArgument(1);
+            parPatient.accept(List.of(
+                    new ReponseExportDto(1L, null, "X-X-ETUDE-0007", "30", null),
+                    new ReponseExportDto(1L, null, "Y-Y-ETUDE-0008", "31", null)));
+            return null;
+        }).when(lectureReponsesService).parcourirReponsesSoumisesParFormulaire(eq(3L), any());
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        csvExportService.exporterFormulaire(3L).writeTo(out);
+        String content = out.toString(StandardCharsets.UTF_8);
+
+        assertTrue(content.contains("7;30;"));
+        assertTrue(content.contains("8;31;"));
+    }
+
     private ReponseFormulaire createReponse(Champ champ, String valeur, String patientHash) {
         ReponseFormulaire reponse = new ReponseFormulaire();
         reponse.setChamp(champ);
@@ -0,0 +1,32 @@
+package com.pfe.backend.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CurseurDateTest {
+
+    @Test
+    void lire_ShouldRoundTripWithFormater() {
+        LocalDateTime date = LocalDateTime.of(2026, 1, 15, 10, 30, 5, 123_000_000);
+
+        CurseurDate curseur = CurseurDate.lire(CurseurDate.formater(date, 42L));
+
+        assertEquals(new CurseurDate(date, 42L), curseur);
+    }
+
+    @Test
+    void lire_ShouldReturnNull_ForFirstPage() {
+        assertNull(CurseurDate.lire(null));
+        assertNull(CurseurDate.lire(" "));
+    }
+
+    @Test
+    void lire_ShouldReject_MalformedCursor() {
+        assertThrows(IllegalArgumentException.class, () -> CurseurDate.lire("2026-01-15T10:30"));
+        assertThrows(IllegalArgumentException.class, () -> CurseurDate.lire("hier,42"));
+        assertThrows(IllegalArgumentException.class, () -> CurseurDate.lire("2026-01-15T10:30,abc"));
+    }
+}
@@ -0,0 +1,206 @@
+package com.pfe.backend.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.pfe.backend.config.crypto.AesGcmCryptoEngine;
+import com.pfe.backend.service.EcrivainActivites.EvenementActivite;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class EcrivainActivitesTest {
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    @TempDir
+    Path repertoire;
+
+    private final AesGcmCryptoEngine cryptoEngine = new AesGcmCryptoEngine("12345678901234567890123456789012");
+    private final ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules();
+    private final List<EcrivainActivites> ecrivains = new ArrayList<>();
+
+    @AfterEach
+    void tearDown() {
+        ecrivains.forEach(EcrivainActivites::arreter);
+    }
+
+    private EcrivainActivites ecrivain(String durabilite, int capacite) {
+        EcrivainActivites ecrivain = new EcrivainActivites(jdbcTemplate, cryptoEngine, objectMapper, durabilite,
+                capacite, 100, Duration.ofMillis(20), repertoire.resolve("activite.journal").toString());
+        ecrivains.add(ecrivain);
+        return ecrivain;
+    }
+
+    private static EvenementActivite evenement(long ressourceId) {
+        return new EvenementActivite(7L, "Création de formulaire", "Formulaire", ressourceId, null,
+                LocalDateTime.of(2026, 1, 15, 10, 30));
+    }
+
+    private String ligneJournal(EvenementActivite evenement) throws Exception {
+        return cryptoEngine.chiffrer(objectMapper.writeValueAsString(evenement)) + "\n";
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<Object[]> lignesEcrites() {
+        ArgumentCaptor<List<Object[]>> lignesCaptor = ArgumentCaptor.forClass(List.class);
+        verify(jdbcTemplate, atLeast(0)).batchUpdate(eq(EcrivainActivites.INSERT), lignesCaptor.capture());
+        List<Object[]> lignes = new ArrayList<>();
+        lignesCaptor.getAllValues().forEach(lignes::addAll);
+        return lignes;
+    }
+
+    @Test
+    void soumettre_ShouldWriteEventsInBatches_WhenAsynchronous() {
+        // Arrange
+        EcrivainActivites ecrivain = ecrivain("async", 100);
+
+        // Act
+        for (long i = 1; i <= 3; i++) {
+            ecrivain.soumettre(evenement(i));
+        }
+        ecrivain.arreter();
+
+        // Assert
+        List<Object[]> lignes = lignesEcrites();
+        assertEquals(3, lignes.size());
+        assertEquals(7L, lignes.get(0)[0]);
+        assertEquals("Création de formulaire", lignes.get(0)[1]);
+        assertEquals(1L, lignes.get(0)[3]);
+        assertEquals(0, ecrivain.enAttente());
+    }
+
+    @Test
+    void soumettre_ShouldWriteOnCallerThread_WhenQueueFull() throws InterruptedException {
+        // Arrange : le thread d'écriture reste bloqué sur son premier lot
+        CountDownLatch pris = new CountDownLatch(1);
+        CountDownLatch liberer = new CountDownLatch(1);
+        List<String> threads = new ArrayList<>();
+        when(jdbcTemplate.batchUpdate(eq(EcrivainActivites.INSERT), anyList())).thenAnswer(invocation -> {
+            synchronized (threads) {
+                threads.add(Thread.currentThread().getName());
+            }
+            if (Thread.currentThread().getName().equals("activite-writer")) {
+                pris.countDown();
+                liberer.await(5, TimeUnit.SECONDS);
+            }
+            return new int[0];
+        });
+        EcrivainActivites ecrivain = ecrivain("async", 1);
+        ecrivain.soumettre(evenement(1));
+        assertTrue(pris.await(5, TimeUnit.SECONDS));
+
+        // Act
+        ecrivain.soumettre(evenement(2));
+        ecrivain.soumettre(evenement(3));
+
+        // Assert
+        synchronized (threads) {
+            assertEquals(List.of("activite-writer", Thread.currentThread().getName()), threads);
+        }
+        assertEquals(1, ecrivain.enAttente());
+        liberer.countDown();
+    }
+
+    @Test
+    void constructeur_ShouldRequireJournalPath_InJournalMode() {
+        assertThrows(IllegalStateException.class, () -> new EcrivainActivites(jdbcTemplate, cryptoEngine,
+                objectMapper, "journal", 100, 100, Duration.ofMillis(20), ""));
+    }
+
+    @Test
+    void arreter_ShouldTruncateJournal_WhenEverythingWritten() throws Exception {
+        // Arrange
+        EcrivainActivites ecrivain = ecrivain("journal", 100);
+
+        // Act
+        ecrivain.soumettre(evenement(1));
+        ecrivain.arreter();
+
+        // Assert
+        assertEquals(1, lignesEcrites().size());
+        assertEquals(0, Files.size(repertoire.resolve("activite.journal")));
+    }
+
+    @Test
+    void reprendreJournal_ShouldReplayEvents_AfterFailedWrite() throws Exception {
+        // Arrange : la base est indisponible, les événements sont mis de côté pour reprise
+        when(jdbcTemplate.batchUpdate(eq(EcrivainActivites.INSERT), anyList()))
+                .thenThrow(new DataAccessResourceFailureException("base indisponible"));
+        EcrivainActivites precedent = ecrivain("journal", 100);
+        precedent.soumettre(evenement(1));
+        precedent.soumettre(evenement(2));
+        precedent.arreter();
+        ecrivains.remove(precedent);
+        Path reprise = repertoire.resolve("activite.journal.reprise");
+        assertTrue(Files.size(reprise) > 0);
+        assertFalse(Files.readString(reprise).contains("Formulaire"));
+        assertEquals(0, Files.size(repertoire.resolve("activite.journal")));
+        reset(jdbcTemplate);
+
+        // Act
+        EcrivainActivites ecrivain = ecrivain("journal", 100);
+        ecrivain.reprendreJournal();
+
+        // Assert
+        List<Object[]> lignes = lignesEcrites();
+        assertEquals(2, lignes.size());
+        assertEquals(1L, lignes.get(0)[3]);
+        assertEquals(2L, lignes.get(1)[3]);
+        assertFalse(Files.exists(repertoire.resolve("activite.journal.reprise")));
+        assertFalse(Files.exists(repertoire.resolve("activite.journal.reprise.en-cours")));
+    }
+
+    @Test
+    void constructeur_ShouldKeepPendingReprise_WhenJournalLeftByCrash() throws Exception {
+        // Arrange : une reprise attend encore, et un arrêt brutal a laissé un journal
+        Files.writeString(repertoire.resolve("activite.journal.reprise"), ligneJournal(evenement(1)));
+        Files.writeString(repertoire.resolve("activite.journal"), ligneJournal(evenement(2)));
+
+        // Act
+        EcrivainActivites ecrivain = ecrivain("journal", 100);
+        ecrivain.reprendreJournal();
+
+        // Assert : le journal est ajouté à la reprise au lieu de l'écraser
+        List<Object[]> lignes = lignesEcrites();
+        assertEquals(2, lignes.size());
+        assertEquals(1L, lignes.get(0)[3]);
+        assertEquals(2L, lignes.get(1)[3]);
+    }
+
+    @Test
+    void soumettre_ShouldRetryBatch_WhenWriteFails() {
+        // Arrange : la première tentative échoue
+        when(jdbcTemplate.batchUpdate(eq(EcrivainActivites.INSERT), anyList()))
+                .thenThrow(new DataAccessResourceFailureException("base indisponible"))
+                .thenReturn(new int[0]);
+        EcrivainActivites ecrivain = ecrivain("async", 100);
+
+        // Act
+        ecrivain.soumettre(evenement(1));
+
+        // Assert
+        verify(jdbcTemplate, timeout(2000).times(2)).batchUpdate(eq(EcrivainActivites.INSERT), anyList());
+        assertEquals(0, ecrivain.enAttente());
+    }
+}
@@ -0,0 +1,204 @@
+package com.pfe.backend.service;
+
+import com.pfe.backend.exception.ResourceNotFoundException;
+import com.pfe.backend.model.Champ;
+import com.pfe.backend.model.CompressionExport;
+import com.pfe.backend.model.ExportJob;
+import com.pfe.backend.model.StatutExportJob;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class ExportJobServiceTest {
+
+    @Mock
+    private ExportReponsesService exportReponsesService;
+
+    @Mock
+    private LectureReponsesService lectureReponsesService;
+
+    @TempDir
+    Path spool;
+
+    private ExportJobService exportJobService;
+
+    @BeforeEach
+    void setUp() {
+        exportJobService = new ExportJobService(exportReponsesService, lectureReponsesService, spool, 1, 1, Duration.ofHours(1));
+    }
+
+    @AfterEach
+    void tearDown() {
+        exportJobService.arreter();
+    }
+
+    @Test
+    void soumettre_ShouldWriteFileToSpool_AndTrackProgress() throws Exception {
+        List<Champ> champs = List.of(new Champ());
+        when(exportReponsesService.preparerExport(1L, "chercheur@test.com")).thenReturn(champs);
+        when(lectureReponsesService.compterPatientsParFormulaire(1L)).thenReturn(2L);
+        doAnswer(invocation -> {
+            OutputStream out = invocation.getArgument(2);
+            Runnable apresChaquePatient = invocation.getArgument(3);
+            out.write("Patient_ID;Date_Saisie\nh1;\nh2;\n".getBytes(StandardCharsets.UTF_8));
+            apresChaquePatient.run();
+            apresChaquePatient.run();
+            return null;
+        }).when(exportReponsesService).ecrireCsv(eq(1L), eq(champs), any(), any());
+
+        ExportJob job = exportJobService.soumettre(1L, "chercheur@test.com");
+        attendreFin(job);
+
+        assertEquals(StatutExportJob.TERMINE, job.getStatut());
+        assertEquals(2L, job.getLignesTotales());
+        assertEquals(2L, job.getLignesTraitees().get());
+        assertNotNull(job.getDateFin());
+        assertEquals(spool.resolve(job.getId() + ".csv"), job.getFichier());
+        assertEquals("Patient_ID;Date_Saisie\nh1;\nh2;\n", Files.readString(job.getFichier()));
+        assertSame(job, exportJobService.getJobTermine(job.getId(), "chercheur@test.com"));
+    }
+
+    @Test
+    void soumettre_ShouldReportWrittenRowsAsTotal_WhenEstimateDiffers() throws Exception {
+        List<Champ> champs = List.of(new Champ());
+        when(exportReponsesService.preparerExport(1L, "chercheur@test.com")).thenReturn(champs);
+        when(lectureReponsesService.compterPatientsParFormulaire(1L)).thenReturn(1L);
+        doAnswer(invocation -> {
+            Runnable apresChaquePatient = invocation.getArgument(3);
+            apresChaquePatient.run();
+            apresChaquePatient.run();
+            apresChaquePatient.run();
+            return null;
+        }).when(exportReponsesService).ecrireCsv(eq(1L), eq(champs), any(), any());
+
+        ExportJob job = exportJobService.soumettre(1L, "chercheur@test.com");
+        attendreFin(job);
+
+        assertEquals(StatutExportJob.TERMINE, job.getStatut());
+        assertEquals(3L, job.getLignesTotales());
+        assertEquals(3L, job.getLignesTraitees().get());
+    }
+
+    @Test
+    void soumettre_ShouldWriteGzipFile_WhenCompressionRequested() throws Exception {
+        when(exportReponsesService.preparerExport(1L, "chercheur@test.com")).thenReturn(List.of());
+        doAnswer(invocation -> {
+            OutputStream out = invocation.getArgument(2);
+            out.write("Patient_ID;Date_Saisie\nh1;\n".getBytes(StandardCharsets.UTF_8));
+            return null;
+        }).when(exportReponsesService).ecrireCsv(eq(1L), any(), any(), any());
+
+        ExportJob job = exportJobService.soumettre(1L, "chercheur@test.com", CompressionExport.GZIP);
+        attendreFin(job);
+
+        assertEquals(StatutExportJob.TERMINE, job.getStatut());
+        assertEquals(spool.resolve(job.getId() + ".csv.gz"), job.getFichier());
+        try (GZIPInputStream gzip = new GZIPInputStream(Files.newInputStream(job.getFichier()))) {
+            assertEquals("Patient_ID;Date_Saisie\nh1;\n", new String(gzip.readAllBytes(), StandardCharsets.UTF_8));
+        }
+    }
+
+    @Test
+    void soumettre_ShouldMarkJobFailed_AndRemovePartialFile_WhenWritingFails() throws Exception {
+        when(exportReponsesService.preparerExport(1L, "chercheur@test.com")).thenReturn(List.of());
+        doThrow(new IllegalStateException("boom"))
+                .when(exportReponsesService).ecrireCsv(eq(1L), any(), any(), any());
+
+        ExportJob job = exportJobService.soumettre(1L, "chercheur@test.com");
+        attendreFin(job);
+
+        assertEquals(StatutExportJob.ECHEC, job.getStatut());
+        assertNotNull(job.getErreur());
+        try (var fichiers = Files.list(spool)) {
+            assertEquals(0, fichiers.count());
+        }
+        assertThrows(IllegalStateException.class, () -> exportJobService.getJobTermine(job.getId(), "chercheur@test.com"));
+    }
+
+    @Test
+    void soumettre_ShouldPropagateAuthorizationError_WithoutCreatingJob() {
+        when(exportReponsesService.preparerExport(1L, "autre@test.com"))
+                .thenThrow(new IllegalArgumentException("Vous n'êtes pas autorisé à exporter ce formulaire"));
+
+        assertThrows(IllegalArgumentException.class, () -> exportJobService.soumettre(1L, "autre@test.com"));
+        verifyNoInteractions(lectureReponsesService);
+    }
+
+    @Test
+    void soumettre_ShouldReject_WhenQueueIsFull() throws Exception {
+        CountDownLatch demarre = new CountDownLatch(1);
+        CountDownLatch bloque = new CountDownLatch(1);
+        when(exportReponsesService.preparerExport(any(), any())).thenReturn(List.of());
+        doAnswer(invocation -> {
+            demarre.countDown();
+            return bloque.await(5, TimeUnit.SECONDS);
+        }).when(exportReponsesService).ecrireCsv(any(), any(), any(), any());
+
+        try {
+            exportJobService.soumettre(1L, "chercheur@test.com"); // en cours
+            assertTrue(demarre.await(5, TimeUnit.SECONDS));
+            exportJobService.soumettre(2L, "chercheur@test.com"); // en file d'attente
+
+            assertThrows(IllegalStateException.class, () -> exportJobService.soumettre(3L, "chercheur@test.com"));
+        } finally {
+            bloque.countDown();
+        }
+    }
+
+    @Test
+    void getJob_ShouldThrow_WhenUnknownOrOwnedBySomeoneElse() throws Exception {
+        when(exportReponsesService.preparerExport(1L, "chercheur@test.com")).thenReturn(List.of());
+        ExportJob job = exportJobService.soumettre(1L, "chercheur@test.com");
+        attendreFin(job);
+
+        assertThrows(ResourceNotFoundException.class, () -> exportJobService.getJob("inconnu", "chercheur@test.com"));
+        assertThrows(IllegalArgumentException.class, () -> exportJobService.getJob(job.getId(), "autre@test.com"));
+    }
+
+    @Test
+    void purgerJobsExpires_ShouldForgetOldJobs_AndDeleteTheirFiles() throws Exception {
+        exportJobService.arreter();
+        exportJobService = new ExportJobService(exportReponsesService, lectureReponsesService, spool, 1, 1, Duration.ZERO);
+        when(exportReponsesService.preparerExport(1L, "chercheur@test.com")).thenReturn(List.of());
+        ExportJob job = exportJobService.soumettre(1L, "chercheur@test.com");
+        attendreFin(job);
+        assertTrue(Files.exists(job.getFichier()));
+
+        Thread.sleep(5);
+        exportJobService.purgerJobsExpires();
+
+        assertFalse(Files.exists(job.getFichier()));
+        assertThrows(ResourceNotFoundException.class, () -> exportJobService.getJob(job.getId(), "chercheur@test.com"));
+    }
+
+    private void attendreFin(ExportJob job) throws InterruptedException {
+        long limite = System.currentTimeMillis() + 5000;
+        while (job.getDateFin() == null && System.currentTimeMillis() < limite) {
+            Thread.sleep(10);
+        }
+        while ((job.getStatut() == StatutExportJob.EN_ATTENTE || job.getStatut() == StatutExportJob.EN_COURS)
+                && System.currentTimeMillis() < limite) {
+            Thread.sleep(10);
+        }
+    }
+}
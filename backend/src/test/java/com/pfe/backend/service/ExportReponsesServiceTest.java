@@ -1,12 +1,12 @@
 package com.pfe.backend.service;
 
+import com.pfe.backend.dto.ReponseExportDto;
 import com.pfe.backend.exception.ResourceNotFoundException;
 import com.pfe.backend.model.Champ;
 import com.pfe.backend.model.Formulaire;
 import com.pfe.backend.model.ReponseFormulaire;
 import com.pfe.backend.model.Utilisateur;
 import com.pfe.backend.repository.FormulaireRepository;
-import com.pfe.backend.repository.ReponseFormulaireRepository;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.junit.jupiter.params.ParameterizedTest;
@@ -16,15 +16,25 @@ import java.util.stream.Stream;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
-import org.springframework.core.io.ByteArrayResource;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
 
 import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
 
 @ExtendWith(MockitoExtension.class)
@@ -34,7 +44,7 @@ class ExportReponsesServiceTest {
     private FormulaireRepository formulaireRepository;
 
     @Mock
-    private ReponseFormulaireRepository reponseFormulaireRepository;
+    private LectureReponsesService lectureReponsesService;
 
     @InjectMocks
     private ExportReponsesService exportReponsesService;
@@ -59,14 +69,14 @@ class ExportReponsesServiceTest {
         ReponseFormulaire reponse = createReponse(champ, "25", "patient1hash");
 
         when(formulaireRepository.findById(formulaireId)).thenReturn(Optional.of(formulaire));
-        when(reponseFormulaireRepository.findByFormulaireIdWithChamp(formulaireId)).thenReturn(List.of(reponse));
+        stubParcours(formulaireId, List.of(reponse));
 
         // Act
-        ByteArrayResource result = exportReponsesService.exporterReponsesCsv(formulaireId, emailChercheur);
+        StreamingResponseBody result = exportReponsesService.exporterReponsesCsv(formulaireId, emailChercheur);
 
         // Assert
         assertNotNull(result);
-        String content = new String(result.getByteArray());
+        String content = contenu(result);
         assertTrue(content.contains("Patient_ID"));
         assertTrue(content.contains("AGE"));
         assertTrue(content.contains("Date_Saisie"));
@@ -135,14 +145,14 @@ class ExportReponsesServiceTest {
         formulaire.setChamps(List.of(champ));
 
         when(formulaireRepository.findById(formulaireId)).thenReturn(Optional.of(formulaire));
-        when(reponseFormulaireRepository.findByFormulaireIdWithChamp(formulaireId)).thenReturn(Collections.emptyList());
+        stubParcours(formulaireId, Collections.emptyList());
 
         // Act
-        ByteArrayResource result = exportReponsesService.exporterReponsesCsv(formulaireId, emailChercheur);
+        StreamingResponseBody result = exportReponsesService.exporterReponsesCsv(formulaireId, emailChercheur);
 
         // Assert
         assertNotNull(result);
-        String content = new String(result.getByteArray());
+        String content = contenu(result);
         assertTrue(content.contains("Patient_ID")); // Header should still be there
     }
 
@@ -167,14 +177,14 @@ class ExportReponsesServiceTest {
         ReponseFormulaire reponse2 = createReponse(champ, "30", "patient2hash");
 
         when(formulaireRepository.findById(formulaireId)).thenReturn(Optional.of(formulaire));
-        when(reponseFormulaireRepository.findByFormulaireIdWithChamp(formulaireId)).thenReturn(List.of(reponse1, reponse2));
+        stubParcours(formulaireId, List.of(reponse1, reponse2));
 
         // Act
-        ByteArrayResource result = exportReponsesService.exporterReponsesCsv(formulaireId, emailChercheur);
+        StreamingResponseBody result = exportReponsesService.exporterReponsesCsv(formulaireId, emailChercheur);
 
         // Assert
         assertNotNull(result);
-        String content = new String(result.getByteArray());
+        String content = contenu(result);
         assertTrue(content.contains("patient1hash"));
         assertTrue(content.contains("patient2hash"));
     }
@@ -200,14 +210,14 @@ class ExportReponsesServiceTest {
         reponse.setDateSaisie(LocalDateTime.of(2024, 1, 15, 10, 30, 0));
 
         when(formulaireRepository.findById(formulaireId)).thenReturn(Optional.of(formulaire));
-        when(reponseFormulaireRepository.findByFormulaireIdWithChamp(formulaireId)).thenReturn(List.of(reponse));
+        stubParcours(formulaireId, List.of(reponse));
 
         // Act
-        ByteArrayResource result = exportReponsesService.exporterReponsesCsv(formulaireId, emailChercheur);
+        StreamingResponseBody result = exportReponsesService.exporterReponsesCsv(formulaireId, emailChercheur);
 
         // Assert
         assertNotNull(result);
-        String content = new String(result.getByteArray());
+        String content = contenu(result);
         assertTrue(content.contains("2024-01-15"));
     }
 
@@ -246,14 +256,14 @@ class ExportReponsesServiceTest {
         ReponseFormulaire reponse = createReponse(champ, inputValue, "patient1hash");
 
         when(formulaireRepository.findById(formulaireId)).thenReturn(Optional.of(formulaire));
-        when(reponseFormulaireRepository.findByFormulaireIdWithChamp(formulaireId)).thenReturn(List.of(reponse));
+        stubParcours(formulaireId, List.of(reponse));
 
         // Act
-        ByteArrayResource result = exportReponsesService.exporterReponsesCsv(formulaireId, emailChercheur);
+        StreamingResponseBody result = exportReponsesService.exporterReponsesCsv(formulaireId, emailChercheur);
 
         // Assert
         assertNotNull(result);
-        String content = new String(result.getByteArray());
+        String content = contenu(result);
         assertTrue(content.contains(expectedPattern), "Expected pattern not found: " + expectedPattern);
     }
 
@@ -275,14 +285,14 @@ class ExportReponsesServiceTest {
         formulaire.setChamps(List.of(champ));
 
         when(formulaireRepository.findById(formulaireId)).thenReturn(Optional.of(formulaire));
-        when(reponseFormulaireRepository.findByFormulaireIdWithChamp(formulaireId)).thenReturn(Collections.emptyList());
+        stubParcours(formulaireId, Collections.emptyList());
 
         // Act
-        ByteArrayResource result = exportReponsesService.exporterReponsesCsv(formulaireId, emailChercheur);
+        StreamingResponseBody result = exportReponsesService.exporterReponsesCsv(formulaireId, emailChercheur);
 
         // Assert
         assertNotNull(result);
-        String content = new String(result.getByteArray());
+        String content = contenu(result);
         assertTrue(content.contains("CHAMP_1")); // Uses default name
     }
 
@@ -311,14 +321,14 @@ class ExportReponsesServiceTest {
         reponseWithoutHash.setPatientIdentifierHash(null);
 
         when(formulaireRepository.findById(formulaireId)).thenReturn(Optional.of(formulaire));
-        when(reponseFormulaireRepository.findByFormulaireIdWithChamp(formulaireId)).thenReturn(List.of(reponseWithHash, reponseWithoutHash));
+        stubParcours(formulaireId, List.of(reponseWithHash, reponseWithoutHash));
 
         // Act
-        ByteArrayResource result = exportReponsesService.exporterReponsesCsv(formulaireId, emailChercheur);
+        StreamingResponseBody result = exportReponsesService.exporterReponsesCsv(formulaireId, emailChercheur);
 
         // Assert
         assertNotNull(result);
-        String content = new String(result.getByteArray());
+        String content = contenu(result);
         assertTrue(content.contains("patient1hash"));
         assertFalse(content.contains("30")); // Response without hash should be filtered
     }
@@ -346,13 +356,14 @@ class ExportReponsesServiceTest {
         reponseWithNullChamp.setPatientIdentifierHash("patient1hash");
 
         when(formulaireRepository.findById(formulaireId)).thenReturn(Optional.of(formulaire));
-        when(reponseFormulaireRepository.findByFormulaireIdWithChamp(formulaireId)).thenReturn(List.of(reponseWithNullChamp));
+        stubParcours(formulaireId, List.of(reponseWithNullChamp));
 
         // Act
-        ByteArrayResource result = exportReponsesService.exporterReponsesCsv(formulaireId, emailChercheur);
+        StreamingResponseBody result = exportReponsesService.exporterReponsesCsv(formulaireId, emailChercheur);
 
         // Assert
         assertNotNull(result);
+        assertFalse(contenu(result).contains("25")); // Réponse sans champ : aucune colonne
     }
 
     @Test
@@ -383,14 +394,14 @@ class ExportReponsesServiceTest {
         reponse2.setDateSaisie(LocalDateTime.of(2024, 1, 15, 10, 0, 0)); // More recent
 
         when(formulaireRepository.findById(formulaireId)).thenReturn(Optional.of(formulaire));
-        when(reponseFormulaireRepository.findByFormulaireIdWithChamp(formulaireId)).thenReturn(List.of(reponse1, reponse2));
+        stubParcours(formulaireId, List.of(reponse1, reponse2));
 
         // Act
-        ByteArrayResource result = exportReponsesService.exporterReponsesCsv(formulaireId, emailChercheur);
+        StreamingResponseBody result = exportReponsesService.exporterReponsesCsv(formulaireId, emailChercheur);
 
         // Assert
         assertNotNull(result);
-        String content = new String(result.getByteArray());
+        String content = contenu(result);
         assertTrue(content.contains("2024-01-15")); // Most recent date
     }
 
@@ -401,6 +412,30 @@ class ExportReponsesServiceTest {
         return utilisateur;
     }
 
+    // Reproduit le curseur : réponses triées par hash patient, restituées patient par patient
+    private void stubParcours(Long formulaireId, List<ReponseFormulaire> reponses) {
+        doAnswer(invocation -> {
+            Consumer<List<ReponseExportDto>> parPatient = invocation.getArgument(1);
+            reponses.stream()
+                    .map(ReponseExportDto::depuis)
+                    .collect(Collectors.groupingBy(r -> Objects.toString(r.patientIdentifierHash(), ""),
+                            TreeMap::new, Collectors.toList()))
+                    .values()
+                    .forEach(parPatient);
+            return null;
+        }).when(lectureReponsesService).parcourirReponsesParFormulaire(eq(formulaireId), any());
+    }
+
+    private String contenu(StreamingResponseBody body) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            body.writeTo(out);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toString(StandardCharsets.UTF_8);
+    }
+
     private ReponseFormulaire createReponse(Champ champ, String valeur, String patientHash) {
         ReponseFormulaire reponse = new ReponseFormulaire();
         reponse.setChamp(champ);
@@ -437,14 +472,14 @@ class ExportReponsesServiceTest {
         reponse2.setDateSaisie(LocalDateTime.of(2024, 1, 10, 10, 0, 0)); // Older
 
         when(formulaireRepository.findById(formulaireId)).thenReturn(Optional.of(formulaire));
-        when(reponseFormulaireRepository.findByFormulaireIdWithChamp(formulaireId)).thenReturn(List.of(reponse1, reponse2));
+        stubParcours(formulaireId, List.of(reponse1, reponse2));
 
         // Act
-        ByteArrayResource result = exportReponsesService.exporterReponsesCsv(formulaireId, emailChercheur);
+        StreamingResponseBody result = exportReponsesService.exporterReponsesCsv(formulaireId, emailChercheur);
 
         // Assert
         assertNotNull(result);
-        String content = new String(result.getByteArray());
+        String content = contenu(result);
         // Should use the most recent date (2024-01-15), not the older one
         assertTrue(content.contains("2024-01-15"));
     }
@@ -470,14 +505,14 @@ class ExportReponsesServiceTest {
         reponse.setDateSaisie(null); // Null date
 
         when(formulaireRepository.findById(formulaireId)).thenReturn(Optional.of(formulaire));
-        when(reponseFormulaireRepository.findByFormulaireIdWithChamp(formulaireId)).thenReturn(List.of(reponse));
+        stubParcours(formulaireId, List.of(reponse));
 
         // Act
-        ByteArrayResource result = exportReponsesService.exporterReponsesCsv(formulaireId, emailChercheur);
+        StreamingResponseBody result = exportReponsesService.exporterReponsesCsv(formulaireId, emailChercheur);
 
         // Assert
         assertNotNull(result);
-        String content = new String(result.getByteArray());
+        String content = contenu(result);
         assertTrue(content.contains("patient1hash"));
         assertTrue(content.contains("25"));
     }
@@ -509,14 +544,14 @@ class ExportReponsesServiceTest {
         ReponseFormulaire reponse = createReponse(champ2, "70", "patient1hash");
 
         when(formulaireRepository.findById(formulaireId)).thenReturn(Optional.of(formulaire));
-        when(reponseFormulaireRepository.findByFormulaireIdWithChamp(formulaireId)).thenReturn(List.of(reponse));
+        stubParcours(formulaireId, List.of(reponse));
 
         // Act
-        ByteArrayResource result = exportReponsesService.exporterReponsesCsv(formulaireId, emailChercheur);
+        StreamingResponseBody result = exportReponsesService.exporterReponsesCsv(formulaireId, emailChercheur);
 
         // Assert
         assertNotNull(result);
-        String content = new String(result.getByteArray());
+        String content = contenu(result);
         // Should have header with Age but no data for it
         assertTrue(content.contains("AGE"));
     }
@@ -551,14 +586,14 @@ class ExportReponsesServiceTest {
         reponse2.setDateSaisie(sameDate); // Same date
 
         when(formulaireRepository.findById(formulaireId)).thenReturn(Optional.of(formulaire));
-        when(reponseFormulaireRepository.findByFormulaireIdWithChamp(formulaireId)).thenReturn(List.of(reponse1, reponse2));
+        stubParcours(formulaireId, List.of(reponse1, reponse2));
 
         // Act
-        ByteArrayResource result = exportReponsesService.exporterReponsesCsv(formulaireId, emailChercheur);
+        StreamingResponseBody result = exportReponsesService.exporterReponsesCsv(formulaireId, emailChercheur);
 
         // Assert
         assertNotNull(result);
-        String content = new String(result.getByteArray());
+        String content = contenu(result);
         assertTrue(content.contains("2024-01-15"));
     }
 
@@ -584,14 +619,14 @@ class ExportReponsesServiceTest {
         ReponseFormulaire reponse2 = createReponse(champ, "30", "patient1hash");
 
         when(formulaireRepository.findById(formulaireId)).thenReturn(Optional.of(formulaire));
-        when(reponseFormulaireRepository.findByFormulaireIdWithChamp(formulaireId)).thenReturn(List.of(reponse1, reponse2));
+        stubParcours(formulaireId, List.of(reponse1, reponse2));
 
         // Act
-        ByteArrayResource result = exportReponsesService.exporterReponsesCsv(formulaireId, emailChercheur);
+        StreamingResponseBody result = exportReponsesService.exporterReponsesCsv(formulaireId, emailChercheur);
 
         // Assert
         assertNotNull(result);
-        String content = new String(result.getByteArray());
+        String content = contenu(result);
         // Should only contain one of the values (first one)
         assertTrue(content.contains("25"));
     }
@@ -626,14 +661,14 @@ class ExportReponsesServiceTest {
         reponse2.setDateSaisie(LocalDateTime.of(2024, 1, 15, 10, 0, 0)); // Second has date
 
         when(formulaireRepository.findById(formulaireId)).thenReturn(Optional.of(formulaire));
-        when(reponseFormulaireRepository.findByFormulaireIdWithChamp(formulaireId)).thenReturn(List.of(reponse1, reponse2));
+        stubParcours(formulaireId, List.of(reponse1, reponse2));
 
         // Act
-        ByteArrayResource result = exportReponsesService.exporterReponsesCsv(formulaireId, emailChercheur);
+        StreamingResponseBody result = exportReponsesService.exporterReponsesCsv(formulaireId, emailChercheur);
 
         // Assert
         assertNotNull(result);
-        String content = new String(result.getByteArray());
+        String content = contenu(result);
         assertTrue(content.contains("2024-01-15"));
     }
 }
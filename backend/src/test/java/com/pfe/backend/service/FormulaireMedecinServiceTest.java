@@ -8,6 +8,10 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
 
 import java.util.List;
 import java.util.Optional;
@@ -31,6 +35,8 @@ class FormulaireMedecinServiceTest {
     private ReponseFormulaireRepository reponseFormulaireRepository;
     @Mock
     private ListeValeurRepository listeValeurRepository;
+    @Mock
+    private SoumissionPatientRepository soumissionPatientRepository;
 
     @InjectMocks
     private FormulaireMedecinService formulaireMedecinService;
@@ -237,6 +243,63 @@ class FormulaireMedecinServiceTest {
         assertEquals(1, result.size());
     }
 
+    @Test
+    void getFormulairesRecus_ShouldPageIdsThenLoadInPageOrder() {
+        // Arrange
+        String emailMedecin = "medecin@test.com";
+        Pageable pageable = PageRequest.of(0, 2);
+        FormulaireMedecin fm3 = new FormulaireMedecin();
+        fm3.setId(3L);
+        FormulaireMedecin fm1 = new FormulaireMedecin();
+        fm1.setId(1L);
+
+        when(formulaireMedecinRepository.findIdsByMedecinEmail(emailMedecin, pageable))
+                .thenReturn(new PageImpl<>(List.of(3L, 1L), pageable, 4));
+        when(formulaireMedecinRepository.findAllRecusByIdIn(List.of(3L, 1L))).thenReturn(List.of(fm1, fm3));
+
+        // Act
+        Page<FormulaireMedecin> result = formulaireMedecinService.getFormulairesRecus(emailMedecin, pageable);
+
+        // Assert
+        assertEquals(4, result.getTotalElements());
+        assertEquals(List.of(fm3, fm1), result.getContent());
+        verify(formulaireMedecinRepository, never()).findByMedecinEmail(any());
+    }
+
+    @Test
+    void getFormulairesRecus_ShouldSkipEnvoi_MissingFromFetch() {
+        // Arrange
+        String emailMedecin = "medecin@test.com";
+        Pageable pageable = PageRequest.of(0, 2);
+        FormulaireMedecin fm3 = new FormulaireMedecin();
+        fm3.setId(3L);
+
+        when(formulaireMedecinRepository.findIdsByMedecinEmail(emailMedecin, pageable))
+                .thenReturn(new PageImpl<>(List.of(3L, 1L), pageable, 2));
+        when(formulaireMedecinRepository.findAllRecusByIdIn(List.of(3L, 1L))).thenReturn(List.of(fm3));
+
+        // Act
+        Page<FormulaireMedecin> result = formulaireMedecinService.getFormulairesRecus(emailMedecin, pageable);
+
+        // Assert
+        assertEquals(List.of(fm3), result.getContent());
+        assertEquals(1, result.getTotalElements());
+    }
+
+    @Test
+    void getFormulairesRecus_ShouldUseSingleQuery_WhenUnpaged() {
+        // Arrange
+        String emailMedecin = "medecin@test.com";
+        when(formulaireMedecinRepository.findByMedecinEmail(emailMedecin)).thenReturn(List.of(new FormulaireMedecin()));
+
+        // Act
+        Page<FormulaireMedecin> result = formulaireMedecinService.getFormulairesRecus(emailMedecin, Pageable.unpaged());
+
+        // Assert
+        assertEquals(1, result.getTotalElements());
+        verify(formulaireMedecinRepository, never()).findIdsByMedecinEmail(any(), any());
+    }
+
     @Test
     void getFormulairePourRemplissage_ShouldReturnFormulaire_WithListeValeurs() {
         // Arrange
@@ -433,6 +496,7 @@ class FormulaireMedecinServiceTest {
 
         // Assert
         verify(reponseFormulaireRepository).deleteByFormulaireMedecinId(fmId);
+        verify(soumissionPatientRepository).deleteByFormulaireMedecinId(fmId);
         verify(formulaireMedecinRepository).delete(fm);
     }
 
@@ -460,6 +524,7 @@ class FormulaireMedecinServiceTest {
 
         // Assert
         verify(reponseFormulaireRepository).deleteByFormulaireMedecinId(fmId);
+        verify(soumissionPatientRepository).deleteByFormulaireMedecinId(fmId);
         verify(formulaireMedecinRepository).delete(fm);
         verify(activiteService).enregistrerActivite(eq(emailChercheur), eq("Suppression formulaire rempli"), any(), eq(fmId), any());
     }
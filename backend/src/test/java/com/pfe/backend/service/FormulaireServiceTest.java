@@ -33,6 +33,10 @@ class FormulaireServiceTest {
     private FormulaireMedecinRepository formulaireMedecinRepository;
     @Mock
     private ReponseFormulaireRepository reponseFormulaireRepository;
+    @Mock
+    private PlanExportCache planExportCache;
+    @Mock
+    private SoumissionPatientRepository soumissionPatientRepository;
 
     @InjectMocks
     private FormulaireService formulaireService;
@@ -133,6 +137,8 @@ class FormulaireServiceTest {
 
         assertEquals("New Title", result.getTitre());
         assertEquals(StatutFormulaire.PUBLIE, result.getStatut());
+        assertNotNull(result.getDateModification());
+        verify(planExportCache).invalider(id);
         verify(activiteService).enregistrerActivite(eq(email), eq("Modification de formulaire"), anyString(), eq(id), anyString());
     }
 
@@ -178,6 +184,7 @@ class FormulaireServiceTest {
 
         verify(reponseFormulaireRepository, never()).deleteByFormulaireMedecinId(anyLong()); // No assigned forms mocked
         verify(formulaireRepository).deleteById(id);
+        verify(planExportCache).invalider(id);
         verify(activiteService).enregistrerActivite(anyString(), eq("Suppression de formulaire"), anyString(), eq(id), anyString());
     }
 
@@ -316,6 +323,7 @@ class FormulaireServiceTest {
         formulaireService.deleteFormulaire(id, email);
 
         verify(reponseFormulaireRepository).deleteByFormulaireMedecinId(500L);
+        verify(soumissionPatientRepository).deleteByFormulaireMedecinId(500L);
         verify(formulaireMedecinRepository).delete(fm);
         verify(formulaireRepository).deleteById(id);
     }
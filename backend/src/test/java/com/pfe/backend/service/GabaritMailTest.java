@@ -0,0 +1,70 @@
+package com.pfe.backend.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GabaritMailTest {
+
+    @Test
+    void rendre_ShouldFillSlots_AndEscapeHtmlOnly() {
+        GabaritMail gabarit = GabaritMail.compiler("<p>Bonjour {{nom}},</p><p>code {{code}} &amp; fin</p>");
+
+        GabaritMail.Rendu rendu = gabarit.rendre(Map.of("nom", "A<B>", "code", "123456"));
+
+        assertEquals("<p>Bonjour A&lt;B&gt;,</p><p>code 123456 &amp; fin</p>", rendu.html());
+        assertEquals("Bonjour A<B>,\ncode 123456 & fin\n", rendu.texte());
+    }
+
+    @Test
+    void rendre_ShouldReject_MissingValue() {
+        GabaritMail gabarit = GabaritMail.compiler("<p>{{code}}</p>");
+        Map<String, String> valeurs = Map.of("autre", "1");
+
+        assertThrows(IllegalArgumentException.class, () -> gabarit.rendre(valeurs));
+    }
+
+    @Test
+    void rendre_ShouldReturnSource_WhenNoSlot() {
+        GabaritMail.Rendu rendu = GabaritMail.compiler("<p>Texte fixe</p>").rendre(Map.of());
+
+        assertEquals("<p>Texte fixe</p>", rendu.html());
+        assertEquals("Texte fixe\n", rendu.texte());
+    }
+
+    @Test
+    void versTexte_ShouldDropHeadAndComments_AndCollapseBlankLines() {
+        String texte = GabaritMail.versTexte("""
+                <html><head><title>Titre</title></head>
+                <body>
+                    <!-- Header -->
+                    <h1>
+                        MedDataCollect
+                    </h1>
+
+
+                    <div>Ligne   un</div><br/>Ligne deux
+                </body></html>
+                """);
+
+        assertEquals("MedDataCollect\n\nLigne un\n\nLigne deux\n", texte);
+    }
+
+    @Test
+    void gabaritsMail_ShouldCompileBundledTemplates() {
+        GabaritsMail gabarits = new GabaritsMail();
+        Map<String, String> valeurs = Map.of("code", "654321", "minutes", "5");
+
+        GabaritMail.Rendu otp = gabarits.codeConnexion().rendre(valeurs);
+        GabaritMail.Rendu reinitialisation = gabarits.reinitialisationMotDePasse().rendre(valeurs);
+
+        assertTrue(otp.html().startsWith("<!DOCTYPE html>"));
+        assertTrue(otp.html().contains("654321"));
+        assertTrue(otp.texte().contains("Ce code est valable pendant 5 minutes."));
+        assertFalse(otp.texte().contains("Code de connexion</title>"));
+        assertTrue(reinitialisation.texte().contains("654321"));
+        assertTrue(reinitialisation.html().contains("width: 100%;"));
+    }
+}
@@ -1,5 +1,6 @@
 package com.pfe.backend.service;
 
+import io.jsonwebtoken.Claims;
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.security.Keys;
 import org.junit.jupiter.api.BeforeEach;
@@ -105,5 +106,30 @@ class JwtServiceTest {
         String role = jwtService.extractClaim(token, claims -> claims.get("role", String.class));
         assertEquals("ADMIN", role);
     }
-}
 
+    @Test
+    void isTokenValid_ShouldAcceptAlreadyParsedClaims() {
+        UserDetails userDetails = new User("test@example.com", "password", Collections.emptyList());
+        String token = jwtService.generateToken(userDetails);
+
+        Claims claims = jwtService.extractAllClaims(token);
+
+        assertEquals("test@example.com", claims.getSubject());
+        assertTrue(jwtService.isTokenValid(claims, userDetails));
+        assertFalse(jwtService.isTokenValid(claims, new User("other@example.com", "password", Collections.emptyList())));
+    }
+
+    @Test
+    void extractAllClaims_ShouldRejectToken_SignedWithAnotherKey() {
+        SecretKey autreCle = Keys.hmacShaKeyFor("une_autre_cle_secrete_tres_longue_pour_les_tests_backend".getBytes(StandardCharsets.UTF_8));
+        String token = Jwts.builder()
+                .subject("test@example.com")
+                .expiration(new Date(System.currentTimeMillis() + expiration))
+                .signWith(autreCle)
+                .compact();
+
+        // Le parseur mis en cache reste lié à la clé de l'application
+        jwtService.extractUsername(jwtService.generateToken(new User("test@example.com", "password", Collections.emptyList())));
+        assertThrows(io.jsonwebtoken.security.SignatureException.class, () -> jwtService.extractAllClaims(token));
+    }
+}
@@ -0,0 +1,119 @@
+package com.pfe.backend.service;
+
+import com.pfe.backend.config.converter.StringCryptoConverter;
+import com.pfe.backend.config.crypto.AesGcmCryptoEngine;
+import com.pfe.backend.dto.ReponseExportDto;
+import com.pfe.backend.repository.ReponseFormulaireRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class LectureReponsesServiceTest {
+
+    @Mock
+    private ReponseFormulaireRepository reponseFormulaireRepository;
+
+    private final StringCryptoConverter converter =
+            new StringCryptoConverter(new AesGcmCryptoEngine("0123456789abcdef0123456789abcdef"));
+
+    private LectureReponsesService lectureReponsesService;
+
+    @BeforeEach
+    void setUp() {
+        lectureReponsesService = new LectureReponsesService(reponseFormulaireRepository, converter, 4);
+    }
+
+    @AfterEach
+    void tearDown() {
+        lectureReponsesService.arreter();
+    }
+
+    @Test
+    void parcourirReponsesSoumisesParFormulaireMedecin_ShouldDecryptRawColumns_OnePatientAtATime() {
+        LocalDateTime date = LocalDateTime.of(2024, 3, 1, 10, 0);
+        String identifiant = converter.convertToDatabaseColumn("DUPONT-JEAN-ETUDE-0001");
+        when(reponseFormulaireRepository.streamReponsesChiffreesSoumisesByFormulaireMedecinId(1L)).thenReturn(Stream.of(
+                new Object[]{7L, "hash1", identifiant, converter.convertToDatabaseColumn("42"), Timestamp.valueOf(date)},
+                new Object[]{8L, "hash1", identifiant, converter.convertToDatabaseColumn("oui"), date},
+                new Object[]{null, "hash2", null, "", null}
+        ));
+
+        List<List<ReponseExportDto>> patients = new ArrayList<>();
+        lectureReponsesService.parcourirReponsesSoumisesParFormulaireMedecin(1L, patients::add);
+
+        assertEquals(2, patients.size());
+        assertEquals(List.of(
+                new ReponseExportDto(7L, "hash1", "DUPONT-JEAN-ETUDE-0001", "42", date),
+                new ReponseExportDto(8L, "hash1", "DUPONT-JEAN-ETUDE-0001", "oui", date)
+        ), patients.get(0));
+        assertEquals(List.of(new ReponseExportDto(null, "hash2", null, "", null)), patients.get(1));
+    }
+
+    @Test
+    void parcourirReponsesParFormulaire_ShouldNeverSplitAPatient_AcrossParallelBatches() {
+        // 3 réponses par patient : les lots de SEUIL_PARALLELE lignes tombent au milieu d'un patient
+        int nbPatients = LectureReponsesService.SEUIL_PARALLELE;
+        List<Object[]> lignes = new ArrayList<>();
+        for (int p = 0; p < nbPatients; p++) {
+            for (int c = 0; c < 3; c++) {
+                lignes.add(new Object[]{(long) c, String.format("hash%05d", p), null,
+                        converter.convertToDatabaseColumn(p + "-" + c), null});
+            }
+        }
+        when(reponseFormulaireRepository.streamReponsesChiffreesByFormulaireId(3L)).thenReturn(lignes.stream());
+
+        List<List<ReponseExportDto>> patients = new ArrayList<>();
+        lectureReponsesService.parcourirReponsesParFormulaire(3L, patients::add);
+
+        assertEquals(nbPatients, patients.size());
+        for (int p = 0; p < nbPatients; p++) {
+            List<ReponseExportDto> patient = patients.get(p);
+            assertEquals(3, patient.size());
+            for (int c = 0; c < 3; c++) {
+                assertEquals(String.format("hash%05d", p), patient.get(c).patientIdentifierHash());
+                assertEquals(p + "-" + c, patient.get(c).valeur());
+            }
+        }
+    }
+
+    @Test
+    void parcourirReponsesSoumisesParFormulaire_ShouldCloseCursor_AndNotCallBack_WhenNoRows() {
+        AtomicBoolean ferme = new AtomicBoolean(false);
+        when(reponseFormulaireRepository.streamReponsesChiffreesSoumisesByFormulaireId(2L))
+                .thenReturn(Stream.<Object[]>empty().onClose(() -> ferme.set(true)));
+
+        lectureReponsesService.parcourirReponsesSoumisesParFormulaire(2L, patient -> fail("aucun patient attendu"));
+
+        assertTrue(ferme.get());
+    }
+
+    @Test
+    void idsChampsRepondusParFormulaire_ShouldIgnoreNullIds() {
+        when(reponseFormulaireRepository.findDistinctChampIdsSoumisByFormulaireId(4L)).thenReturn(Arrays.asList(7L, null));
+
+        assertEquals(List.of(7L), lectureReponsesService.idsChampsRepondusParFormulaire(4L));
+    }
+
+    @Test
+    void idsChampsRepondusParFormulaireMedecin_ShouldReturnEmpty_WhenNoResponse() {
+        when(reponseFormulaireRepository.findDistinctChampIdsSoumisByFormulaireMedecinId(1L)).thenReturn(List.of());
+
+        assertTrue(lectureReponsesService.idsChampsRepondusParFormulaireMedecin(1L).isEmpty());
+    }
+}
@@ -1,17 +1,27 @@
 package com.pfe.backend.service;
 
+import com.pfe.backend.exception.EmailSendingException;
+import com.pfe.backend.model.MailSortant;
+import com.pfe.backend.repository.MailSortantRepository;
 import jakarta.mail.MessagingException;
 import jakarta.mail.internet.MimeMessage;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.mail.MailSendException;
 import org.springframework.mail.javamail.JavaMailSender;
 import org.springframework.test.util.ReflectionTestUtils;
 
-import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.Mockito.*;
 
@@ -21,70 +31,79 @@ class MailServiceTest {
     @Mock
     private JavaMailSender mailSender;
 
+    @Mock
+    private MailSortantRepository mailSortantRepository;
+
     @Mock
     private MimeMessage mimeMessage;
 
+    @Spy
+    private GabaritsMail gabaritsMail = new GabaritsMail();
+
     @InjectMocks
     private MailService mailService;
 
     @BeforeEach
     void setUp() {
         ReflectionTestUtils.setField(mailService, "fromAddress", "test@meddatacollect.com");
-        when(mailSender.createMimeMessage()).thenReturn(mimeMessage);
     }
 
     @Test
-    void sendVerificationCodeEmail_ShouldSendEmail() {
-        assertDoesNotThrow(() -> mailService.sendVerificationCodeEmail("user@test.com", "123456", 10));
-
-        verify(mailSender).send(mimeMessage);
-        // We assume success if mailSender.send called without exception.
+    void sendVerificationCodeEmail_ShouldQueueEmail_WithoutContactingSmtp() {
+        mailService.sendVerificationCodeEmail("user@test.com", "123456", 10);
+
+        ArgumentCaptor<MailSortant> captor = ArgumentCaptor.forClass(MailSortant.class);
+        verify(mailSortantRepository).save(captor.capture());
+        assertEquals("user@test.com", captor.getValue().getDestinataire());
+        assertTrue(captor.getValue().getCorps().contains("123456"));
+        assertTrue(captor.getValue().getCorps().contains("10 minutes"));
+        verifyNoInteractions(mailSender);
     }
 
     @Test
-    void sendOtpEmail_ShouldSendEmail() {
-        assertDoesNotThrow(() -> mailService.sendOtpEmail("user@test.com", "654321", 5));
-
-        verify(mailSender).send(mimeMessage);
+    void sendOtpEmail_ShouldQueueEmail_WithoutContactingSmtp() {
+        mailService.sendOtpEmail("user@test.com", "654321", 5);
+
+        ArgumentCaptor<MailSortant> captor = ArgumentCaptor.forClass(MailSortant.class);
+        verify(mailSortantRepository).save(captor.capture());
+        assertEquals("Code de connexion - MedDataCollect", captor.getValue().getSujet());
+        assertTrue(captor.getValue().getCorps().contains("654321"));
+        assertTrue(captor.getValue().getCorpsTexte().contains("654321"));
+        assertFalse(captor.getValue().getCorpsTexte().contains("<"));
+        assertEquals(captor.getValue().getDateCreation().plusMinutes(5), captor.getValue().getExpireA());
+        verifyNoInteractions(mailSender);
     }
-    
-    // Test exception cases?
-    // If mailSender throws exception, service catches and rethrows RuntimeException.
+
     @Test
-    void sendOtpEmail_ShouldThrowRuntimeException_WhenMailSenderFails() {
-        doThrow(new RuntimeException("Mail server failing")).when(mailSender).send(mimeMessage);
-        
-        org.junit.jupiter.api.Assertions.assertThrows(RuntimeException.class, () -> 
-            mailService.sendOtpEmail("user@test.com", "654321", 5)
-        );
+    void preparer_ShouldThrowEmailSendingException_WhenMessagingExceptionOccurs() throws MessagingException {
+        when(mailSender.createMimeMessage()).thenReturn(mimeMessage);
+        doThrow(new MessagingException("Encoding error")).when(mimeMessage).setSubject(anyString(), anyString());
+        MailSortant mail = new MailSortant("user@test.com", "Sujet", "<p>corps</p>");
+
+        assertThrows(EmailSendingException.class, () -> mailService.preparer(mail));
     }
 
     @Test
-    void sendVerificationCodeEmail_ShouldThrowRuntimeException_WhenMailSenderFails() {
-        doThrow(new RuntimeException("Mail server failing")).when(mailSender).send(mimeMessage);
+    void envoyer_ShouldSendAllMessagesInOneCall() {
+        Map<MimeMessage, Exception> echecs = mailService.envoyer(List.of(mimeMessage));
 
-        org.junit.jupiter.api.Assertions.assertThrows(RuntimeException.class, () ->
-                mailService.sendVerificationCodeEmail("user@test.com", "123456", 10)
-        );
+        assertTrue(echecs.isEmpty());
+        verify(mailSender).send(new MimeMessage[]{mimeMessage});
     }
 
     @Test
-    void sendVerificationCodeEmail_ShouldThrowRuntimeException_WhenMessagingExceptionOccurs() throws MessagingException {
-        // Trigger MessagingException via mimeMessage method interaction
-        doThrow(new MessagingException("Encoding error")).when(mimeMessage).setSubject(anyString());
+    void envoyer_ShouldReportEveryMessage_WhenMailServerFails() {
+        doThrow(new MailSendException("Mail server failing")).when(mailSender).send(any(MimeMessage[].class));
+
+        Map<MimeMessage, Exception> echecs = mailService.envoyer(List.of(mimeMessage));
 
-        org.junit.jupiter.api.Assertions.assertThrows(RuntimeException.class, () ->
-                mailService.sendVerificationCodeEmail("user@test.com", "123456", 10)
-        );
+        assertEquals(1, echecs.size());
+        assertTrue(echecs.containsKey(mimeMessage));
     }
 
     @Test
-    void sendOtpEmail_ShouldThrowRuntimeException_WhenMessagingExceptionOccurs() throws MessagingException {
-        // Trigger MessagingException via mimeMessage method interaction
-        doThrow(new MessagingException("Encoding error")).when(mimeMessage).setSubject(anyString());
-
-        org.junit.jupiter.api.Assertions.assertThrows(RuntimeException.class, () ->
-                mailService.sendOtpEmail("user@test.com", "654321", 5)
-        );
+    void envoyer_ShouldNotContactSmtp_WhenNothingToSend() {
+        assertTrue(mailService.envoyer(List.of()).isEmpty());
+        verifyNoInteractions(mailSender);
     }
 }
@@ -0,0 +1,224 @@
+package com.pfe.backend.service;
+
+import com.pfe.backend.model.MailSortant;
+import com.pfe.backend.model.StatutMail;
+import com.pfe.backend.repository.MailSortantRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.Pageable;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class MailSortantDispatcherTest {
+
+    @Mock
+    private MailSortantRepository mailSortantRepository;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private SmtpLocal smtp;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        smtp = new SmtpLocal();
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        smtp.close();
+    }
+
+    private MailSortantDispatcher dispatcher(int port, int tentativesMax) {
+        JavaMailSenderImpl mailSender = new JavaMailSenderImpl();
+        mailSender.setHost("127.0.0.1");
+        mailSender.setPort(port);
+        MailService mailService = new MailService(mailSender, mailSortantRepository, new GabaritsMail());
+        ReflectionTestUtils.setField(mailService, "fromAddress", "noreply@meddatacollect.com");
+        return new MailSortantDispatcher(mailSortantRepository, mailService, meterRegistry, transactionManager, 50,
+                tentativesMax, Duration.ofSeconds(30), Duration.ofMinutes(30), Duration.ofMinutes(5));
+    }
+
+    private static MailSortant mail(long id, String destinataire) {
+        MailSortant mail = new MailSortant(destinataire, "Code de connexion - MedDataCollect", "<p>Code 123456</p>",
+                "Code 123456");
+        mail.setId(id);
+        return mail;
+    }
+
+    @Test
+    void envoyerLot_ShouldSendBatchOverOneConnection_AndDeleteSentMails() {
+        // Arrange
+        MailSortant premier = mail(1L, "a@test.com");
+        MailSortant second = mail(2L, "b@test.com");
+        when(mailSortantRepository.findAEnvoyer(any(LocalDateTime.class), any(Pageable.class)))
+                .thenReturn(List.of(premier, second));
+
+        // Act
+        int traites = dispatcher(smtp.getPort(), 6).envoyerLot();
+
+        // Assert
+        assertEquals(2, traites);
+        assertEquals(2, smtp.getMessages().size());
+        assertEquals(1, smtp.getConnexions());
+        assertTrue(smtp.getMessages().get(0).contains("a@test.com"));
+        assertTrue(smtp.getMessages().get(0).contains("multipart/alternative"));
+        verify(mailSortantRepository).deleteAllInBatch(List.of(premier, second));
+        assertEquals(2.0, meterRegistry.counter("mail.sortant.envoyes").count());
+    }
+
+    @Test
+    void envoyerLot_ShouldRetryOnlyRejectedMail_WithBackoff() {
+        // Arrange
+        MailSortant accepte = mail(1L, "a@test.com");
+        MailSortant refuse = mail(2L, "refuse@test.com");
+        when(mailSortantRepository.findAEnvoyer(any(LocalDateTime.class), any(Pageable.class)))
+                .thenReturn(List.of(accepte, refuse));
+        LocalDateTime avant = LocalDateTime.now();
+
+        // Act
+        dispatcher(smtp.getPort(), 6).envoyerLot();
+
+        // Assert
+        verify(mailSortantRepository).deleteAllInBatch(List.of(accepte));
+        assertEquals(StatutMail.EN_ATTENTE, refuse.getStatut());
+        assertEquals(1, refuse.getTentatives());
+        assertFalse(refuse.getProchainEssai().isBefore(avant.plusSeconds(30)));
+        assertNotNull(refuse.getDerniereErreur());
+        assertEquals(1.0, meterRegistry.counter("mail.sortant.reessais").count());
+    }
+
+    @Test
+    void envoyerLot_ShouldRescheduleWholeBatch_WhenServerUnreachable() throws IOException {
+        // Arrange
+        int portFerme;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            portFerme = socket.getLocalPort();
+        }
+        MailSortant mail = mail(1L, "a@test.com");
+        when(mailSortantRepository.findAEnvoyer(any(LocalDateTime.class), any(Pageable.class))).thenReturn(List.of(mail));
+
+        // Act
+        dispatcher(portFerme, 6).envoyerLot();
+
+        // Assert
+        assertEquals(1, mail.getTentatives());
+        assertEquals(StatutMail.EN_ATTENTE, mail.getStatut());
+        verify(mailSortantRepository, never()).deleteAllInBatch(any());
+    }
+
+    @Test
+    void envoyerLot_ShouldGiveUp_AfterLastAttempt() {
+        // Arrange
+        MailSortant mail = mail(1L, "refuse@test.com");
+        mail.setTentatives(2);
+        when(mailSortantRepository.findAEnvoyer(any(LocalDateTime.class), any(Pageable.class))).thenReturn(List.of(mail));
+
+        // Act
+        dispatcher(smtp.getPort(), 3).envoyerLot();
+
+        // Assert
+        assertEquals(StatutMail.ECHEC, mail.getStatut());
+        assertEquals(1.0, meterRegistry.counter("mail.sortant.echecs").count());
+    }
+
+    @Test
+    void envoyerLot_ShouldGiveUpImmediately_WhenAddressIsInvalid() {
+        // Arrange
+        MailSortant mail = mail(1L, "adresse invalide@@");
+        when(mailSortantRepository.findAEnvoyer(any(LocalDateTime.class), any(Pageable.class))).thenReturn(List.of(mail));
+
+        // Act
+        dispatcher(smtp.getPort(), 6).envoyerLot();
+
+        // Assert
+        assertEquals(StatutMail.ECHEC, mail.getStatut());
+        assertTrue(smtp.getMessages().isEmpty());
+    }
+
+    @Test
+    void envoyerLot_ShouldReserveBatch_AndSaveOutcomeInSeparateTransactions() {
+        // Arrange
+        MailSortant mail = mail(1L, "refuse@test.com");
+        when(mailSortantRepository.findAEnvoyer(any(LocalDateTime.class), any(Pageable.class))).thenReturn(List.of(mail));
+        LocalDateTime avant = LocalDateTime.now();
+
+        // Act
+        dispatcher(smtp.getPort(), 6).envoyerLot();
+
+        // Assert : réservation puis enregistrement du résultat, chacun dans sa transaction
+        verify(transactionManager, times(2)).commit(any());
+        verify(mailSortantRepository).deleteExpires(any(LocalDateTime.class));
+        verify(mailSortantRepository).saveAll(List.of(mail));
+        assertFalse(mail.getProchainEssai().isBefore(avant.plusSeconds(30)));
+    }
+
+    @Test
+    void envoyerLot_ShouldDropMail_WhenCodeExpiresBeforeNextAttempt() {
+        // Arrange : code valable encore 10 secondes, prochain essai dans 30 secondes
+        MailSortant mail = mail(1L, "refuse@test.com");
+        mail.setExpireA(LocalDateTime.now().plusSeconds(10));
+        when(mailSortantRepository.findAEnvoyer(any(LocalDateTime.class), any(Pageable.class))).thenReturn(List.of(mail));
+
+        // Act
+        dispatcher(smtp.getPort(), 6).envoyerLot();
+
+        // Assert
+        verify(mailSortantRepository).deleteAllInBatch(List.of(mail));
+        verify(mailSortantRepository).saveAll(List.of());
+        assertEquals(0.0, meterRegistry.counter("mail.sortant.reessais").count());
+        assertEquals(1.0, meterRegistry.counter("mail.sortant.expires").count());
+    }
+
+    @Test
+    void envoyerLot_ShouldDeleteExpiredMails_BeforeReservingBatch() {
+        // Arrange
+        when(mailSortantRepository.deleteExpires(any(LocalDateTime.class))).thenReturn(3);
+        when(mailSortantRepository.findAEnvoyer(any(LocalDateTime.class), any(Pageable.class))).thenReturn(List.of());
+
+        // Act
+        int traites = dispatcher(smtp.getPort(), 6).envoyerLot();
+
+        // Assert
+        assertEquals(0, traites);
+        assertEquals(3.0, meterRegistry.counter("mail.sortant.expires").count());
+        assertEquals(0, smtp.getConnexions());
+    }
+
+    @Test
+    void envoyerLot_ShouldDoNothing_WhenQueueIsEmpty() {
+        when(mailSortantRepository.findAEnvoyer(any(LocalDateTime.class), any(Pageable.class))).thenReturn(List.of());
+
+        assertEquals(0, dispatcher(smtp.getPort(), 6).envoyerLot());
+        assertEquals(0, smtp.getConnexions());
+    }
+
+    @Test
+    void delaiAvant_ShouldDoubleEachAttempt_UpToMaximum() {
+        MailSortantDispatcher dispatcher = dispatcher(smtp.getPort(), 6);
+
+        assertEquals(Duration.ofSeconds(30), dispatcher.delaiAvant(1));
+        assertEquals(Duration.ofSeconds(60), dispatcher.delaiAvant(2));
+        assertEquals(Duration.ofSeconds(240), dispatcher.delaiAvant(4));
+        assertEquals(Duration.ofMinutes(30), dispatcher.delaiAvant(20));
+    }
+}
@@ -0,0 +1,47 @@
+package com.pfe.backend.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class MessageIndexInitializerTest {
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    @InjectMocks
+    private MessageIndexInitializer initializer;
+
+    @Test
+    void initialiser_ShouldCreatePartialIndex_OnPostgreSQL() {
+        // Arrange
+        when(jdbcTemplate.execute(any(ConnectionCallback.class))).thenReturn("PostgreSQL");
+
+        // Act
+        initializer.initialiser();
+
+        // Assert
+        verify(jdbcTemplate).execute(MessageIndexInitializer.INDEX_NON_LUS);
+    }
+
+    @Test
+    void initialiser_ShouldSkip_OnOtherDatabases() {
+        // Arrange
+        when(jdbcTemplate.execute(any(ConnectionCallback.class))).thenReturn("H2");
+
+        // Act
+        initializer.initialiser();
+
+        // Assert
+        verify(jdbcTemplate, never()).execute(anyString());
+    }
+}
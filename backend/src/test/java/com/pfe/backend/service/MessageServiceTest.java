@@ -1,16 +1,22 @@
 package com.pfe.backend.service;
 
+import com.pfe.backend.dto.ConversationPageResponse;
+import com.pfe.backend.dto.ConversationResumeDto;
+import com.pfe.backend.dto.MessageConversationDto;
 import com.pfe.backend.model.Message;
+import com.pfe.backend.model.Role;
 import com.pfe.backend.model.Utilisateur;
 import com.pfe.backend.repository.MessageRepository;
+import com.pfe.backend.repository.UtilisateurRepository;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.security.access.AccessDeniedException;
 
-import java.util.Collections;
+import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
 
@@ -24,6 +30,15 @@ class MessageServiceTest {
     @Mock
     private MessageRepository messageRepository;
 
+    @Mock
+    private UtilisateurRepository utilisateurRepository;
+
+    @Mock
+    private NotificationsMessages notificationsMessages;
+
+    @Mock
+    private ConversationResumeService conversationResumeService;
+
     @InjectMocks
     private MessageService messageService;
 
@@ -46,6 +61,8 @@ class MessageServiceTest {
         assertEquals(destinataire, result.getDestinataire());
         assertFalse(result.isLu());
         assertNotNull(result.getDateEnvoi());
+        verify(conversationResumeService).messageEnvoye(result);
+        verify(notificationsMessages).messageEnvoye(result);
     }
 
     @Test
@@ -132,65 +149,59 @@ class MessageServiceTest {
     }
 
     @Test
-    void marquerCommeLus_ShouldMarkUnreadMessagesAsRead() {
+    void marquerCommeLus_ShouldUpdateUnreadMessagesForChercheur() {
         // Arrange
         Long chercheurId = 1L;
         Long medecinId = 2L;
-
-        Utilisateur chercheur = createUtilisateur(chercheurId, "chercheur@test.com");
-        Utilisateur medecin = createUtilisateur(medecinId, "medecin@test.com");
-
-        Message unreadMessage = new Message();
-        unreadMessage.setLu(false);
-        unreadMessage.setDestinataire(chercheur);
-
-        Message readMessage = new Message();
-        readMessage.setLu(true);
-        readMessage.setDestinataire(chercheur);
-
-        Message messageFromChercheur = new Message();
-        messageFromChercheur.setLu(false);
-        messageFromChercheur.setDestinataire(medecin); // Not for chercheur
-
-        when(messageRepository.findConversation(medecinId, chercheurId))
-                .thenReturn(List.of(unreadMessage, readMessage, messageFromChercheur));
+        when(messageRepository.marquerCommeLus(chercheurId, medecinId)).thenReturn(3);
 
         // Act
-        messageService.marquerCommeLus(chercheurId, medecinId);
+        int result = messageService.marquerCommeLus(chercheurId, medecinId);
 
         // Assert
-        assertTrue(unreadMessage.isLu());
-        verify(messageRepository).saveAll(anyList());
+        assertEquals(3, result);
+        verify(conversationResumeService).conversationLue(chercheurId, medecinId, 3);
+        verify(notificationsMessages).messagesLus(chercheurId, medecinId, 3);
+        verify(messageRepository, never()).findConversation(any(), any());
+        verify(messageRepository, never()).saveAll(anyList());
     }
 
     @Test
-    void marquerCommeLusPourMedecin_ShouldMarkUnreadMessagesAsRead() {
+    void marquerCommeLusPourMedecin_ShouldUpdateUnreadMessagesForMedecin() {
         // Arrange
         Long chercheurId = 1L;
         Long medecinId = 2L;
+        when(messageRepository.marquerCommeLus(medecinId, chercheurId)).thenReturn(2);
 
-        Utilisateur medecin = createUtilisateur(medecinId, "medecin@test.com");
+        // Act
+        int result = messageService.marquerCommeLusPourMedecin(chercheurId, medecinId);
 
-        Message unreadMessage = new Message();
-        unreadMessage.setLu(false);
-        unreadMessage.setDestinataire(medecin);
+        // Assert
+        assertEquals(2, result);
+        verify(conversationResumeService).conversationLue(medecinId, chercheurId, 2);
+        verify(notificationsMessages).messagesLus(medecinId, chercheurId, 2);
+        verify(messageRepository, never()).findConversation(any(), any());
+    }
 
-        when(messageRepository.findConversation(medecinId, chercheurId))
-                .thenReturn(List.of(unreadMessage));
+    @Test
+    void marquerCommeLus_ShouldReturnZero_WhenNothingUnread() {
+        // Arrange
+        when(messageRepository.marquerCommeLus(1L, 2L)).thenReturn(0);
 
         // Act
-        messageService.marquerCommeLusPourMedecin(chercheurId, medecinId);
+        int result = messageService.marquerCommeLus(1L, 2L);
 
         // Assert
-        assertTrue(unreadMessage.isLu());
-        verify(messageRepository).saveAll(anyList());
+        assertEquals(0, result);
+        verify(conversationResumeService, never()).conversationLue(any(), any(), anyInt());
+        verify(notificationsMessages).messagesLus(1L, 2L, 0);
     }
 
     @Test
     void countMessagesNonLusPourChercheur_ShouldReturnCount() {
         // Arrange
         Long chercheurId = 1L;
-        when(messageRepository.countByDestinataireIdAndLuFalse(chercheurId)).thenReturn(5L);
+        when(notificationsMessages.totalNonLus(chercheurId)).thenReturn(5L);
 
         // Act
         long result = messageService.countMessagesNonLusPourChercheur(chercheurId);
@@ -203,7 +214,7 @@ class MessageServiceTest {
     void countMessagesNonLusPourMedecin_ShouldReturnCount() {
         // Arrange
         Long medecinId = 1L;
-        when(messageRepository.countByDestinataireIdAndLuFalse(medecinId)).thenReturn(3L);
+        when(notificationsMessages.totalNonLus(medecinId)).thenReturn(3L);
 
         // Act
         long result = messageService.countMessagesNonLusPourMedecin(medecinId);
@@ -217,7 +228,7 @@ class MessageServiceTest {
         // Arrange
         Long destinataireId = 1L;
         Long emetteurId = 2L;
-        when(messageRepository.countUnreadMessages(destinataireId, emetteurId)).thenReturn(2);
+        when(notificationsMessages.nonLus(destinataireId, emetteurId)).thenReturn(2);
 
         // Act
         int result = messageService.countUnreadForConversation(destinataireId, emetteurId);
@@ -233,9 +244,11 @@ class MessageServiceTest {
         Long userId = 10L;
 
         Utilisateur emetteur = createUtilisateur(userId, "emetteur@test.com");
+        Utilisateur destinataire = createUtilisateur(20L, "destinataire@test.com");
 
         Message message = new Message();
         message.setEmetteur(emetteur);
+        message.setDestinataire(destinataire);
 
         when(messageRepository.findById(messageId)).thenReturn(Optional.of(message));
 
@@ -244,6 +257,8 @@ class MessageServiceTest {
 
         // Assert
         verify(messageRepository).delete(message);
+        verify(conversationResumeService).recalculer(userId, 20L);
+        verify(notificationsMessages).messageSupprime(message);
     }
 
     @Test
@@ -280,207 +295,86 @@ class MessageServiceTest {
     }
 
     @Test
-    void marquerCommeLus_ShouldHandleEmptyConversation() {
+    void getBoiteDeReception_ShouldDelegateToConversationSummaries() {
         // Arrange
-        Long chercheurId = 1L;
-        Long medecinId = 2L;
-
-        when(messageRepository.findConversation(medecinId, chercheurId))
-                .thenReturn(Collections.emptyList());
+        ConversationResumeDto conversation = new ConversationResumeDto(null, 5L, LocalDateTime.now(), 2);
+        when(conversationResumeService.getBoiteDeReception(1L)).thenReturn(List.of(conversation));
 
         // Act
-        messageService.marquerCommeLus(chercheurId, medecinId);
+        List<ConversationResumeDto> result = messageService.getBoiteDeReception(1L);
 
         // Assert
-        verify(messageRepository).saveAll(Collections.emptyList());
-    }
-
-    private Utilisateur createUtilisateur(Long id, String email) {
-        Utilisateur utilisateur = new Utilisateur();
-        utilisateur.setId(id);
-        utilisateur.setEmail(email);
-        return utilisateur;
-    }
-
-    @Test
-    void marquerCommeLus_ShouldNotMarkAlreadyReadMessages() {
-        // Arrange - Test the branch where m.isLu() is true
-        Long chercheurId = 1L;
-        Long medecinId = 2L;
-
-        Utilisateur chercheur = createUtilisateur(chercheurId, "chercheur@test.com");
-
-        Message alreadyReadMessage = new Message();
-        alreadyReadMessage.setLu(true); // Already read
-        alreadyReadMessage.setDestinataire(chercheur);
-
-        when(messageRepository.findConversation(medecinId, chercheurId))
-                .thenReturn(List.of(alreadyReadMessage));
-
-        // Act
-        messageService.marquerCommeLus(chercheurId, medecinId);
-
-        // Assert - Already read message should remain read, empty list saved
-        assertTrue(alreadyReadMessage.isLu());
-        verify(messageRepository).saveAll(Collections.emptyList());
-    }
-
-    @Test
-    void marquerCommeLus_ShouldNotMarkMessagesForOtherDestinataire() {
-        // Arrange - Test the branch where destinataire != chercheurId
-        Long chercheurId = 1L;
-        Long medecinId = 2L;
-        Long autreId = 3L;
-
-        Utilisateur autreDestinataire = createUtilisateur(autreId, "autre@test.com");
-
-        Message messageForOther = new Message();
-        messageForOther.setLu(false);
-        messageForOther.setDestinataire(autreDestinataire); // Different destinataire
-
-        when(messageRepository.findConversation(medecinId, chercheurId))
-                .thenReturn(List.of(messageForOther));
-
-        // Act
-        messageService.marquerCommeLus(chercheurId, medecinId);
-
-        // Assert - Message for other destinataire should NOT be marked as read
-        assertFalse(messageForOther.isLu());
-        verify(messageRepository).saveAll(Collections.emptyList());
+        assertEquals(List.of(conversation), result);
+        verifyNoInteractions(messageRepository);
     }
 
     @Test
-    void marquerCommeLusPourMedecin_ShouldNotMarkAlreadyReadMessages() {
-        // Arrange - Test the branch where m.isLu() is true
-        Long chercheurId = 1L;
-        Long medecinId = 2L;
-
-        Utilisateur medecin = createUtilisateur(medecinId, "medecin@test.com");
-
-        Message alreadyReadMessage = new Message();
-        alreadyReadMessage.setLu(true); // Already read
-        alreadyReadMessage.setDestinataire(medecin);
-
-        when(messageRepository.findConversation(medecinId, chercheurId))
-                .thenReturn(List.of(alreadyReadMessage));
-
-        // Act
-        messageService.marquerCommeLusPourMedecin(chercheurId, medecinId);
-
-        // Assert - Already read message should remain read, empty list saved
-        assertTrue(alreadyReadMessage.isLu());
-        verify(messageRepository).saveAll(Collections.emptyList());
-    }
-
-    @Test
-    void marquerCommeLusPourMedecin_ShouldNotMarkMessagesForOtherDestinataire() {
-        // Arrange - Test the branch where destinataire != medecinId
-        Long chercheurId = 1L;
-        Long medecinId = 2L;
-        Long autreId = 3L;
-
-        Utilisateur autreDestinataire = createUtilisateur(autreId, "autre@test.com");
-
-        Message messageForOther = new Message();
-        messageForOther.setLu(false);
-        messageForOther.setDestinataire(autreDestinataire); // Different destinataire
-
-        when(messageRepository.findConversation(medecinId, chercheurId))
-                .thenReturn(List.of(messageForOther));
-
-        // Act
-        messageService.marquerCommeLusPourMedecin(chercheurId, medecinId);
-
-        // Assert - Message for other destinataire should NOT be marked as read
-        assertFalse(messageForOther.isLu());
-        verify(messageRepository).saveAll(Collections.emptyList());
-    }
-
-    @Test
-    void marquerCommeLusPourMedecin_ShouldHandleEmptyConversation() {
+    void getConversationPage_ShouldMergeBothDirections_AndReturnChronologicalPage() {
         // Arrange
         Long chercheurId = 1L;
         Long medecinId = 2L;
-
-        when(messageRepository.findConversation(medecinId, chercheurId))
-                .thenReturn(Collections.emptyList());
+        MessageConversationDto m1 = messageConversation(11L, medecinId, 9);
+        MessageConversationDto m2 = messageConversation(12L, chercheurId, 10);
+        MessageConversationDto m3 = messageConversation(13L, medecinId, 11);
+        MessageConversationDto m4 = messageConversation(14L, chercheurId, 12);
+        when(messageRepository.findDerniersMessages(chercheurId, medecinId, PageRequest.of(0, 3))).thenReturn(List.of(m4, m2));
+        when(messageRepository.findDerniersMessages(medecinId, chercheurId, PageRequest.of(0, 3))).thenReturn(List.of(m3, m1));
+        when(utilisateurRepository.findAllById(List.of(chercheurId, medecinId))).thenReturn(List.of(
+                createUtilisateurAvecRole(chercheurId, "chercheur"), createUtilisateurAvecRole(medecinId, "medecin")));
 
         // Act
-        messageService.marquerCommeLusPourMedecin(chercheurId, medecinId);
+        ConversationPageResponse result = messageService.getConversationPage(chercheurId, medecinId, null, 3);
 
         // Assert
-        verify(messageRepository).saveAll(Collections.emptyList());
+        assertEquals(List.of(m2, m3, m4), result.messages());
+        assertEquals(MessageService.curseur(m2), result.suivant());
+        assertEquals(2, result.participants().size());
+        assertEquals("medecin", result.participants().get(1).getRole());
     }
 
     @Test
-    void marquerCommeLus_ShouldMarkOnlyUnreadMessagesForChercheur() {
-        // Arrange - Mix of read and unread messages for different destinataires
-        Long chercheurId = 1L;
-        Long medecinId = 2L;
-
-        Utilisateur chercheur = createUtilisateur(chercheurId, "chercheur@test.com");
-        Utilisateur medecin = createUtilisateur(medecinId, "medecin@test.com");
-
-        // Unread message for chercheur - should be marked
-        Message unreadForChercheur = new Message();
-        unreadForChercheur.setLu(false);
-        unreadForChercheur.setDestinataire(chercheur);
-
-        // Read message for chercheur - should NOT be in the list
-        Message readForChercheur = new Message();
-        readForChercheur.setLu(true);
-        readForChercheur.setDestinataire(chercheur);
-
-        // Unread message for medecin - should NOT be in the list (wrong destinataire)
-        Message unreadForMedecin = new Message();
-        unreadForMedecin.setLu(false);
-        unreadForMedecin.setDestinataire(medecin);
-
-        when(messageRepository.findConversation(medecinId, chercheurId))
-                .thenReturn(List.of(unreadForChercheur, readForChercheur, unreadForMedecin));
+    void getConversationPage_ShouldResumeAfterCursor_AndEndOnLastPage() {
+        // Arrange
+        MessageConversationDto m1 = messageConversation(11L, 2L, 9);
+        when(messageRepository.findMessagesAvant(1L, 2L, m1.dateEnvoi().plusHours(1), 12L, PageRequest.of(0, 3)))
+                .thenReturn(List.of());
+        when(messageRepository.findMessagesAvant(2L, 1L, m1.dateEnvoi().plusHours(1), 12L, PageRequest.of(0, 3)))
+                .thenReturn(List.of(m1));
 
         // Act
-        messageService.marquerCommeLus(chercheurId, medecinId);
+        ConversationPageResponse result = messageService.getConversationPage(1L, 2L,
+                m1.dateEnvoi().plusHours(1) + ",12", 3);
 
         // Assert
-        assertTrue(unreadForChercheur.isLu()); // Should be marked as read
-        assertTrue(readForChercheur.isLu()); // Was already read
-        assertFalse(unreadForMedecin.isLu()); // Should NOT be marked (different destinataire)
+        assertEquals(List.of(m1), result.messages());
+        assertNull(result.suivant());
+        verify(messageRepository, never()).findConversation(any(), any());
     }
 
     @Test
-    void marquerCommeLusPourMedecin_ShouldMarkOnlyUnreadMessagesForMedecin() {
-        // Arrange - Mix of read and unread messages for different destinataires
-        Long chercheurId = 1L;
-        Long medecinId = 2L;
-
-        Utilisateur chercheur = createUtilisateur(chercheurId, "chercheur@test.com");
-        Utilisateur medecin = createUtilisateur(medecinId, "medecin@test.com");
-
-        // Unread message for medecin - should be marked
-        Message unreadForMedecin = new Message();
-        unreadForMedecin.setLu(false);
-        unreadForMedecin.setDestinataire(medecin);
-
-        // Read message for medecin - should NOT be in the list
-        Message readForMedecin = new Message();
-        readForMedecin.setLu(true);
-        readForMedecin.setDestinataire(medecin);
-
-        // Unread message for chercheur - should NOT be in the list (wrong destinataire)
-        Message unreadForChercheur = new Message();
-        unreadForChercheur.setLu(false);
-        unreadForChercheur.setDestinataire(chercheur);
+    void getConversationPage_ShouldThrow_WhenCursorOrSizeInvalid() {
+        assertThrows(IllegalArgumentException.class, () -> messageService.getConversationPage(1L, 2L, "hier,3", 10));
+        assertThrows(IllegalArgumentException.class, () -> messageService.getConversationPage(1L, 2L, null, 0));
+        assertThrows(IllegalArgumentException.class,
+                () -> messageService.getConversationPage(1L, 2L, null, MessageService.TAILLE_MAX_PAGE + 1));
+    }
 
-        when(messageRepository.findConversation(medecinId, chercheurId))
-                .thenReturn(List.of(unreadForMedecin, readForMedecin, unreadForChercheur));
+    private static MessageConversationDto messageConversation(Long id, Long emetteurId, int heure) {
+        return new MessageConversationDto(id, emetteurId, "Message " + id, LocalDateTime.of(2026, 1, 15, heure, 0), false);
+    }
 
-        // Act
-        messageService.marquerCommeLusPourMedecin(chercheurId, medecinId);
+    private Utilisateur createUtilisateurAvecRole(Long id, String nomRole) {
+        Role role = new Role();
+        role.setNom(nomRole);
+        Utilisateur utilisateur = createUtilisateur(id, nomRole + "@test.com");
+        utilisateur.setRole(role);
+        return utilisateur;
+    }
 
-        // Assert
-        assertTrue(unreadForMedecin.isLu()); // Should be marked as read
-        assertTrue(readForMedecin.isLu()); // Was already read
-        assertFalse(unreadForChercheur.isLu()); // Should NOT be marked (different destinataire)
+    private Utilisateur createUtilisateur(Long id, String email) {
+        Utilisateur utilisateur = new Utilisateur();
+        utilisateur.setId(id);
+        utilisateur.setEmail(email);
+        return utilisateur;
     }
 }
@@ -0,0 +1,251 @@
+package com.pfe.backend.service;
+
+import com.pfe.backend.model.Message;
+import com.pfe.backend.model.Utilisateur;
+import com.pfe.backend.repository.MessageRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+
+@ExtendWith(MockitoExtension.class)
+class NotificationsMessagesTest {
+
+    @Mock
+    private MessageRepository messageRepository;
+
+    @AfterEach
+    void tearDown() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    private NotificationsMessages notifications(Duration ttl) {
+        // Publication sur le thread appelant : les événements sont visibles dès le retour
+        return new NotificationsMessages(messageRepository, ttl, 100, Duration.ofMinutes(30), Runnable::run);
+    }
+
+    private static Message message(long id, long emetteurId, long destinataireId) {
+        Utilisateur emetteur = new Utilisateur();
+        emetteur.setId(emetteurId);
+        Utilisateur destinataire = new Utilisateur();
+        destinataire.setId(destinataireId);
+        Message message = new Message("Bonjour", LocalDateTime.of(2026, 1, 15, 10, 30), emetteur, destinataire);
+        ReflectionTestUtils.setField(message, "id", id);
+        return message;
+    }
+
+    @Test
+    void totalNonLus_ShouldQueryDatabaseOnce_ThenServeFromMemory() {
+        // Arrange
+        NotificationsMessages notifications = notifications(Duration.ofMinutes(5));
+        when(messageRepository.countNonLusParEmetteur(1L)).thenReturn(List.of(
+                new Object[]{2L, 3L}, new Object[]{3L, 1L}));
+
+        // Act
+        long total = notifications.totalNonLus(1L);
+        int conversation = notifications.nonLus(1L, 2L);
+        int aucun = notifications.nonLus(1L, 4L);
+
+        // Assert
+        assertEquals(4L, total);
+        assertEquals(3, conversation);
+        assertEquals(0, aucun);
+        verify(messageRepository, times(1)).countNonLusParEmetteur(1L);
+    }
+
+    @Test
+    void compteurs_ShouldFollowSentReadAndDeletedMessages() {
+        // Arrange
+        NotificationsMessages notifications = notifications(Duration.ofMinutes(5));
+        when(messageRepository.countNonLusParEmetteur(1L)).thenReturn(List.<Object[]>of(new Object[]{2L, 3L}));
+        notifications.totalNonLus(1L);
+
+        // Act & Assert
+        notifications.messageEnvoye(message(10L, 3L, 1L));
+        assertEquals(Map.of(2L, 3, 3L, 1), notifications.getNonLus(1L).parEmetteur());
+
+        notifications.messagesLus(1L, 2L, 3);
+        assertEquals(Map.of(3L, 1), notifications.getNonLus(1L).parEmetteur());
+
+        notifications.messageSupprime(message(10L, 3L, 1L));
+        assertEquals(0L, notifications.totalNonLus(1L));
+        verify(messageRepository, times(1)).countNonLusParEmetteur(1L);
+    }
+
+    @Test
+    void messageEnvoye_ShouldWaitForCommit_WhenTransactionActive() {
+        // Arrange
+        NotificationsMessages notifications = notifications(Duration.ofMinutes(5));
+        when(messageRepository.countNonLusParEmetteur(1L)).thenReturn(List.of());
+        notifications.totalNonLus(1L);
+        TransactionSynchronizationManager.initSynchronization();
+
+        // Act
+        notifications.messageEnvoye(message(10L, 2L, 1L));
+
+        // Assert
+        assertEquals(0L, notifications.totalNonLus(1L));
+        valider();
+        assertEquals(1L, notifications.totalNonLus(1L));
+    }
+
+    @Test
+    void messageEnvoye_ShouldNotCount_WhenRolledBack() {
+        // Arrange
+        NotificationsMessages notifications = notifications(Duration.ofMinutes(5));
+        when(messageRepository.countNonLusParEmetteur(1L)).thenReturn(List.of());
+        notifications.totalNonLus(1L);
+        TransactionSynchronizationManager.initSynchronization();
+
+        // Act
+        notifications.messageEnvoye(message(10L, 2L, 1L));
+        TransactionSynchronizationManager.getSynchronizations()
+                .forEach(synchronisation -> synchronisation.afterCompletion(TransactionSynchronization.STATUS_ROLLED_BACK));
+
+        // Assert
+        assertEquals(0L, notifications.totalNonLus(1L));
+    }
+
+    @Test
+    void totalNonLus_ShouldNotCacheLoad_WhenMessageCommitsDuringLoad() {
+        // Arrange : le message est validé pendant la lecture des compteurs en base
+        NotificationsMessages notifications = notifications(Duration.ofMinutes(5));
+        TransactionSynchronizationManager.initSynchronization();
+        notifications.messageEnvoye(message(10L, 2L, 1L));
+        when(messageRepository.countNonLusParEmetteur(1L)).thenAnswer(invocation -> {
+            valider();
+            return List.of();
+        }).thenReturn(List.<Object[]>of(new Object[]{2L, 1L}));
+
+        // Act
+        long pendant = notifications.totalNonLus(1L);
+        long apres = notifications.totalNonLus(1L);
+
+        // Assert
+        assertEquals(0L, pendant);
+        assertEquals(1L, apres);
+        verify(messageRepository, times(2)).countNonLusParEmetteur(1L);
+    }
+
+    @Test
+    void totalNonLus_ShouldNotCacheLoad_WhileModificationIsCommitting() {
+        // Arrange : commit lancé, report sur les compteurs pas encore fait
+        NotificationsMessages notifications = notifications(Duration.ofMinutes(5));
+        TransactionSynchronizationManager.initSynchronization();
+        notifications.messageEnvoye(message(10L, 2L, 1L));
+        TransactionSynchronizationManager.getSynchronizations().forEach(synchronisation -> synchronisation.beforeCommit(false));
+        when(messageRepository.countNonLusParEmetteur(1L)).thenReturn(List.<Object[]>of(new Object[]{2L, 1L}));
+
+        // Act
+        notifications.totalNonLus(1L);
+        TransactionSynchronizationManager.getSynchronizations()
+                .forEach(synchronisation -> synchronisation.afterCompletion(TransactionSynchronization.STATUS_COMMITTED));
+
+        // Assert : rechargé plutôt que compté deux fois
+        assertEquals(1L, notifications.totalNonLus(1L));
+    }
+
+    private static void valider() {
+        List<TransactionSynchronization> synchronisations = TransactionSynchronizationManager.getSynchronizations();
+        synchronisations.forEach(synchronisation -> synchronisation.beforeCommit(false));
+        synchronisations.forEach(synchronisation -> synchronisation.afterCompletion(TransactionSynchronization.STATUS_COMMITTED));
+        TransactionSynchronizationManager.clearSynchronization();
+        TransactionSynchronizationManager.initSynchronization();
+    }
+
+    @Test
+    void totalNonLus_ShouldReload_WhenCacheDisabled() {
+        // Arrange
+        NotificationsMessages notifications = notifications(Duration.ZERO);
+        when(messageRepository.countNonLusParEmetteur(1L)).thenReturn(List.of());
+
+        // Act
+        notifications.totalNonLus(1L);
+        notifications.totalNonLus(1L);
+
+        // Assert
+        verify(messageRepository, times(2)).countNonLusParEmetteur(1L);
+    }
+
+    @Test
+    void abonner_ShouldPushUnreadCountsAndNewMessages() throws Exception {
+        // Arrange
+        NotificationsMessages notifications = notifications(Duration.ofMinutes(5));
+        when(messageRepository.countNonLusParEmetteur(1L)).thenReturn(List.<Object[]>of(new Object[]{2L, 1L}));
+        MockMvc mockMvc = MockMvcBuilders.standaloneSetup(new FluxTestController(notifications)).build();
+
+        // Act
+        MvcResult result = mockMvc.perform(get("/flux")).andExpect(request().asyncStarted()).andReturn();
+        notifications.messageEnvoye(message(10L, 2L, 1L));
+
+        // Assert
+        String contenu = result.getResponse().getContentAsString();
+        assertTrue(contenu.contains("event:non-lus\ndata:{\"total\":1,\"parEmetteur\":{\"2\":1}}"));
+        assertTrue(contenu.contains("event:message\ndata:{\"id\":10,\"emetteurId\":2,\"contenu\":\"Bonjour\""));
+        assertTrue(contenu.contains("event:non-lus\ndata:{\"total\":2,\"parEmetteur\":{\"2\":2}}"));
+        assertEquals(1, notifications.nombreConnexions());
+    }
+
+    @Test
+    void messageEnvoye_ShouldPublishOnDedicatedExecutor_AfterCommit() throws Exception {
+        // Arrange : les publications sont retenues au lieu d'être exécutées
+        List<Runnable> publications = new ArrayList<>();
+        NotificationsMessages notifications = new NotificationsMessages(messageRepository, Duration.ofMinutes(5), 100,
+                Duration.ofMinutes(30), publications::add);
+        when(messageRepository.countNonLusParEmetteur(1L)).thenReturn(List.of());
+        MockMvc mockMvc = MockMvcBuilders.standaloneSetup(new FluxTestController(notifications)).build();
+        MvcResult result = mockMvc.perform(get("/flux")).andExpect(request().asyncStarted()).andReturn();
+        TransactionSynchronizationManager.initSynchronization();
+
+        // Act
+        notifications.messageEnvoye(message(10L, 2L, 1L));
+        List<TransactionSynchronization> synchronisations = TransactionSynchronizationManager.getSynchronizations();
+        synchronisations.forEach(synchronisation -> synchronisation.beforeCommit(false));
+        synchronisations.forEach(synchronisation -> synchronisation.afterCompletion(TransactionSynchronization.STATUS_COMMITTED));
+
+        // Assert : le compteur est à jour au commit, l'envoi SSE attend l'exécuteur
+        assertEquals(1, notifications.totalNonLus(1L));
+        assertFalse(result.getResponse().getContentAsString().contains("event:message"));
+        assertEquals(1, publications.size());
+        publications.get(0).run();
+        assertTrue(result.getResponse().getContentAsString().contains("event:message"));
+    }
+
+    @RestController
+    static class FluxTestController {
+
+        private final NotificationsMessages notifications;
+
+        FluxTestController(NotificationsMessages notifications) {
+            this.notifications = notifications;
+        }
+
+        @GetMapping("/flux")
+        SseEmitter flux() {
+            return notifications.abonner(1L);
+        }
+    }
+}
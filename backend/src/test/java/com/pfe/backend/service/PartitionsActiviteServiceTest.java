@@ -0,0 +1,104 @@
+package com.pfe.backend.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.YearMonth;
+import java.util.List;
+import java.util.Optional;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class PartitionsActiviteServiceTest {
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    @TempDir
+    Path archives;
+
+    private PartitionsActiviteService service() {
+        return new PartitionsActiviteService(jdbcTemplate, transactionManager, true, 2, 24, archives.toString());
+    }
+
+    @Test
+    void nomPartition_ShouldRoundTripWithMoisDe() {
+        assertEquals("activite_2026_03", PartitionsActiviteService.nomPartition(YearMonth.of(2026, 3)));
+        assertEquals(Optional.of(YearMonth.of(2026, 3)), PartitionsActiviteService.moisDe("activite_2026_03"));
+        assertEquals(Optional.empty(), PartitionsActiviteService.moisDe("activite_defaut"));
+    }
+
+    @Test
+    void entretenir_ShouldCreateUpcomingPartitions_AndArchiveExpiredOnes() throws Exception {
+        // Arrange
+        when(jdbcTemplate.queryForList(anyString(), eq(String.class))).thenReturn(List.of(
+                "activite_2024_08", "activite_2024_10", "activite_2026_10", "activite_defaut"));
+
+        // Act
+        service().entretenir(YearMonth.of(2026, 10));
+
+        // Assert
+        verify(jdbcTemplate).execute("CREATE TABLE IF NOT EXISTS activite_2026_10 PARTITION OF activite "
+                + "FOR VALUES FROM ('2026-10-01') TO ('2026-11-01')");
+        verify(jdbcTemplate).execute("CREATE TABLE IF NOT EXISTS activite_2026_12 PARTITION OF activite "
+                + "FOR VALUES FROM ('2026-12-01') TO ('2027-01-01')");
+        verify(jdbcTemplate).execute("ALTER TABLE activite DETACH PARTITION activite_2024_08");
+        verify(jdbcTemplate).execute("DROP TABLE activite_2024_08");
+        verify(jdbcTemplate, never()).execute("ALTER TABLE activite DETACH PARTITION activite_2024_10");
+        verify(jdbcTemplate, never()).execute("ALTER TABLE activite DETACH PARTITION activite_defaut");
+
+        Path archive = archives.resolve("activite_2024_08.csv.gz");
+        assertTrue(Files.exists(archive));
+        assertFalse(Files.exists(archives.resolve("activite_2024_08.csv.gz.part")));
+        try (InputStream in = new GZIPInputStream(Files.newInputStream(archive))) {
+            assertEquals("id_activite;id_utilisateur;action;ressource_type;ressource_id;details;date_creation\n",
+                    new String(in.readAllBytes(), StandardCharsets.UTF_8));
+        }
+    }
+
+    @Test
+    void entretenir_ShouldDoNothing_WhenNotActive() {
+        // Act
+        service().entretenir();
+
+        // Assert
+        verifyNoInteractions(jdbcTemplate);
+    }
+
+    @Test
+    void initialiser_ShouldNotStart_WithoutArchiveDirectory() {
+        // Arrange
+        PartitionsActiviteService service = new PartitionsActiviteService(jdbcTemplate, transactionManager, true, 2, 24, "");
+
+        // Act
+        service.initialiser();
+
+        // Assert
+        assertFalse(service.estActif());
+        verifyNoInteractions(jdbcTemplate);
+    }
+
+    @Test
+    void cellule_ShouldQuoteSeparatorsAndQuotes() {
+        assertEquals("Export CSV", PartitionsActiviteService.cellule("Export CSV"));
+        assertEquals("\"a;b\"", PartitionsActiviteService.cellule("a;b"));
+        assertEquals("\"Formulaire \"\"Test\"\"\"", PartitionsActiviteService.cellule("Formulaire \"Test\""));
+    }
+}
@@ -35,6 +35,8 @@ class PasswordResetServiceTest {
     private MailService mailService;
     @Mock
     private PasswordEncoder passwordEncoder;
+    @Mock
+    private UserDetailsCache userDetailsCache;
 
     @InjectMocks
     private PasswordResetService passwordResetService;
@@ -169,5 +171,6 @@ class PasswordResetServiceTest {
         verify(passwordResetRepository).save(reset);
         assertNull(reset.getResetToken());
         assertEquals("encodedNewPass", utilisateur.getMotDePasse());
+        verify(userDetailsCache).invalider("test@test.com");
     }
 }
@@ -0,0 +1,87 @@
+package com.pfe.backend.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class PatientIdentifierAllocatorTest {
+
+    @Mock
+    private PatientIdentifierCounterService counterService;
+
+    @Test
+    void prochainNumero_ShouldServeNumbersFromReservedBlock() {
+        when(counterService.reserverBloc(1L, 3)).thenReturn(11, 14);
+        PatientIdentifierAllocator allocator = new PatientIdentifierAllocator(counterService, "blocs", 3);
+
+        List<Integer> numeros = IntStream.range(0, 4).mapToObj(i -> allocator.prochainNumero(1L)).toList();
+
+        assertEquals(List.of(11, 12, 13, 14), numeros);
+        verify(counterService, times(2)).reserverBloc(1L, 3);
+        verify(counterService, never()).getNextCounterForFormulaire(any());
+    }
+
+    @Test
+    void prochainNumero_ShouldKeepSeparateBlocksPerFormulaire() {
+        when(counterService.reserverBloc(1L, 5)).thenReturn(1);
+        when(counterService.reserverBloc(2L, 5)).thenReturn(40);
+        PatientIdentifierAllocator allocator = new PatientIdentifierAllocator(counterService, "blocs", 5);
+
+        assertEquals(1, allocator.prochainNumero(1L));
+        assertEquals(40, allocator.prochainNumero(2L));
+        assertEquals(2, allocator.prochainNumero(1L));
+    }
+
+    @Test
+    void prochainNumero_ShouldUseLockedCounter_WhenPolicyIsStrict() {
+        when(counterService.getNextCounterForFormulaire(1L)).thenReturn(7);
+        PatientIdentifierAllocator allocator = new PatientIdentifierAllocator(counterService, "stricte", 10);
+
+        assertEquals(7, allocator.prochainNumero(1L));
+        verify(counterService, never()).reserverBloc(any(), anyInt());
+    }
+
+    @Test
+    void prochainNumero_ShouldNeverReturnDuplicates_UnderConcurrency() throws Exception {
+        AtomicInteger compteur = new AtomicInteger();
+        when(counterService.reserverBloc(eq(1L), eq(4))).thenAnswer(i -> compteur.getAndAdd(4) + 1);
+        PatientIdentifierAllocator allocator = new PatientIdentifierAllocator(counterService, "blocs", 4);
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            Set<Integer> numeros = ConcurrentHashMap.newKeySet();
+            List<Future<?>> taches = IntStream.range(0, 200)
+                    .<Future<?>>mapToObj(i -> executor.submit(() -> numeros.add(allocator.prochainNumero(1L))))
+                    .toList();
+            for (Future<?> tache : taches) {
+                tache.get();
+            }
+            assertEquals(200, numeros.size());
+            assertEquals(200, compteur.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void constructor_ShouldRejectInvalidConfiguration() {
+        assertThrows(IllegalArgumentException.class, () -> new PatientIdentifierAllocator(counterService, "blocs", 0));
+        assertThrows(IllegalArgumentException.class, () -> new PatientIdentifierAllocator(counterService, "inconnue", 10));
+    }
+}
@@ -1,7 +1,6 @@
 package com.pfe.backend.service;
 
 import com.pfe.backend.model.PatientIdentifierCounter;
-import com.pfe.backend.model.ReponseFormulaire;
 import com.pfe.backend.repository.PatientIdentifierCounterRepository;
 import com.pfe.backend.repository.ReponseFormulaireRepository;
 import org.junit.jupiter.api.Test;
@@ -10,6 +9,9 @@ import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 
+import org.springframework.data.domain.Pageable;
+
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
@@ -56,14 +58,10 @@ class PatientIdentifierCounterServiceTest {
         Long formulaireId = 1L;
         when(repository.findByFormulaireIdForUpdate(formulaireId)).thenReturn(Optional.empty());
         
-        // Mock existing responses to calculate max
-        ReponseFormulaire r1 = new ReponseFormulaire();
-        r1.setPatientIdentifier("ABC-DEF-slug-0010");
-        ReponseFormulaire r2 = new ReponseFormulaire();
-        r2.setPatientIdentifier("ABC-DEF-slug-0005");
-        
-        when(reponseFormulaireRepository.findByFormulaireIdWithChamp(formulaireId))
-                .thenReturn(List.of(r1, r2));
+        // Max indexé (10), plus une ligne pas encore reprise (5)
+        when(reponseFormulaireRepository.findMaxNumeroInclusionByFormulaireId(formulaireId)).thenReturn(10);
+        when(reponseFormulaireRepository.findPatientIdentifiersSansNumeroInclusion(formulaireId))
+                .thenReturn(List.of("ABC-DEF-slug-0005"));
 
         when(repository.save(any(PatientIdentifierCounter.class))).thenAnswer(i -> i.getArguments()[0]);
 
@@ -81,15 +79,10 @@ class PatientIdentifierCounterServiceTest {
         Long formulaireId = 1L;
         when(repository.findByFormulaireIdForUpdate(formulaireId)).thenReturn(Optional.empty());
 
-        ReponseFormulaire r1 = new ReponseFormulaire();
-        r1.setPatientIdentifier(null); // Should be ignored
-        ReponseFormulaire r2 = new ReponseFormulaire();
-        r2.setPatientIdentifier("INVALID-FORMAT"); // Should be ignored
-        ReponseFormulaire r3 = new ReponseFormulaire();
-        r3.setPatientIdentifier("VALID-0003"); // Valid
-
-        when(reponseFormulaireRepository.findByFormulaireIdWithChamp(formulaireId))
-                .thenReturn(List.of(r1, r2, r3));
+        when(reponseFormulaireRepository.findMaxNumeroInclusionByFormulaireId(formulaireId)).thenReturn(null);
+        // null et "INVALID-FORMAT" ignorés, "VALID-0003" retenu
+        when(reponseFormulaireRepository.findPatientIdentifiersSansNumeroInclusion(formulaireId))
+                .thenReturn(Arrays.asList(null, "INVALID-FORMAT", "VALID-0003"));
 
         when(repository.save(any(PatientIdentifierCounter.class))).thenAnswer(i -> i.getArguments()[0]);
 
@@ -105,7 +98,8 @@ class PatientIdentifierCounterServiceTest {
         // Arrange
         Long formulaireId = 1L;
         when(repository.findByFormulaireIdForUpdate(formulaireId)).thenReturn(Optional.empty());
-        when(reponseFormulaireRepository.findByFormulaireIdWithChamp(formulaireId))
+        when(reponseFormulaireRepository.findMaxNumeroInclusionByFormulaireId(formulaireId)).thenReturn(null);
+        when(reponseFormulaireRepository.findPatientIdentifiersSansNumeroInclusion(formulaireId))
                 .thenReturn(Collections.emptyList());
         when(repository.save(any(PatientIdentifierCounter.class))).thenAnswer(i -> i.getArguments()[0]);
 
@@ -115,4 +109,73 @@ class PatientIdentifierCounterServiceTest {
         // Assert
         assertEquals(1, result); // 0 + 1 = 1
     }
+
+    @Test
+    void reserverBloc_ShouldAdvanceCounterByBlockSize_AndReturnFirstNumber() {
+        PatientIdentifierCounter counter = new PatientIdentifierCounter(1L, 5);
+        when(repository.findByFormulaireIdForUpdate(1L)).thenReturn(Optional.of(counter));
+
+        int debut = service.reserverBloc(1L, 10);
+
+        assertEquals(6, debut);
+        assertEquals(15, counter.getCounter());
+        verify(repository).save(counter);
+    }
+
+    @Test
+    void reserverBloc_ShouldStartAfterExistingIdentifiers_WhenCounterDoesNotExist() {
+        when(repository.findByFormulaireIdForUpdate(1L)).thenReturn(Optional.empty());
+        when(reponseFormulaireRepository.findMaxNumeroInclusionByFormulaireId(1L)).thenReturn(7);
+        when(reponseFormulaireRepository.findPatientIdentifiersSansNumeroInclusion(1L))
+                .thenReturn(Collections.emptyList());
+
+        int debut = service.reserverBloc(1L, 5);
+
+        assertEquals(8, debut);
+        verify(repository).save(argThat(c -> c.getCounter() == 12 && c.getFormulaireId().equals(1L)));
+    }
+
+    @Test
+    void completerNumerosInclusion_ShouldUpdateRowsGroupedByNumber() {
+        List<Object[]> lignes = List.of(
+                new Object[]{1L, "AB-CD-etude-0003"},
+                new Object[]{2L, "AB-CD-etude-0003"},
+                new Object[]{3L, "EF-GH-etude-0004"},
+                new Object[]{4L, "SANS-NUMERO"});
+        when(reponseFormulaireRepository.findSansNumeroInclusion(any(Pageable.class))).thenReturn(lignes);
+
+        int reprises = service.completerNumerosInclusion(10);
+
+        assertEquals(4, reprises);
+        verify(reponseFormulaireRepository).updateNumeroInclusion(3, List.of(1L, 2L));
+        verify(reponseFormulaireRepository).updateNumeroInclusion(4, List.of(3L));
+        verify(reponseFormulaireRepository).updateNumeroInclusion(0, List.of(4L));
+    }
+
+    @Test
+    void initialiserCompteursManquants_ShouldCreateMissingCountersFromGroupedMax() {
+        when(repository.findAll()).thenReturn(List.of(new PatientIdentifierCounter(2L, 3)));
+        when(reponseFormulaireRepository.findMaxNumeroInclusionParFormulaire()).thenReturn(List.of(
+                new Object[]{1L, 10},
+                new Object[]{2L, 8},
+                new Object[]{3L, null}));
+
+        int crees = service.initialiserCompteursManquants();
+
+        assertEquals(2, crees);
+        verify(repository).saveAll(argThat(compteurs -> {
+            List<PatientIdentifierCounter> liste = new java.util.ArrayList<>();
+            compteurs.forEach(liste::add);
+            return liste.size() == 2
+                    && liste.get(0).getFormulaireId().equals(1L) && liste.get(0).getCounter() == 11
+                    && liste.get(1).getFormulaireId().equals(3L) && liste.get(1).getCounter() == 1;
+        }));
+    }
+
+    @Test
+    void extraireNumeroInclusion_ShouldReturnZero_WhenNoTrailingNumber() {
+        assertEquals(42, PatientIdentifierCounterService.extraireNumeroInclusion("AB-CD-etude-0042"));
+        assertEquals(0, PatientIdentifierCounterService.extraireNumeroInclusion("AB-CD-etude"));
+        assertEquals(0, PatientIdentifierCounterService.extraireNumeroInclusion(null));
+    }
 }
@@ -0,0 +1,139 @@
+package com.pfe.backend.service;
+
+import com.pfe.backend.model.Champ;
+import com.pfe.backend.model.ListeValeur;
+import com.pfe.backend.model.OptionValeur;
+import com.pfe.backend.repository.ChampRepository;
+import com.pfe.backend.repository.FormulaireMedecinRepository;
+import com.pfe.backend.repository.FormulaireRepository;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class PlanExportCacheTest {
+
+    private static final LocalDateTime VERSION_1 = LocalDateTime.of(2026, 1, 1, 10, 0);
+    private static final LocalDateTime VERSION_2 = LocalDateTime.of(2026, 1, 2, 10, 0);
+
+    @Mock
+    private FormulaireRepository formulaireRepository;
+
+    @Mock
+    private FormulaireMedecinRepository formulaireMedecinRepository;
+
+    @Mock
+    private ChampRepository champRepository;
+
+    @InjectMocks
+    private PlanExportCache planExportCache;
+
+    @Test
+    void getPlan_ShouldCompileOnce_ForSameVersion() {
+        when(formulaireRepository.findVersionById(1L)).thenReturn(Optional.of(VERSION_1));
+        when(champRepository.findAllWithOptionsByFormulaireId(1L)).thenReturn(List.of(champ(1L, "Age")));
+
+        PlanExport premier = planExportCache.getPlan(1L);
+        PlanExport second = planExportCache.getPlan(1L);
+
+        assertSame(premier, second);
+        verify(champRepository, times(1)).findAllWithOptionsByFormulaireId(1L);
+    }
+
+    @Test
+    void getPlan_ShouldRecompile_WhenVersionChangesOrInvalidated() {
+        when(formulaireRepository.findVersionById(1L)).thenReturn(Optional.of(VERSION_1), Optional.of(VERSION_2));
+        when(champRepository.findAllWithOptionsByFormulaireId(1L)).thenReturn(List.of(champ(1L, "Age")));
+
+        PlanExport premier = planExportCache.getPlan(1L);
+        PlanExport apresModification = planExportCache.getPlan(1L);
+        planExportCache.invalider(1L);
+        PlanExport apresInvalidation = planExportCache.getPlan(1L);
+
+        assertNotSame(premier, apresModification);
+        assertNotSame(apresModification, apresInvalidation);
+        assertEquals(VERSION_2, apresInvalidation.getVersion());
+        verify(champRepository, times(3)).findAllWithOptionsByFormulaireId(1L);
+    }
+
+    @Test
+    void getPlan_ShouldReturnEmptyPlan_WhenFormulaireDoesNotExist() {
+        when(formulaireRepository.findVersionById(99L)).thenReturn(Optional.empty());
+
+        assertTrue(planExportCache.getPlan(99L).estVide());
+        verifyNoInteractions(champRepository);
+    }
+
+    @Test
+    void getPlanParFormulaireMedecin_ShouldUseBaseFormulairePlan() {
+        when(formulaireMedecinRepository.findFormulaireIdById(5L)).thenReturn(Optional.of(1L));
+        when(formulaireRepository.findVersionById(1L)).thenReturn(Optional.of(VERSION_1));
+        when(champRepository.findAllWithOptionsByFormulaireId(1L)).thenReturn(List.of(champ(1L, "Age")));
+
+        assertSame(planExportCache.getPlan(1L), planExportCache.getPlanParFormulaireMedecin(5L));
+    }
+
+    @Test
+    void plan_ShouldOrderByCategoryThenLabel_AndBuildCategorySpans() {
+        PlanExport plan = PlanExport.compiler(List.of(champ(1L, "Bilan"), champ(2L, "Sexe"), champ(3L, "Age"),
+                champ(4L, "Libre")));
+
+        assertEquals("IDENTITE PATIENT;;BILAN PRE OPERATOIRE;AUTRE;\n", plan.getEnteteCategories());
+        assertEquals("NUMERO_INCLUSION;Age;Sexe;Bilan;Libre;\n", plan.getEnteteLibelles());
+        assertEquals(0, plan.colonne(3L));
+        assertEquals(-1, plan.colonne(99L));
+
+        PlanExport restreint = plan.restreindre(List.of(4L, 2L));
+        assertEquals("NUMERO_INCLUSION;Sexe;Libre;\n", restreint.getEnteteLibelles());
+    }
+
+    @Test
+    void plan_ShouldMapOptionValuesToLabels_ForCodedAndTextLists() {
+        Champ code = champ(1L, "Douleur");
+        code.setListeValeur(liste(option("0", "Aucune"), option("1", "Faible"), option("1", "Doublon")));
+        Champ texte = champ(2L, "Sexe");
+        texte.setListeValeur(liste(option("F", "Féminin"), option("M", "Masculin")));
+
+        PlanExport plan = PlanExport.compiler(List.of(code, texte));
+        int colonneCode = plan.colonne(1L);
+        int colonneTexte = plan.colonne(2L);
+
+        assertEquals("Aucune", plan.valeurCellule(colonneCode, "0"));
+        assertEquals("Faible", plan.valeurCellule(colonneCode, "1"));
+        assertEquals("01", plan.valeurCellule(colonneCode, "01"));
+        assertEquals("7", plan.valeurCellule(colonneCode, "7"));
+        assertEquals("Féminin", plan.valeurCellule(colonneTexte, "F"));
+        assertEquals("X", plan.valeurCellule(colonneTexte, "X"));
+        assertNull(plan.valeurCellule(colonneTexte, null));
+    }
+
+    private Champ champ(Long id, String label) {
+        Champ champ = new Champ();
+        champ.setIdChamp(id);
+        champ.setLabel(label);
+        return champ;
+    }
+
+    private ListeValeur liste(OptionValeur... options) {
+        ListeValeur liste = new ListeValeur();
+        liste.setOptions(new ArrayList<>(List.of(options)));
+        return liste;
+    }
+
+    private OptionValeur option(String valeur, String libelle) {
+        OptionValeur option = new OptionValeur();
+        option.setValeur(valeur);
+        option.setLibelle(libelle);
+        return option;
+    }
+}
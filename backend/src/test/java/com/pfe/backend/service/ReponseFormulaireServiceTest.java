@@ -7,11 +7,17 @@ import com.pfe.backend.model.*;
 import com.pfe.backend.repository.ChampRepository;
 import com.pfe.backend.repository.FormulaireMedecinRepository;
 import com.pfe.backend.repository.ReponseFormulaireRepository;
+import com.pfe.backend.repository.SoumissionPatientRepository;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
 
 import java.time.LocalDateTime;
 import java.util.*;
@@ -32,7 +38,9 @@ class ReponseFormulaireServiceTest {
     @Mock
     private ActiviteService activiteService;
     @Mock
-    private PatientIdentifierCounterService patientIdentifierCounterService;
+    private PatientIdentifierAllocator patientIdentifierAllocator;
+    @Mock
+    private SoumissionPatientRepository soumissionPatientRepository;
 
     @InjectMocks
     private ReponseFormulaireService reponseFormulaireService;
@@ -69,14 +77,14 @@ class ReponseFormulaireServiceTest {
         request.setReponses(reponses);
 
         when(formulaireMedecinRepository.findById(fmId)).thenReturn(Optional.of(fm));
-        when(champRepository.findById(100L)).thenReturn(Optional.of(champ));
+        when(champRepository.findAllById(any())).thenReturn(List.of(champ));
         when(formulaireMedecinRepository.save(any(FormulaireMedecin.class))).thenAnswer(i -> i.getArguments()[0]);
 
         // Act
         reponseFormulaireService.sauvegarderReponses(request, emailMedecin, false);
 
         // Assert
-        verify(reponseFormulaireRepository).save(any(ReponseFormulaire.class));
+        assertEquals(1, capturerReponsesSauvegardees().size());
         verify(formulaireMedecinRepository).save(fm);
         assertTrue(fm.getComplete());
         verify(activiteService).enregistrerActivite(eq(emailMedecin), eq("Formulaire rempli"), any(), any(), any());
@@ -114,7 +122,7 @@ class ReponseFormulaireServiceTest {
         request.setReponses(reponses);
 
         when(formulaireMedecinRepository.findById(fmId)).thenReturn(Optional.of(fm));
-        when(champRepository.findById(100L)).thenReturn(Optional.of(champ));
+        when(champRepository.findAllById(any())).thenReturn(List.of(champ));
         when(formulaireMedecinRepository.save(any(FormulaireMedecin.class))).thenAnswer(i -> i.getArguments()[0]);
 
         // Act
@@ -226,7 +234,7 @@ class ReponseFormulaireServiceTest {
         // Assert
         assertEquals(StatutFormulaire.BROUILLON, fm.getStatut());
         assertFalse(fm.getComplete());
-        verify(reponseFormulaireRepository, never()).save(any(ReponseFormulaire.class));
+        verify(reponseFormulaireRepository, never()).saveAll(anyList());
     }
 
     @Test
@@ -261,14 +269,14 @@ class ReponseFormulaireServiceTest {
         request.setReponses(reponses);
 
         when(formulaireMedecinRepository.findById(fmId)).thenReturn(Optional.of(fm));
-        when(champRepository.findById(100L)).thenReturn(Optional.of(champ));
+        when(champRepository.findAllById(any())).thenReturn(List.of(champ));
         when(formulaireMedecinRepository.save(any(FormulaireMedecin.class))).thenAnswer(i -> i.getArguments()[0]);
 
         // Act - Chercheur can save responses
         reponseFormulaireService.sauvegarderReponses(request, emailChercheur, false);
 
         // Assert
-        verify(reponseFormulaireRepository).save(any(ReponseFormulaire.class));
+        assertEquals(1, capturerReponsesSauvegardees().size());
     }
 
     @Test
@@ -303,14 +311,14 @@ class ReponseFormulaireServiceTest {
         request.setReponses(reponses);
 
         when(formulaireMedecinRepository.findById(fmId)).thenReturn(Optional.of(fm));
-        when(champRepository.findById(100L)).thenReturn(Optional.of(champ));
+        when(champRepository.findAllById(any())).thenReturn(List.of(champ));
         when(formulaireMedecinRepository.save(any(FormulaireMedecin.class))).thenAnswer(i -> i.getArguments()[0]);
 
         // Act
         reponseFormulaireService.sauvegarderReponses(request, emailChercheur, false);
 
         // Assert
-        verify(reponseFormulaireRepository).save(any(ReponseFormulaire.class));
+        assertEquals(1, capturerReponsesSauvegardees().size());
     }
 
     @Test
@@ -345,7 +353,7 @@ class ReponseFormulaireServiceTest {
         request.setReponses(reponses);
 
         when(formulaireMedecinRepository.findById(fmId)).thenReturn(Optional.of(fm));
-        when(champRepository.findById(100L)).thenReturn(Optional.of(champ));
+        when(champRepository.findAllById(any())).thenReturn(List.of(champ));
         when(formulaireMedecinRepository.save(any(FormulaireMedecin.class))).thenAnswer(i -> i.getArguments()[0]);
 
         // Act
@@ -381,7 +389,7 @@ class ReponseFormulaireServiceTest {
         request.setReponses(reponses);
 
         when(formulaireMedecinRepository.findById(fmId)).thenReturn(Optional.of(fm));
-        when(champRepository.findById(999L)).thenReturn(Optional.empty());
+        when(champRepository.findAllById(any())).thenReturn(List.of());
 
         // Act & Assert
         assertThrows(ResourceNotFoundException.class, 
@@ -490,16 +498,13 @@ class ReponseFormulaireServiceTest {
 
         FormulaireMedecin fm = new FormulaireMedecin();
         fm.setId(fmId);
-
-        ReponseFormulaire reponse = new ReponseFormulaire();
-        reponse.setPatientIdentifier("patient123");
-        reponse.setPatientIdentifierHash("hash123");
-        reponse.setDateSaisie(LocalDateTime.now());
+        LocalDateTime date = LocalDateTime.now();
 
         when(formulaireMedecinRepository.findById(fmId)).thenReturn(Optional.of(fm));
-        when(reponseFormulaireRepository.findDistinctDraftPatientHashes(fmId)).thenReturn(List.of("hash123"));
-        when(reponseFormulaireRepository.findByFormulaireMedecinIdAndPatientIdentifierHash(fmId, "hash123"))
-                .thenReturn(List.of(reponse));
+        when(reponseFormulaireRepository.findResumesBrouillons(fmId, Pageable.unpaged()))
+                .thenReturn(new PageImpl<>(List.<Object[]>of(new Object[]{"hash123", 3L, date, 42L})));
+        when(reponseFormulaireRepository.findPatientIdentifiersByIdReponseIn(List.of(42L)))
+                .thenReturn(List.<Object[]>of(new Object[]{42L, "patient123"}));
 
         // Act
         List<Map<String, Object>> result = reponseFormulaireService.getAllDraftsForFormulaire(fmId);
@@ -507,6 +512,34 @@ class ReponseFormulaireServiceTest {
         // Assert
         assertEquals(1, result.size());
         assertEquals("patient123", result.get(0).get("patientIdentifier"));
+        assertEquals("hash123", result.get(0).get("patientHash"));
+        assertEquals(3, result.get(0).get("nombreReponses"));
+        assertEquals(date, result.get(0).get("derniereModification"));
+        // Aucune réponse complète chargée : seul l'identifiant de chaque patient est lu
+        verify(reponseFormulaireRepository, never()).findByFormulaireMedecinIdAndPatientIdentifierHash(any(), any());
+    }
+
+    @Test
+    void getAllDraftsForFormulaire_ShouldReturnRequestedPage_WithTotal() {
+        // Arrange
+        Long fmId = 1L;
+        FormulaireMedecin fm = new FormulaireMedecin();
+        fm.setId(fmId);
+        Pageable pageable = PageRequest.of(1, 2);
+
+        when(formulaireMedecinRepository.findById(fmId)).thenReturn(Optional.of(fm));
+        when(reponseFormulaireRepository.findResumesBrouillons(fmId, pageable)).thenReturn(new PageImpl<>(
+                List.<Object[]>of(new Object[]{"h3", 1L, LocalDateTime.now(), 7L}), pageable, 3));
+        when(reponseFormulaireRepository.findPatientIdentifiersByIdReponseIn(List.of(7L)))
+                .thenReturn(List.<Object[]>of(new Object[]{7L, "PAT003"}));
+
+        // Act
+        Page<Map<String, Object>> result = reponseFormulaireService.getAllDraftsForFormulaire(fmId, pageable);
+
+        // Assert
+        assertEquals(3, result.getTotalElements());
+        assertEquals(1, result.getContent().size());
+        assertEquals("PAT003", result.getContent().get(0).get("patientIdentifier"));
     }
 
     @Test
@@ -558,7 +591,7 @@ class ReponseFormulaireServiceTest {
     void countDrafts_ShouldReturnCount() {
         // Arrange
         Long fmId = 1L;
-        when(reponseFormulaireRepository.findDistinctDraftPatientHashes(fmId)).thenReturn(List.of("hash1", "hash2"));
+        when(reponseFormulaireRepository.countDistinctDraftPatients(fmId)).thenReturn(2L);
 
         // Act
         int result = reponseFormulaireService.countDrafts(fmId);
@@ -567,30 +600,80 @@ class ReponseFormulaireServiceTest {
         assertEquals(2, result);
     }
 
+    @Test
+    void countDrafts_ShouldCountAllAssignmentsInOneQuery_WithZeroForMissing() {
+        // Arrange
+        when(reponseFormulaireRepository.countDistinctDraftPatientsParFormulaireMedecin(List.of(1L, 2L)))
+                .thenReturn(List.<Object[]>of(new Object[]{1L, 3L}));
+
+        // Act
+        Map<Long, Integer> result = reponseFormulaireService.countDrafts(List.of(1L, 2L));
+
+        // Assert
+        assertEquals(Map.of(1L, 3, 2L, 0), result);
+    }
+
+    @Test
+    void countDrafts_ShouldNotQuery_WhenNoAssignment() {
+        assertTrue(reponseFormulaireService.countDrafts(List.<Long>of()).isEmpty());
+        verifyNoInteractions(reponseFormulaireRepository);
+    }
+
     @Test
     void getPatientIdentifiers_ShouldReturnDistinctIdentifiers() {
         // Arrange
         Long fmId = 1L;
+        when(soumissionPatientRepository.findPatientIdentifiersByFormulaireMedecinId(fmId))
+                .thenReturn(List.of("patient2", "patient1", "patient1"));
 
-        ReponseFormulaire reponse1 = new ReponseFormulaire();
-        reponse1.setPatientIdentifier("patient1");
+        // Act
+        List<String> result = reponseFormulaireService.getPatientIdentifiers(fmId);
 
-        ReponseFormulaire reponse2 = new ReponseFormulaire();
-        reponse2.setPatientIdentifier("patient2");
+        // Assert - un identifiant par en-tête, sans relire les réponses
+        assertEquals(List.of("patient1", "patient2"), result);
+        verify(reponseFormulaireRepository, never()).findByFormulaireMedecinId(any());
+    }
 
-        ReponseFormulaire reponse3 = new ReponseFormulaire();
-        reponse3.setPatientIdentifier("patient1"); // Duplicate
+    @Test
+    void getPatientsParNumero_ShouldStartBeforeFirstRow_WhenNoCursor() {
+        // Arrange
+        SoumissionPatient soumission = new SoumissionPatient(1L, "AB-CD-etude-0001", "h1", 1);
+        when(soumissionPatientRepository.findPageParNumero(1L, -1, 0L, PageRequest.of(0, 2)))
+                .thenReturn(List.of(soumission));
 
-        when(reponseFormulaireRepository.findByFormulaireMedecinId(fmId))
-                .thenReturn(List.of(reponse1, reponse2, reponse3));
+        // Act
+        List<SoumissionPatient> result = reponseFormulaireService.getPatientsParNumero(1L, null, 2);
+
+        // Assert
+        assertEquals(List.of(soumission), result);
+    }
+
+    @Test
+    void getPatientsParNumero_ShouldResumeAfterCursor() {
+        // Arrange
+        SoumissionPatient derniere = new SoumissionPatient(1L, "AB-CD-etude-0012", "h12", 12);
+        derniere.setId(40L);
+        String curseur = ReponseFormulaireService.curseur(derniere);
+        when(soumissionPatientRepository.findPageParNumero(1L, 12, 40L, PageRequest.of(0, 10)))
+                .thenReturn(List.of());
 
         // Act
-        List<String> result = reponseFormulaireService.getPatientIdentifiers(fmId);
+        List<SoumissionPatient> result = reponseFormulaireService.getPatientsParNumero(1L, curseur, 10);
 
         // Assert
-        assertEquals(2, result.size());
-        assertTrue(result.contains("patient1"));
-        assertTrue(result.contains("patient2"));
+        assertTrue(result.isEmpty());
+        verify(soumissionPatientRepository).findPageParNumero(1L, 12, 40L, PageRequest.of(0, 10));
+    }
+
+    @Test
+    void getPatientsParNumero_ShouldRejectInvalidCursorOrSize() {
+        assertThrows(IllegalArgumentException.class,
+                () -> reponseFormulaireService.getPatientsParNumero(1L, "abc", 10));
+        assertThrows(IllegalArgumentException.class,
+                () -> reponseFormulaireService.getPatientsParNumero(1L, "1:2:3", 10));
+        assertThrows(IllegalArgumentException.class,
+                () -> reponseFormulaireService.getPatientsParNumero(1L, null, 0));
+        verifyNoInteractions(soumissionPatientRepository);
     }
 
     @Test
@@ -618,6 +701,7 @@ class ReponseFormulaireServiceTest {
 
         // Assert
         verify(reponseFormulaireRepository).deleteByFormulaireMedecinIdAndPatientIdentifierHash(eq(fmId), anyString());
+        verify(soumissionPatientRepository).deleteByFormulaireMedecinIdAndPatientIdentifierHash(eq(fmId), anyString());
     }
 
     @Test
@@ -697,6 +781,7 @@ class ReponseFormulaireServiceTest {
 
         // Assert
         verify(reponseFormulaireRepository).deleteByFormulaireMedecinId(fmId);
+        verify(soumissionPatientRepository).deleteByFormulaireMedecinId(fmId);
         assertFalse(fm.getComplete());
     }
 
@@ -798,14 +883,289 @@ class ReponseFormulaireServiceTest {
         request.setReponses(reponses);
 
         when(formulaireMedecinRepository.findById(fmId)).thenReturn(Optional.of(fm));
-        when(champRepository.findById(100L)).thenReturn(Optional.of(champ1));
+        when(champRepository.findAllById(any())).thenReturn(List.of(champ1));
+        when(formulaireMedecinRepository.save(any(FormulaireMedecin.class))).thenAnswer(i -> i.getArguments()[0]);
+
+        // Act
+        reponseFormulaireService.sauvegarderReponses(request, emailMedecin, false);
+
+        // Assert - Only one row saved for non-empty value
+        List<ReponseFormulaire> sauvegardees = capturerReponsesSauvegardees();
+        assertEquals(1, sauvegardees.size());
+        assertEquals(100L, sauvegardees.get(0).getChamp().getIdChamp());
+    }
+
+    @Test
+    void sauvegarderReponses_ShouldLoadChampsOnceAndSaveInSingleBatch() {
+        // Arrange
+        Long fmId = 1L;
+        String emailMedecin = "medecin@test.com";
+
+        Formulaire formulaire = new Formulaire();
+        formulaire.setIdFormulaire(1L);
+        formulaire.setTitre("Test");
+        formulaire.setChercheur(createUtilisateur(2L, "chercheur@test.com"));
+
+        FormulaireMedecin fm = new FormulaireMedecin();
+        fm.setId(fmId);
+        fm.setMedecin(createUtilisateur(1L, emailMedecin));
+        fm.setFormulaire(formulaire);
+        fm.setMasquePourChercheur(false);
+
+        Champ champ1 = new Champ();
+        champ1.setIdChamp(100L);
+        Champ champ2 = new Champ();
+        champ2.setIdChamp(101L);
+        Champ champ3 = new Champ();
+        champ3.setIdChamp(102L);
+
+        Map<Long, String> reponses = new HashMap<>();
+        reponses.put(100L, "A");
+        reponses.put(101L, "B");
+        reponses.put(102L, "C");
+
+        ReponseFormulaireRequest request = new ReponseFormulaireRequest();
+        request.setFormulaireMedecinId(fmId);
+        request.setPatientIdentifier("patient123");
+        request.setReponses(reponses);
+
+        when(formulaireMedecinRepository.findById(fmId)).thenReturn(Optional.of(fm));
+        when(champRepository.findAllById(any())).thenReturn(List.of(champ1, champ2, champ3));
+        when(formulaireMedecinRepository.save(any(FormulaireMedecin.class))).thenAnswer(i -> i.getArguments()[0]);
+
+        // Act
+        reponseFormulaireService.sauvegarderReponses(request, emailMedecin, false);
+
+        // Assert
+        verify(champRepository, times(1)).findAllById(any());
+        verify(champRepository, never()).findById(any());
+        verify(reponseFormulaireRepository, never()).save(any(ReponseFormulaire.class));
+        List<ReponseFormulaire> sauvegardees = capturerReponsesSauvegardees();
+        assertEquals(3, sauvegardees.size());
+        assertTrue(sauvegardees.stream().allMatch(r -> "patient123".equals(r.getPatientIdentifier())));
+    }
+
+    @Test
+    void sauvegarderReponses_ShouldOnlyWriteDifferences_WhenPatientAlreadyHasRows() {
+        // Arrange
+        Long fmId = 1L;
+        String emailMedecin = "medecin@test.com";
+        FormulaireMedecin fm = createFormulaireMedecinAvecMedecin(fmId, emailMedecin);
+
+        ReponseFormulaire inchangee = createReponseExistante(10L, 100L, "A", true);
+        ReponseFormulaire modifiee = createReponseExistante(11L, 101L, "B", true);
+        ReponseFormulaire retiree = createReponseExistante(12L, 102L, "C", true);
+
+        Champ nouveauChamp = new Champ();
+        nouveauChamp.setIdChamp(103L);
+
+        Map<Long, String> reponses = new HashMap<>();
+        reponses.put(100L, "A");
+        reponses.put(101L, "B2");
+        reponses.put(103L, "D");
+
+        ReponseFormulaireRequest request = new ReponseFormulaireRequest();
+        request.setFormulaireMedecinId(fmId);
+        request.setPatientIdentifier("patient123");
+        request.setReponses(reponses);
+
+        when(formulaireMedecinRepository.findById(fmId)).thenReturn(Optional.of(fm));
+        when(reponseFormulaireRepository.findByFormulaireMedecinIdAndPatientIdentifierHashWithChamp(eq(fmId), anyString()))
+                .thenReturn(List.of(inchangee, modifiee, retiree));
+        when(champRepository.findAllById(any())).thenReturn(List.of(nouveauChamp));
+        when(formulaireMedecinRepository.save(any(FormulaireMedecin.class))).thenAnswer(i -> i.getArguments()[0]);
+
+        // Act
+        reponseFormulaireService.sauvegarderReponses(request, emailMedecin, true);
+
+        // Assert
+        assertEquals("A", inchangee.getValeur());
+        assertEquals("B2", modifiee.getValeur());
+        verify(reponseFormulaireRepository).deleteByIdReponseIn(List.of(12L));
+        verify(reponseFormulaireRepository, never()).deleteByFormulaireMedecinIdAndPatientIdentifierHash(any(), any());
+        List<ReponseFormulaire> ajoutees = capturerReponsesSauvegardees();
+        assertEquals(1, ajoutees.size());
+        assertEquals(103L, ajoutees.get(0).getChamp().getIdChamp());
+        assertEquals("D", ajoutees.get(0).getValeur());
+    }
+
+    @Test
+    void sauvegarderReponses_ShouldNotInsertOrDelete_WhenNothingChanged() {
+        // Arrange
+        Long fmId = 1L;
+        String emailMedecin = "medecin@test.com";
+        FormulaireMedecin fm = createFormulaireMedecinAvecMedecin(fmId, emailMedecin);
+
+        ReponseFormulaire existante = createReponseExistante(10L, 100L, "A", true);
+
+        ReponseFormulaireRequest request = new ReponseFormulaireRequest();
+        request.setFormulaireMedecinId(fmId);
+        request.setPatientIdentifier("patient123");
+        request.setReponses(new HashMap<>(Map.of(100L, "A")));
+
+        when(formulaireMedecinRepository.findById(fmId)).thenReturn(Optional.of(fm));
+        when(reponseFormulaireRepository.findByFormulaireMedecinIdAndPatientIdentifierHashWithChamp(eq(fmId), anyString()))
+                .thenReturn(List.of(existante));
+        when(formulaireMedecinRepository.save(any(FormulaireMedecin.class))).thenAnswer(i -> i.getArguments()[0]);
+
+        // Act
+        reponseFormulaireService.sauvegarderReponses(request, emailMedecin, true);
+
+        // Assert
+        verify(reponseFormulaireRepository, never()).saveAll(anyList());
+        verify(reponseFormulaireRepository, never()).deleteByIdReponseIn(anyList());
+        verify(champRepository, never()).findAllById(any());
+        assertTrue(existante.getDraft());
+    }
+
+    @Test
+    void sauvegarderReponses_ShouldCreateSoumissionHeader_OnFirstSave() {
+        // Arrange
+        Long fmId = 1L;
+        String emailMedecin = "medecin@test.com";
+        FormulaireMedecin fm = createFormulaireMedecinAvecMedecin(fmId, emailMedecin);
+        Champ champ = new Champ();
+        champ.setIdChamp(100L);
+
+        ReponseFormulaireRequest request = new ReponseFormulaireRequest();
+        request.setFormulaireMedecinId(fmId);
+        request.setPatientIdentifier("AB-CD-etude-0007");
+        request.setReponses(new HashMap<>(Map.of(100L, "A")));
+
+        when(formulaireMedecinRepository.findById(fmId)).thenReturn(Optional.of(fm));
+        when(champRepository.findAllById(any())).thenReturn(List.of(champ));
+        when(formulaireMedecinRepository.save(any(FormulaireMedecin.class))).thenAnswer(i -> i.getArguments()[0]);
+
+        // Act
+        reponseFormulaireService.sauvegarderReponses(request, emailMedecin, true);
+
+        // Assert
+        ArgumentCaptor<SoumissionPatient> captor = ArgumentCaptor.forClass(SoumissionPatient.class);
+        verify(soumissionPatientRepository).save(captor.capture());
+        SoumissionPatient soumission = captor.getValue();
+        assertEquals(fmId, soumission.getFormulaireMedecinId());
+        assertEquals("AB-CD-etude-0007", soumission.getPatientIdentifier());
+        assertEquals(ReponseFormulaireService.hashPatientIdentifier("AB-CD-etude-0007"), soumission.getPatientIdentifierHash());
+        assertEquals(7, soumission.getNumeroInclusion());
+        assertTrue(soumission.getDraft());
+    }
+
+    @Test
+    void sauvegarderReponses_ShouldUpdateExistingSoumissionHeader() {
+        // Arrange
+        Long fmId = 1L;
+        String emailMedecin = "medecin@test.com";
+        FormulaireMedecin fm = createFormulaireMedecinAvecMedecin(fmId, emailMedecin);
+        ReponseFormulaire existante = createReponseExistante(10L, 100L, "A", true);
+        SoumissionPatient soumission = new SoumissionPatient(fmId, "patient123", "hash", 0);
+        soumission.setDraft(true);
+
+        ReponseFormulaireRequest request = new ReponseFormulaireRequest();
+        request.setFormulaireMedecinId(fmId);
+        request.setPatientIdentifier("patient123");
+        request.setReponses(new HashMap<>(Map.of(100L, "A")));
+
+        when(formulaireMedecinRepository.findById(fmId)).thenReturn(Optional.of(fm));
+        when(reponseFormulaireRepository.findByFormulaireMedecinIdAndPatientIdentifierHashWithChamp(eq(fmId), anyString()))
+                .thenReturn(List.of(existante));
+        when(soumissionPatientRepository.findByFormulaireMedecinIdAndPatientIdentifierHash(eq(fmId), anyString()))
+                .thenReturn(Optional.of(soumission));
         when(formulaireMedecinRepository.save(any(FormulaireMedecin.class))).thenAnswer(i -> i.getArguments()[0]);
 
         // Act
         reponseFormulaireService.sauvegarderReponses(request, emailMedecin, false);
 
-        // Assert - Only one save call for non-empty value
-        verify(reponseFormulaireRepository, times(1)).save(any(ReponseFormulaire.class));
+        // Assert
+        verify(soumissionPatientRepository).save(soumission);
+        assertFalse(soumission.getDraft());
+    }
+
+    @Test
+    void sauvegarderReponses_ShouldDropSoumissionHeader_WhenAllValuesCleared() {
+        // Arrange
+        Long fmId = 1L;
+        String emailMedecin = "medecin@test.com";
+        FormulaireMedecin fm = createFormulaireMedecinAvecMedecin(fmId, emailMedecin);
+        ReponseFormulaire existante = createReponseExistante(10L, 100L, "A", true);
+
+        ReponseFormulaireRequest request = new ReponseFormulaireRequest();
+        request.setFormulaireMedecinId(fmId);
+        request.setPatientIdentifier("patient123");
+        request.setReponses(new HashMap<>(Map.of(100L, " ")));
+
+        when(formulaireMedecinRepository.findById(fmId)).thenReturn(Optional.of(fm));
+        when(reponseFormulaireRepository.findByFormulaireMedecinIdAndPatientIdentifierHashWithChamp(eq(fmId), anyString()))
+                .thenReturn(List.of(existante));
+        when(formulaireMedecinRepository.save(any(FormulaireMedecin.class))).thenAnswer(i -> i.getArguments()[0]);
+
+        // Act
+        reponseFormulaireService.sauvegarderReponses(request, emailMedecin, true);
+
+        // Assert
+        verify(reponseFormulaireRepository).deleteByIdReponseIn(List.of(10L));
+        verify(soumissionPatientRepository).deleteByFormulaireMedecinIdAndPatientIdentifierHash(eq(fmId), anyString());
+        verify(soumissionPatientRepository, never()).save(any());
+    }
+
+    @Test
+    void sauvegarderReponses_ShouldFlipDraftFlag_WhenSubmittingExistingDraft() {
+        // Arrange
+        Long fmId = 1L;
+        String emailMedecin = "medecin@test.com";
+        FormulaireMedecin fm = createFormulaireMedecinAvecMedecin(fmId, emailMedecin);
+
+        ReponseFormulaire existante = createReponseExistante(10L, 100L, "A", true);
+
+        ReponseFormulaireRequest request = new ReponseFormulaireRequest();
+        request.setFormulaireMedecinId(fmId);
+        request.setPatientIdentifier("patient123");
+        request.setReponses(new HashMap<>(Map.of(100L, "A")));
+
+        when(formulaireMedecinRepository.findById(fmId)).thenReturn(Optional.of(fm));
+        when(reponseFormulaireRepository.findByFormulaireMedecinIdAndPatientIdentifierHashWithChamp(eq(fmId), anyString()))
+                .thenReturn(List.of(existante));
+        when(formulaireMedecinRepository.save(any(FormulaireMedecin.class))).thenAnswer(i -> i.getArguments()[0]);
+
+        // Act
+        reponseFormulaireService.sauvegarderReponses(request, emailMedecin, false);
+
+        // Assert
+        assertFalse(existante.getDraft());
+        verify(reponseFormulaireRepository, never()).saveAll(anyList());
+    }
+
+    private FormulaireMedecin createFormulaireMedecinAvecMedecin(Long fmId, String emailMedecin) {
+        Formulaire formulaire = new Formulaire();
+        formulaire.setIdFormulaire(1L);
+        formulaire.setTitre("Test");
+        formulaire.setChercheur(createUtilisateur(2L, "chercheur@test.com"));
+
+        FormulaireMedecin fm = new FormulaireMedecin();
+        fm.setId(fmId);
+        fm.setMedecin(createUtilisateur(1L, emailMedecin));
+        fm.setFormulaire(formulaire);
+        fm.setMasquePourChercheur(false);
+        return fm;
+    }
+
+    private ReponseFormulaire createReponseExistante(Long idReponse, Long champId, String valeur, boolean draft) {
+        Champ champ = new Champ();
+        champ.setIdChamp(champId);
+
+        ReponseFormulaire reponse = new ReponseFormulaire();
+        reponse.setIdReponse(idReponse);
+        reponse.setChamp(champ);
+        reponse.setValeur(valeur);
+        reponse.setPatientIdentifier("patient123");
+        reponse.setDraft(draft);
+        return reponse;
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<ReponseFormulaire> capturerReponsesSauvegardees() {
+        ArgumentCaptor<List<ReponseFormulaire>> captor = ArgumentCaptor.forClass(List.class);
+        verify(reponseFormulaireRepository).saveAll(captor.capture());
+        return captor.getValue();
     }
 
     private Utilisateur createUtilisateur(Long id, String email) {
@@ -853,45 +1213,34 @@ class ReponseFormulaireServiceTest {
         reponseFormulaireService.sauvegarderReponses(request, emailMedecin, false);
 
         // Assert - Should not save any response since value is null
-        verify(reponseFormulaireRepository, never()).save(any(ReponseFormulaire.class));
+        verify(reponseFormulaireRepository, never()).saveAll(anyList());
     }
 
     @Test
-    void getAllDraftsForFormulaire_ShouldHandleEmptyResponsesForHash() {
-        // Arrange - Test the branch where reponses.isEmpty() is true
+    void getAllDraftsForFormulaire_ShouldReturnEmpty_WhenNoDrafts() {
+        // Arrange
         Long fmId = 1L;
 
         FormulaireMedecin fm = new FormulaireMedecin();
         fm.setId(fmId);
 
         when(formulaireMedecinRepository.findById(fmId)).thenReturn(Optional.of(fm));
-        when(reponseFormulaireRepository.findDistinctDraftPatientHashes(fmId)).thenReturn(List.of("hash1"));
-        when(reponseFormulaireRepository.findByFormulaireMedecinIdAndPatientIdentifierHash(fmId, "hash1"))
-                .thenReturn(Collections.emptyList()); // Empty responses
+        when(reponseFormulaireRepository.findResumesBrouillons(fmId, Pageable.unpaged())).thenReturn(Page.empty());
 
         // Act
         List<Map<String, Object>> result = reponseFormulaireService.getAllDraftsForFormulaire(fmId);
 
-        // Assert - Should return empty list since responses are empty
+        // Assert - aucun identifiant à déchiffrer
         assertTrue(result.isEmpty());
+        verify(reponseFormulaireRepository, never()).findPatientIdentifiersByIdReponseIn(any());
     }
 
     @Test
     void getPatientIdentifiers_ShouldFilterNullIdentifiers() {
         // Arrange - Test the filter branch where identifier is null
         Long fmId = 1L;
-
-        ReponseFormulaire reponse1 = new ReponseFormulaire();
-        reponse1.setPatientIdentifier("patient1");
-
-        ReponseFormulaire reponse2 = new ReponseFormulaire();
-        reponse2.setPatientIdentifier(null); // Null identifier
-
-        ReponseFormulaire reponse3 = new ReponseFormulaire();
-        reponse3.setPatientIdentifier(""); // Empty identifier
-
-        when(reponseFormulaireRepository.findByFormulaireMedecinId(fmId))
-                .thenReturn(List.of(reponse1, reponse2, reponse3));
+        when(soumissionPatientRepository.findPatientIdentifiersByFormulaireMedecinId(fmId))
+                .thenReturn(Arrays.asList("patient1", null, ""));
 
         // Act
         List<String> result = reponseFormulaireService.getPatientIdentifiers(fmId);
@@ -933,7 +1282,7 @@ class ReponseFormulaireServiceTest {
         request.setReponses(reponses);
 
         when(formulaireMedecinRepository.findById(fmId)).thenReturn(Optional.of(fm));
-        when(champRepository.findById(100L)).thenReturn(Optional.of(champ));
+        when(champRepository.findAllById(any())).thenReturn(List.of(champ));
         when(formulaireMedecinRepository.save(any(FormulaireMedecin.class))).thenAnswer(i -> i.getArguments()[0]);
 
         // Act
@@ -1236,15 +1585,15 @@ class ReponseFormulaireServiceTest {
         request.setReponses(reponses);
 
         when(formulaireMedecinRepository.findById(fmId)).thenReturn(Optional.of(fm));
-        when(champRepository.findById(100L)).thenReturn(Optional.of(champ));
+        when(champRepository.findAllById(any())).thenReturn(List.of(champ));
         when(formulaireMedecinRepository.save(any(FormulaireMedecin.class))).thenAnswer(i -> i.getArguments()[0]);
-        when(patientIdentifierCounterService.getNextCounterForFormulaire(1L)).thenReturn(5);
+        when(patientIdentifierAllocator.prochainNumero(1L)).thenReturn(5);
 
         // Act
         reponseFormulaireService.sauvegarderReponses(request, emailMedecin, false);
 
         // Assert
-        verify(reponseFormulaireRepository).save(argThat(reponse -> 
+        assertTrue(capturerReponsesSauvegardees().stream().allMatch(reponse -> 
             reponse.getPatientIdentifier() != null && 
             reponse.getPatientIdentifier().startsWith("D-J-")
         ));
@@ -1320,14 +1669,14 @@ class ReponseFormulaireServiceTest {
         request.setReponses(reponses);
 
         when(formulaireMedecinRepository.findById(fmId)).thenReturn(Optional.of(fm));
-        when(champRepository.findById(100L)).thenReturn(Optional.of(champ));
+        when(champRepository.findAllById(any())).thenReturn(List.of(champ));
         when(formulaireMedecinRepository.save(any(FormulaireMedecin.class))).thenAnswer(i -> i.getArguments()[0]);
 
         // Act
         reponseFormulaireService.sauvegarderReponses(request, emailMedecin, false);
 
         // Assert - Should use the existing patient identifier
-        verify(reponseFormulaireRepository).save(argThat(reponse -> 
+        assertTrue(capturerReponsesSauvegardees().stream().allMatch(reponse -> 
             existingPatientId.equals(reponse.getPatientIdentifier())
         ));
     }
@@ -1365,15 +1714,15 @@ class ReponseFormulaireServiceTest {
         request.setReponses(reponses);
 
         when(formulaireMedecinRepository.findById(fmId)).thenReturn(Optional.of(fm));
-        when(champRepository.findById(100L)).thenReturn(Optional.of(champ));
+        when(champRepository.findAllById(any())).thenReturn(List.of(champ));
         when(formulaireMedecinRepository.save(any(FormulaireMedecin.class))).thenAnswer(i -> i.getArguments()[0]);
-        when(patientIdentifierCounterService.getNextCounterForFormulaire(1L)).thenReturn(1);
+        when(patientIdentifierAllocator.prochainNumero(1L)).thenReturn(1);
 
         // Act
         reponseFormulaireService.sauvegarderReponses(request, emailMedecin, false);
 
         // Assert - Should use "etude" as default slug
-        verify(reponseFormulaireRepository).save(argThat(reponse -> 
+        assertTrue(capturerReponsesSauvegardees().stream().allMatch(reponse -> 
             reponse.getPatientIdentifier() != null && 
             reponse.getPatientIdentifier().contains("-etude-")
         ));
@@ -1412,15 +1761,15 @@ class ReponseFormulaireServiceTest {
         request.setReponses(reponses);
 
         when(formulaireMedecinRepository.findById(fmId)).thenReturn(Optional.of(fm));
-        when(champRepository.findById(100L)).thenReturn(Optional.of(champ));
+        when(champRepository.findAllById(any())).thenReturn(List.of(champ));
         when(formulaireMedecinRepository.save(any(FormulaireMedecin.class))).thenAnswer(i -> i.getArguments()[0]);
-        when(patientIdentifierCounterService.getNextCounterForFormulaire(1L)).thenReturn(1);
+        when(patientIdentifierAllocator.prochainNumero(1L)).thenReturn(1);
 
         // Act
         reponseFormulaireService.sauvegarderReponses(request, emailMedecin, false);
 
         // Assert - Should slugify properly
-        verify(reponseFormulaireRepository).save(argThat(reponse -> 
+        assertTrue(capturerReponsesSauvegardees().stream().allMatch(reponse -> 
             reponse.getPatientIdentifier() != null && 
             !reponse.getPatientIdentifier().contains("!")
         ));
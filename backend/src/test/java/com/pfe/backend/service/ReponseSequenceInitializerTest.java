@@ -0,0 +1,55 @@
+package com.pfe.backend.service;
+
+import jakarta.persistence.EntityManagerFactory;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.List;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class ReponseSequenceInitializerTest {
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    @Mock
+    private EntityManagerFactory entityManagerFactory;
+
+    @InjectMocks
+    private ReponseSequenceInitializer initializer;
+
+    @Test
+    void aligner_ShouldMoveSequencePastExistingIds_OnPostgreSQL() {
+        // Arrange
+        when(jdbcTemplate.execute(any(ConnectionCallback.class))).thenReturn("PostgreSQL");
+        when(jdbcTemplate.queryForList(ReponseSequenceInitializer.ALIGNER, Long.class)).thenReturn(List.of(1250L));
+
+        // Act
+        initializer.aligner();
+
+        // Assert
+        verify(jdbcTemplate).queryForList(ReponseSequenceInitializer.ALIGNER, Long.class);
+    }
+
+    @Test
+    void aligner_ShouldSkip_OnOtherDatabases() {
+        // Arrange
+        when(jdbcTemplate.execute(any(ConnectionCallback.class))).thenReturn("H2");
+
+        // Act
+        initializer.aligner();
+
+        // Assert
+        verify(jdbcTemplate, never()).queryForList(anyString(), eq(Long.class));
+    }
+}
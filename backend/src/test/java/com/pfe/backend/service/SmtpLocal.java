@@ -0,0 +1,91 @@
+package com.pfe.backend.service;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Serveur SMTP minimal en mémoire pour les tests : accepte les commandes de base, conserve les messages
+ * reçus et refuse les destinataires dont l'adresse commence par "refuse".
+ */
+class SmtpLocal implements AutoCloseable {
+
+    private final ServerSocket serveur;
+    private final Thread ecoute;
+    private final List<String> messages = new CopyOnWriteArrayList<>();
+    private final AtomicInteger connexions = new AtomicInteger();
+
+    SmtpLocal() throws IOException {
+        serveur = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        ecoute = new Thread(this::accepter, "smtp-local");
+        ecoute.setDaemon(true);
+        ecoute.start();
+    }
+
+    int getPort() {
+        return serveur.getLocalPort();
+    }
+
+    List<String> getMessages() {
+        return messages;
+    }
+
+    int getConnexions() {
+        return connexions.get();
+    }
+
+    private void accepter() {
+        while (!serveur.isClosed()) {
+            try (Socket socket = serveur.accept()) {
+                connexions.incrementAndGet();
+                dialoguer(socket);
+            } catch (IOException e) {
+                // Serveur fermé en fin de test
+            }
+        }
+    }
+
+    private void dialoguer(Socket socket) throws IOException {
+        BufferedReader entree = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+        OutputStream sortie = socket.getOutputStream();
+        repondre(sortie, "220 localhost SMTP");
+        String ligne;
+        while ((ligne = entree.readLine()) != null) {
+            String commande = ligne.toUpperCase();
+            if (commande.startsWith("RCPT") && commande.contains("<REFUSE")) {
+                repondre(sortie, "550 destinataire refusé");
+            } else if (commande.startsWith("DATA")) {
+                repondre(sortie, "354 fin par <CRLF>.<CRLF>");
+                StringBuilder message = new StringBuilder();
+                while ((ligne = entree.readLine()) != null && !ligne.equals(".")) {
+                    message.append(ligne).append('\n');
+                }
+                messages.add(message.toString());
+                repondre(sortie, "250 OK");
+            } else if (commande.startsWith("QUIT")) {
+                repondre(sortie, "221 au revoir");
+                return;
+            } else {
+                repondre(sortie, "250 OK");
+            }
+        }
+    }
+
+    private static void repondre(OutputStream sortie, String reponse) throws IOException {
+        sortie.write((reponse + "\r\n").getBytes(StandardCharsets.UTF_8));
+        sortie.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        serveur.close();
+    }
+}
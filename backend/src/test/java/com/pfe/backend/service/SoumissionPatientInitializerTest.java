@@ -0,0 +1,49 @@
+package com.pfe.backend.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class SoumissionPatientInitializerTest {
+
+    @Mock
+    private SoumissionPatientService soumissionPatientService;
+
+    @InjectMocks
+    private SoumissionPatientInitializer initializer;
+
+    @Test
+    void initialiser_ShouldProcessBatchesUntilShortBatch() {
+        // Arrange
+        ReflectionTestUtils.setField(initializer, "tailleReprise", 3);
+        when(soumissionPatientService.completerSoumissions(3)).thenReturn(3, 0);
+
+        // Act
+        initializer.initialiser();
+
+        // Assert
+        verify(soumissionPatientService, times(2)).completerSoumissions(3);
+    }
+
+    @Test
+    void initialiser_ShouldStopWithoutFailing_WhenConcurrentSaveCreatedHeader() {
+        // Arrange
+        ReflectionTestUtils.setField(initializer, "tailleReprise", 3);
+        when(soumissionPatientService.completerSoumissions(3))
+                .thenReturn(3)
+                .thenThrow(new DataIntegrityViolationException("uk_soumission_fm_patient"));
+
+        // Act
+        initializer.initialiser();
+
+        // Assert
+        verify(soumissionPatientService, times(2)).completerSoumissions(3);
+    }
+}
@@ -0,0 +1,79 @@
+package com.pfe.backend.service;
+
+import com.pfe.backend.model.SoumissionPatient;
+import com.pfe.backend.repository.ReponseFormulaireRepository;
+import com.pfe.backend.repository.SoumissionPatientRepository;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.PageRequest;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class SoumissionPatientServiceTest {
+
+    @Mock
+    private ReponseFormulaireRepository reponseFormulaireRepository;
+
+    @Mock
+    private SoumissionPatientRepository soumissionPatientRepository;
+
+    @InjectMocks
+    private SoumissionPatientService service;
+
+    @Test
+    void completerSoumissions_ShouldCreateHeaders_DecryptingOneIdentifierPerPatient() {
+        // Arrange
+        LocalDateTime debut = LocalDateTime.of(2025, 1, 1, 10, 0);
+        LocalDateTime fin = debut.plusHours(2);
+        when(reponseFormulaireRepository.findPatientsSansSoumission(PageRequest.of(0, 10))).thenReturn(List.of(
+                new Object[]{1L, "h1", 11L, 1, debut, fin},
+                new Object[]{2L, "h2", 20L, 0, debut, debut}));
+        when(reponseFormulaireRepository.findPatientIdentifiersByIdReponseIn(List.of(11L, 20L))).thenReturn(List.of(
+                new Object[]{11L, "AB-CD-etude-0003"},
+                new Object[]{20L, "ANCIEN"}));
+
+        // Act
+        int crees = service.completerSoumissions(10);
+
+        // Assert
+        assertEquals(2, crees);
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<SoumissionPatient>> captor = ArgumentCaptor.forClass(List.class);
+        verify(soumissionPatientRepository).saveAll(captor.capture());
+        List<SoumissionPatient> soumissions = new ArrayList<>(captor.getValue());
+
+        SoumissionPatient premiere = soumissions.get(0);
+        assertEquals(1L, premiere.getFormulaireMedecinId());
+        assertEquals("AB-CD-etude-0003", premiere.getPatientIdentifier());
+        assertEquals("h1", premiere.getPatientIdentifierHash());
+        assertEquals(3, premiere.getNumeroInclusion());
+        assertTrue(premiere.getDraft());
+        assertEquals(debut, premiere.getDateCreation());
+        assertEquals(fin, premiere.getDateModification());
+
+        SoumissionPatient seconde = soumissions.get(1);
+        assertEquals(0, seconde.getNumeroInclusion());
+        assertFalse(seconde.getDraft());
+    }
+
+    @Test
+    void completerSoumissions_ShouldDoNothing_WhenAllPatientsHaveHeaders() {
+        when(reponseFormulaireRepository.findPatientsSansSoumission(any())).thenReturn(List.of());
+
+        assertEquals(0, service.completerSoumissions(10));
+
+        verify(reponseFormulaireRepository, never()).findPatientIdentifiersByIdReponseIn(any());
+        verifyNoInteractions(soumissionPatientRepository);
+    }
+}
@@ -0,0 +1,131 @@
+package com.pfe.backend.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class UserDetailsCacheTest {
+
+    private final AtomicInteger chargements = new AtomicInteger();
+
+    private final Function<String, UserDetails> chargement = email -> {
+        chargements.incrementAndGet();
+        return new User(email, "encodedPassword", Collections.emptyList());
+    };
+
+    @AfterEach
+    void tearDown() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    void obtenir_ShouldLoadOnce_ThenServeFromCache() {
+        UserDetailsCache cache = new UserDetailsCache(Duration.ofMinutes(5), 10);
+
+        UserDetails premier = cache.obtenir("test@example.com", chargement);
+        UserDetails second = cache.obtenir("test@example.com", chargement);
+
+        assertEquals(1, chargements.get());
+        assertEquals("test@example.com", second.getUsername());
+        assertEquals("encodedPassword", second.getPassword());
+        assertNotSame(premier, second);
+    }
+
+    @Test
+    void obtenir_ShouldKeepPassword_WhenReturnedCopyIsErased() {
+        UserDetailsCache cache = new UserDetailsCache(Duration.ofMinutes(5), 10);
+
+        ((User) cache.obtenir("test@example.com", chargement)).eraseCredentials();
+
+        assertEquals("encodedPassword", cache.obtenir("test@example.com", chargement).getPassword());
+    }
+
+    @Test
+    void invalider_ShouldReloadUser() {
+        UserDetailsCache cache = new UserDetailsCache(Duration.ofMinutes(5), 10);
+        cache.obtenir("test@example.com", chargement);
+
+        cache.invalider("test@example.com");
+        cache.obtenir("test@example.com", chargement);
+
+        assertEquals(2, chargements.get());
+    }
+
+    @Test
+    void invalider_ShouldWaitForCommit_InsideTransaction() {
+        UserDetailsCache cache = new UserDetailsCache(Duration.ofMinutes(5), 10);
+        cache.obtenir("test@example.com", chargement);
+        TransactionSynchronizationManager.initSynchronization();
+
+        cache.invalider("test@example.com");
+        cache.obtenir("test@example.com", chargement);
+        assertEquals(1, chargements.get());
+
+        TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+        cache.obtenir("test@example.com", chargement);
+        assertEquals(2, chargements.get());
+    }
+
+    @Test
+    void obtenir_ShouldNotCacheLoad_InvalidatedWhileLoading() {
+        UserDetailsCache cache = new UserDetailsCache(Duration.ofMinutes(5), 10);
+        Function<String, UserDetails> chargementInvalide = email -> {
+            UserDetails ancien = chargement.apply(email);
+            // Le mot de passe change pendant la lecture de l'ancien
+            cache.invalider(email);
+            return ancien;
+        };
+
+        cache.obtenir("test@example.com", chargementInvalide);
+
+        assertEquals(0, cache.taille());
+        cache.obtenir("test@example.com", chargement);
+        assertEquals(2, chargements.get());
+    }
+
+    @Test
+    void obtenir_ShouldNotCache_WhenTtlIsZero() {
+        UserDetailsCache cache = new UserDetailsCache(Duration.ZERO, 10);
+
+        cache.obtenir("test@example.com", chargement);
+        cache.obtenir("test@example.com", chargement);
+
+        assertEquals(2, chargements.get());
+        assertEquals(0, cache.taille());
+    }
+
+    @Test
+    void obtenir_ShouldStayBounded() {
+        UserDetailsCache cache = new UserDetailsCache(Duration.ofMinutes(5), 3);
+
+        for (int i = 0; i < 10; i++) {
+            cache.obtenir("user" + i + "@example.com", chargement);
+        }
+
+        assertTrue(cache.taille() <= 3);
+    }
+
+    @Test
+    void obtenir_ShouldNotCache_UnknownUser() {
+        UserDetailsCache cache = new UserDetailsCache(Duration.ofMinutes(5), 10);
+        Function<String, UserDetails> introuvable = email -> {
+            throw new UsernameNotFoundException("Utilisateur non trouvé");
+        };
+
+        assertThrows(UsernameNotFoundException.class, () -> cache.obtenir("absent@example.com", introuvable));
+        assertEquals(0, cache.taille());
+    }
+}
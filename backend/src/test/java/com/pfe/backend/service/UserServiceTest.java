@@ -27,6 +27,9 @@ class UserServiceTest {
     @Mock
     private UtilisateurRepository repository;
 
+    @Mock
+    private UserDetailsCache userDetailsCache;
+
     @InjectMocks
     private UserService userService;
 
@@ -80,6 +83,7 @@ class UserServiceTest {
         // Assert
         assertEquals("New Name", result.getNom());
         assertEquals("new@example.com", result.getEmail());
+        verify(userDetailsCache).invalider(currentEmail);
     }
 
     @Test
@@ -208,6 +212,7 @@ class UserServiceTest {
         // Assert
         verify(repository).save(user);
         assertEquals("encodedNewPassword", user.getMotDePasse());
+        verify(userDetailsCache).invalider(email);
     }
 
     @Test